@@ -0,0 +1,252 @@
+package benchmark;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import scheduler.Scheduler;
+import scheduler.TaskStatistics;
+import simulator.MissionSimulation;
+import simulator.Scenario;
+
+/**
+ * The <code>AllocationBudget</code> runs a simulated mission and checks that neither the
+ * periodic tasks of the robot code nor the phases of the mission allocate more than they are
+ * allowed to. The brick has 64 KB for everything and a collector that stops every thread, so
+ * the control tasks must not allocate at all, and the phases only the few objects they make
+ * as they start, whatever their length.
+ *
+ * The allocation is read from the counter the virtual machine keeps for each thread. The tasks
+ * of the <code>Scheduler</code> each have their own thread, named after the task, whose bytes are
+ * divided by the periods it ran. The phases run on the thread of the mission, whose bytes are
+ * counted from the start of the phase to its end. A first mission is run beforehand so that the
+ * classes are loaded, and the first periods of every task are left out.
+ *
+ * It prints one line per task and per phase and exits with 1 if one of them is over its budget:
+ * <pre>
+ * java -cp out benchmark.AllocationBudget [speedup] [seed] [timeout in s]
+ * </pre>
+ *
+ * @see MissionSimulation
+ *
+ * @author Stefan Ti
+ */
+public class AllocationBudget implements MissionSimulation.PhaseListener {
+	// the bytes each task may allocate per period, by name of the task
+	private static final String [] TASKS = {"odometer", "correction", "ultrasonic"};
+	private static final double [] TASK_BUDGETS = {0, 0, 0};
+	// the bytes each phase may allocate in all, for the objects it makes as it starts
+	private static final String [] PHASES = {MissionSimulation.LOCALIZATION, MissionSimulation.CAPTURE};
+	private static final double [] PHASE_BUDGETS = {2048, 3072};
+	// the periods of a task left out while it loads its classes
+	private static final int WARMUP_PERIODS = 50;
+	// how often the counters of the tasks are read, in real ms
+	private static final long SAMPLE_INTERVAL = 100;
+
+	private com.sun.management.ThreadMXBean threads =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+	private MissionSimulation simulation;
+	private Map<TaskStatistics, Count> tasks = new IdentityHashMap<TaskStatistics, Count>();
+	private List<String> phaseNames = new ArrayList<String>();
+	private List<Count> phases = new ArrayList<Count>();
+	private String phase;
+	private long phaseBytes, phaseTime;
+
+	/*
+	 * The bytes allocated over a number of periods or a simulated time.
+	 */
+	private static class Count {
+		private String name;
+		private long firstBytes, lastBytes, first, last;
+
+		Count(String name, long bytes, long count) {
+			this.name = name;
+			firstBytes = lastBytes = bytes;
+			first = last = count;
+		}
+
+		void update(long bytes, long count) {
+			lastBytes = bytes;
+			last = count;
+		}
+
+		long getBytes() {
+			return lastBytes - firstBytes;
+		}
+
+		long getCount() {
+			return last - first;
+		}
+	}
+
+	/**
+	 * The constructor takes in the mission to check.
+	 *
+	 * @param simulation the <code>MissionSimulation</code>, which has not been run
+	 */
+	public AllocationBudget(MissionSimulation simulation) {
+		if (!threads.isThreadAllocatedMemorySupported())
+			throw new UnsupportedOperationException("this virtual machine does not count allocations");
+		threads.setThreadAllocatedMemoryEnabled(true);
+		this.simulation = simulation;
+		simulation.setPhaseListener(this);
+	}
+
+	/**
+	 * Runs the mission while reading the counters of its tasks.
+	 *
+	 * @param timeout the <code>long</code> simulated time the mission is given, in ms
+	 * @return <code>true</code> if the mission ended in time, without an error
+	 */
+	public boolean run(long timeout) {
+		Thread sampler = new Thread(new Runnable() {
+			public void run() {
+				while (!simulation.getRobot().isStopped()) {
+					sampleTasks();
+					try {
+						Thread.sleep(SAMPLE_INTERVAL);
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+			}
+		}, "allocation sampler");
+		sampler.setDaemon(true);
+		sampler.start();
+		boolean finished = simulation.run(timeout);
+		sampler.interrupt();
+		return finished;
+	}
+
+	/**
+	 * Reads the bytes allocated by the thread of the mission at the start of each phase.
+	 * {@inheritDoc}
+	 */
+	public void phaseStarted(String next) {
+		long bytes = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+		long time = simulation.getRobot().getClock().currentTimeMillis();
+		if (phase != null) {
+			Count count = new Count(phase, phaseBytes, phaseTime);
+			count.update(bytes, time);
+			synchronized (this) {
+				phaseNames.add(phase);
+				phases.add(count);
+			}
+		}
+		phase = next;
+		phaseBytes = bytes;
+		phaseTime = time;
+	}
+
+	// reads the bytes and periods of every task that is past its first periods
+	private void sampleTasks() {
+		Scheduler scheduler = simulation.getRobot().getScheduler();
+		Thread [] alive = new Thread [Thread.activeCount() * 2];
+		int threadCount = Thread.enumerate(alive);
+		for (int i = 0; i < scheduler.getTaskCount(); i++) {
+			TaskStatistics statistics = scheduler.getStatistics(i);
+			if (statistics == null || statistics.getReleases() < WARMUP_PERIODS)
+				continue;
+			Thread thread = find(alive, threadCount, statistics.getName());
+			if (thread == null)
+				continue;
+			long releases = statistics.getReleases();
+			long bytes = threads.getThreadAllocatedBytes(thread.getId());
+			synchronized (this) {
+				Count count = tasks.get(statistics);
+				if (count == null)
+					tasks.put(statistics, new Count(statistics.getName(), bytes, releases));
+				else
+					count.update(bytes, releases);
+			}
+		}
+	}
+
+	// the only live thread with the name, null if there is none or the name is ambiguous
+	private static Thread find(Thread [] alive, int count, String name) {
+		Thread found = null;
+		for (int i = 0; i < count; i++) {
+			if (alive[i].getName().equals(name)) {
+				if (found != null)
+					return null;
+				found = alive[i];
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Prints the bytes per period of every task and the bytes of every phase next to their
+	 * budgets.
+	 *
+	 * @param out the <code>PrintStream</code> to print to
+	 * @return <code>true</code> if everything is within its budget
+	 */
+	public synchronized boolean report(PrintStream out) {
+		boolean within = true;
+		out.println(String.format("%-14s %10s %12s %12s %10s", "task", "periods", "bytes", "B/period", "budget"));
+		for (int i = 0; i < TASKS.length; i++) {
+			long bytes = 0, periods = 0;
+			for (Count count : tasks.values()) {
+				if (count.name.equals(TASKS[i])) {
+					bytes += count.getBytes();
+					periods += count.getCount();
+				}
+			}
+			if (periods == 0) {
+				out.println(String.format("%-14s %10s", TASKS[i], "not run"));
+				continue;
+			}
+			double perPeriod = (double) bytes / periods;
+			within &= line(out, TASKS[i], periods, bytes, perPeriod, perPeriod, TASK_BUDGETS[i]);
+		}
+
+		out.println();
+		out.println(String.format("%-14s %10s %12s %12s %10s", "phase", "s", "bytes", "B/s", "budget"));
+		for (int i = 0; i < PHASES.length; i++) {
+			int index = phaseNames.indexOf(PHASES[i]);
+			if (index < 0) {
+				out.println(String.format("%-14s %10s", PHASES[i], "not ended"));
+				continue;
+			}
+			Count count = phases.get(index);
+			double seconds = Math.max(1, count.getCount()) / 1000.0;
+			within &= line(out, PHASES[i], Math.round(seconds), count.getBytes(),
+					count.getBytes() / seconds, count.getBytes(), PHASE_BUDGETS[i]);
+		}
+		return within;
+	}
+
+	// prints a line and returns whether the measured value, per period or in all, is within the budget
+	private static boolean line(PrintStream out, String name, long count, long bytes, double rate,
+			double measured, double budget) {
+		boolean within = measured <= budget;
+		out.println(String.format("%-14s %10d %12d %12.1f %10.1f%s", name, count, bytes, rate, budget,
+				within ? "" : "  OVER BUDGET"));
+		return within;
+	}
+
+	public static void main(String [] args) {
+		double speedup = args.length > 0 ? Double.parseDouble(args[0]) : 10.0;
+		long seed = args.length > 1 ? Long.parseLong(args[1]) : 1L;
+		long timeout = args.length > 2 ? Long.parseLong(args[2]) * 1000 : 600000;
+
+		// the brick links every class before the program starts, the host loads them on their
+		// first use, so a first mission is run to load them
+		System.out.println("warming up");
+		new MissionSimulation(Scenario.standard(), seed, speedup).run(timeout);
+
+		MissionSimulation simulation = new MissionSimulation(Scenario.standard(), seed, speedup);
+		AllocationBudget budget = new AllocationBudget(simulation);
+		boolean finished = budget.run(timeout);
+		System.out.println("mission " + (finished ? "finished" : "did not finish") + " in "
+				+ simulation.getMissionTime() / 1000.0 + " s");
+		if (simulation.getFailure() != null)
+			simulation.getFailure().printStackTrace(System.out);
+		boolean within = budget.report(System.out);
+		System.exit(within ? 0 : 1);
+	}
+}
@@ -0,0 +1,62 @@
+package benchmark;
+
+/**
+ * A <code>Kernel</code> is one piece of the robot code that the <code>KernelBenchmark</code>
+ * times, such as one period of a task of the <code>Scheduler</code> or one call made by the
+ * navigation, together with the mock robot it runs against.
+ *
+ * The rate of a kernel is how many times a second the robot runs it during a mission, so that
+ * its cost can be turned into a share of the processor of the brick. Kernels that only run on
+ * some events, such as a line crossing or a block in front of the robot, have a rate of 0.
+ *
+ * @see KernelBenchmark
+ * @see Kernels
+ *
+ * @author Stefan Ti
+ */
+public abstract class Kernel {
+	private final String name;
+	private final int rate;
+
+	/**
+	 * The constructor takes in the name and the rate of the kernel.
+	 *
+	 * @param name the <code>String</code> name printed in the results
+	 * @param rate the <code>int</code> number of runs per second on the robot, 0 if it depends
+	 * on events
+	 */
+	protected Kernel(String name, int rate) {
+		this.name = name;
+		this.rate = rate;
+	}
+
+	/**
+	 * Returns the name of the kernel
+	 * @return the <code>String</code> name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns how many times a second the robot runs the kernel
+	 * @return the <code>int</code> rate, 0 if it depends on events
+	 */
+	public int getRate() {
+		return rate;
+	}
+
+	/**
+	 * Builds the objects the kernel runs on. It is called once, before the warm up.
+	 */
+	public void setUp() {
+	}
+
+	/**
+	 * Runs the kernel once. The result is summed by the benchmark so that the work cannot be
+	 * optimized away.
+	 *
+	 * @return an <code>int</code> that depends on the result of the kernel
+	 */
+	public abstract int run();
+}
@@ -0,0 +1,351 @@
+package benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The <code>KernelBenchmark</code> times the kernels of the robot code on the host, against
+ * the <code>MockRobot</code>, and prints for each the number of runs per second, the bytes it
+ * allocates per run and, for the kernels that run periodically, the share of a processor they
+ * take at their rate on the robot.
+ *
+ * Every kernel is warmed up, then run for a few iterations of fixed time in batches between
+ * two readings of the timer. The allocation is read from the counter the virtual machine
+ * keeps for the thread, so the work of the collector is not counted, only the garbage the
+ * brick would have to collect.
+ *
+ * The host is many times faster than the brick, and its compiler removes much of the cost of
+ * the code the brick interprets, floating point emulated in software included. With
+ * <code>-constrained</code> the kernels are also run in a second virtual machine with the
+ * compiler turned off and a single processor, and the kernels are ranked by their cost there.
+ * Its times are closer in proportion to the ones of the brick, though not in absolute value.
+ *
+ * <pre>
+ * java -cp out benchmark.KernelBenchmark [-constrained] [-quick] [kernel name prefix ...]
+ * </pre>
+ *
+ * @see Kernels
+ *
+ * @author Stefan Ti
+ */
+public class KernelBenchmark {
+	private static final long WARMUP = 1000, ITERATION = 500;
+	private static final int ITERATIONS = 5;
+	// the kernels run in batches between two readings of the timer
+	private static final int BATCH = 64;
+	private static final String CONSTRAINED = "-constrained", QUICK = "-quick", RAW = "-raw";
+	private static final String [] CONSTRAINED_OPTIONS = {"-Xint", "-XX:ActiveProcessorCount=1"};
+	private static volatile int sink;
+
+	private long warmup = WARMUP, iteration = ITERATION;
+	private int iterations = ITERATIONS;
+	private ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+	/**
+	 * The <code>Result</code> of a kernel.
+	 */
+	public static class Result {
+		private String name;
+		private int rate;
+		private double opsPerSecond, deviation, bytesPerOp;
+
+		Result(String name, int rate, double opsPerSecond, double deviation, double bytesPerOp) {
+			this.name = name;
+			this.rate = rate;
+			this.opsPerSecond = opsPerSecond;
+			this.deviation = deviation;
+			this.bytesPerOp = bytesPerOp;
+		}
+
+		/**
+		 * Returns the name of the kernel
+		 * @return the <code>String</code> name
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Returns how many times a second the robot runs the kernel
+		 * @return the <code>int</code> rate, 0 if it depends on events
+		 */
+		public int getRate() {
+			return rate;
+		}
+
+		/**
+		 * Returns the mean number of runs per second over the iterations
+		 * @return the <code>double</code> runs per second
+		 */
+		public double getOpsPerSecond() {
+			return opsPerSecond;
+		}
+
+		/**
+		 * Returns the standard deviation of the runs per second over the iterations
+		 * @return the <code>double</code> deviation, in runs per second
+		 */
+		public double getDeviation() {
+			return deviation;
+		}
+
+		/**
+		 * Returns the time of one run
+		 * @return the <code>double</code> time in ns
+		 */
+		public double getNanosPerOp() {
+			return 1e9 / opsPerSecond;
+		}
+
+		/**
+		 * Returns the bytes allocated by one run
+		 * @return the <code>double</code> bytes, negative if the virtual machine does not count them
+		 */
+		public double getBytesPerOp() {
+			return bytesPerOp;
+		}
+
+		/**
+		 * Returns the share of a processor the kernel takes at its rate on the robot
+		 * @return the <code>double</code> share in percent, 0 if the rate depends on events
+		 */
+		public double getLoad() {
+			return getNanosPerOp() * rate / 1e7;
+		}
+	}
+
+	/**
+	 * Shortens the warm up and the iterations, for a first look.
+	 */
+	public void setQuick() {
+		warmup = WARMUP / 4;
+		iteration = ITERATION / 4;
+		iterations = 3;
+	}
+
+	/**
+	 * Times one kernel.
+	 *
+	 * @param kernel the <code>Kernel</code> to time
+	 * @return the <code>Result</code> of the kernel
+	 */
+	public Result measure(Kernel kernel) {
+		kernel.setUp();
+		runFor(kernel, warmup * 1000000);
+
+		double [] rates = new double [iterations];
+		long operations = 0;
+		long allocated = allocatedBytes();
+		for (int i = 0; i < iterations; i++) {
+			long start = System.nanoTime();
+			long count = runFor(kernel, iteration * 1000000);
+			rates[i] = count * 1e9 / (System.nanoTime() - start);
+			operations += count;
+		}
+		allocated = allocatedBytes() - allocated;
+
+		double mean = 0, deviation = 0;
+		for (int i = 0; i < iterations; i++)
+			mean += rates[i] / iterations;
+		for (int i = 0; i < iterations; i++)
+			deviation += (rates[i] - mean) * (rates[i] - mean) / iterations;
+
+		return new Result(kernel.getName(), kernel.getRate(), mean, Math.sqrt(deviation),
+				allocated < 0 ? -1 : (double) allocated / operations);
+	}
+
+	// runs the kernel in batches until the time is up and returns the number of runs
+	private long runFor(Kernel kernel, long nanos) {
+		long end = System.nanoTime() + nanos;
+		long count = 0;
+		int sum = 0;
+		do {
+			for (int i = 0; i < BATCH; i++)
+				sum += kernel.run();
+			count += BATCH;
+		} while (System.nanoTime() < end);
+		sink += sum;
+		return count;
+	}
+
+	// the bytes allocated by this thread so far, -1 if the virtual machine does not count them
+	private long allocatedBytes() {
+		if (!(threads instanceof com.sun.management.ThreadMXBean))
+			return -1;
+		com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) threads;
+		if (!counter.isThreadAllocatedMemorySupported() || !counter.isThreadAllocatedMemoryEnabled())
+			return -1;
+		return counter.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Times the kernels whose name starts with one of the given prefixes, all of them if there
+	 * is none.
+	 *
+	 * @param kernels the <code>Kernel</code> array to choose from
+	 * @param prefixes the <code>String</code> prefixes of the names
+	 * @param progress the <code>PrintStream</code> the name of each kernel is printed to as it
+	 * starts, or <code>null</code>
+	 * @return the <code>Result</code> of each kernel timed
+	 */
+	public Result [] run(Kernel [] kernels, List<String> prefixes, PrintStream progress) {
+		List<Result> results = new ArrayList<Result>();
+		for (Kernel kernel : kernels) {
+			if (!matches(kernel.getName(), prefixes))
+				continue;
+			if (progress != null)
+				progress.println(kernel.getName());
+			results.add(measure(kernel));
+		}
+		return results.toArray(new Result [results.size()]);
+	}
+
+	private static boolean matches(String name, List<String> prefixes) {
+		if (prefixes.isEmpty())
+			return true;
+		for (String prefix : prefixes)
+			if (name.startsWith(prefix))
+				return true;
+		return false;
+	}
+
+	/**
+	 * Prints the results as a table.
+	 *
+	 * @param title the <code>String</code> printed above the table
+	 * @param results the <code>Result</code> array
+	 * @param out the <code>PrintStream</code> to print to
+	 */
+	public static void report(String title, Result [] results, PrintStream out) {
+		out.println(title);
+		out.println(String.format("%-32s %14s %8s %10s %8s %8s", "kernel", "ops/s", "+-%", "ns/op", "B/op", "load %"));
+		for (Result result : results)
+			out.println(String.format("%-32s %14.0f %8.1f %10.1f %8s %8s", result.getName(),
+					result.getOpsPerSecond(), 100 * result.getDeviation() / result.getOpsPerSecond(),
+					result.getNanosPerOp(), bytes(result), load(result)));
+		out.println();
+	}
+
+	/**
+	 * Prints the kernels timed in both virtual machines, the most expensive on the robot first:
+	 * the periodic kernels by their load, then the others by their time.
+	 *
+	 * @param compiled the <code>Result</code> array of the host virtual machine
+	 * @param constrained the <code>Result</code> array of the constrained virtual machine
+	 * @param out the <code>PrintStream</code> to print to
+	 */
+	public static void rank(Result [] compiled, Result [] constrained, PrintStream out) {
+		Result [] ranked = constrained.clone();
+		Arrays.sort(ranked, new Comparator<Result>() {
+			public int compare(Result a, Result b) {
+				if (a.getLoad() != b.getLoad())
+					return Double.compare(b.getLoad(), a.getLoad());
+				return Double.compare(b.getNanosPerOp(), a.getNanosPerOp());
+			}
+		});
+
+		out.println("ranked by cost with " + Arrays.toString(CONSTRAINED_OPTIONS));
+		out.println(String.format("%-32s %12s %12s %8s %8s %8s", "kernel", "ns/op", "host ns/op", "ratio", "B/op", "load %"));
+		for (Result result : ranked) {
+			Result host = find(compiled, result.getName());
+			out.println(String.format("%-32s %12.1f %12s %8s %8s %8s", result.getName(), result.getNanosPerOp(),
+					host == null ? "-" : String.format("%.1f", host.getNanosPerOp()),
+					host == null ? "-" : String.format("%.1f", result.getNanosPerOp() / host.getNanosPerOp()),
+					bytes(result), load(result)));
+		}
+		out.println();
+	}
+
+	private static Result find(Result [] results, String name) {
+		for (Result result : results)
+			if (result.getName().equals(name))
+				return result;
+		return null;
+	}
+
+	private static String bytes(Result result) {
+		return result.getBytesPerOp() < 0 ? "n/a" : String.format("%.1f", result.getBytesPerOp());
+	}
+
+	private static String load(Result result) {
+		return result.getRate() == 0 ? "-" : String.format("%.3f", result.getLoad());
+	}
+
+	/*
+	 * Runs the same kernels in a virtual machine with the constrained options and reads back
+	 * its results, which it prints one per line with tabs between the fields.
+	 */
+	private static Result [] runConstrained(boolean quick, List<String> prefixes) throws IOException, InterruptedException {
+		List<String> command = new ArrayList<String>();
+		command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		command.addAll(Arrays.asList(CONSTRAINED_OPTIONS));
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(KernelBenchmark.class.getName());
+		command.add(RAW);
+		if (quick)
+			command.add(QUICK);
+		command.addAll(prefixes);
+
+		Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+		List<Result> results = new ArrayList<Result>();
+		BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream(), "UTF-8"));
+		try {
+			String line;
+			while ((line = in.readLine()) != null) {
+				String [] fields = line.split("\t");
+				results.add(new Result(fields[0], Integer.parseInt(fields[1]), Double.parseDouble(fields[2]),
+						Double.parseDouble(fields[3]), Double.parseDouble(fields[4])));
+			}
+		} finally {
+			in.close();
+		}
+		if (process.waitFor() != 0)
+			throw new IOException("the constrained virtual machine exited with " + process.exitValue());
+		return results.toArray(new Result [results.size()]);
+	}
+
+	public static void main(String [] args) throws Exception {
+		boolean constrained = false, quick = false, raw = false;
+		List<String> prefixes = new ArrayList<String>();
+		for (String arg : args) {
+			if (arg.equals(CONSTRAINED))
+				constrained = true;
+			else if (arg.equals(QUICK))
+				quick = true;
+			else if (arg.equals(RAW))
+				raw = true;
+			else
+				prefixes.add(arg);
+		}
+
+		KernelBenchmark benchmark = new KernelBenchmark();
+		if (quick)
+			benchmark.setQuick();
+
+		if (raw) {
+			for (Result result : benchmark.run(Kernels.all(), prefixes, System.err))
+				System.out.println(result.getName() + "\t" + result.getRate() + "\t" + result.getOpsPerSecond()
+						+ "\t" + result.getDeviation() + "\t" + result.getBytesPerOp());
+			return;
+		}
+
+		Result [] compiled = benchmark.run(Kernels.all(), prefixes, System.err);
+		report("host " + System.getProperty("java.vm.name") + " " + System.getProperty("java.version"),
+				compiled, System.out);
+		if (constrained) {
+			Result [] interpreted = runConstrained(quick, prefixes);
+			report("constrained " + Arrays.toString(CONSTRAINED_OPTIONS), interpreted, System.out);
+			rank(compiled, interpreted, System.out);
+		}
+	}
+}
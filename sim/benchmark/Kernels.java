@@ -0,0 +1,390 @@
+package benchmark;
+
+import java.util.Random;
+
+import bluetooth.StartCorner;
+import capture.Detection;
+import capture.RangeFilter;
+import capture.RangeSampler;
+import capture.UltrasonicPoller;
+import simulator.Block;
+import traveling.Calibration;
+import traveling.FixedPointOdometryEngine;
+import traveling.LightBaseline;
+import traveling.LineDetector;
+import traveling.Odometer;
+import traveling.OdometryCorrection;
+import traveling.PoseEstimator;
+
+/**
+ * The <code>Kernels</code> class builds the kernels of the robot code that the
+ * <code>KernelBenchmark</code> times, each on its own <code>MockRobot</code>.
+ *
+ * The sensors replay what the robot sees while it drives at the travel speed of the
+ * <code>Navigation</code>: the line sensors are read every 4 ms and cross a grid line every
+ * tile, the ultrasonic sensors mostly see nothing with a wall now and then, and the block
+ * sensor goes through the colors of every type of block.
+ *
+ * @see KernelBenchmark
+ *
+ * @author Stefan Ti
+ */
+public class Kernels {
+	private static final int FLOOR = 560, LINE = 420, LIGHT_NOISE = 4;
+	// about 9 cm/s sampled every 4 ms, over a tile of 30.3 cm with lines 0.5 cm wide
+	private static final int TILE_SAMPLES = 820, LINE_SAMPLES = 14;
+	private static final int SAMPLE_PERIOD = 4, ODOMETER_PERIOD = 25, PING_PERIOD = 50;
+	private static final int MAX_DISTANCE = 30;
+	// a pose that puts both line sensors on the line x = 30.3
+	private static final double [] ON_LINE = {37.6, 15.0, 0.0};
+	private static final boolean [] UPDATE_ALL = {true, true, true};
+	private static final double SENSOR_DISTANCE = 7.3 * Math.sqrt(2.0);
+	private static final long SEED = 1;
+
+	/**
+	 * Returns every kernel, in the order they are printed.
+	 * @return the <code>Kernel</code> array
+	 */
+	public static Kernel [] all() {
+		return new Kernel [] {
+			odometer("odometer.execute", false),
+			odometer("odometer.execute fixed point", true),
+			readPose(),
+			poseAt(),
+			observeLine(),
+			lineDetector(),
+			correction(),
+			poller("sampler.execute", 1000 / PING_PERIOD, true),
+			poller("poller.getLeftWindowedDistance", 0, false),
+			rangeFilter(),
+			blockType(),
+			blockNumber(),
+			cornerFrame(),
+		};
+	}
+
+	/**
+	 * Builds a robot whose sensors replay the readings of a mission.
+	 * @return the <code>MockRobot</code>
+	 */
+	public static MockRobot createRobot() {
+		Random random = new Random(SEED);
+		int [] left = lineSequence(0, random);
+		// the sensors are side by side, at an angle to the line they do not cross it together
+		int [] right = lineSequence(TILE_SAMPLES / 8, random);
+
+		int [][] colors = new int [Block.WOOD][3];
+		for (int type = Block.LIGHT_BLUE; type <= Block.WOOD; type++)
+			new Block(0, 0, Block.SIDE, type).getColor(colors[type - 1]);
+
+		int [] distances = new int [64];
+		for (int i = 0; i < distances.length; i++)
+			distances[i] = (i % 16) < 3 ? 20 + random.nextInt(20) : 255;
+
+		return new MockRobot(left, right, colors, distances, distances.clone());
+	}
+
+	/*
+	 * The raw light values over one tile, a grid line being a dip from the floor to the line
+	 * level and back.
+	 */
+	private static int [] lineSequence(int offset, Random random) {
+		int [] light = new int [TILE_SAMPLES];
+		for (int i = 0; i < TILE_SAMPLES; i++) {
+			int position = (i + offset) % TILE_SAMPLES;
+			double depth = 0;
+			if (position < LINE_SAMPLES)
+				depth = 1.0 - Math.abs(2.0 * position / (LINE_SAMPLES - 1) - 1.0);
+			light[i] = (int) Math.round(FLOOR - (FLOOR - LINE) * depth + random.nextGaussian() * LIGHT_NOISE);
+		}
+		return light;
+	}
+
+	/*
+	 * An odometer of the robot, with the ambient light known so that starting the correction
+	 * does not measure or store it.
+	 */
+	private static Odometer createOdometer(MockRobot robot, boolean fixedPoint) {
+		Calibration calibration = new Calibration();
+		calibration.setAmbient(Calibration.LEFT_SENSOR, FLOOR);
+		calibration.setAmbient(Calibration.RIGHT_SENSOR, FLOOR);
+		if (fixedPoint)
+			return new Odometer(ODOMETER_PERIOD, false, calibration, new FixedPointOdometryEngine(
+					calibration.getLeftRadius(), calibration.getRightRadius(), calibration.getWidth()),
+					robot, robot.getLeftLineSensor(), robot.getRightLineSensor());
+		return new Odometer(ODOMETER_PERIOD, false, calibration, robot,
+				robot.getLeftLineSensor(), robot.getRightLineSensor());
+	}
+
+	// puts the robot on a grid line, with the pose recorded in the history
+	private static void placeOnLine(MockRobot robot, Odometer odometer) {
+		odometer.setPosition(ON_LINE, UPDATE_ALL);
+		robot.getManualClock().advance(ODOMETER_PERIOD);
+		odometer.execute(robot.getClock().currentTimeMillis());
+	}
+
+	/*
+	 * One period of the odometer while the robot drives straight, turns in place and follows
+	 * arcs, as in OdometryEngineComparison.
+	 */
+	private static Kernel odometer(String name, final boolean fixedPoint) {
+		return new Kernel(name, 1000 / ODOMETER_PERIOD) {
+			private MockRobot robot;
+			private Odometer odometer;
+			private double left, right;
+			private int step;
+
+			public void setUp() {
+				robot = createRobot();
+				odometer = createOdometer(robot, fixedPoint);
+			}
+
+			public int run() {
+				switch ((step++ / 200) % 4) {
+				case 0: left += 6.25; right += 6.25; break;
+				case 1: left += 3.75; right -= 3.75; break;
+				case 2: left += 6.25; right += 4.5; break;
+				default: left -= 5.0; right -= 5.5; break;
+				}
+				robot.setTachoCounts((int) left, (int) right);
+				robot.getManualClock().advance(ODOMETER_PERIOD);
+				odometer.execute(robot.getClock().currentTimeMillis());
+				return odometer.getVersion();
+			}
+		};
+	}
+
+	/*
+	 * A consistent read of the whole pose, as done by the navigation and the display.
+	 */
+	private static Kernel readPose() {
+		return new Kernel("odometer.readPose", 0) {
+			private Odometer odometer;
+			private double [] pose = new double [3];
+
+			public void setUp() {
+				MockRobot robot = createRobot();
+				odometer = createOdometer(robot, false);
+				placeOnLine(robot, odometer);
+			}
+
+			public int run() {
+				return odometer.readPose(pose);
+			}
+		};
+	}
+
+	/*
+	 * The pose at the time of a crossing, interpolated in a full history.
+	 */
+	private static Kernel poseAt() {
+		return new Kernel("odometer.poseAt", 0) {
+			private MockRobot robot;
+			private Odometer odometer;
+			private double [] pose = new double [3];
+			private int step;
+
+			public void setUp() {
+				robot = createRobot();
+				odometer = createOdometer(robot, false);
+				for (int i = 0; i < 100; i++) {
+					robot.setTachoCounts(6 * i, 6 * i);
+					robot.getManualClock().advance(ODOMETER_PERIOD);
+					odometer.execute(robot.getClock().currentTimeMillis());
+				}
+			}
+
+			public int run() {
+				// crossings are timed up to a few odometer periods back
+				long time = robot.getClock().currentTimeMillis() - (step++ % 100);
+				return odometer.poseAt(time, pose) ? 1 : 0;
+			}
+		};
+	}
+
+	/*
+	 * The fusion of one crossing by the estimator, from a fresh covariance so that it is
+	 * accepted and corrects the odometer every time.
+	 */
+	private static Kernel observeLine() {
+		return new Kernel("estimator.observeLine", 0) {
+			private MockRobot robot;
+			private Odometer odometer;
+			private PoseEstimator estimator;
+			private double [] pose = new double [3];
+			private double leftOffset = Math.PI + Math.PI / 4, rightOffset = Math.PI - Math.PI / 4;
+			private int step;
+
+			public void setUp() {
+				robot = createRobot();
+				odometer = createOdometer(robot, false);
+				estimator = odometer.getEstimator();
+				placeOnLine(robot, odometer);
+			}
+
+			public int run() {
+				estimator.reset();
+				odometer.poseAt(robot.getClock().currentTimeMillis(), pose);
+				return estimator.observeLine(pose, SENSOR_DISTANCE,
+						(step++ & 1) == 0 ? leftOffset : rightOffset) ? 1 : 0;
+			}
+		};
+	}
+
+	/*
+	 * One reading of a line sensor through its baseline and detector.
+	 */
+	private static Kernel lineDetector() {
+		return new Kernel("lineDetector.sample", 2 * 1000 / SAMPLE_PERIOD) {
+			private MockRobot robot;
+			private LineDetector detector = new LineDetector(new LightBaseline(FLOOR));
+			private long time;
+
+			public void setUp() {
+				robot = createRobot();
+			}
+
+			public int run() {
+				time += SAMPLE_PERIOD;
+				return detector.sample(robot.getLeftLineSensor().getRawLightValue(), time) ? 1 : 0;
+			}
+		};
+	}
+
+	/*
+	 * One period of the odometry correction, both sensors sampled and the crossings fused, on
+	 * a robot that stands on a line so that the crossings are accepted.
+	 */
+	private static Kernel correction() {
+		return new Kernel("correction.execute", 1000 / SAMPLE_PERIOD) {
+			private MockRobot robot;
+			private Odometer odometer;
+			private OdometryCorrection correction;
+
+			public void setUp() {
+				robot = createRobot();
+				odometer = createOdometer(robot, false);
+				placeOnLine(robot, odometer);
+				// the detectors are made when the correction starts, its task is not needed
+				odometer.startOdometryCorrection();
+				robot.getScheduler().removeAll();
+				correction = odometer.getOdometryCorrection();
+			}
+
+			public int run() {
+				robot.getManualClock().advance(SAMPLE_PERIOD);
+				correction.execute(robot.getClock().currentTimeMillis());
+				return odometer.getVersion();
+			}
+		};
+	}
+
+	/*
+	 * One period of the ultrasonic sampler, with the poller filtering its samples, or only the
+	 * window of the left sensor.
+	 */
+	private static Kernel poller(String name, int rate, final boolean execute) {
+		return new Kernel(name, rate) {
+			private RangeSampler sampler;
+			private UltrasonicPoller poller;
+			private long time;
+
+			public void setUp() {
+				MockRobot robot = createRobot();
+				sampler = new RangeSampler(robot.getLeftRange(), robot.getRightRange(), robot.getScheduler());
+				poller = new UltrasonicPoller(sampler, MAX_DISTANCE);
+				// the poller listens to the sampler, which is run here rather than by its task
+				poller.start();
+				robot.getScheduler().removeAll();
+			}
+
+			public int run() {
+				if (!execute)
+					return poller.getLeftWindowedDistance();
+				time += PING_PERIOD;
+				sampler.execute(time);
+				return poller.getIsWall() ? 1 : 0;
+			}
+		};
+	}
+
+	/*
+	 * The filter of one sensor, which the poller runs for both sensors every period.
+	 */
+	private static Kernel rangeFilter() {
+		return new Kernel("rangeFilter.add", 1000 / PING_PERIOD) {
+			private MockRobot robot;
+			private RangeFilter filter = new RangeFilter(10);
+
+			public void setUp() {
+				robot = createRobot();
+			}
+
+			public int run() {
+				return filter.add(robot.getLeftRange().getDistance());
+			}
+		};
+	}
+
+	/*
+	 * The classification of the block in front of the robot.
+	 */
+	private static Kernel blockType() {
+		return new Kernel("detection.getBlockType", 0) {
+			private MockRobot.MockColorInput sensor;
+			private Detection detection;
+
+			public void setUp() {
+				MockRobot robot = createRobot();
+				sensor = (MockRobot.MockColorInput) robot.getBlockSensor();
+				detection = new Detection(sensor, robot.getRightRange(), robot.getLeftRange(),
+						MAX_DISTANCE, robot.getClock());
+			}
+
+			public int run() {
+				sensor.nextColor();
+				return detection.getBlockType().getNumber();
+			}
+		};
+	}
+
+	/*
+	 * The classification of the block in front of the robot, as the number of its type.
+	 */
+	private static Kernel blockNumber() {
+		return new Kernel("detection.getBlockNumber", 0) {
+			private MockRobot.MockColorInput sensor;
+			private Detection detection;
+
+			public void setUp() {
+				MockRobot robot = createRobot();
+				sensor = (MockRobot.MockColorInput) robot.getBlockSensor();
+				detection = new Detection(sensor, robot.getRightRange(), robot.getLeftRange(),
+						MAX_DISTANCE, robot.getClock());
+			}
+
+			public int run() {
+				sensor.nextColor();
+				return detection.getBlockNumber();
+			}
+		};
+	}
+
+	/*
+	 * The change of a tile of the transmission to the frame of the start corner, which
+	 * Main.changeCoordinate does for every coordinate it is sent.
+	 */
+	private static Kernel cornerFrame() {
+		return new Kernel("startCorner.toCornerFrame", 0) {
+			private StartCorner [] corners = {StartCorner.BOTTOM_LEFT, StartCorner.BOTTOM_RIGHT,
+					StartCorner.TOP_RIGHT, StartCorner.TOP_LEFT};
+			private int step;
+
+			public int run() {
+				int [] tile = corners[step & 3].toCornerFrame(step % 11, (step / 11) % 11);
+				step++;
+				return tile[0] + tile[1];
+			}
+		};
+	}
+}
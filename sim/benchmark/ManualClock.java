@@ -0,0 +1,32 @@
+package benchmark;
+
+import hardware.Clock;
+
+/**
+ * The <code>ManualClock</code> only moves when it is told to, so that a kernel sees the same
+ * times on every run, whatever the speed of the host. Sleeping on it sleeps in real time, for
+ * the threads of a <code>Scheduler</code> that are started while a kernel is set up.
+ *
+ * @author Stefan Ti
+ */
+public class ManualClock extends Clock {
+	private volatile long time;
+
+	public long currentTimeMillis() {
+		return time;
+	}
+
+	public void sleep(long duration) throws InterruptedException {
+		if (duration > 0)
+			Thread.sleep(duration);
+	}
+
+	/**
+	 * Moves the clock forward.
+	 *
+	 * @param duration the <code>long</code> time to add, in ms
+	 */
+	public void advance(long duration) {
+		time += duration;
+	}
+}
@@ -0,0 +1,233 @@
+package benchmark;
+
+import hardware.Clock;
+import hardware.ColorInput;
+import hardware.Feedback;
+import hardware.RangeInput;
+import hardware.RegulatedMotor;
+import hardware.Robot;
+import scheduler.Scheduler;
+
+/**
+ * The <code>MockRobot</code> is a robot whose motors and sensors do nothing but return what
+ * the benchmark sets, so that the time of a kernel is only the time of the robot code. Unlike
+ * the <code>SimulatedRobot</code> nothing is integrated: the tacho counts are written by the
+ * kernels and the sensors replay fixed sequences of readings.
+ *
+ * @see KernelBenchmark
+ *
+ * @author Stefan Ti
+ */
+public class MockRobot implements Robot {
+	private ManualClock clock = new ManualClock();
+	private Scheduler scheduler = new Scheduler(clock);
+	private MockMotor leftWheel = new MockMotor(), rightWheel = new MockMotor();
+	private MockMotor leftGrabber = new MockMotor(), rightGrabber = new MockMotor();
+	private MockColorInput leftLine, rightLine, block;
+	private MockRangeInput leftRange, rightRange;
+	private Feedback feedback = new Feedback() {
+		public void beep() {
+		}
+
+		public void buzz() {
+		}
+
+		public void playTone(int frequency, int duration) {
+		}
+
+		public void drawString(String text, int x, int y) {
+		}
+
+		public void drawInt(int value, int x, int y) {
+		}
+	};
+
+	/**
+	 * The constructor takes in the sequences the sensors replay.
+	 *
+	 * @param leftLight the <code>int</code> raw light values of the left line sensor
+	 * @param rightLight the <code>int</code> raw light values of the right line sensor
+	 * @param colors the <code>int</code> red, green and blue values of the block sensor
+	 * @param leftDistances the <code>int</code> distances of the left ultrasonic sensor
+	 * @param rightDistances the <code>int</code> distances of the right ultrasonic sensor
+	 */
+	public MockRobot(int [] leftLight, int [] rightLight, int [][] colors,
+			int [] leftDistances, int [] rightDistances) {
+		leftLine = new MockColorInput(leftLight, colors);
+		rightLine = new MockColorInput(rightLight, colors);
+		block = new MockColorInput(leftLight, colors);
+		leftRange = new MockRangeInput(leftDistances);
+		rightRange = new MockRangeInput(rightDistances);
+	}
+
+	public RegulatedMotor getLeftWheel() {
+		return leftWheel;
+	}
+
+	public RegulatedMotor getRightWheel() {
+		return rightWheel;
+	}
+
+	public RegulatedMotor getLeftGrabber() {
+		return leftGrabber;
+	}
+
+	public RegulatedMotor getRightGrabber() {
+		return rightGrabber;
+	}
+
+	public ColorInput getLeftLineSensor() {
+		return leftLine;
+	}
+
+	public ColorInput getRightLineSensor() {
+		return rightLine;
+	}
+
+	public ColorInput getBlockSensor() {
+		return block;
+	}
+
+	public RangeInput getLeftRange() {
+		return leftRange;
+	}
+
+	public RangeInput getRightRange() {
+		return rightRange;
+	}
+
+	public Clock getClock() {
+		return clock;
+	}
+
+	public Scheduler getScheduler() {
+		return scheduler;
+	}
+
+	public Feedback getFeedback() {
+		return feedback;
+	}
+
+	/**
+	 * Returns the clock of the robot, which the kernels move forward
+	 * @return the <code>ManualClock</code> of the robot
+	 */
+	public ManualClock getManualClock() {
+		return clock;
+	}
+
+	/**
+	 * Sets the tacho counts of the wheels
+	 * @param left the <code>int</code> tacho count of the left wheel, in degrees
+	 * @param right the <code>int</code> tacho count of the right wheel, in degrees
+	 */
+	public void setTachoCounts(int left, int right) {
+		leftWheel.tacho = left;
+		rightWheel.tacho = right;
+	}
+
+	/*
+	 * A motor that never moves, its tacho count is set by the kernel.
+	 */
+	private static class MockMotor implements RegulatedMotor {
+		private int tacho;
+
+		public void setSpeed(int speed) {
+		}
+
+		public void setAcceleration(int acceleration) {
+		}
+
+		public void forward() {
+		}
+
+		public void backward() {
+		}
+
+		public void stop() {
+		}
+
+		public void flt(boolean immediateReturn) {
+		}
+
+		public void rotate(int angle, boolean immediateReturn) {
+		}
+
+		public void rotateTo(int limitAngle, boolean immediateReturn) {
+		}
+
+		public int getTachoCount() {
+			return tacho;
+		}
+
+		public boolean isMoving() {
+			return false;
+		}
+	}
+
+	/**
+	 * A color sensor that replays a sequence of light values, one per reading, and a sequence
+	 * of colors, one per <code>nextColor</code>, so that the three components read for one
+	 * classification are of the same block.
+	 */
+	public static class MockColorInput implements ColorInput {
+		private int [] light;
+		private int [][] colors;
+		private int lightIndex, colorIndex;
+
+		MockColorInput(int [] light, int [][] colors) {
+			this.light = light;
+			this.colors = colors;
+		}
+
+		public void setFloodlight(boolean on) {
+		}
+
+		public int getRawLightValue() {
+			int value = light[lightIndex];
+			if (++lightIndex == light.length)
+				lightIndex = 0;
+			return value;
+		}
+
+		public void readColor(int [] rgb) {
+			int [] color = colors[colorIndex];
+			rgb[0] = color[0];
+			rgb[1] = color[1];
+			rgb[2] = color[2];
+		}
+
+		/**
+		 * Moves to the next color of the sequence
+		 */
+		public void nextColor() {
+			if (++colorIndex == colors.length)
+				colorIndex = 0;
+		}
+	}
+
+	/*
+	 * An ultrasonic sensor that replays a sequence of distances, one per reading.
+	 */
+	private static class MockRangeInput implements RangeInput {
+		private int [] distances;
+		private int index;
+
+		MockRangeInput(int [] distances) {
+			this.distances = distances;
+		}
+
+		public void continuous() {
+		}
+
+		public void ping() {
+		}
+
+		public int getDistance() {
+			int distance = distances[index];
+			if (++index == distances.length)
+				index = 0;
+			return distance;
+		}
+	}
+}
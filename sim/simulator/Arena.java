@@ -0,0 +1,182 @@
+package simulator;
+
+/**
+ * The <code>Arena</code> class is the 12 by 12 tile playing field, in the coordinates of the
+ * <code>Odometer</code> once the robot is localized: the origin is the first grid intersection
+ * out of the starting corner, the grid lines are at the multiples of <code>TILE_LENGTH</code>,
+ * and the walls are one tile before the origin and eleven tiles after it on both axes.
+ *
+ * It answers what the sensors of a <code>SimulatedRobot</code> see: how much of a grid line is
+ * under a light sensor, and how far an ultrasonic beam or a ray goes before it hits a wall or a
+ * block.
+ *
+ * @see SimulatedRobot
+ * @see Block
+ *
+ * @author Stefan Ti
+ */
+public class Arena {
+	/**
+	 * The length of a tile, the same as the one the <code>PoseEstimator</code> uses, in cm.
+	 */
+	public static final double TILE_LENGTH = 30.3;
+	/**
+	 * The number of tiles along each wall.
+	 */
+	public static final int TILES = 12;
+	/**
+	 * The lowest and highest x and y inside the walls, in cm.
+	 */
+	public static final double MIN = -TILE_LENGTH, MAX = (TILES - 1) * TILE_LENGTH;
+	// the width of the black tape of the grid lines
+	private static final double LINE_WIDTH = 0.6;
+	private static final int MAX_BLOCKS = 32;
+
+	private Block [] blocks = new Block [MAX_BLOCKS];
+	private int blockCount = 0;
+	// the surface the last ray hit: a wall, or the index of a block
+	private int lastHit;
+	private double lastIncidence;
+
+	/**
+	 * Puts a block on the floor.
+	 * @param block the <code>Block</code> to add
+	 */
+	public void add(Block block) {
+		if (blockCount == MAX_BLOCKS)
+			throw new IllegalStateException("too many blocks");
+		blocks[blockCount++] = block;
+	}
+
+	/**
+	 * Returns the number of blocks in the arena
+	 * @return the <code>int</code> number of blocks
+	 */
+	public int getBlockCount() {
+		return blockCount;
+	}
+
+	/**
+	 * Returns a block of the arena
+	 * @param index the <code>int</code> index of the block, from 0
+	 * @return the <code>Block</code>
+	 */
+	public Block getBlock(int index) {
+		return blocks[index];
+	}
+
+	/**
+	 * Returns how much of a round light spot on the floor is covered by a grid line.
+	 *
+	 * @param x the <code>double</code> x of the center of the spot
+	 * @param y the <code>double</code> y of the center of the spot
+	 * @param spot the <code>double</code> diameter of the spot in cm
+	 * @return the <code>double</code> covered fraction, 0 on the bare floor and 1 over a line
+	 */
+	public double lineCoverage(double x, double y, double spot) {
+		return Math.max(coverage(x, spot), coverage(y, spot));
+	}
+
+	// the fraction of [p - spot / 2, p + spot / 2] over the closest line of one axis
+	private static double coverage(double p, double spot) {
+		double line = Math.round(p / TILE_LENGTH) * TILE_LENGTH;
+		if (line <= MIN || line >= MAX)
+			return 0.0;
+		double low = Math.max(p - spot / 2, line - LINE_WIDTH / 2);
+		double high = Math.min(p + spot / 2, line + LINE_WIDTH / 2);
+		return high <= low ? 0.0 : (high - low) / spot;
+	}
+
+	/**
+	 * Returns how far a ray goes before it hits a wall or a block that is not carried. The
+	 * surface hit and the angle it was hit at are kept for <code>getLastBlock</code> and
+	 * <code>getLastIncidence</code>.
+	 *
+	 * @param x the <code>double</code> x the ray starts from
+	 * @param y the <code>double</code> y the ray starts from
+	 * @param angle the <code>double</code> direction of the ray in degrees
+	 * @return the <code>double</code> distance in cm
+	 */
+	public double cast(double x, double y, double angle) {
+		double dx = Math.cos(Math.toRadians(angle));
+		double dy = Math.sin(Math.toRadians(angle));
+		double best = Double.MAX_VALUE;
+		lastHit = -1;
+		lastIncidence = 0.0;
+
+		// the walls, from the inside
+		if (dx > 0) {
+			best = (MAX - x) / dx;
+			lastIncidence = dx;
+		} else if (dx < 0) {
+			best = (MIN - x) / dx;
+			lastIncidence = -dx;
+		}
+		double t = Double.MAX_VALUE;
+		if (dy > 0)
+			t = (MAX - y) / dy;
+		else if (dy < 0)
+			t = (MIN - y) / dy;
+		if (t < best) {
+			best = t;
+			lastIncidence = Math.abs(dy);
+		}
+
+		for (int i = 0; i < blockCount; i++) {
+			Block block = blocks[i];
+			if (block.isCarried())
+				continue;
+			double half = block.getSide() / 2;
+			// the slabs of the square, entered on the face whose slab is entered last
+			double xNear, xFar, yNear, yFar;
+			if (dx == 0) {
+				if (Math.abs(x - block.getX()) > half)
+					continue;
+				xNear = -Double.MAX_VALUE;
+				xFar = Double.MAX_VALUE;
+			} else {
+				double t1 = (block.getX() - half - x) / dx, t2 = (block.getX() + half - x) / dx;
+				xNear = Math.min(t1, t2);
+				xFar = Math.max(t1, t2);
+			}
+			if (dy == 0) {
+				if (Math.abs(y - block.getY()) > half)
+					continue;
+				yNear = -Double.MAX_VALUE;
+				yFar = Double.MAX_VALUE;
+			} else {
+				double t1 = (block.getY() - half - y) / dy, t2 = (block.getY() + half - y) / dy;
+				yNear = Math.min(t1, t2);
+				yFar = Math.max(t1, t2);
+			}
+			double near = Math.max(xNear, yNear), far = Math.min(xFar, yFar);
+			if (near > far || far < 0)
+				continue;
+			// a ray starting inside a block hits it at once
+			double hit = Math.max(near, 0.0);
+			if (hit < best) {
+				best = hit;
+				lastHit = i;
+				lastIncidence = xNear > yNear ? Math.abs(dx) : Math.abs(dy);
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Returns the block the last ray hit
+	 * @return the <code>Block</code>, <code>null</code> if it hit a wall
+	 */
+	public Block getLastBlock() {
+		return lastHit < 0 ? null : blocks[lastHit];
+	}
+
+	/**
+	 * Returns the cosine of the angle between the last ray and the normal of the surface it
+	 * hit, 1 when it hit the surface straight on
+	 * @return the <code>double</code> cosine of the incidence
+	 */
+	public double getLastIncidence() {
+		return lastIncidence;
+	}
+}
@@ -0,0 +1,122 @@
+package simulator;
+
+/**
+ * The <code>Block</code> class is one of the foam or wooden blocks on the floor of the
+ * <code>Arena</code>, a square of the given side whose faces are along the grid lines. Its type
+ * is numbered like <code>Detection.getBlockNumber</code>, and it has the color the color sensor
+ * reads on its face.
+ *
+ * @see Arena
+ *
+ * @author Stefan Ti
+ */
+public class Block {
+	/**
+	 * The types of block, numbered like <code>Detection.getBlockNumber</code>.
+	 */
+	public static final int LIGHT_BLUE = 1, RED = 2, YELLOW = 3, WHITE = 4, DARK_BLUE = 5, WOOD = 6;
+	/**
+	 * The side of the flag blocks, in cm.
+	 */
+	public static final double SIDE = 9.0;
+	// the red, green and blue read on the face of each type, indexed by type
+	private static final int [][] COLORS = {
+		{0, 0, 0},
+		{80, 120, 140},
+		{200, 40, 40},
+		{200, 180, 40},
+		{200, 190, 170},
+		{30, 40, 120},
+		{150, 90, 80},
+	};
+
+	private double x, y, side;
+	private int type;
+	private boolean carried;
+
+	/**
+	 * The constructor takes in the center, side and type of the block.
+	 *
+	 * @param x the <code>double</code> x of the center in cm
+	 * @param y the <code>double</code> y of the center in cm
+	 * @param side the <code>double</code> side in cm
+	 * @param type the <code>int</code> type of the block, from <code>LIGHT_BLUE</code> to
+	 * <code>WOOD</code>
+	 */
+	public Block(double x, double y, double side, int type) {
+		if (type < LIGHT_BLUE || type > WOOD)
+			throw new IllegalArgumentException("unknown block type " + type);
+		this.x = x;
+		this.y = y;
+		this.side = side;
+		this.type = type;
+	}
+
+	/**
+	 * Returns the x of the center
+	 * @return the <code>double</code> x in cm
+	 */
+	public double getX() {
+		return x;
+	}
+
+	/**
+	 * Returns the y of the center
+	 * @return the <code>double</code> y in cm
+	 */
+	public double getY() {
+		return y;
+	}
+
+	/**
+	 * Returns the side of the block
+	 * @return the <code>double</code> side in cm
+	 */
+	public double getSide() {
+		return side;
+	}
+
+	/**
+	 * Returns the type of the block
+	 * @return the <code>int</code> type, from <code>LIGHT_BLUE</code> to <code>WOOD</code>
+	 */
+	public int getType() {
+		return type;
+	}
+
+	/**
+	 * Returns the color of the faces of the block
+	 * @param rgb the <code>int</code> array that receives the red, green and blue values
+	 */
+	public void getColor(int [] rgb) {
+		rgb[0] = COLORS[type][0];
+		rgb[1] = COLORS[type][1];
+		rgb[2] = COLORS[type][2];
+	}
+
+	/**
+	 * Returns whether the block is held by the grabbers, in which case it cannot be seen
+	 * @return <code>true</code> if the block is carried
+	 */
+	public boolean isCarried() {
+		return carried;
+	}
+
+	// slides the block on the floor, pushed by the robot
+	void push(double x, double y) {
+		this.x = x;
+		this.y = y;
+	}
+
+	// moves the block with the robot that carries it
+	void carry(double x, double y) {
+		carried = true;
+		this.x = x;
+		this.y = y;
+	}
+
+	// puts the block back on the floor where it is
+	void drop() {
+		carried = false;
+	}
+}
@@ -0,0 +1,123 @@
+package simulator;
+
+import java.util.Random;
+
+import capture.BlockClassifier;
+import capture.BlockType;
+import capture.SequentialClassifier;
+
+/**
+ * The <code>BlockClassifierCheck</code> program compares the ratio thresholds of the default
+ * <code>BlockClassifier</code> with a nearest centroid classifier trained on readings of the same
+ * kind, on noisy readings of the blocks of the simulator.
+ *
+ * Readings are the colors of a <code>Block</code> with a gaussian noise on each component, as a
+ * <code>SimulatedRobot</code> reads them. For every level of noise the centroids are trained on
+ * one set of readings and both classifiers are scored on another, one reading at a time and with
+ * the <code>SequentialClassifier</code> that <code>FlagCapturer</code> uses, with its mean number
+ * of readings.
+ *
+ * The colors of the simulator are made up, so this only tells how the classifiers compare, not
+ * how either does on the real blocks, which needs recordings of them.
+ * <pre>
+ * java simulator.BlockClassifierCheck [readings per type] [seed] [noise ...]
+ * </pre>
+ *
+ * @see BlockClassifier
+ * @see SequentialClassifier
+ *
+ * @author Stefan Ti
+ */
+public class BlockClassifierCheck {
+	private static final double [] DEFAULT_NOISE = {5.0, 10.0, 15.0, 20.0, 25.0};
+	// those of FlagCapturer
+	private static final double CONFIDENCE = 0.95;
+	private static final int MAX_SAMPLES = 10;
+
+	public static void main(String[] args) {
+		int readings = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+		double [] noises = DEFAULT_NOISE;
+		if (args.length > 2) {
+			noises = new double [args.length - 2];
+			for (int i = 2; i < args.length; i++)
+				noises[i - 2] = Double.parseDouble(args[i]);
+		}
+
+		Random random = new Random(seed);
+		BlockType [] types = BlockClassifier.getTypes();
+		BlockClassifier ratios = BlockClassifier.getDefault();
+		System.out.println("noise   ratios  centroids   ratios, sequential  centroids, sequential");
+		for (int n = 0; n < noises.length; n++) {
+			double noise = noises[n];
+
+			int [][] training = new int [readings * types.length][];
+			BlockType [] labels = new BlockType [training.length];
+			for (int i = 0; i < training.length; i++) {
+				labels[i] = types[i % types.length];
+				training[i] = new int [3];
+				read(labels[i], noise, random, training[i]);
+			}
+			BlockClassifier centroids = BlockClassifier.train(training, labels);
+
+			SequentialClassifier ratioSequence = new SequentialClassifier(ratios);
+			SequentialClassifier centroidSequence = new SequentialClassifier(centroids);
+			int [] rgb = new int [3];
+			int ratioRight = 0, centroidRight = 0, ratioSequenceRight = 0, centroidSequenceRight = 0;
+			long ratioSamples = 0, centroidSamples = 0;
+			int total = readings * types.length;
+			for (int i = 0; i < total; i++) {
+				BlockType type = types[i % types.length];
+				read(type, noise, random, rgb);
+				if (ratios.classify(rgb) == type)
+					ratioRight++;
+				if (centroids.classify(rgb) == type)
+					centroidRight++;
+
+				if (identify(ratioSequence, type, noise, random, rgb) == type)
+					ratioSequenceRight++;
+				ratioSamples += ratioSequence.getSamples();
+				if (identify(centroidSequence, type, noise, random, rgb) == type)
+					centroidSequenceRight++;
+				centroidSamples += centroidSequence.getSamples();
+			}
+			System.out.println(pad(Math.round(noise) + "", 5) + pad(percent(ratioRight, total), 9)
+					+ pad(percent(centroidRight, total), 11)
+					+ pad(percent(ratioSequenceRight, total) + " in " + mean(ratioSamples, total), 21)
+					+ pad(percent(centroidSequenceRight, total) + " in " + mean(centroidSamples, total), 23));
+		}
+	}
+
+	// reads a block until the sequential classifier is confident enough, as FlagCapturer does
+	private static BlockType identify(SequentialClassifier sequence, BlockType type, double noise,
+			Random random, int [] rgb) {
+		sequence.reset();
+		while (true) {
+			read(type, noise, random, rgb);
+			if (sequence.add(rgb) >= CONFIDENCE || sequence.getSamples() >= MAX_SAMPLES)
+				return sequence.getType();
+		}
+	}
+
+	// a reading of a block of the simulator, with the noise of SimulatedRobot
+	private static void read(BlockType type, double noise, Random random, int [] rgb) {
+		new Block(0, 0, Block.SIDE, type.getNumber()).getColor(rgb);
+		for (int i = 0; i < 3; i++)
+			rgb[i] = (int) Math.max(0, Math.min(255, Math.round(rgb[i] + random.nextGaussian() * noise)));
+	}
+
+	private static String percent(int right, int total) {
+		return Math.round(1000.0 * right / total) / 10.0 + "%";
+	}
+
+	private static String mean(long samples, int total) {
+		return Math.round(10.0 * samples / total) / 10.0 + "";
+	}
+
+	private static String pad(String text, int width) {
+		StringBuilder padded = new StringBuilder(text);
+		while (padded.length() < width)
+			padded.insert(0, ' ');
+		return padded.toString();
+	}
+}
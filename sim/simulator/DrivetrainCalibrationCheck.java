@@ -0,0 +1,123 @@
+package simulator;
+
+import hardware.ColorInput;
+import hardware.RegulatedMotor;
+import scheduler.PeriodicTask;
+import traveling.Calibration;
+import traveling.DrivetrainCalibrator;
+import traveling.DrivetrainSolver;
+import traveling.Navigation;
+import traveling.Odometer;
+
+/**
+ * The <code>DrivetrainCalibrationCheck</code> program runs the drive of
+ * <code>maincontrol.DrivetrainCalibration</code> on a <code>SimulatedRobot</code> whose wheels
+ * and width are off the default <code>Calibration</code> by known amounts, and prints how far
+ * the geometry the <code>DrivetrainCalibrator</code> solves is from the true one.
+ *
+ * The robot starts in the middle of a tile facing along the lines, drives back and forth over
+ * three tiles with a turn and a half in place between the legs, and the motors and the line
+ * sensors are sampled every 5 ms, as on the brick. The odometer only knows the default
+ * geometry, as it does on a brick that was never calibrated.
+ * <pre>
+ * java simulator.DrivetrainCalibrationCheck [left error %] [right error %] [width error %] [speedup] [seed]
+ * </pre>
+ *
+ * @see traveling.DrivetrainCalibrator
+ *
+ * @author Stefan Ti
+ */
+public class DrivetrainCalibrationCheck implements PeriodicTask {
+	// the drive of DrivetrainCalibration
+	private static final int SAMPLE_PERIOD = 5;
+	private static final int LEG_TILES = 3, LEGS = 5;
+	private static final double SPIN = 540.0;
+	private static final int AMBIENT_SAMPLES = 20;
+
+	private DrivetrainCalibrator calibrator;
+	private ColorInput leftCS, rightCS;
+	private RegulatedMotor leftMotor, rightMotor;
+
+	private DrivetrainCalibrationCheck(DrivetrainCalibrator calibrator, ColorInput leftCS,
+			ColorInput rightCS, Odometer odometer) {
+		this.calibrator = calibrator;
+		this.leftCS = leftCS;
+		this.rightCS = rightCS;
+		this.leftMotor = odometer.getLeftMotor();
+		this.rightMotor = odometer.getRightMotor();
+	}
+
+	public void execute(long release) {
+		calibrator.sample(release, leftMotor.getTachoCount(), rightMotor.getTachoCount(),
+				leftCS.getRawLightValue(), rightCS.getRawLightValue());
+	}
+
+	public static void main(String[] args) {
+		double leftError = args.length > 0 ? Double.parseDouble(args[0]) : 1.5;
+		double rightError = args.length > 1 ? Double.parseDouble(args[1]) : -1.0;
+		double widthError = args.length > 2 ? Double.parseDouble(args[2]) : 2.0;
+		double speedup = args.length > 3 ? Double.parseDouble(args[3]) : 10;
+		long seed = args.length > 4 ? Long.parseLong(args[4]) : 1;
+
+		double leftRadius = Calibration.DEFAULT_LEFT_RADIUS * (1 + leftError / 100);
+		double rightRadius = Calibration.DEFAULT_RIGHT_RADIUS * (1 + rightError / 100);
+		double width = Calibration.DEFAULT_WIDTH * (1 + widthError / 100);
+
+		SimulatedRobot robot = new SimulatedRobot(new Arena(), new ScaledClock(speedup), seed);
+		robot.setGeometry(leftRadius, rightRadius, width);
+		double middle = Arena.TILE_LENGTH / 2;
+		robot.setPose(middle, middle, 0);
+
+		// the sensors in the order Main gives them to the odometer
+		ColorInput sensorLeft = robot.getRightLineSensor();
+		ColorInput sensorRight = robot.getLeftLineSensor();
+		sensorLeft.setFloodlight(true);
+		sensorRight.setFloodlight(true);
+		int sumLeft = 0, sumRight = 0;
+		for (int i = 0; i < AMBIENT_SAMPLES; i++) {
+			sumLeft += sensorLeft.getRawLightValue();
+			sumRight += sensorRight.getRawLightValue();
+		}
+		Calibration calibration = new Calibration();
+		calibration.setAmbient(Calibration.LEFT_SENSOR, sumLeft / AMBIENT_SAMPLES);
+		calibration.setAmbient(Calibration.RIGHT_SENSOR, sumRight / AMBIENT_SAMPLES);
+
+		Odometer odometer = new Odometer(true, calibration, robot, sensorLeft, sensorRight);
+		Navigation navigation = odometer.getNavigation();
+		DrivetrainCalibrator calibrator = new DrivetrainCalibrator(calibration,
+				calibration.getAmbient(Calibration.LEFT_SENSOR), calibration.getAmbient(Calibration.RIGHT_SENSOR));
+		DrivetrainCalibrationCheck sampler = new DrivetrainCalibrationCheck(calibrator, sensorLeft,
+				sensorRight, odometer);
+
+		odometer.setPosition(new double [] {middle, middle, 0}, new boolean [] {true, true, true});
+		odometer.startOdometryCorrection();
+		robot.getScheduler().add("sampler", sampler, SAMPLE_PERIOD);
+		for (int leg = 0; leg < LEGS; leg++) {
+			navigation.travelTo(leg % 2 == 0 ? middle + LEG_TILES * Arena.TILE_LENGTH : middle, middle, false);
+			if (leg < LEGS - 1)
+				navigation.turn(leg % 2 == 0 ? SPIN : -SPIN);
+		}
+		navigation.stopMotors();
+		robot.getScheduler().remove(sampler);
+		robot.shutdown();
+
+		DrivetrainSolver solver = calibrator.getSolver();
+		System.out.println("distances    : " + solver.getDistanceCount());
+		System.out.println("rotations    : " + solver.getRotationCount());
+		if (!solver.solve()) {
+			System.out.println("no solution");
+			System.exit(1);
+		}
+		System.out.println("left radius  : " + solver.getLeftRadius() + ", true " + leftRadius
+				+ ", off by " + percent(solver.getLeftRadius(), leftRadius) + "%");
+		System.out.println("right radius : " + solver.getRightRadius() + ", true " + rightRadius
+				+ ", off by " + percent(solver.getRightRadius(), rightRadius) + "%");
+		System.out.println("width        : " + solver.getWidth() + ", true " + width
+				+ ", off by " + percent(solver.getWidth(), width) + "%");
+		System.exit(0);
+	}
+
+	private static double percent(double solved, double truth) {
+		return Math.round((solved - truth) / truth * 10000) / 100.0;
+	}
+}
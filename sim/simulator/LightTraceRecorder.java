@@ -0,0 +1,114 @@
+package simulator;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import hardware.Clock;
+import hardware.ColorInput;
+
+/**
+ * The <code>LightTraceRecorder</code> program drives a <code>SimulatedRobot</code> straight
+ * across the grid lines and writes what its left line sensor reads, at the period the
+ * <code>OdometryCorrection</code> reads it, as a trace for
+ * <code>maincontrol.LineDetectorReplay</code>.
+ *
+ * Every sample is a line with its time in ms and its raw light value. The simulator knows where
+ * the light spot is, so the times at which it was over the middle of a line are written too,
+ * as <code># line</code> comments, for the replay to check its crossings against.
+ *
+ * The simulated time is stepped by the program itself, so the trace is the same on every run
+ * for the same arguments: the file, the speed of the wheels in degrees per second, 250 by
+ * default as in <code>travelTo</code>, the seed of the noise, the number of lines, 4 by default,
+ * and how much darker in percent every tile reads than the one before it, 0 by default. The
+ * floor then gets darker step by step along the trace, halfway between two lines, as it does
+ * from one board of the arena to the next, which checks that the baseline of the detection
+ * follows it.
+ *
+ * @author Stefan Ti
+ */
+public class LightTraceRecorder {
+	private static final int SAMPLE_PERIOD = 4;
+	// the robot starts in the first tile and drives over this many lines
+	private static final double START_X = 15.0, START_Y = 15.0;
+	private static final int DEFAULT_LINES = 4;
+	// and goes on past the last one by this much, for the sensor to come off it
+	private static final double RUN_OUT = 5.0;
+
+	public static void main(String[] args) throws IOException {
+		String file = args.length > 0 ? args[0] : "light-trace.txt";
+		int speed = args.length > 1 ? Integer.parseInt(args[1]) : 250;
+		long seed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+		int lines = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_LINES;
+		// the robot would run into the wall past the last line of the arena
+		lines = Math.min(lines, Arena.TILES - 2 - (int) (START_X / Arena.TILE_LENGTH));
+		double darkening = args.length > 4 ? Double.parseDouble(args[4]) / 100 : 0;
+
+		SteppedClock clock = new SteppedClock();
+		SimulatedRobot robot = new SimulatedRobot(new Arena(), clock, seed);
+		robot.setPose(START_X, START_Y, 0);
+		ColorInput sensor = robot.getLeftLineSensor();
+		sensor.setFloodlight(true);
+
+		// the wheel radii are negative, so the wheels turn backward to drive along the heading
+		robot.getLeftWheel().setSpeed(speed);
+		robot.getRightWheel().setSpeed(speed);
+		robot.getLeftWheel().backward();
+		robot.getRightWheel().backward();
+
+		PrintWriter out = new PrintWriter(new FileWriter(file));
+		try {
+			out.println("# left line sensor, wheels at " + speed + " deg/s, seed " + seed + ", "
+					+ lines + " lines, " + darkening * 100 + "% darker every tile");
+			out.println("# <time in ms> <raw light value>, and # line <time> at the middle of a line");
+			double [] spot = new double [2];
+			robot.getLineSpot(true, spot);
+			double lastX = spot[0];
+			// the tile the spot starts in, whose floor reads as the simulator's
+			int firstTile = (int) Math.floor(spot[0] / Arena.TILE_LENGTH + 0.5);
+			long lastTime = clock.currentTimeMillis();
+			int crossed = 0;
+			double end = Double.MAX_VALUE;
+			while (spot[0] < end) {
+				clock.advance(SAMPLE_PERIOD);
+				long time = clock.currentTimeMillis();
+				robot.getLineSpot(true, spot);
+				int tile = (int) Math.floor(spot[0] / Arena.TILE_LENGTH + 0.5) - firstTile;
+				int value = (int) Math.round(sensor.getRawLightValue() * Math.max(0, 1 - darkening * tile));
+
+				// the middle of a line, between this sample and the last one
+				double line = Math.ceil(lastX / Arena.TILE_LENGTH) * Arena.TILE_LENGTH;
+				if (lastX < line && spot[0] >= line) {
+					long middle = lastTime + Math.round((time - lastTime) * (line - lastX) / (spot[0] - lastX));
+					out.println("# line " + middle);
+					if (++crossed == lines)
+						end = line + RUN_OUT;
+				}
+				out.println(time + " " + value);
+				lastX = spot[0];
+				lastTime = time;
+			}
+		} finally {
+			out.close();
+			robot.shutdown();
+		}
+	}
+
+	// a clock that only moves when the recorder steps it
+	private static class SteppedClock extends Clock {
+		private volatile long time;
+
+		public long currentTimeMillis() {
+			return time;
+		}
+
+		public void sleep(long duration) throws InterruptedException {
+			if (duration > 0)
+				Thread.sleep(duration);
+		}
+
+		void advance(long duration) {
+			time += duration;
+		}
+	}
+}
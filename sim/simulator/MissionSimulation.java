@@ -0,0 +1,364 @@
+package simulator;
+
+import java.util.Random;
+
+import capture.FlagCapturer;
+import hardware.ColorInput;
+import localize.Localizer;
+import traveling.Calibration;
+import traveling.Navigation;
+import traveling.Odometer;
+
+/**
+ * The <code>MissionSimulation</code> class runs the code of the robot through a whole mission
+ * on a <code>SimulatedRobot</code>, faster than real time, in the order <code>Main</code> runs
+ * it: localization in the starting corner, then the capture of the flag.
+ *
+ * The mission runs in its own thread. When it does not end before the timeout, the robot is
+ * shut down, which ends the threads of the robot code the next time they use a motor or a
+ * sensor. A thread spinning on the odometer alone never does, so it is stopped by force.
+ *
+ * Run from the command line, the class simulates the standard <code>Scenario</code> and prints
+ * what happened:
+ * <pre>
+ * java simulator.MissionSimulation [speedup] [seed] [timeout in s]
+ * </pre>
+ *
+ * @see SimulatedRobot
+ * @see Scenario
+ *
+ * @author Stefan Ti
+ */
+public class MissionSimulation {
+	// the readings averaged for the light of the floor, see calibrate
+	private static final int AMBIENT_SAMPLES = 20;
+	// how long the threads of a timed out mission get to end by themselves, in real ms
+	private static final long GRACE = 500;
+	/**
+	 * The phases of the mission, as given to the <code>PhaseListener</code>.
+	 */
+	public static final String LOCALIZATION = "localization", CAPTURE = "capture";
+
+	static {
+		// the tasks of a robot that is shut down end on a Stopped error, which is not worth a trace
+		final Thread.UncaughtExceptionHandler handler = Thread.getDefaultUncaughtExceptionHandler();
+		Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+			public void uncaughtException(Thread thread, Throwable e) {
+				if (e instanceof SimulatedRobot.Stopped || e instanceof ThreadDeath)
+					return;
+				if (handler != null)
+					handler.uncaughtException(thread, e);
+				else
+					thread.getThreadGroup().uncaughtException(thread, e);
+			}
+		});
+	}
+
+	private Scenario scenario;
+	private ParameterSet parameters;
+	private PhaseListener listener;
+	private Arena arena;
+	private ScaledClock clock;
+	private SimulatedRobot robot;
+
+	private volatile boolean localized, finished;
+	private volatile long localizedTime, finishedTime;
+	private volatile Throwable failure;
+	private double [] localizedPose = new double [3];
+	private double [] odometerPose = new double [3];
+	private double [] finalPose = new double [3];
+
+	/**
+	 * The constructor takes in the scenario and sets up the arena and the robot, which still
+	 * has to be configured with <code>getRobot</code> before <code>run</code>.
+	 *
+	 * @param scenario the <code>Scenario</code> of the mission
+	 * @param seed the <code>long</code> seed of the noise of the robot
+	 * @param speedup the <code>double</code> ratio of the simulated time to the real time
+	 */
+	public MissionSimulation(Scenario scenario, long seed, double speedup) {
+		this.scenario = scenario;
+		arena = scenario.createArena();
+		clock = new ScaledClock(speedup);
+		robot = new SimulatedRobot(arena, clock, seed);
+		scenario.place(robot);
+	}
+
+	/**
+	 * Sets the tuned values of the robot code for the mission, and the imperfections of the
+	 * robot drawn around the levels of the set.
+	 *
+	 * @param parameters the <code>ParameterSet</code> of the mission
+	 * @param random the <code>Random</code> the imperfections are drawn from
+	 */
+	public void setParameters(ParameterSet parameters, Random random) {
+		this.parameters = parameters;
+		parameters.apply(robot, random);
+	}
+
+	/**
+	 * Sets the listener told when the mission moves from one phase to the next.
+	 *
+	 * @param listener the <code>PhaseListener</code>, or <code>null</code> for none
+	 */
+	public void setPhaseListener(PhaseListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Returns the scenario of the mission
+	 * @return the <code>Scenario</code>
+	 */
+	public Scenario getScenario() {
+		return scenario;
+	}
+
+	/**
+	 * Returns the simulated robot, to change its geometry or noise before the mission
+	 * @return the <code>SimulatedRobot</code>
+	 */
+	public SimulatedRobot getRobot() {
+		return robot;
+	}
+
+	/**
+	 * Runs the mission until it ends or the timeout passes, then shuts the robot down.
+	 *
+	 * @param timeout the <code>long</code> simulated time the mission is given, in ms
+	 * @return <code>true</code> if the mission ended in time, without an error
+	 */
+	@SuppressWarnings("deprecation")
+	public boolean run(long timeout) {
+		Thread mission = new Thread(new Runnable() {
+			public void run() {
+				try {
+					mission();
+				} catch (SimulatedRobot.Stopped e) {
+					// the mission timed out
+				} catch (ThreadDeath e) {
+					// the mission timed out while spinning
+				} catch (Throwable e) {
+					failure = e;
+				}
+			}
+		}, "mission");
+		mission.setDaemon(true);
+		mission.start();
+
+		long start = System.currentTimeMillis();
+		long realTimeout = (long) Math.ceil(timeout / clock.getSpeedup());
+		try {
+			mission.join(realTimeout);
+		} catch (InterruptedException e) {
+			// the mission is stopped below
+		}
+		if (!finished)
+			finishedTime = clock.currentTimeMillis();
+		robot.shutdown();
+		robot.getPose(finalPose);
+
+		long left = GRACE - Math.max(0, System.currentTimeMillis() - start - realTimeout);
+		try {
+			mission.join(Math.max(1, left));
+		} catch (InterruptedException e) {
+			// the mission is stopped below
+		}
+		if (mission.isAlive())
+			mission.stop();
+		return finished && failure == null;
+	}
+
+	// the mission of Main, without the Bluetooth transmission and the display
+	private void mission() {
+		Calibration calibration = calibrate();
+		Odometer odometer = new Odometer(true, calibration, robot, robot.getRightLineSensor(),
+				robot.getLeftLineSensor());
+		robot.getLeftRange().continuous();
+		robot.getRightRange().continuous();
+		FlagCapturer flagCapturer = new FlagCapturer(robot.getBlockSensor(), robot.getRightRange(),
+				robot.getLeftRange(), odometer, robot.getRightGrabber(), robot.getLeftGrabber());
+		if (parameters != null) {
+			Navigation navigation = odometer.getNavigation();
+			navigation.setAngleTolerance(parameters.getAngleTolerance());
+			navigation.setTurnSpeed(parameters.getTurnSpeed());
+			navigation.setTravelSpeed(parameters.getTravelSpeed());
+			flagCapturer.setScanStep(parameters.getScanStep());
+			flagCapturer.setInterval(parameters.getInterval());
+		}
+
+		Localizer localizer = new Localizer(robot.getLeftRange(), robot.getRightRange(), odometer,
+				robot.getLeftLineSensor(), robot.getRightLineSensor());
+		phase(LOCALIZATION);
+		localizer.localize();
+		odometer.getPosition(odometerPose);
+		robot.getPose(localizedPose);
+		localizedTime = clock.currentTimeMillis();
+		localized = true;
+
+		odometer.setPosition(new double [] {0.0, 0.0, 0.0}, new boolean [] {true, true, true});
+		odometer.setAng(0);
+		odometer.startOdometryCorrection();
+
+		phase(CAPTURE);
+		flagCapturer.captureFlag(scenario.getFlagLower().clone(), scenario.getFlagUpper().clone(),
+				scenario.getDropOff().clone(), scenario.getAvoid().clone(), scenario.getColor());
+		phase(null);
+		finishedTime = clock.currentTimeMillis();
+		finished = true;
+	}
+
+	private void phase(String phase) {
+		if (listener != null)
+			listener.phaseStarted(phase);
+	}
+
+	/*
+	 * Returns the default calibration with the light of the floor under both line sensors, as
+	 * the localization measures it the first time, so that it is not measured again and the
+	 * calibration file is never written. The odometer gets the right sensor as its left one.
+	 */
+	private Calibration calibrate() {
+		ColorInput left = robot.getRightLineSensor(), right = robot.getLeftLineSensor();
+		left.setFloodlight(true);
+		right.setFloodlight(true);
+		int sumLeft = 0, sumRight = 0;
+		for (int i = 0; i < AMBIENT_SAMPLES; i++) {
+			sumLeft += left.getRawLightValue();
+			sumRight += right.getRawLightValue();
+		}
+		Calibration calibration = new Calibration();
+		calibration.setAmbient(Calibration.LEFT_SENSOR, sumLeft / AMBIENT_SAMPLES);
+		calibration.setAmbient(Calibration.RIGHT_SENSOR, sumRight / AMBIENT_SAMPLES);
+		return calibration;
+	}
+
+	/**
+	 * Returns whether the robot localized before the timeout
+	 * @return <code>true</code> if the localization ended
+	 */
+	public boolean isLocalized() {
+		return localized;
+	}
+
+	/**
+	 * Returns how long the localization took
+	 * @return the <code>long</code> simulated time in ms
+	 */
+	public long getLocalizedTime() {
+		return localizedTime;
+	}
+
+	/**
+	 * Returns the distance between where the robot was at the end of the localization and the
+	 * origin, where it believed it was.
+	 * @return the <code>double</code> error in cm
+	 */
+	public double getLocalizationError() {
+		double dx = localizedPose[0] - odometerPose[0], dy = localizedPose[1] - odometerPose[1];
+		return Math.sqrt(dx * dx + dy * dy);
+	}
+
+	/**
+	 * Returns the difference between the true heading at the end of the localization and the
+	 * one the odometer had.
+	 * @return the <code>double</code> error in degrees, between -180 and 180
+	 */
+	public double getHeadingError() {
+		double error = (localizedPose[2] - odometerPose[2]) % 360.0;
+		if (error > 180.0)
+			error -= 360.0;
+		else if (error < -180.0)
+			error += 360.0;
+		return error;
+	}
+
+	/**
+	 * Returns whether the whole mission ended before the timeout
+	 * @return <code>true</code> if <code>captureFlag</code> returned
+	 */
+	public boolean isFinished() {
+		return finished;
+	}
+
+	/**
+	 * Returns how long the mission took, or the time it was stopped at
+	 * @return the <code>long</code> simulated time in ms
+	 */
+	public long getMissionTime() {
+		return finishedTime;
+	}
+
+	/**
+	 * Returns whether the flag ended up in the drop off tile
+	 * @return <code>true</code> if the flag was captured
+	 */
+	public boolean isCaptured() {
+		return scenario.isCaptured(arena);
+	}
+
+	/**
+	 * Returns the error the robot code ended with
+	 * @return the <code>Throwable</code> thrown by the mission, <code>null</code> if there was none
+	 */
+	public Throwable getFailure() {
+		return failure;
+	}
+
+	/**
+	 * Copies the true pose of the robot when the mission ended or was stopped.
+	 * @param pose the <code>double</code> array that receives the x, y and heading
+	 */
+	public void getFinalPose(double [] pose) {
+		pose[0] = finalPose[0];
+		pose[1] = finalPose[1];
+		pose[2] = finalPose[2];
+	}
+
+	/**
+	 * Simulates the standard scenario once and prints the outcome.
+	 *
+	 * @param args the speedup, the seed and the timeout in simulated seconds, all optional
+	 */
+	public static void main(String [] args) {
+		double speedup = args.length > 0 ? Double.parseDouble(args[0]) : 10.0;
+		long seed = args.length > 1 ? Long.parseLong(args[1]) : 1L;
+		long timeout = args.length > 2 ? Long.parseLong(args[2]) * 1000 : 600000;
+
+		MissionSimulation simulation = new MissionSimulation(Scenario.standard(), seed, speedup);
+		long start = System.currentTimeMillis();
+		simulation.run(timeout);
+		long real = System.currentTimeMillis() - start;
+
+		double [] pose = new double [3];
+		simulation.getFinalPose(pose);
+		if (simulation.isLocalized()) {
+			System.out.println("localized in " + simulation.getLocalizedTime() / 1000.0 + " s, off by "
+					+ Math.round(simulation.getLocalizationError() * 10) / 10.0 + " cm and "
+					+ Math.round(simulation.getHeadingError() * 10) / 10.0 + " deg");
+		} else {
+			System.out.println("not localized");
+		}
+		System.out.println((simulation.isFinished() ? "finished in " : "stopped after ")
+				+ simulation.getMissionTime() / 1000.0 + " s at (" + Math.round(pose[0]) + ", "
+				+ Math.round(pose[1]) + ", " + Math.round(pose[2]) + ")");
+		System.out.println("flag " + (simulation.isCaptured() ? "captured" : "not captured"));
+		if (simulation.getFailure() != null)
+			simulation.getFailure().printStackTrace(System.out);
+		System.out.println("speedup " + Math.round(simulation.getMissionTime() / (double) Math.max(1, real) * 10) / 10.0);
+		System.exit(0);
+	}
+
+	/**
+	 * A <code>PhaseListener</code> is told, on the thread of the mission, when the mission
+	 * starts the localization, when it starts the capture of the flag and when it ends.
+	 */
+	public interface PhaseListener {
+		/**
+		 * Called as a phase of the mission starts.
+		 *
+		 * @param phase the <code>String</code> phase, <code>LOCALIZATION</code> or
+		 * <code>CAPTURE</code>, or <code>null</code> when the mission ends
+		 */
+		public void phaseStarted(String phase);
+	}
+}
@@ -0,0 +1,284 @@
+package simulator;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import bluetooth.StartCorner;
+
+/**
+ * The <code>MonteCarlo</code> class runs many random simulated missions under several
+ * <code>ParameterSet</code>s and reports, for each set, how often the robot localized and
+ * captured the flag and how long the missions took, so that the tuned values of the robot code
+ * can be chosen from data rather than by trial on the arena.
+ *
+ * Every set runs the same missions: mission <code>i</code> has the same <code>Scenario</code>
+ * and the same random draws under every set, so the differences between the sets come from
+ * the sets and not from the luck of the draw. The missions are spread over the cores with a
+ * fork/join pool; each one blocks a worker of the pool while the threads of its robot code run,
+ * so the pool gets one worker per core that can run a robot at the chosen speedup.
+ *
+ * Run from the command line, the class compares the defaults with a few variations of them:
+ * <pre>
+ * java simulator.MonteCarlo [missions] [threads] [speedup] [timeout in s] [seed]
+ * </pre>
+ *
+ * @see MissionSimulation
+ * @see ScenarioGenerator
+ *
+ * @author Stefan Ti
+ */
+public class MonteCarlo {
+	// the width of a bar of the histograms of the mission time, in s
+	private static final int HISTOGRAM_BIN = 30;
+	private static final int HISTOGRAM_WIDTH = 40;
+
+	private ParameterSet [] sets;
+	private int missions;
+	private long seed;
+	private double speedup;
+	private long timeout;
+	private Outcome [][] outcomes;
+	private AtomicInteger done = new AtomicInteger();
+	private PrintStream progress;
+
+	/**
+	 * The constructor takes in the sets to compare and how every mission runs.
+	 *
+	 * @param sets the <code>ParameterSet</code> array to compare
+	 * @param missions the <code>int</code> number of missions per set
+	 * @param seed the <code>long</code> seed the missions are drawn from
+	 * @param speedup the <code>double</code> ratio of the simulated time to the real time
+	 * @param timeout the <code>long</code> simulated time a mission is given, in ms
+	 */
+	public MonteCarlo(ParameterSet [] sets, int missions, long seed, double speedup, long timeout) {
+		this.sets = sets;
+		this.missions = missions;
+		this.seed = seed;
+		this.speedup = speedup;
+		this.timeout = timeout;
+		outcomes = new Outcome [sets.length][missions];
+	}
+
+	/**
+	 * Prints how many missions are done as they end.
+	 * @param progress the <code>PrintStream</code> to print to, <code>null</code> for none
+	 */
+	public void setProgress(PrintStream progress) {
+		this.progress = progress;
+	}
+
+	/**
+	 * Runs every mission of every set and waits for them.
+	 * @param threads the <code>int</code> number of missions run at once
+	 */
+	public void run(int threads) {
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			pool.invoke(new Batch(0, sets.length * missions));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	// the missions of a range of indexes, split in halves down to single missions
+	private class Batch extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int low, high;
+
+		Batch(int low, int high) {
+			this.low = low;
+			this.high = high;
+		}
+
+		protected void compute() {
+			if (high - low == 1) {
+				simulate(low);
+				return;
+			}
+			int middle = (low + high) >>> 1;
+			invokeAll(new Batch(low, middle), new Batch(middle, high));
+		}
+	}
+
+	// the sets alternate, so that all of them progress together
+	private void simulate(int index) {
+		int set = index % sets.length, mission = index / sets.length;
+		Random random = new Random(missionSeed(seed, mission));
+		Scenario scenario = ScenarioGenerator.generate(random);
+		MissionSimulation simulation = new MissionSimulation(scenario, random.nextLong(), speedup);
+		simulation.setParameters(sets[set], random);
+		simulation.run(timeout);
+		outcomes[set][mission] = new Outcome(simulation);
+
+		int count = done.incrementAndGet();
+		if (progress != null)
+			progress.println(count + "/" + sets.length * missions + " " + sets[set] + " #" + mission
+					+ " " + outcomes[set][mission]);
+	}
+
+	/**
+	 * Prints, for each set, the rates of localization, completion and capture, the
+	 * distribution of the time of the captured missions, the capture rate from each corner and
+	 * the distribution of the localization error.
+	 *
+	 * @param out the <code>PrintStream</code> to print to
+	 */
+	public void report(PrintStream out) {
+		for (int s = 0; s < sets.length; s++) {
+			Outcome [] runs = outcomes[s];
+			int count = 0, localized = 0, finished = 0, captured = 0, failed = 0;
+			double [] times = new double [runs.length], errors = new double [runs.length];
+			int [] cornerRuns = new int [5], cornerCaptures = new int [5];
+			for (int i = 0; i < runs.length; i++) {
+				Outcome outcome = runs[i];
+				if (outcome == null)
+					continue;
+				count++;
+				cornerRuns[outcome.corner]++;
+				if (outcome.failed)
+					failed++;
+				if (outcome.localized)
+					errors[localized++] = outcome.localizationError;
+				if (outcome.finished)
+					finished++;
+				if (outcome.captured) {
+					times[captured++] = outcome.time / 1000.0;
+					cornerCaptures[outcome.corner]++;
+				}
+			}
+			times = Arrays.copyOf(times, captured);
+			errors = Arrays.copyOf(errors, localized);
+			Arrays.sort(times);
+			Arrays.sort(errors);
+
+			out.println(sets[s] + ": " + count + " missions, localized " + percent(localized, count)
+					+ ", finished " + percent(finished, count) + ", captured " + percent(captured, count)
+					+ (failed > 0 ? ", " + failed + " failed with an error" : ""));
+			if (captured > 0) {
+				out.println("  capture time (s): p10 " + round(percentile(times, 0.1)) + "  p50 "
+						+ round(percentile(times, 0.5)) + "  p90 " + round(percentile(times, 0.9))
+						+ "  max " + round(times[captured - 1]));
+				histogram(out, times);
+			}
+			if (localized > 0) {
+				out.println("  localization error (cm): p50 " + round(percentile(errors, 0.5))
+						+ "  p90 " + round(percentile(errors, 0.9)) + "  max " + round(errors[localized - 1]));
+			}
+			StringBuilder corners = new StringBuilder("  captured by corner:");
+			for (int c = 1; c <= 4; c++) {
+				corners.append(' ').append(StartCorner.lookupCorner(c)).append(' ')
+						.append(percent(cornerCaptures[c], cornerRuns[c]));
+			}
+			out.println(corners);
+		}
+	}
+
+	private static void histogram(PrintStream out, double [] times) {
+		int bins = (int) (times[times.length - 1] / HISTOGRAM_BIN) + 1;
+		int [] counts = new int [bins];
+		int highest = 0;
+		for (int i = 0; i < times.length; i++) {
+			int bin = (int) (times[i] / HISTOGRAM_BIN);
+			highest = Math.max(highest, ++counts[bin]);
+		}
+		for (int bin = (int) (times[0] / HISTOGRAM_BIN); bin < bins; bin++) {
+			StringBuilder line = new StringBuilder("  ");
+			line.append(pad(bin * HISTOGRAM_BIN)).append('-').append(pad((bin + 1) * HISTOGRAM_BIN)).append(' ');
+			int length = (counts[bin] * HISTOGRAM_WIDTH + highest - 1) / highest;
+			for (int i = 0; i < length; i++)
+				line.append('#');
+			out.println(line.append(' ').append(counts[bin]));
+		}
+	}
+
+	private static String pad(int value) {
+		String text = Integer.toString(value);
+		while (text.length() < 4)
+			text = " " + text;
+		return text;
+	}
+
+	/*
+	 * The seed of a mission. The first draws of a Random hardly differ between seeds that are
+	 * close, which made every mission start from the same corner, so the bits of the seed and
+	 * of the mission are mixed first, with the finalizer of SplitMix64.
+	 */
+	private static long missionSeed(long seed, int mission) {
+		long mixed = seed * 1000003L + mission;
+		mixed = (mixed ^ (mixed >>> 30)) * 0xbf58476d1ce4e5b9L;
+		mixed = (mixed ^ (mixed >>> 27)) * 0x94d049bb133111ebL;
+		return mixed ^ (mixed >>> 31);
+	}
+
+	// the nearest rank percentile of sorted values
+	private static double percentile(double [] sorted, double fraction) {
+		int rank = (int) Math.ceil(fraction * sorted.length);
+		return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+	}
+
+	private static String percent(int part, int whole) {
+		return whole == 0 ? "-" : round(100.0 * part / whole) + "%";
+	}
+
+	private static double round(double value) {
+		return Math.round(value * 10) / 10.0;
+	}
+
+	// what is kept of a mission once it ran
+	private static class Outcome {
+		final int corner;
+		final boolean localized, finished, captured, failed;
+		final double localizationError;
+		final long time;
+
+		Outcome(MissionSimulation simulation) {
+			corner = simulation.getScenario().getCorner().getId();
+			localized = simulation.isLocalized();
+			localizationError = localized ? simulation.getLocalizationError() : 0.0;
+			finished = simulation.isFinished();
+			captured = simulation.isCaptured();
+			failed = simulation.getFailure() != null;
+			time = simulation.getMissionTime();
+		}
+
+		public String toString() {
+			return StartCorner.lookupCorner(corner) + (captured ? " captured" : finished ? " finished" : localized ? " localized" : " lost")
+					+ " in " + round(time / 1000.0) + " s";
+		}
+	}
+
+	/**
+	 * Compares the defaults of the robot code with a few variations of them on random
+	 * missions, and prints the report.
+	 *
+	 * @param args the number of missions per set, of missions at once, the speedup, the
+	 * timeout in simulated seconds and the seed, all optional
+	 */
+	public static void main(String [] args) {
+		int missions = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		double speedup = args.length > 2 ? Double.parseDouble(args[2]) : 10.0;
+		long timeout = args.length > 3 ? Long.parseLong(args[3]) * 1000 : 600000;
+		long seed = args.length > 4 ? Long.parseLong(args[4]) : 1L;
+
+		ParameterSet [] sets = {
+			new ParameterSet("default"),
+			new ParameterSet("tight turns").setNavigation(2.0, 100, 250),
+			new ParameterSet("fast travel").setNavigation(5.0, 150, 350),
+			new ParameterSet("fine scan").setSearch(4, 15),
+			new ParameterSet("noisy sensors").setNoise(8.0, 2.0, 10.0, 0.01, 0.03),
+		};
+		MonteCarlo monteCarlo = new MonteCarlo(sets, missions, seed, speedup, timeout);
+		monteCarlo.setProgress(System.err);
+		long start = System.currentTimeMillis();
+		monteCarlo.run(threads);
+		System.out.println(sets.length * missions + " missions in "
+				+ round((System.currentTimeMillis() - start) / 1000.0) + " s");
+		monteCarlo.report(System.out);
+		System.exit(0);
+	}
+}
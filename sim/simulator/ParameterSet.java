@@ -0,0 +1,172 @@
+package simulator;
+
+import java.util.Random;
+
+import traveling.Calibration;
+
+/**
+ * The <code>ParameterSet</code> class is one setting of the tuned values of the robot code and
+ * of the imperfections of the simulated robot, which a <code>MonteCarlo</code> run compares
+ * with others over the same missions.
+ *
+ * The tuned values are the ones <code>Navigation</code> and <code>FlagCapturer</code> let be
+ * set. The imperfections are the typical levels of the noise of the <code>SimulatedRobot</code>;
+ * every mission draws its own levels around them, between half and one and a half times, and a
+ * geometry that differs from the calibrated one by up to the given errors.
+ *
+ * @see MonteCarlo
+ *
+ * @author Stefan Ti
+ */
+public class ParameterSet {
+	private String name;
+	private double angleTolerance = 5.0;
+	private int turnSpeed = 150, travelSpeed = 250;
+	private int scanStep = 7, interval = 15;
+	private double distanceSlip = 0.02, headingSlip = 0.1;
+	private double lightNoise = 4.0, rangeNoise = 1.0, colorNoise = 5.0;
+	private double dropoutRate = 0.002, crosstalkRate = 0.01;
+	private double radiusError = 0.01, widthError = 0.2;
+
+	/**
+	 * The constructor takes in the name the set is reported under. The set starts with the
+	 * defaults of the robot code and of the <code>SimulatedRobot</code>.
+	 *
+	 * @param name the <code>String</code> name of the set
+	 */
+	public ParameterSet(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Returns the name of the set
+	 * @return the <code>String</code> name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Sets the tolerances and speeds of <code>Navigation</code>.
+	 *
+	 * @param angleTolerance the <code>double</code> tolerance of the turns in degrees
+	 * @param turnSpeed the <code>int</code> speed of the wheels when turning
+	 * @param travelSpeed the <code>int</code> speed of the wheels in <code>travelTo</code>
+	 * @return this <code>ParameterSet</code>
+	 */
+	public ParameterSet setNavigation(double angleTolerance, int turnSpeed, int travelSpeed) {
+		this.angleTolerance = angleTolerance;
+		this.turnSpeed = turnSpeed;
+		this.travelSpeed = travelSpeed;
+		return this;
+	}
+
+	/**
+	 * Sets the search of <code>FlagCapturer</code>.
+	 *
+	 * @param scanStep the <code>int</code> step of the scan for blocks in degrees
+	 * @param interval the <code>int</code> half of the detour around an obstacle in cm
+	 * @return this <code>ParameterSet</code>
+	 */
+	public ParameterSet setSearch(int scanStep, int interval) {
+		this.scanStep = scanStep;
+		this.interval = interval;
+		return this;
+	}
+
+	/**
+	 * Sets the typical slip of the wheels, see <code>SimulatedRobot.setSlip</code>.
+	 *
+	 * @param distanceSlip the <code>double</code> error of the distance
+	 * @param headingSlip the <code>double</code> error of the heading
+	 * @return this <code>ParameterSet</code>
+	 */
+	public ParameterSet setSlip(double distanceSlip, double headingSlip) {
+		this.distanceSlip = distanceSlip;
+		this.headingSlip = headingSlip;
+		return this;
+	}
+
+	/**
+	 * Sets the typical noise of the sensors, see <code>SimulatedRobot.setNoise</code>.
+	 *
+	 * @param lightNoise the <code>double</code> deviation of the raw light values
+	 * @param rangeNoise the <code>double</code> deviation of the distances in cm
+	 * @param colorNoise the <code>double</code> deviation of the color components
+	 * @param dropoutRate the <code>double</code> probability of a missing echo
+	 * @param crosstalkRate the <code>double</code> probability of crosstalk
+	 * @return this <code>ParameterSet</code>
+	 */
+	public ParameterSet setNoise(double lightNoise, double rangeNoise, double colorNoise,
+			double dropoutRate, double crosstalkRate) {
+		this.lightNoise = lightNoise;
+		this.rangeNoise = rangeNoise;
+		this.colorNoise = colorNoise;
+		this.dropoutRate = dropoutRate;
+		this.crosstalkRate = crosstalkRate;
+		return this;
+	}
+
+	/**
+	 * Sets how far the true geometry of the robot may be from its calibration.
+	 *
+	 * @param radiusError the <code>double</code> largest relative error of each wheel radius
+	 * @param widthError the <code>double</code> largest error of the width in cm
+	 * @return this <code>ParameterSet</code>
+	 */
+	public ParameterSet setGeometryError(double radiusError, double widthError) {
+		this.radiusError = radiusError;
+		this.widthError = widthError;
+		return this;
+	}
+
+	public double getAngleTolerance() {
+		return angleTolerance;
+	}
+
+	public int getTurnSpeed() {
+		return turnSpeed;
+	}
+
+	public int getTravelSpeed() {
+		return travelSpeed;
+	}
+
+	public int getScanStep() {
+		return scanStep;
+	}
+
+	public int getInterval() {
+		return interval;
+	}
+
+	/**
+	 * Sets the noise, slip and geometry of a robot for one mission, drawn around the levels of
+	 * the set.
+	 *
+	 * @param robot the <code>SimulatedRobot</code> of the mission
+	 * @param random the <code>Random</code> of the mission
+	 */
+	public void apply(SimulatedRobot robot, Random random) {
+		robot.setSlip(distanceSlip * scale(random), headingSlip * scale(random));
+		robot.setNoise(lightNoise * scale(random), rangeNoise * scale(random), colorNoise * scale(random),
+				dropoutRate * scale(random), crosstalkRate * scale(random));
+		robot.setGeometry(Calibration.DEFAULT_LEFT_RADIUS * (1 + radiusError * spread(random)),
+				Calibration.DEFAULT_RIGHT_RADIUS * (1 + radiusError * spread(random)),
+				Calibration.DEFAULT_WIDTH + widthError * spread(random));
+	}
+
+	// between half and one and a half
+	private static double scale(Random random) {
+		return 0.5 + random.nextDouble();
+	}
+
+	// between -1 and 1
+	private static double spread(Random random) {
+		return 2 * random.nextDouble() - 1;
+	}
+
+	public String toString() {
+		return name;
+	}
+}
@@ -0,0 +1,50 @@
+package simulator;
+
+import hardware.Clock;
+
+/**
+ * The <code>ScaledClock</code> runs a given number of times faster than real time, so that a
+ * simulated robot drives a mission in a fraction of the time the real one takes. Its time
+ * starts at 0 when it is created.
+ *
+ * The threads of the robot keep running on the host, they only sleep for a fraction of the
+ * time they ask for. The speedup is bounded by how finely the host can sleep and by the
+ * number of cores, as the robot code still has loops that never sleep.
+ *
+ * @author Stefan Ti
+ */
+public class ScaledClock extends Clock {
+	private final long origin;
+	private final double speedup;
+
+	/**
+	 * The constructor takes in how much faster than real time the clock runs.
+	 *
+	 * @param speedup the <code>double</code> ratio of the simulated time to the real time
+	 */
+	public ScaledClock(double speedup) {
+		if (speedup <= 0)
+			throw new IllegalArgumentException("speedup must be positive");
+		this.speedup = speedup;
+		origin = System.nanoTime();
+	}
+
+	public long currentTimeMillis() {
+		return (long) ((System.nanoTime() - origin) * speedup / 1e6);
+	}
+
+	public void sleep(long duration) throws InterruptedException {
+		if (duration <= 0)
+			return;
+		long nanos = (long) (duration * 1e6 / speedup);
+		Thread.sleep(nanos / 1000000, (int) (nanos % 1000000));
+	}
+
+	/**
+	 * Returns how much faster than real time the clock runs
+	 * @return the <code>double</code> speedup
+	 */
+	public double getSpeedup() {
+		return speedup;
+	}
+}
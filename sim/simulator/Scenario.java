@@ -0,0 +1,188 @@
+package simulator;
+
+import bluetooth.StartCorner;
+
+/**
+ * The <code>Scenario</code> class is one setting of a mission: the zones the robot is given,
+ * the color of its flag, where the blocks are, and where the robot is put down in its starting
+ * corner.
+ *
+ * Zones are in tiles and blocks in cm, both in the coordinates of the <code>Arena</code>, which
+ * are the ones <code>Main</code> hands to <code>FlagCapturer</code> once it changed them for
+ * the starting corner. The robot starts in the corner tile, before the origin.
+ *
+ * @see MissionSimulation
+ *
+ * @author Stefan Ti
+ */
+public class Scenario {
+	private int [] flagLower, flagUpper, dropOff, avoid;
+	private int color;
+	private double [][] blocks;
+	private double startX, startY, startTheta;
+	private StartCorner corner = StartCorner.BOTTOM_LEFT;
+	// the drop off tile on the floor, which is not the one given once the frame is turned
+	private int [] dropOffLow, dropOffHigh;
+
+	/**
+	 * The constructor takes in the zones, the color of the flag and the blocks.
+	 *
+	 * @param flagLower the <code>int</code> array of the lower left tile of the flag zone
+	 * @param flagUpper the <code>int</code> array of the upper right tile of the flag zone
+	 * @param dropOff the <code>int</code> array of the tile the flag is dropped off in
+	 * @param avoid the <code>int</code> array of the tile the robot can not enter
+	 * @param color the <code>int</code> type of the flag, see <code>Block</code>
+	 * @param blocks the <code>double</code> arrays of the x, y and type of every block
+	 */
+	public Scenario(int [] flagLower, int [] flagUpper, int [] dropOff, int [] avoid, int color,
+			double [][] blocks) {
+		this.flagLower = flagLower;
+		this.flagUpper = flagUpper;
+		this.dropOff = dropOff;
+		this.avoid = avoid;
+		this.color = color;
+		this.blocks = blocks;
+		dropOffLow = new int [] {dropOff[0], dropOff[1]};
+		dropOffHigh = new int [] {dropOff[0] + 1, dropOff[1] + 1};
+		setStart(-Arena.TILE_LENGTH / 2, -Arena.TILE_LENGTH / 2, 0.0);
+	}
+
+	/**
+	 * Returns the scenario of the demonstration: a red flag and a light blue block in a zone two
+	 * tiles wide, a drop off tile up and to the right of it, and a wooden block out of the way.
+	 * @return the standard <code>Scenario</code>
+	 */
+	public static Scenario standard() {
+		double t = Arena.TILE_LENGTH;
+		return new Scenario(new int [] {2, 2}, new int [] {4, 4}, new int [] {7, 7},
+				new int [] {7, 2}, Block.RED, new double [][] {
+					{3.3 * t, 2.6 * t, Block.RED},
+					{2.6 * t, 3.4 * t, Block.LIGHT_BLUE},
+					{8.5 * t, 4.5 * t, Block.WOOD},
+				});
+	}
+
+	/**
+	 * Returns the scenario of a robot starting in a given corner, from the zones and the blocks
+	 * given from the bottom left corner. The zones are changed like <code>Main</code> changes
+	 * them, and the blocks are turned with the arena.
+	 *
+	 * @param corner the <code>StartCorner</code> of the robot
+	 * @param flagLower the <code>int</code> array of the lower left of the flag zone
+	 * @param flagUpper the <code>int</code> array of the upper right of the flag zone
+	 * @param dropOff the <code>int</code> array of the drop off tile
+	 * @param avoid the <code>int</code> array of the tile to avoid
+	 * @param color the <code>int</code> type of the flag
+	 * @param blocks the <code>double</code> arrays of the x, y and type of every block, in cm
+	 * @return the <code>Scenario</code> in the frame of the corner
+	 */
+	public static Scenario fromTransmission(StartCorner corner, int [] flagLower, int [] flagUpper,
+			int [] dropOff, int [] avoid, int color, double [][] blocks) {
+		int [] lower = corner.toCornerFrame(flagLower[0], flagLower[1]);
+		int [] upper = corner.toCornerFrame(flagUpper[0], flagUpper[1]);
+		// Main swaps the corners of the flag zone from the top right corner, as it is closer
+		if (corner == StartCorner.TOP_RIGHT) {
+			int [] swap = lower;
+			lower = upper;
+			upper = swap;
+		}
+
+		// the change of frame is affine, so three points give it for any point
+		int [] origin = corner.toCornerFrame(0, 0);
+		int [] unitX = corner.toCornerFrame(1, 0);
+		int [] unitY = corner.toCornerFrame(0, 1);
+		double t = Arena.TILE_LENGTH;
+		double [][] turned = new double [blocks.length][];
+		for (int i = 0; i < blocks.length; i++) {
+			double u = blocks[i][0] / t, v = blocks[i][1] / t;
+			turned[i] = new double [] {
+				(origin[0] + u * (unitX[0] - origin[0]) + v * (unitY[0] - origin[0])) * t,
+				(origin[1] + u * (unitX[1] - origin[1]) + v * (unitY[1] - origin[1])) * t,
+				blocks[i][2]
+			};
+		}
+
+		Scenario scenario = new Scenario(lower, upper, corner.toCornerFrame(dropOff[0], dropOff[1]),
+				corner.toCornerFrame(avoid[0], avoid[1]), color, turned);
+		scenario.corner = corner;
+		int [] low = corner.toCornerFrame(dropOff[0], dropOff[1]);
+		int [] high = corner.toCornerFrame(dropOff[0] + 1, dropOff[1] + 1);
+		scenario.dropOffLow = new int [] {Math.min(low[0], high[0]), Math.min(low[1], high[1])};
+		scenario.dropOffHigh = new int [] {Math.max(low[0], high[0]), Math.max(low[1], high[1])};
+		return scenario;
+	}
+
+	/**
+	 * Sets where the robot is put down.
+	 *
+	 * @param x the <code>double</code> x in cm
+	 * @param y the <code>double</code> y in cm
+	 * @param theta the <code>double</code> heading in degrees
+	 */
+	public void setStart(double x, double y, double theta) {
+		startX = x;
+		startY = y;
+		startTheta = theta;
+	}
+
+	/**
+	 * Returns a new arena with the blocks of the scenario on its floor.
+	 * @return the <code>Arena</code> of the scenario
+	 */
+	public Arena createArena() {
+		Arena arena = new Arena();
+		for (int i = 0; i < blocks.length; i++)
+			arena.add(new Block(blocks[i][0], blocks[i][1], Block.SIDE, (int) blocks[i][2]));
+		return arena;
+	}
+
+	/**
+	 * Puts the robot down at the start of the scenario.
+	 * @param robot the <code>SimulatedRobot</code> to place
+	 */
+	public void place(SimulatedRobot robot) {
+		robot.setPose(startX, startY, startTheta);
+	}
+
+	/**
+	 * Returns whether the flag lies in the drop off tile.
+	 * @param arena the <code>Arena</code> at the end of the mission
+	 * @return <code>true</code> if a block of the color of the flag is in the drop off tile and
+	 * not held by the grabbers
+	 */
+	public boolean isCaptured(Arena arena) {
+		double t = Arena.TILE_LENGTH;
+		for (int i = 0; i < arena.getBlockCount(); i++) {
+			Block block = arena.getBlock(i);
+			if (block.getType() == color && !block.isCarried()
+					&& block.getX() >= dropOffLow[0] * t && block.getX() <= dropOffHigh[0] * t
+					&& block.getY() >= dropOffLow[1] * t && block.getY() <= dropOffHigh[1] * t)
+				return true;
+		}
+		return false;
+	}
+
+	public int [] getFlagLower() {
+		return flagLower;
+	}
+
+	public int [] getFlagUpper() {
+		return flagUpper;
+	}
+
+	public int [] getDropOff() {
+		return dropOff;
+	}
+
+	public int [] getAvoid() {
+		return avoid;
+	}
+
+	public int getColor() {
+		return color;
+	}
+
+	public StartCorner getCorner() {
+		return corner;
+	}
+}
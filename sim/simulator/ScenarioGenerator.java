@@ -0,0 +1,103 @@
+package simulator;
+
+import java.util.Random;
+
+import bluetooth.StartCorner;
+
+/**
+ * The <code>ScenarioGenerator</code> class draws random missions: the corner the robot starts
+ * in and its pose in the corner tile, the flag zone, the drop off and avoid tiles, the color of
+ * the flag and where the blocks lie.
+ *
+ * The zones are drawn from the bottom left corner, as <code>Main</code> reads them from the
+ * <code>Transmission</code>, then turned into the frame of the start corner. The flag zone is
+ * two or three tiles on a side and holds the flag and one or two blocks of other colors; up to
+ * two wooden blocks lie elsewhere, off the zones.
+ *
+ * @see Scenario
+ *
+ * @author Stefan Ti
+ */
+public class ScenarioGenerator {
+	// the highest grid line of the zones, one tile inside the walls
+	private static final int LAST_LINE = 10;
+	// the blocks in the zone stay this far from its edges and from each other, in cm
+	private static final double ZONE_MARGIN = 8.0, BLOCK_SPACING = 20.0;
+	// how far the robot is put down from the center of its corner tile, in cm
+	private static final double START_SPREAD = 3.0;
+	private static final int MAX_TRIES = 100;
+
+	/**
+	 * Draws a mission.
+	 *
+	 * @param random the <code>Random</code> to draw from
+	 * @return the drawn <code>Scenario</code>
+	 */
+	public static Scenario generate(Random random) {
+		double t = Arena.TILE_LENGTH;
+		StartCorner corner = StartCorner.lookupCorner(1 + random.nextInt(4));
+
+		int width = 2 + random.nextInt(2), height = 2 + random.nextInt(2);
+		int [] lower = {1 + random.nextInt(LAST_LINE - 1 - width), 1 + random.nextInt(LAST_LINE - 1 - height)};
+		int [] upper = {lower[0] + width, lower[1] + height};
+		int [] dropOff = freeTile(random, lower, upper, null);
+		int [] avoid = freeTile(random, lower, upper, dropOff);
+
+		int color = Block.LIGHT_BLUE + random.nextInt(Block.DARK_BLUE);
+		int others = 1 + random.nextInt(2), woods = random.nextInt(3);
+		double [][] blocks = new double [1 + others + woods][];
+		int count = 0;
+		while (count <= others) {
+			double x = (lower[0] * t + ZONE_MARGIN) + random.nextDouble() * (width * t - 2 * ZONE_MARGIN);
+			double y = (lower[1] * t + ZONE_MARGIN) + random.nextDouble() * (height * t - 2 * ZONE_MARGIN);
+			if (!isClear(blocks, count, x, y))
+				continue;
+			int type = color;
+			while (count > 0 && type == color)
+				type = Block.LIGHT_BLUE + random.nextInt(Block.DARK_BLUE);
+			blocks[count++] = new double [] {x, y, type};
+		}
+		for (int tries = 0; count < blocks.length && tries < MAX_TRIES; tries++) {
+			double x = (0.5 + random.nextDouble() * (LAST_LINE - 1)) * t;
+			double y = (0.5 + random.nextDouble() * (LAST_LINE - 1)) * t;
+			int column = (int) (x / t), row = (int) (y / t);
+			if (column >= lower[0] - 1 && column <= upper[0] && row >= lower[1] - 1 && row <= upper[1])
+				continue;
+			if ((column == dropOff[0] && row == dropOff[1]) || (column == avoid[0] && row == avoid[1]))
+				continue;
+			if (isClear(blocks, count, x, y))
+				blocks[count++] = new double [] {x, y, Block.WOOD};
+		}
+		if (count < blocks.length) {
+			double [][] placed = new double [count][];
+			System.arraycopy(blocks, 0, placed, 0, count);
+			blocks = placed;
+		}
+
+		Scenario scenario = Scenario.fromTransmission(corner, lower, upper, dropOff, avoid, color, blocks);
+		scenario.setStart(-t / 2 + START_SPREAD * (2 * random.nextDouble() - 1),
+				-t / 2 + START_SPREAD * (2 * random.nextDouble() - 1), 360.0 * random.nextDouble());
+		return scenario;
+	}
+
+	// a tile inside the walls, off the flag zone and not the given one
+	private static int [] freeTile(Random random, int [] lower, int [] upper, int [] taken) {
+		while (true) {
+			int [] tile = {random.nextInt(LAST_LINE), random.nextInt(LAST_LINE)};
+			if (tile[0] >= lower[0] - 1 && tile[0] <= upper[0] && tile[1] >= lower[1] - 1 && tile[1] <= upper[1])
+				continue;
+			if (taken != null && tile[0] == taken[0] && tile[1] == taken[1])
+				continue;
+			return tile;
+		}
+	}
+
+	private static boolean isClear(double [][] blocks, int count, double x, double y) {
+		for (int i = 0; i < count; i++) {
+			double dx = blocks[i][0] - x, dy = blocks[i][1] - y;
+			if (dx * dx + dy * dy < BLOCK_SPACING * BLOCK_SPACING)
+				return false;
+		}
+		return true;
+	}
+}
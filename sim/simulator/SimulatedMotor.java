@@ -0,0 +1,179 @@
+package simulator;
+
+import hardware.RegulatedMotor;
+
+/**
+ * The <code>SimulatedMotor</code> class is a regulated NXT motor: it ramps its velocity to the
+ * speed it is given with the acceleration it is given, and for a rotation it slows down so that
+ * it stops on the target, then holds it. The motor is only moved by its
+ * <code>SimulatedRobot</code>, in steps of the simulated time, so every call first brings the
+ * robot up to the time of the clock.
+ *
+ * @see SimulatedRobot
+ *
+ * @author Stefan Ti
+ */
+public class SimulatedMotor implements RegulatedMotor {
+	/**
+	 * The highest speed a motor reaches on a full battery, in degrees per second.
+	 */
+	public static final int MAX_SPEED = 900;
+	private static final int DEFAULT_SPEED = 360, DEFAULT_ACCELERATION = 6000;
+	// a free motor slows down this many times slower than a braked one
+	private static final int FLOAT_SLOWDOWN = 4;
+	// the rotations end when the motor is this close to the target, in degrees
+	private static final double TOLERANCE = 0.5;
+	// the lowest speed of the end of a rotation, so it does not creep
+	private static final double MIN_SPEED = 20.0;
+	private static final int FORWARD = 0, BACKWARD = 1, STOP = 2, FLOAT = 3, ROTATE = 4;
+
+	private SimulatedRobot robot;
+	private int speed = DEFAULT_SPEED, acceleration = DEFAULT_ACCELERATION;
+	private int mode = STOP;
+	private double position, velocity, target;
+
+	SimulatedMotor(SimulatedRobot robot) {
+		this.robot = robot;
+	}
+
+	public void setSpeed(int speed) {
+		synchronized (robot) {
+			robot.advance();
+			this.speed = Math.min(Math.abs(speed), MAX_SPEED);
+		}
+	}
+
+	public void setAcceleration(int acceleration) {
+		synchronized (robot) {
+			robot.advance();
+			this.acceleration = Math.max(1, Math.abs(acceleration));
+		}
+	}
+
+	public void forward() {
+		setMode(FORWARD);
+	}
+
+	public void backward() {
+		setMode(BACKWARD);
+	}
+
+	public void stop() {
+		setMode(STOP);
+		waitUntilStopped();
+	}
+
+	public void flt(boolean immediateReturn) {
+		setMode(FLOAT);
+		if (!immediateReturn)
+			waitUntilStopped();
+	}
+
+	public void rotate(int angle, boolean immediateReturn) {
+		synchronized (robot) {
+			robot.advance();
+			rotateFrom(Math.round(position) + angle);
+		}
+		if (!immediateReturn)
+			waitUntilStopped();
+	}
+
+	public void rotateTo(int limitAngle, boolean immediateReturn) {
+		synchronized (robot) {
+			robot.advance();
+			rotateFrom(limitAngle);
+		}
+		if (!immediateReturn)
+			waitUntilStopped();
+	}
+
+	public int getTachoCount() {
+		synchronized (robot) {
+			robot.advance();
+			return (int) Math.round(position);
+		}
+	}
+
+	public boolean isMoving() {
+		synchronized (robot) {
+			robot.advance();
+			return moving();
+		}
+	}
+
+	// the position without bringing the robot up to date, for the robot itself
+	double getPosition() {
+		return position;
+	}
+
+	/*
+	 * Moves the motor by one step of the given duration in seconds. The velocity goes toward
+	 * the one of the mode by at most the acceleration, and a rotation limits it to the speed
+	 * from which the motor can still brake before the target.
+	 */
+	void step(double dt) {
+		double wanted;
+		double rate = acceleration;
+		switch (mode) {
+		case FORWARD:
+			wanted = speed;
+			break;
+		case BACKWARD:
+			wanted = -speed;
+			break;
+		case ROTATE:
+			double left = target - position;
+			if (Math.abs(left) <= TOLERANCE && Math.abs(velocity) <= MIN_SPEED) {
+				position = target;
+				velocity = 0.0;
+				mode = STOP;
+				return;
+			}
+			double braking = Math.sqrt(2.0 * acceleration * Math.abs(left));
+			wanted = Math.signum(left) * Math.max(Math.min(speed, braking), MIN_SPEED);
+			break;
+		case FLOAT:
+			wanted = 0.0;
+			rate = acceleration / FLOAT_SLOWDOWN;
+			break;
+		default:
+			wanted = 0.0;
+		}
+
+		double change = wanted - velocity;
+		double most = rate * dt;
+		if (change > most)
+			change = most;
+		else if (change < -most)
+			change = -most;
+		velocity += change;
+
+		double move = velocity * dt;
+		// do not overshoot the target of a rotation within a step
+		if (mode == ROTATE && Math.abs(move) > Math.abs(target - position))
+			move = target - position;
+		position += move;
+	}
+
+	private boolean moving() {
+		return mode == FORWARD || mode == BACKWARD || mode == ROTATE || velocity != 0.0;
+	}
+
+	private void rotateFrom(double target) {
+		this.target = target;
+		mode = ROTATE;
+	}
+
+	private void setMode(int mode) {
+		synchronized (robot) {
+			robot.advance();
+			this.mode = mode;
+		}
+	}
+
+	// waits on the clock of the robot, as the motor only moves in simulated time
+	private void waitUntilStopped() {
+		while (isMoving())
+			robot.getClock().delay(1);
+	}
+}
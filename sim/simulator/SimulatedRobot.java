@@ -0,0 +1,556 @@
+package simulator;
+
+import java.util.Random;
+
+import hardware.Clock;
+import hardware.ColorInput;
+import hardware.Feedback;
+import hardware.RangeInput;
+import hardware.RegulatedMotor;
+import hardware.Robot;
+import scheduler.Scheduler;
+import traveling.Calibration;
+
+/**
+ * The <code>SimulatedRobot</code> class is a differential drive robot in an <code>Arena</code>,
+ * with the motors and sensors of the real one, so the code of the robot runs unchanged on the
+ * host.
+ *
+ * The robot moves in steps of <code>STEP</code> ms of simulated time. Nothing runs in the
+ * background: every call to a motor or a sensor first brings the robot up to the time of the
+ * clock, integrating the wheel motion with the same kinematics as the
+ * <code>DoubleOdometryEngine</code> but with the true geometry of the robot, which may differ
+ * from its <code>Calibration</code>, and with a random slip that grows with the distance the
+ * wheels travel.
+ *
+ * The light sensors see how much of their spot is over a grid line, the ultrasonic sensors the
+ * closest wall or block within their beam that echoes back, and the block sensor the color of
+ * a block right in front of it. The front and the back of the robot push the blocks they run
+ * into, and the grabbers pick up a block behind the robot when they close and drop it when
+ * they open. The walls stop the robot, whose wheels then slip on the floor. All the readings can
+ * be made noisy, with a seeded random generator so that a run can be repeated.
+ *
+ * @see Arena
+ * @see SimulatedMotor
+ * @see ScaledClock
+ *
+ * @author Stefan Ti
+ */
+public class SimulatedRobot implements Robot {
+	/**
+	 * The step of the simulated time, in ms.
+	 */
+	public static final int STEP = 1;
+	// the line sensors are behind the wheels, on both sides
+	private static final double LINE_SENSOR_X = 7.3, LINE_SENSOR_Y = 7.3;
+	private static final double FLOOR_LIGHT = 560, LINE_LIGHT = 420, SPOT = 0.8;
+	// the ultrasonic sensors are at the front, on both sides, and refresh every period
+	private static final double RANGE_FORWARD = 8.0, RANGE_LATERAL = 5.0;
+	private static final double BEAM_HALF_ANGLE = 25.0, BEAM_STEP = 2.5;
+	// no echo comes back from a surface hit further than this from its normal
+	private static final double MIN_INCIDENCE = Math.cos(Math.toRadians(60.0));
+	private static final int RANGE_PERIOD = 30;
+	// the block sensor is at the front, in the middle
+	private static final double BLOCK_SENSOR_FORWARD = 11.0, BLOCK_SENSOR_RANGE = 8.0;
+	private static final int [] FLOOR_COLOR = {40, 35, 30};
+	// a block is held behind the robot when both grabbers are closed
+	private static final int GRAB_CLOSED = -150, GRAB_OPEN = -50;
+	private static final double CARRY_DISTANCE = 13.0, GRAB_REACH = 8.0;
+	// the body of the robot, from its center, that pushes the blocks
+	private static final double BODY_FRONT = 11.0, BODY_BACK = CARRY_DISTANCE - Block.SIDE / 2, BODY_SIDE = 9.0;
+	// the robot is kept this far from the walls, as if it were round
+	private static final double BODY_RADIUS = 10.0;
+
+	private Arena arena;
+	private Clock clock;
+	private Scheduler scheduler;
+	private Feedback feedback = new QuietFeedback();
+	private Random random;
+	private double leftRadius, rightRadius, width;
+	private double distanceSlip = 0.02, headingSlip = 0.1;
+	private double lightNoise = 4.0, rangeNoise = 1.0, colorNoise = 5.0;
+	private double dropoutRate = 0.002, crosstalkRate = 0.01;
+
+	private SimulatedMotor leftWheel, rightWheel, leftGrabber, rightGrabber;
+	private LineSensor leftLine, rightLine;
+	private BlockSensor block;
+	private RangeSensor leftRange, rightRange;
+
+	private double x, y, theta;
+	private long time;
+	private double leftPosition, rightPosition;
+	private Block carried;
+	private volatile boolean stopped;
+	private int [] rgb = new int [3];
+
+	/**
+	 * The constructor takes in the arena, the clock the robot runs on and the seed of its
+	 * noise. The robot has the default geometry of the <code>Calibration</code> and starts at
+	 * the origin with a heading of 0.
+	 *
+	 * @param arena the <code>Arena</code> the robot drives in
+	 * @param clock the <code>Clock</code> of the simulation
+	 * @param seed the <code>long</code> seed of the noise
+	 */
+	public SimulatedRobot(Arena arena, Clock clock, long seed) {
+		this.arena = arena;
+		this.clock = clock;
+		scheduler = new Scheduler(clock);
+		random = new Random(seed);
+		leftRadius = Calibration.DEFAULT_LEFT_RADIUS;
+		rightRadius = Calibration.DEFAULT_RIGHT_RADIUS;
+		width = Calibration.DEFAULT_WIDTH;
+
+		leftWheel = new SimulatedMotor(this);
+		rightWheel = new SimulatedMotor(this);
+		leftGrabber = new SimulatedMotor(this);
+		rightGrabber = new SimulatedMotor(this);
+		// the left line sensor is on the left of the heading, at 135 degrees from it
+		double spacing = Math.sqrt(LINE_SENSOR_X * LINE_SENSOR_X + LINE_SENSOR_Y * LINE_SENSOR_Y);
+		double angle = Math.toDegrees(Math.atan(LINE_SENSOR_Y / LINE_SENSOR_X));
+		leftLine = new LineSensor(spacing, 180.0 - angle);
+		rightLine = new LineSensor(spacing, 180.0 + angle);
+		block = new BlockSensor();
+		leftRange = new RangeSensor(RANGE_LATERAL);
+		rightRange = new RangeSensor(-RANGE_LATERAL);
+		time = clock.currentTimeMillis();
+	}
+
+	/**
+	 * Sets the true geometry of the robot, with the same signs as the <code>Calibration</code>.
+	 *
+	 * @param leftRadius the <code>double</code> radius of the left wheel in cm
+	 * @param rightRadius the <code>double</code> radius of the right wheel in cm
+	 * @param width the <code>double</code> distance between the wheels in cm
+	 */
+	public synchronized void setGeometry(double leftRadius, double rightRadius, double width) {
+		advance();
+		this.leftRadius = leftRadius;
+		this.rightRadius = rightRadius;
+		this.width = width;
+	}
+
+	/**
+	 * Sets the random slip of the wheels, whose standard deviation grows with the square root
+	 * of the distance the wheels travel.
+	 *
+	 * @param distanceSlip the <code>double</code> error of the distance, in cm per square root of cm
+	 * @param headingSlip the <code>double</code> error of the heading, in degrees per square root of cm
+	 */
+	public synchronized void setSlip(double distanceSlip, double headingSlip) {
+		this.distanceSlip = distanceSlip;
+		this.headingSlip = headingSlip;
+	}
+
+	/**
+	 * Sets the noise of the sensors.
+	 *
+	 * @param lightNoise the <code>double</code> standard deviation of the raw light values
+	 * @param rangeNoise the <code>double</code> standard deviation of the distances, in cm
+	 * @param colorNoise the <code>double</code> standard deviation of the color components
+	 * @param dropoutRate the <code>double</code> probability that a ping gets no echo
+	 * @param crosstalkRate the <code>double</code> probability that a ping hears the echo of
+	 * the other sensor, when both are in continuous mode
+	 */
+	public synchronized void setNoise(double lightNoise, double rangeNoise, double colorNoise,
+			double dropoutRate, double crosstalkRate) {
+		this.lightNoise = lightNoise;
+		this.rangeNoise = rangeNoise;
+		this.colorNoise = colorNoise;
+		this.dropoutRate = dropoutRate;
+		this.crosstalkRate = crosstalkRate;
+	}
+
+	/**
+	 * Puts the robot at the given pose, in the coordinates of the arena.
+	 *
+	 * @param x the <code>double</code> x in cm
+	 * @param y the <code>double</code> y in cm
+	 * @param theta the <code>double</code> heading in degrees
+	 */
+	public synchronized void setPose(double x, double y, double theta) {
+		advance();
+		this.x = x;
+		this.y = y;
+		this.theta = theta;
+	}
+
+	/**
+	 * Copies the true pose of the robot, in the coordinates of the arena.
+	 * @param pose the <code>double</code> array that receives the x, y and heading
+	 */
+	public synchronized void getPose(double [] pose) {
+		if (!stopped)
+			advance();
+		pose[0] = x;
+		pose[1] = y;
+		pose[2] = theta;
+	}
+
+	/**
+	 * Copies where the light spot of a line sensor is on the floor, in the coordinates of the
+	 * arena.
+	 *
+	 * @param left <code>true</code> for the left line sensor, <code>false</code> for the right one
+	 * @param spot the <code>double</code> array that receives the x and y of the spot
+	 */
+	public synchronized void getLineSpot(boolean left, double [] spot) {
+		if (!stopped)
+			advance();
+		LineSensor sensor = left ? leftLine : rightLine;
+		double direction = Math.toRadians(theta + sensor.angle);
+		spot[0] = x + sensor.distance * Math.cos(direction);
+		spot[1] = y + sensor.distance * Math.sin(direction);
+	}
+
+	/**
+	 * Returns the block the grabbers hold
+	 * @return the carried <code>Block</code>, <code>null</code> if there is none
+	 */
+	public synchronized Block getCarried() {
+		if (!stopped)
+			advance();
+		return carried;
+	}
+
+	/**
+	 * Returns the arena the robot drives in
+	 * @return the <code>Arena</code> of the robot
+	 */
+	public Arena getArena() {
+		return arena;
+	}
+
+	/**
+	 * Stops the robot at the end of a simulation: the robot no longer moves, every later call
+	 * to one of its motors or sensors throws a <code>Stopped</code> error, which ends the
+	 * thread that made it, and every task of its scheduler is removed.
+	 */
+	public void shutdown() {
+		synchronized (this) {
+			if (!stopped)
+				advance();
+			stopped = true;
+		}
+		scheduler.removeAll();
+	}
+
+	/**
+	 * Returns whether the robot was shut down
+	 * @return <code>true</code> after <code>shutdown</code>
+	 */
+	public boolean isStopped() {
+		return stopped;
+	}
+
+	public RegulatedMotor getLeftWheel() {
+		return leftWheel;
+	}
+
+	public RegulatedMotor getRightWheel() {
+		return rightWheel;
+	}
+
+	public RegulatedMotor getLeftGrabber() {
+		return leftGrabber;
+	}
+
+	public RegulatedMotor getRightGrabber() {
+		return rightGrabber;
+	}
+
+	public ColorInput getLeftLineSensor() {
+		return leftLine;
+	}
+
+	public ColorInput getRightLineSensor() {
+		return rightLine;
+	}
+
+	public ColorInput getBlockSensor() {
+		return block;
+	}
+
+	public RangeInput getLeftRange() {
+		return leftRange;
+	}
+
+	public RangeInput getRightRange() {
+		return rightRange;
+	}
+
+	public Clock getClock() {
+		return clock;
+	}
+
+	public Scheduler getScheduler() {
+		return scheduler;
+	}
+
+	public Feedback getFeedback() {
+		return feedback;
+	}
+
+	/*
+	 * Brings the robot up to the time of the clock, one step at a time. The caller holds the
+	 * lock of the robot.
+	 */
+	synchronized void advance() {
+		if (stopped)
+			throw new Stopped();
+		long now = clock.currentTimeMillis();
+		double dt = STEP / 1000.0;
+		while (time + STEP <= now) {
+			time += STEP;
+			leftWheel.step(dt);
+			rightWheel.step(dt);
+			leftGrabber.step(dt);
+			rightGrabber.step(dt);
+			move();
+			push();
+			grab();
+		}
+	}
+
+	// moves the robot by the motion of the wheels since the last step
+	private void move() {
+		double left = leftWheel.getPosition() - leftPosition;
+		double right = rightWheel.getPosition() - rightPosition;
+		leftPosition += left;
+		rightPosition += right;
+		if (left == 0.0 && right == 0.0)
+			return;
+
+		double distance = (left * leftRadius + right * rightRadius) * Math.PI / 360.0;
+		double turn = (right * rightRadius - left * leftRadius) / width;
+		// the slip grows with the distance travelled by the wheels, even turning in place
+		double travelled = (Math.abs(left * leftRadius) + Math.abs(right * rightRadius)) * Math.PI / 720.0;
+		double root = Math.sqrt(travelled);
+		distance += random.nextGaussian() * distanceSlip * root;
+		turn += random.nextGaussian() * headingSlip * root;
+
+		theta = fixDegAngle(theta - turn);
+		x += distance * Math.cos(Math.toRadians(theta));
+		y += distance * Math.sin(Math.toRadians(theta));
+		x = Math.max(Arena.MIN + BODY_RADIUS, Math.min(Arena.MAX - BODY_RADIUS, x));
+		y = Math.max(Arena.MIN + BODY_RADIUS, Math.min(Arena.MAX - BODY_RADIUS, y));
+	}
+
+	// pushes the blocks under the robot out to its front or back, along its heading
+	private void push() {
+		double cos = Math.cos(Math.toRadians(theta)), sin = Math.sin(Math.toRadians(theta));
+		for (int i = 0; i < arena.getBlockCount(); i++) {
+			Block pushed = arena.getBlock(i);
+			if (pushed.isCarried())
+				continue;
+			double dx = pushed.getX() - x, dy = pushed.getY() - y;
+			double along = dx * cos + dy * sin, across = -dx * sin + dy * cos;
+			double half = pushed.getSide() / 2;
+			if (Math.abs(across) >= BODY_SIDE || along <= -BODY_BACK - half || along >= BODY_FRONT + half)
+				continue;
+			along = along < 0 ? -BODY_BACK - half : BODY_FRONT + half;
+			pushed.push(x + along * cos - across * sin, y + along * sin + across * cos);
+		}
+	}
+
+	// picks up, carries and drops the block behind the robot
+	private void grab() {
+		boolean closed = leftGrabber.getPosition() <= GRAB_CLOSED && rightGrabber.getPosition() <= GRAB_CLOSED;
+		boolean open = leftGrabber.getPosition() > GRAB_OPEN || rightGrabber.getPosition() > GRAB_OPEN;
+		double carryX = x - CARRY_DISTANCE * Math.cos(Math.toRadians(theta));
+		double carryY = y - CARRY_DISTANCE * Math.sin(Math.toRadians(theta));
+
+		if (carried == null && closed) {
+			for (int i = 0; i < arena.getBlockCount(); i++) {
+				Block candidate = arena.getBlock(i);
+				double dx = candidate.getX() - carryX, dy = candidate.getY() - carryY;
+				if (dx * dx + dy * dy < GRAB_REACH * GRAB_REACH) {
+					carried = candidate;
+					break;
+				}
+			}
+		} else if (carried != null && open) {
+			carried.drop();
+			carried = null;
+		}
+		if (carried != null)
+			carried.carry(carryX, carryY);
+	}
+
+	private double noise(double deviation) {
+		return deviation == 0.0 ? 0.0 : random.nextGaussian() * deviation;
+	}
+
+	private static int clamp(double value, int max) {
+		return (int) Math.max(0, Math.min(max, Math.round(value)));
+	}
+
+	private static double fixDegAngle(double angle) {
+		if (angle < 0.0)
+			angle = 360.0 + (angle % 360.0);
+		return angle % 360.0;
+	}
+
+	// a light sensor pointed at the floor, at a distance and angle from the center and heading
+	private class LineSensor implements ColorInput {
+		private double distance, angle;
+		private boolean floodlight;
+
+		LineSensor(double distance, double angle) {
+			this.distance = distance;
+			this.angle = angle;
+		}
+
+		public void setFloodlight(boolean on) {
+			floodlight = on;
+		}
+
+		public int getRawLightValue() {
+			synchronized (SimulatedRobot.this) {
+				advance();
+				double direction = Math.toRadians(theta + angle);
+				double coverage = arena.lineCoverage(x + distance * Math.cos(direction),
+						y + distance * Math.sin(direction), SPOT);
+				double light = FLOOR_LIGHT - (FLOOR_LIGHT - LINE_LIGHT) * coverage;
+				// without its light the sensor only sees the ambient light, a lot darker
+				if (!floodlight)
+					light /= 2;
+				return clamp(light + noise(lightNoise), 1023);
+			}
+		}
+
+		public void readColor(int [] rgb) {
+			int grey = getRawLightValue() / 4;
+			rgb[0] = grey;
+			rgb[1] = grey;
+			rgb[2] = grey;
+		}
+	}
+
+	// the color sensor at the front, which sees the face of a block right in front of it
+	private class BlockSensor implements ColorInput {
+		public void setFloodlight(boolean on) {
+		}
+
+		public int getRawLightValue() {
+			readColor(rgb);
+			return (rgb[0] + rgb[1] + rgb[2]) * 4 / 3;
+		}
+
+		public void readColor(int [] color) {
+			synchronized (SimulatedRobot.this) {
+				advance();
+				double heading = Math.toRadians(theta);
+				double distance = arena.cast(x + BLOCK_SENSOR_FORWARD * Math.cos(heading),
+						y + BLOCK_SENSOR_FORWARD * Math.sin(heading), theta);
+				Block seen = arena.getLastBlock();
+				if (seen != null && distance < BLOCK_SENSOR_RANGE) {
+					seen.getColor(color);
+				} else {
+					color[0] = FLOOR_COLOR[0];
+					color[1] = FLOOR_COLOR[1];
+					color[2] = FLOOR_COLOR[2];
+				}
+				for (int i = 0; i < 3; i++)
+					color[i] = clamp(color[i] + noise(colorNoise), 255);
+			}
+		}
+	}
+
+	/*
+	 * An ultrasonic sensor at the front, looking ahead. In continuous mode it measures every
+	 * RANGE_PERIOD and returns the last measurement, in ping mode it measures once per ping; a
+	 * measurement is the closest surface hit by the rays of the beam close enough to its normal
+	 * to echo back.
+	 */
+	private class RangeSensor implements RangeInput {
+		private double lateral;
+		private boolean continuous, pinging;
+		private long measured = -RANGE_PERIOD;
+		private int distance = NO_ECHO;
+
+		RangeSensor(double lateral) {
+			this.lateral = lateral;
+		}
+
+		public void continuous() {
+			synchronized (SimulatedRobot.this) {
+				continuous = true;
+				pinging = false;
+			}
+		}
+
+		public void ping() {
+			synchronized (SimulatedRobot.this) {
+				advance();
+				continuous = false;
+				pinging = true;
+				measured = time;
+				distance = measure();
+			}
+		}
+
+		public int getDistance() {
+			synchronized (SimulatedRobot.this) {
+				advance();
+				if (!pinging && time - measured >= RANGE_PERIOD) {
+					measured = time;
+					distance = measure();
+				}
+				return distance;
+			}
+		}
+
+		private int measure() {
+			if (random.nextDouble() < dropoutRate)
+				return NO_ECHO;
+
+			double heading = Math.toRadians(theta);
+			double sensorX = x + RANGE_FORWARD * Math.cos(heading) - lateral * Math.sin(heading);
+			double sensorY = y + RANGE_FORWARD * Math.sin(heading) + lateral * Math.cos(heading);
+			double closest = Double.MAX_VALUE;
+			for (double offset = -BEAM_HALF_ANGLE; offset <= BEAM_HALF_ANGLE; offset += BEAM_STEP) {
+				double hit = arena.cast(sensorX, sensorY, theta + offset);
+				if (arena.getLastIncidence() >= MIN_INCIDENCE && hit < closest)
+					closest = hit;
+			}
+			if (closest == Double.MAX_VALUE)
+				return NO_ECHO;
+
+			// both sensors pinging at once may hear each other, earlier than the real echo
+			if (leftRange.continuous && rightRange.continuous && random.nextDouble() < crosstalkRate)
+				closest *= 0.5 + 0.5 * random.nextDouble();
+			int result = clamp(closest + noise(rangeNoise), NO_ECHO);
+			return result;
+		}
+	}
+
+	/**
+	 * The error thrown to the threads of the robot code once the robot is shut down, to end
+	 * them wherever they are.
+	 */
+	public static class Stopped extends Error {
+		private static final long serialVersionUID = 1L;
+
+		Stopped() {
+			super("the simulated robot was shut down");
+		}
+	}
+
+	private static class QuietFeedback implements Feedback {
+		public void beep() {
+		}
+
+		public void buzz() {
+		}
+
+		public void playTone(int frequency, int duration) {
+		}
+
+		public void drawString(String text, int x, int y) {
+		}
+
+		public void drawInt(int value, int x, int y) {
+		}
+	}
+}
@@ -0,0 +1,390 @@
+package simulator;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+import hardware.Clock;
+import hardware.PacketConnection;
+import hardware.RangeFeed;
+import hardware.RangeInput;
+import hardware.RegulatedMotor;
+import hardware.SlaveLink;
+import hardware.SlaveProtocol;
+import maincontrol.SlaveResponder;
+
+/**
+ * The <code>SlaveLinkCheck</code> program pairs a <code>SlaveLink</code> with a
+ * <code>SlaveResponder</code> over an in-memory connection that loses and damages frames, and
+ * checks that every command of the master is carried out by the slave exactly once.
+ *
+ * The faults are first made one at a time: a lost request, which the master sends again; a lost
+ * or damaged response, whose request the slave sees again with the same sequence number and
+ * does not carry out twice; a damaged request, which the slave answers with
+ * <code>BAD_FRAME</code>; a request or its responses lost on every attempt of an exchange, which
+ * the master sends again as it was in the next one; and a command lost in every exchange, which
+ * raises an <code>IllegalStateException</code> and is carried out before the next command. Then
+ * the grabbers are turned many times over a connection that drops and damages frames at random.
+ * Last the slave samples its sensors, and the pushes must bring the walls it sees, also to a
+ * <code>poll</code> made while an exchange waits for its response, which must return at once.
+ * <pre>
+ * java simulator.SlaveLinkCheck [commands] [loss %] [seed]
+ * </pre>
+ *
+ * @see SlaveLink
+ * @see SlaveResponder
+ *
+ * @author Stefan Ti
+ */
+public class SlaveLinkCheck {
+	// what happens to a frame on its way
+	private static final int PASS = 0, DROP = 1, DAMAGE = 2;
+	// the attempts of an exchange and the exchanges of a command, those of the SlaveLink
+	private static final int MAX_ATTEMPTS = 3, MAX_EXCHANGES = 3;
+	// the left sensor sees a wall and the right one does not
+	private static final int LEFT_DISTANCE = 40, RIGHT_DISTANCE = 80, WALL_DISTANCE = 60;
+	// the longest a poll may take, well under the timeout of a response
+	private static final long MAX_POLL_TIME = 20;
+
+	private static int failures = 0;
+
+	public static void main(String[] args) throws InterruptedException {
+		int commands = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+		double loss = args.length > 1 ? Double.parseDouble(args[1]) / 100 : 0.1;
+		long seed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+
+		Clock clock = Clock.getSystemClock();
+		Wire toSlave = new Wire(seed), toMaster = new Wire(seed + 1);
+		End master = new End(toMaster, toSlave), slave = new End(toSlave, toMaster);
+		final CountingMotor [] grabbers = {new CountingMotor(), new CountingMotor()};
+		RangeInput [] sensors = {new FixedRange(LEFT_DISTANCE), new FixedRange(RIGHT_DISTANCE)};
+		final SlaveResponder responder = new SlaveResponder(slave, grabbers, sensors, clock);
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				responder.run();
+			}
+		}, "slave");
+		thread.start();
+
+		SlaveLink link = new SlaveLink(master, clock);
+		RegulatedMotor grabber = link.getGrabber(SlaveProtocol.LEFT);
+		int angle = 1;
+
+		check("clean exchange", grabber, grabbers[0], angle++, true);
+		toSlave.plan(DROP);
+		check("lost request, sent again", grabber, grabbers[0], angle++, true);
+		toMaster.plan(DROP);
+		check("lost response, duplicate sequence", grabber, grabbers[0], angle++, true);
+		toMaster.plan(DAMAGE);
+		check("damaged response, duplicate sequence", grabber, grabbers[0], angle++, true);
+		toSlave.plan(DAMAGE);
+		check("damaged request, BAD_FRAME", grabber, grabbers[0], angle++, true);
+		if (toMaster.badFrames != 1) {
+			System.out.println("FAILED  the slave answered " + toMaster.badFrames + " BAD_FRAME responses");
+			failures++;
+		}
+		for (int i = 0; i < MAX_ATTEMPTS; i++)
+			toSlave.plan(DROP);
+		check("request lost on every attempt, sent again", grabber, grabbers[0], angle++, true);
+		for (int i = 0; i < MAX_ATTEMPTS; i++)
+			toMaster.plan(DROP);
+		check("responses lost on every attempt, sent again", grabber, grabbers[0], angle++, true);
+		for (int i = 0; i < MAX_ATTEMPTS * MAX_EXCHANGES; i++)
+			toSlave.plan(DROP);
+		int lost = angle;
+		check("command lost in every exchange", grabber, grabbers[0], angle++, false);
+		check("command after a lost one", grabber, grabbers[0], angle++, true);
+		if (grabbers[0].count(lost) != 1) {
+			System.out.println("FAILED  the lost command was carried out " + grabbers[0].count(lost) + " time(s)");
+			failures++;
+		}
+
+		// at random, every command carried out once at most, and once if the master got its answer
+		toSlave.setLoss(loss);
+		toMaster.setLoss(loss);
+		int given = 0;
+		int start = grabbers[0].count();
+		List<Integer> succeeded = new ArrayList<Integer>();
+		for (int i = 0; i < commands; i++, angle++) {
+			if (turn(grabber, angle))
+				succeeded.add(Integer.valueOf(angle));
+			else
+				given++;
+		}
+		List<Integer> carried;
+		synchronized (grabbers[0]) {
+			carried = new ArrayList<Integer>(grabbers[0].rotations.subList(start, grabbers[0].rotations.size()));
+		}
+		int twice = 0;
+		for (int i = 1; i < carried.size(); i++)
+			if (carried.get(i).intValue() <= carried.get(i - 1).intValue())
+				twice++;
+		int missing = 0;
+		for (int i = 0; i < succeeded.size(); i++)
+			if (!carried.contains(succeeded.get(i)))
+				missing++;
+		System.out.println("random loss  : " + commands + " commands at " + Math.round(loss * 100)
+				+ "% loss each way, " + (toSlave.damaged + toMaster.damaged) + " frames damaged, "
+				+ (toSlave.dropped + toMaster.dropped) + " dropped");
+		System.out.println("               " + given + " not answered, " + carried.size() + " carried out, "
+				+ twice + " carried out twice, " + missing + " answered but not carried out");
+		if (twice > 0 || missing > 0)
+			failures++;
+
+		toSlave.setLoss(0);
+		toMaster.setLoss(0);
+		checkSampling(link, grabber, toSlave, angle);
+		link.close();
+		thread.join(1000);
+		if (thread.isAlive()) {
+			System.out.println("the slave did not end on CLOSE");
+			failures++;
+		}
+		System.out.println(failures == 0 ? "all passed" : failures + " failed");
+		System.exit(failures == 0 ? 0 : 1);
+	}
+
+	/*
+	 * Samples on the slave, checks the walls of its pushes, then polls while a grabber command
+	 * waits for the response to a request that was lost.
+	 */
+	private static void checkSampling(final SlaveLink link, final RegulatedMotor grabber, Wire toSlave,
+			final int angle) throws InterruptedException {
+		PushCounter pushes = new PushCounter();
+		link.setRangeListener(pushes);
+		link.startSampling(WALL_DISTANCE);
+		long end = System.currentTimeMillis() + 1000;
+		while (pushes.count() < 3 && System.currentTimeMillis() < end) {
+			link.poll();
+			Thread.sleep(5);
+		}
+		boolean passed = pushes.count() >= 3 && pushes.walls == 1 && pushes.events > 0;
+		if (!passed)
+			failures++;
+		System.out.println((passed ? "passed" : "FAILED") + "  walls pushed: " + pushes.count()
+				+ " pushes, walls " + pushes.walls + ", " + pushes.events + " wall event(s)");
+
+		for (int i = 0; i < MAX_ATTEMPTS; i++)
+			toSlave.plan(DROP);
+		Thread command = new Thread(new Runnable() {
+			public void run() {
+				grabber.rotate(angle, true);
+			}
+		}, "command");
+		command.start();
+		Thread.sleep(MAX_POLL_TIME);
+		int before = pushes.count();
+		long start = System.currentTimeMillis();
+		link.poll();
+		long pollTime = System.currentTimeMillis() - start;
+		command.join();
+		passed = pollTime < MAX_POLL_TIME && pushes.count() > before;
+		if (!passed)
+			failures++;
+		System.out.println((passed ? "passed" : "FAILED") + "  poll during an exchange: returned in "
+				+ pollTime + " ms, " + (pushes.count() - before) + " pushes taken in by the exchange");
+		link.stopSampling();
+		link.setRangeListener(null);
+	}
+
+	/*
+	 * Turns the grabber once and checks the slave turned it once, or not at all if the slave
+	 * answered none of the exchanges of the command.
+	 */
+	private static void check(String name, RegulatedMotor grabber, CountingMotor motor,
+			int angle, boolean answered) {
+		int before = motor.count(angle);
+		boolean gotAnswer = turn(grabber, angle);
+		int times = motor.count(angle) - before;
+		boolean passed = gotAnswer == answered && times == (answered ? 1 : 0);
+		if (!passed)
+			failures++;
+		System.out.println((passed ? "passed" : "FAILED") + "  " + name + ": "
+				+ (gotAnswer ? "answered" : "not answered") + ", carried out " + times + " time(s)");
+	}
+
+	// turns the grabber, returns false if the link raised that the slave does not answer
+	private static boolean turn(RegulatedMotor grabber, int angle) {
+		try {
+			grabber.rotate(angle, true);
+			return true;
+		} catch (IllegalStateException e) {
+			return false;
+		}
+	}
+
+	/*
+	 * The frames one way, with the faults planned for the next ones and a chance of losing or
+	 * damaging the others.
+	 */
+	private static class Wire {
+		private LinkedList<byte []> frames = new LinkedList<byte []>();
+		private LinkedList<Integer> planned = new LinkedList<Integer>();
+		private Random random;
+		private double loss = 0;
+		private boolean closed = false;
+		int dropped = 0, damaged = 0, badFrames = 0;
+
+		Wire(long seed) {
+			random = new Random(seed);
+		}
+
+		synchronized void plan(int fault) {
+			planned.add(Integer.valueOf(fault));
+		}
+
+		synchronized void setLoss(double loss) {
+			this.loss = loss;
+		}
+
+		synchronized void send(byte [] buffer, int length) {
+			int fault = PASS;
+			if (!planned.isEmpty())
+				fault = planned.removeFirst().intValue();
+			else if (random.nextDouble() < loss)
+				fault = random.nextBoolean() ? DROP : DAMAGE;
+			if (fault == DROP) {
+				dropped++;
+				return;
+			}
+			byte [] frame = new byte [length];
+			System.arraycopy(buffer, 0, frame, 0, length);
+			if (fault == DAMAGE) {
+				damaged++;
+				frame[random.nextInt(length)] ^= 1 << random.nextInt(8);
+			} else if (length == SlaveProtocol.RESPONSE_LENGTH
+					&& SlaveProtocol.getFlags(frame) == SlaveProtocol.BAD_FRAME)
+				badFrames++;
+			frames.add(frame);
+		}
+
+		synchronized int receive(byte [] buffer, int length) {
+			if (frames.isEmpty())
+				return closed ? -1 : 0;
+			byte [] frame = frames.removeFirst();
+			int read = Math.min(length, frame.length);
+			System.arraycopy(frame, 0, buffer, 0, read);
+			return read;
+		}
+
+		synchronized void close() {
+			closed = true;
+		}
+	}
+
+	// one end of the connection
+	private static class End implements PacketConnection {
+		private Wire in, out;
+
+		End(Wire in, Wire out) {
+			this.in = in;
+			this.out = out;
+		}
+
+		public int read(byte [] buffer, int length, boolean wait) {
+			while (true) {
+				int read = in.receive(buffer, length);
+				if (read != 0 || !wait)
+					return read;
+				Thread.yield();
+			}
+		}
+
+		public int write(byte [] buffer, int length) {
+			out.send(buffer, length);
+			return length;
+		}
+
+		public void close() {
+			out.close();
+		}
+	}
+
+	// a grabber of the slave that keeps the angles it was turned by
+	private static class CountingMotor implements RegulatedMotor {
+		List<Integer> rotations = new ArrayList<Integer>();
+		private int tacho = 0;
+
+		synchronized int count() {
+			return rotations.size();
+		}
+
+		synchronized int count(int angle) {
+			int count = 0;
+			for (int i = 0; i < rotations.size(); i++)
+				if (rotations.get(i).intValue() == angle)
+					count++;
+			return count;
+		}
+
+		public void setSpeed(int speed) {
+		}
+
+		public void setAcceleration(int acceleration) {
+		}
+
+		public void forward() {
+		}
+
+		public void backward() {
+		}
+
+		public void stop() {
+		}
+
+		public void flt(boolean immediateReturn) {
+		}
+
+		public synchronized void rotate(int angle, boolean immediateReturn) {
+			rotations.add(Integer.valueOf(angle));
+			tacho += angle;
+		}
+
+		public void rotateTo(int limitAngle, boolean immediateReturn) {
+		}
+
+		public synchronized int getTachoCount() {
+			return tacho;
+		}
+
+		public boolean isMoving() {
+			return false;
+		}
+	}
+
+	// counts the pushes, and keeps the walls of the last one
+	private static class PushCounter implements RangeFeed.RangeListener {
+		private int pushes = 0;
+		int walls, events = 0;
+
+		public synchronized void rangesPushed(int left, int right, int walls, boolean event, long time) {
+			pushes++;
+			this.walls = walls;
+			if (event)
+				events++;
+		}
+
+		synchronized int count() {
+			return pushes;
+		}
+	}
+
+	private static class FixedRange implements RangeInput {
+		private int distance;
+
+		FixedRange(int distance) {
+			this.distance = distance;
+		}
+
+		public void continuous() {
+		}
+
+		public void ping() {
+		}
+
+		public int getDistance() {
+			return distance;
+		}
+	}
+}
@@ -46,6 +46,29 @@ public enum StartCorner {
 		return this.id;
 	}
 	
+	/**
+	 * Returns grid coordinates given from the bottom left corner in the frame of a
+	 * robot that starts in this corner, in which its own corner is the bottom left.
+	 * 
+	 * @param x the <code>int</code> x from the bottom left corner
+	 * @param y the <code>int</code> y from the bottom left corner
+	 * @return the <code>int</code> array of the x and y from this corner, <code>null</code> for <code>NULL</code>
+	 */
+	public int[] toCornerFrame(int x, int y) {
+		switch (this.id) {
+		case 1:
+			return new int[] {x, y};
+		case 2:
+			return new int[] {10 - y, x};
+		case 3:
+			return new int[] {10 - x, 10 - y};
+		case 4:
+			return new int[] {y, 10 - x};
+		default:
+			return null;
+		}
+	}
+	
 	public static StartCorner lookupCorner(int cornerId) {
 		for (StartCorner corner : StartCorner.values())
 			if (corner.id == cornerId)
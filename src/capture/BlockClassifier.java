@@ -0,0 +1,211 @@
+package capture;
+
+/**
+ * The <code>BlockClassifier</code> tells the type of a block from a single reading of the color
+ * sensor, by the nearest centroid, or by the ratios of its components.
+ *
+ * A reading is turned into three features: the shares of red and of green in the sum of the
+ * three components, in 1/1024, and the brightness, half the sum. The shares do not depend on
+ * how far the block is, so the brightness only counts for half, to tell apart blocks of the same
+ * hue. The reading is given to the type whose centroid, the mean features of readings of that
+ * type, is the closest. Everything is integer arithmetic and nothing is allocated.
+ *
+ * The centroids are a table of three <code>int</code>s per type, which <code>train</code>
+ * computes from labelled readings and <code>getCentroids</code> returns so that it can be stored.
+ *
+ * Until such readings of the real blocks are recorded, the default classifier keeps the ratio
+ * thresholds the robot has always used. It has no centroids, and to weigh several readings each
+ * one only votes for the type the thresholds give it.
+ *
+ * @see BlockType
+ * @see Detection
+ *
+ * @author Stefan Ti
+ */
+public class BlockClassifier {
+	/**
+	 * The number of features of a reading, and of <code>int</code>s per type in a table.
+	 */
+	public static final int FEATURES = 3;
+	private static final int SHARE_BITS = 10, BRIGHTNESS_SHIFT = 1;
+	// the types of the rows of a table of centroids
+	private static final BlockType [] TYPES = {BlockType.LIGHT_BLUE, BlockType.RED, BlockType.YELLOW,
+			BlockType.WHITE, BlockType.DARK_BLUE, BlockType.WOOD};
+	/*
+	 * The distance of a reading to the types the ratio thresholds do not give it. It is 3 once
+	 * scaled by the default deviation of the SequentialClassifier, so that a type reaches a
+	 * confidence of 0.95 with two more readings than any other.
+	 */
+	private static final int VOTE_DISTANCE = 3750;
+	private static BlockClassifier defaultClassifier;
+
+	// null for the ratio thresholds
+	private int [] centroids;
+
+	/**
+	 * The constructor takes in a table of centroids, three features per type in the order of
+	 * <code>getTypes</code>.
+	 *
+	 * @param centroids the <code>int</code> table of centroids, which is copied
+	 */
+	public BlockClassifier(int [] centroids) {
+		if (centroids.length != FEATURES * TYPES.length)
+			throw new IllegalArgumentException("a table has " + FEATURES + " features per type");
+		this.centroids = new int [centroids.length];
+		System.arraycopy(centroids, 0, this.centroids, 0, centroids.length);
+	}
+
+	// the classifier of the ratio thresholds
+	private BlockClassifier() {
+	}
+
+	/**
+	 * Returns the classifier of the ratio thresholds, which is created the first time it is
+	 * needed. It is the default one until a table is trained on readings of the real blocks.
+	 * @return the default <code>BlockClassifier</code>
+	 */
+	public static synchronized BlockClassifier getDefault() {
+		if (defaultClassifier == null)
+			defaultClassifier = new BlockClassifier();
+		return defaultClassifier;
+	}
+
+	/**
+	 * Returns the type of the block from one reading of the color sensor.
+	 *
+	 * @param rgb the <code>int</code> array of the red, green and blue values of one reading
+	 * @return the <code>BlockType</code> of the closest centroid, or of the ratio thresholds
+	 */
+	public BlockType classify(int [] rgb) {
+		return TYPES[centroids == null ? byRatios(rgb) : nearest(rgb)];
+	}
+
+	/**
+	 * Gives the squared distances of a reading to the centroids of every type, in the order of
+	 * <code>getTypes</code>, for instance to weigh several readings of the same block. Without
+	 * centroids the distance is 0 to the type of the ratio thresholds and the same to the others.
+	 *
+	 * @param rgb the <code>int</code> array of the red, green and blue values of one reading
+	 * @param distances the <code>int</code> array that receives one distance per type
+	 */
+	public void getDistances(int [] rgb, int [] distances) {
+		if (centroids == null) {
+			int type = byRatios(rgb);
+			for (int i = 0; i < TYPES.length; i++)
+				distances[i] = i == type ? 0 : VOTE_DISTANCE;
+			return;
+		}
+		int sum = Math.max(1, rgb[0] + rgb[1] + rgb[2]);
+		int red = (rgb[0] << SHARE_BITS) / sum;
+		int green = (rgb[1] << SHARE_BITS) / sum;
+		int brightness = sum >> BRIGHTNESS_SHIFT;
+		for (int i = 0; i < TYPES.length; i++)
+			distances[i] = distance(i, red, green, brightness);
+	}
+
+	// the row of the centroid closest to the reading
+	private int nearest(int [] rgb) {
+		int sum = Math.max(1, rgb[0] + rgb[1] + rgb[2]);
+		int red = (rgb[0] << SHARE_BITS) / sum;
+		int green = (rgb[1] << SHARE_BITS) / sum;
+		int brightness = sum >> BRIGHTNESS_SHIFT;
+
+		int best = 0, bestDistance = Integer.MAX_VALUE;
+		for (int i = 0; i < TYPES.length; i++) {
+			int distance = distance(i, red, green, brightness);
+			if (distance < bestDistance) {
+				bestDistance = distance;
+				best = i;
+			}
+		}
+		return best;
+	}
+
+	// the row of the type the ratios of the components give
+	private static int byRatios(int [] rgb) {
+		int red = rgb[0], green = rgb[1], blue = rgb[2];
+		if (red > 2.5 * blue && red > 2.5 * green)
+			return indexOf(BlockType.RED);
+		else if (red > 2 * blue && green > 2 * blue)
+			return indexOf(BlockType.YELLOW);
+		else if (blue > 1.8 * red)
+			return indexOf(BlockType.DARK_BLUE);
+		else if (red > 1.4 * green && red > 1.4 * blue)
+			return indexOf(BlockType.WOOD);
+		else if (red > 1.1 * blue)
+			return indexOf(BlockType.WHITE);
+		else
+			return indexOf(BlockType.LIGHT_BLUE);
+	}
+
+	// the squared distance of the features to the centroid of a row
+	private int distance(int i, int red, int green, int brightness) {
+		int dRed = red - centroids[FEATURES * i];
+		int dGreen = green - centroids[FEATURES * i + 1];
+		int dBrightness = brightness - centroids[FEATURES * i + 2];
+		return dRed * dRed + dGreen * dGreen + dBrightness * dBrightness;
+	}
+
+	/**
+	 * Returns the table of centroids, to store it
+	 * @return a copy of the <code>int</code> table, three features per type in the order of
+	 * <code>getTypes</code>, <code>null</code> for the ratio thresholds
+	 */
+	public int [] getCentroids() {
+		if (centroids == null)
+			return null;
+		int [] copy = new int [centroids.length];
+		System.arraycopy(centroids, 0, copy, 0, centroids.length);
+		return copy;
+	}
+
+	/**
+	 * Returns the types of the rows of a table of centroids
+	 * @return a copy of the <code>BlockType</code> array of the types, without <code>UNKNOWN</code>
+	 */
+	public static BlockType [] getTypes() {
+		BlockType [] copy = new BlockType [TYPES.length];
+		System.arraycopy(TYPES, 0, copy, 0, TYPES.length);
+		return copy;
+	}
+
+	/**
+	 * Computes a classifier from recorded readings of known blocks, every type having at least
+	 * one reading. The centroid of a type is the mean of the features of its readings.
+	 *
+	 * @param readings the <code>int</code> arrays of the red, green and blue values of the readings
+	 * @param types the <code>BlockType</code> of the block of each reading
+	 * @return the <code>BlockClassifier</code> trained on the readings
+	 */
+	public static BlockClassifier train(int [][] readings, BlockType [] types) {
+		long [] sums = new long [FEATURES * TYPES.length];
+		int [] counts = new int [TYPES.length];
+		for (int n = 0; n < readings.length; n++) {
+			int i = indexOf(types[n]);
+			if (i < 0)
+				throw new IllegalArgumentException("no centroid for " + types[n]);
+			int [] rgb = readings[n];
+			int sum = Math.max(1, rgb[0] + rgb[1] + rgb[2]);
+			sums[FEATURES * i] += (rgb[0] << SHARE_BITS) / sum;
+			sums[FEATURES * i + 1] += (rgb[1] << SHARE_BITS) / sum;
+			sums[FEATURES * i + 2] += sum >> BRIGHTNESS_SHIFT;
+			counts[i]++;
+		}
+
+		int [] centroids = new int [FEATURES * TYPES.length];
+		for (int i = 0; i < TYPES.length; i++) {
+			if (counts[i] == 0)
+				throw new IllegalArgumentException("no reading of " + TYPES[i]);
+			for (int f = 0; f < FEATURES; f++)
+				centroids[FEATURES * i + f] = (int) ((sums[FEATURES * i + f] + counts[i] / 2) / counts[i]);
+		}
+		return new BlockClassifier(centroids);
+	}
+
+	private static int indexOf(BlockType type) {
+		for (int i = 0; i < TYPES.length; i++)
+			if (TYPES[i] == type)
+				return i;
+		return -1;
+	}
+}
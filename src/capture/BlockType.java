@@ -0,0 +1,41 @@
+package capture;
+
+/**
+ * The <code>BlockType</code> enum lists the blocks the robot can find in the arena, numbered
+ * like the flag colors of the transmission. <code>UNKNOWN</code> is the block that could not
+ * be recognized.
+ *
+ * @see BlockClassifier
+ * @see Detection
+ *
+ * @author Stefan Ti
+ */
+public enum BlockType {
+	UNKNOWN(0, "unknown"),
+	LIGHT_BLUE(1, "light blue"),
+	RED(2, "red"),
+	YELLOW(3, "yellow"),
+	WHITE(4, "white"),
+	DARK_BLUE(5, "dark blue"),
+	WOOD(6, "Wood Block");
+
+	private int number;
+	private String name;
+
+	private BlockType(int number, String name) {
+		this.number = number;
+		this.name = name;
+	}
+
+	/**
+	 * Returns the number of the block type, 0 for <code>UNKNOWN</code>
+	 * @return the <code>int</code> number, as used for the flag color
+	 */
+	public int getNumber() {
+		return number;
+	}
+
+	public String toString() {
+		return name;
+	}
+}
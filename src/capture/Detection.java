@@ -1,9 +1,8 @@
 package capture;
 
-import lejos.nxt.ColorSensor;
-import lejos.nxt.UltrasonicSensor;
-import lejos.nxt.comm.RConsole;
-import lejos.util.Delay;
+import hardware.Clock;
+import hardware.ColorInput;
+import hardware.RangeInput;
 
 /**
  * The <code>Detection</code> class is used to manage the detection of all
@@ -23,11 +22,21 @@ import lejos.util.Delay;
  * 
  */
 public class Detection {
+	// the time between two readings of the color sensor, in ms
+	private static final int COLOR_DELAY = 20;
+	// the time between two looks for a new sample of the sampler, in ms
+	private static final int SAMPLE_DELAY = 10;
 
-	private ColorSensor colorSensor;
-	private UltrasonicSensor usRight;
-	private UltrasonicSensor usLeft;
+	private ColorInput colorSensor;
+	private RangeInput usRight;
+	private RangeInput usLeft;
+	private RangeSource sampler;
+	private UltrasonicPoller ranges;
+	private Clock clock;
 	private int MAX_DISTANCE;
+	private BlockClassifier classifier = BlockClassifier.getDefault();
+	private SequentialClassifier sequence = new SequentialClassifier(classifier);
+	private int[] rgb = new int[3];
 	private int[] pollingRight = new int[10];
 	private int[] pollingLeft = new int[10];
 	private int countLeft = 0, countRight = 0;
@@ -47,13 +56,16 @@ public class Detection {
 	 *            The right ultrasonic sensor used for the robot to determine the
 	 *            distance from the object
 	 * @param MAX_DISTANCE the maximum distance for the distance detection       
+	 * @param clock
+	 *            The <code>Clock</code> of the robot, used to wait between readings
 	 */
 
-	public Detection(ColorSensor colorSensor, UltrasonicSensor usRight,
-			UltrasonicSensor usLeft, int MAX_DISTANCE) {
+	public Detection(ColorInput colorSensor, RangeInput usRight,
+			RangeInput usLeft, int MAX_DISTANCE, Clock clock) {
 		this.colorSensor = colorSensor;
 		this.usRight = usRight;
 		this.usLeft = usLeft;
+		this.clock = clock;
 		this.MAX_DISTANCE = MAX_DISTANCE;
 
 		for (int i = 0; i < 10; i++) {
@@ -71,11 +83,9 @@ public class Detection {
 	 */
 	public int getRed() {
 
-		final ColorSensor.Color color = colorSensor.getColor();
+		colorSensor.readColor(rgb);
 
-		RConsole.println(Integer.toString(color.getRed()) + " Red\n");
-
-		return color.getRed();
+		return rgb[0];
 	}
 
 	/**
@@ -87,11 +97,9 @@ public class Detection {
 	 */
 	public int getGreen() {
 
-		final ColorSensor.Color color = colorSensor.getColor();
-
-		RConsole.println(Integer.toString(color.getGreen()) + " Green\n");
+		colorSensor.readColor(rgb);
 
-		return color.getGreen();
+		return rgb[1];
 	}
 
 	/**
@@ -103,32 +111,36 @@ public class Detection {
 	 */
 	public int getBlue() {
 
-		final ColorSensor.Color color = colorSensor.getColor();
-
-		RConsole.println(Integer.toString(color.getBlue()) + " Blue\n");
+		colorSensor.readColor(rgb);
 
-		return color.getBlue();
+		return rgb[2];
 	}
 
 	/**
-	 * Returns the <code>int</code> average distance read by the left ultrasonic sensor after 10 pings
+	 * Returns the <code>int</code> average distance read by the left ultrasonic sensor after 10 pings,
+	 * or at once its filtered distance when a <code>RangeSource</code> is running
 	 * 
 	 * @return the <code>int</code> average distance read by the left ultrasonic sensor after 10 pings
 	 */
 	public int getLeftDistance() {
+		if (isSampled())
+			return ranges.getLeftWindowedDistance();
 		int average = getAverageDistance(usLeft, 10);
-		Delay.msDelay(100);
+		clock.delay(100);
 		return average;
 	}
 
 	/**
-	 * Returns the <code>int</code> average distance read by the right ultrasonic sensor after 10 pings
+	 * Returns the <code>int</code> average distance read by the right ultrasonic sensor after 10 pings,
+	 * or at once its filtered distance when a <code>RangeSource</code> is running
 	 * 
 	 * @return the <code>int</code> average distance read by the right ultrasonic sensor after 10 pings
 	 */
 	public int getRightDistance() {
+		if (isSampled())
+			return ranges.getRightWindowedDistance();
 		int average = getAverageDistance(usRight, 10);
-		Delay.msDelay(100);
+		clock.delay(100);
 		return average;
 	}
 	/**
@@ -137,6 +149,8 @@ public class Detection {
 	 * @return the <code>int</code> distance read by the left ultrasonic sensor from one ping
 	 */
 	public int getLeftDistanceOnce() {
+		if (isSampled())
+			return sampler.getDistance(RangeSource.LEFT);
 		return usLeft.getDistance();
 	}
 	/**
@@ -145,18 +159,80 @@ public class Detection {
 	 * @return the <code>int</code> distance read by the right ultrasonic sensor from one ping
 	 */
 	public int getRightDistanceOnce() {
+		if (isSampled())
+			return sampler.getDistance(RangeSource.RIGHT);
 		return usRight.getDistance();
 	}
 
+	/**
+	 * Sets the sampler that pings the ultrasonic sensors in turn. While it runs the distances
+	 * are its samples, filtered as they come, and the sensors are not read directly, which would
+	 * put them back in the mode of the sampler's last ping.
+	 * 
+	 * @param sampler the <code>RangeSource</code> of both sensors, for instance a
+	 *            <code>RangeSampler</code>, <code>null</code> to read the sensors directly
+	 */
+	public void setSampler(RangeSource sampler) {
+		if (this.sampler != null)
+			this.sampler.removeListener(ranges);
+		this.sampler = sampler;
+		ranges = null;
+		if (sampler != null) {
+			ranges = new UltrasonicPoller(sampler, MAX_DISTANCE);
+			sampler.addListener(ranges);
+		}
+	}
+
+	/**
+	 * Forgets the samples taken so far and waits until both sensors have been sampled a number
+	 * of times, for instance after a turn, so that the distances are only of what is in front
+	 * now. It returns at once when no <code>RangeSource</code> is running.
+	 * 
+	 * @param samples the <code>int</code> number of new samples of each sensor
+	 * @param timeout the <code>long</code> longest wait in ms
+	 * @return <code>true</code> if the samples came in time
+	 */
+	public boolean waitForFreshSamples(int samples, long timeout) {
+		if (!isSampled())
+			return false;
+		ranges.initializePolls();
+		long end = clock.currentTimeMillis() + timeout;
+		while (ranges.getSampleCount(RangeSource.LEFT) < samples
+				|| ranges.getSampleCount(RangeSource.RIGHT) < samples) {
+			if (clock.currentTimeMillis() >= end || !sampler.isRunning())
+				return false;
+			clock.delay(SAMPLE_DELAY);
+		}
+		return true;
+	}
+
+	/**
+	 * Returns how old the last sample of the distances is, the time since its ping
+	 * 
+	 * @return the <code>long</code> age in ms, -1 when no <code>RangeSource</code> is running or
+	 *         nothing was sampled yet
+	 */
+	public long getSampleAge() {
+		if (!isSampled()
+				|| sampler.getSampleCount(RangeSource.LEFT) + sampler.getSampleCount(RangeSource.RIGHT) == 0)
+			return -1;
+		return clock.currentTimeMillis() - ranges.getSampleTime();
+	}
+
+	// whether the distances come from the sampler
+	private boolean isSampled() {
+		return sampler != null && sampler.isRunning();
+	}
+
 	/**
 	 * Returns the <code>int</code> average distance read by the ultrasonic sensor after n readings
 	 * 
-	 * @param us the <code>UltrasonicSensor</code> that will be used to get the readings
+	 * @param us the <code>RangeInput</code> that will be used to get the readings
 	 * @param n the <code> int </code> number of readings in the average
 	 * 
 	 * @return the <code>int</code> average distance read by the ultrasonic sensor after n readings
 	 */
-	public int getAverageDistance(UltrasonicSensor us, int n) {
+	public int getAverageDistance(RangeInput us, int n) {
 		int sum = 0;
 		for(int i = 0; i < n; i++){
 			sum += us.getDistance();
@@ -186,37 +262,27 @@ public class Detection {
 	}
 
 	/**
-	 * Method that calculates the block type depending on the color of the
-	 * object read by the color sensor.
+	 * Sets the classifier that gives the type of a block from a reading of the color sensor,
+	 * for instance one trained on readings of the blocks of the day.
 	 * 
-	 * @return the <code>String</code> name of the type of block that is
-	 *         currently in front of the sensors
+	 * @param classifier the <code>BlockClassifier</code> to use
 	 */
-	public String getBlockType() {
-
-		String s;
-
-		// Get the RGB values and set them as ints.
-		int red = getRed();
-		int green = getGreen();
-		int blue = getBlue();
-
-		// Set the string s to different colored blocks depending on the values
-		// of red, green and blue.
-		if (red > 2.5 * blue && red > 2.5 * green)
-			s = "red";
-		else if (red > 2 * blue && green > 2 * blue)
-			s = "yellow";
-		else if (blue > 1.8 * red)
-			s = "dark blue";
-		else if (red > 1.4 * green && red > 1.4 * blue)
-			s = "Wood Block";
-		else if (red > 1.1 * blue)
-			s = "white";
-		else
-			s = "light blue";
+	public void setClassifier(BlockClassifier classifier) {
+		this.classifier = classifier;
+		sequence = new SequentialClassifier(classifier);
+	}
 
-		return s;
+	/**
+	 * Method that calculates the block type depending on the color of the
+	 * object read by the color sensor. The three components come from a single
+	 * reading, which is given to the <code>BlockClassifier</code>.
+	 * 
+	 * @return the <code>BlockType</code> of the block that is currently in front
+	 *         of the sensors
+	 */
+	public BlockType getBlockType() {
+		colorSensor.readColor(rgb);
+		return classifier.classify(rgb);
 	}
 
 	/**
@@ -225,22 +291,45 @@ public class Detection {
 	 * @return the <code>int</code> number that represents the block
 	 */
 	public int getBlockNumber() {
+		return getBlockType().getNumber();
+	}
 
-		String s;
-		s = getBlockType();
-
-		if (s.equals("light blue"))
-			return 1;
-		else if (s.equals("red"))
-			return 2;
-		else if (s.equals("yellow"))
-			return 3;
-		else if (s.equals("white"))
-			return 4;
-		else if (s.equals("dark blue"))
-			return 5;
-		else if (s.equals("Wood Block"))
-			return 6;
-		return 0;
+	/**
+	 * Method that reads the color sensor until the type of the block is known with enough
+	 * confidence, or a number of readings have been taken. A block whose color is clear is
+	 * decided in one or two readings, one between two colors gets more of them.
+	 * 
+	 * @param confidence the <code>double</code> probability of the most likely type at which
+	 *            the readings stop
+	 * @param maxSamples the <code>int</code> largest number of readings
+	 * @return the most likely <code>BlockType</code> of the block in front of the sensors, whose
+	 *         probability <code>getConfidence</code> returns
+	 */
+	public BlockType getBlockType(double confidence, int maxSamples) {
+		sequence.reset();
+		while (true) {
+			colorSensor.readColor(rgb);
+			if (sequence.add(rgb) >= confidence || sequence.getSamples() >= maxSamples)
+				return sequence.getType();
+			clock.delay(COLOR_DELAY);
+		}
+	}
+
+	/**
+	 * Returns the probability of the type given by the last <code>getBlockType(double, int)</code>
+	 * 
+	 * @return the <code>double</code> confidence, between 0 and 1
+	 */
+	public double getConfidence() {
+		return sequence.getConfidence();
+	}
+
+	/**
+	 * Returns the number of readings taken by the last <code>getBlockType(double, int)</code>
+	 * 
+	 * @return the <code>int</code> number of readings
+	 */
+	public int getColorSamples() {
+		return sequence.getSamples();
 	}
 }
@@ -1,13 +1,13 @@
 package capture;
 
+import traveling.Motion;
 import traveling.Navigation;
 import traveling.Odometer;
-import lejos.nxt.ColorSensor;
-import lejos.nxt.LCD;
-import lejos.nxt.Sound;
-import lejos.nxt.UltrasonicSensor;
-import lejos.nxt.remote.RemoteMotor;
-import lejos.util.Delay;
+import hardware.Clock;
+import hardware.ColorInput;
+import hardware.Feedback;
+import hardware.RangeInput;
+import hardware.RegulatedMotor;
 
 /**
  * The <code>FlagCapturer</code> class is used to navigate the robot to a
@@ -37,10 +37,10 @@ public class FlagCapturer {
 	private Navigation navigation;
 	private Detection detection;
 	private Odometer odometer;
-	private static double ver = 0;
-	private static double hor = 0;
+	private double ver = 0;
+	private double hor = 0;
 	private int MAX_DISTANCE = 20;
-	private RemoteMotor grabberRight, grabberLeft;
+	private RegulatedMotor grabberRight, grabberLeft;
 	private boolean sawNothing = false;
 	private final double TILE_LENGTH = 30.3;
 	private double XFlagLowerLeft, YFlagLowerLeft;
@@ -48,53 +48,73 @@ public class FlagCapturer {
 	private double XDropOff, YDropOff;
 	private double XFlagMid, YFlagMid;
 	private final int LIGHT_DISTANCE = 7, MAX_TRAVEL_DISTANCE = 40,
-			INTERVAL = 15;
+			INTERVAL = 15, SCAN_STEP = 7;
+	private int interval = INTERVAL, scanStep = SCAN_STEP;
 	private int MAX_OBJECT_DISTANCE = 20;
 	private final int OFFSET_INZONE = 7, DISTANCE_TO_TURN = 9;
 	private PastPositions pastPos;
 	private UltrasonicPoller usPoller;
-	private UltrasonicSensor usRight, usLeft;
+	private RangeSource sampler;
+	private RangeInput usRight, usLeft;
+	private Clock clock;
+	private Feedback feedback;
 
 	private double avoidZoneLowerX, avoidZoneLowerY, avoidZoneUpperX,
 	avoidZoneUpperY;
 	private final double EXTRA_ROBOT_SIZE = 5.0;
+	// the probability at which the color of a block is decided, and the most readings it gets
+	private final double COLOR_CONFIDENCE = 0.95;
+	private final int MAX_COLOR_SAMPLES = 10;
+	// the new samples of each ultrasonic sensor taken after every step of the scan
+	private final int SCAN_SAMPLES = 2, SCAN_SAMPLE_TIMEOUT = 500;
+	// the speed of the drive towards a block, and the time between two looks at the distances
+	private final int APPROACH_SPEED = 150, APPROACH_POLL = 10;
+	// how much further than where it was seen a block that was left in place is still taken for it
+	private final int SKIP_MARGIN = 5;
+	// the most time a look at the path waits for the odometer to move the robot
+	private final int POSE_TIMEOUT = 100;
 
 	/**
 	 * The constructor for the <code>FlagCapturer</code> class initializes the
 	 * odometer and navigation as well as creates an object of type
 	 * <code>Detection</code>. It also takes in and initializes the
-	 * <code>Motor</code> for both grabber arms. It sets a default speed of 70
+	 * <code>RegulatedMotor</code> for both grabber arms. It sets a default speed of 70
 	 * and current rotation angle to 0. Finally it takes in as parameter, the
 	 * ultrasonic sensor's (both left and right).
 	 * 
-	 * @param colorSensor The <code>ColorSensor</code> that is used by the
+	 * @param colorSensor The <code>ColorInput</code> that is used by the
 	 * <code>Detection</code> class
-	 * @param usRight The <code>UltrasonicSensor</code> that is used by the 
+	 * @param usRight The <code>RangeInput</code> that is used by the 
 	 * <code>Detection</code> class
-	 * @param usLeft The <code>UltrasonicSensor</code> that is used by the
+	 * @param usLeft The <code>RangeInput</code> that is used by the
 	 * <code>Detection</code> class
 	 * @param odometer The <code>Odometer</code> that is used to keep track of the
 	 * position of the robot
-	 * @param grabberLeft The left <code>RemoteMotor</code> that is used for grabbing
+	 * @param grabberLeft The left <code>RegulatedMotor</code> that is used for grabbing
 	 * the blocks
-	 * @param grabberRight The right <code>RemoteMotor</code> that is used for grabbing
+	 * @param grabberRight The right <code>RegulatedMotor</code> that is used for grabbing
 	 * the blocks
 	 */
-	public FlagCapturer(ColorSensor colorSensor, UltrasonicSensor usRight,
-			UltrasonicSensor usLeft, Odometer odometer,
-			RemoteMotor grabberRight, RemoteMotor grabberLeft) {
+	public FlagCapturer(ColorInput colorSensor, RangeInput usRight,
+			RangeInput usLeft, Odometer odometer,
+			RegulatedMotor grabberRight, RegulatedMotor grabberLeft) {
 
 		this.odometer = odometer;
 		this.navigation = odometer.getNavigation();
+		this.clock = odometer.getRobot().getClock();
+		this.feedback = odometer.getRobot().getFeedback();
 
-		detection = new Detection(colorSensor, usRight, usLeft, MAX_DISTANCE);
-		usPoller = new UltrasonicPoller(usLeft, usRight, MAX_DISTANCE);
+		// the sensors are pinged in turn, for the poller and the detection alike
+		sampler = new RangeSampler(usLeft, usRight, odometer.getRobot().getScheduler());
+		detection = new Detection(colorSensor, usRight, usLeft, MAX_DISTANCE, clock);
+		detection.setSampler(sampler);
+		usPoller = new UltrasonicPoller(sampler, MAX_DISTANCE);
 
 		this.usRight = usRight;
 		this.usLeft = usLeft;
 
-		grabberRight.rotateTo(0);
-		grabberLeft.rotateTo(0);
+		grabberRight.rotateTo(0, false);
+		grabberLeft.rotateTo(0, false);
 		grabberRight.setSpeed(120);
 		grabberLeft.setSpeed(120);
 
@@ -104,6 +124,49 @@ public class FlagCapturer {
 
 	}
 
+	/**
+	 * Sets the source of the ultrasonic distances of the poller and the detection, in place of
+	 * the sensors pinged in turn from this brick, for instance the distances the slave brick
+	 * samples and filters itself. It is set before the flag is captured.
+	 * 
+	 * @param source The <code>RangeSource</code> of both ultrasonic sensors
+	 */
+	public void setRangeSource(RangeSource source) {
+		sampler.stop();
+		sampler = source;
+		detection.setSampler(sampler);
+		usPoller = new UltrasonicPoller(sampler, MAX_DISTANCE);
+	}
+
+	/**
+	 * Returns the distance under which the poller sees a wall while the robot travels.
+	 * 
+	 * @return The <code>int</code> distance in cm
+	 */
+	public int getWallDistance() {
+		return MAX_DISTANCE;
+	}
+
+	/**
+	 * Sets the angle the robot turns by between two ultrasonic readings while
+	 * it scans the flag zone, in place of the default of 7 degrees.
+	 * 
+	 * @param scanStep The <code>int</code> step of the scan in degrees
+	 */
+	public void setScanStep(int scanStep) {
+		this.scanStep = scanStep;
+	}
+
+	/**
+	 * Sets half of the distance the robot moves down or to the left to get
+	 * around an obstacle on its path, in place of the default of 15 cm.
+	 * 
+	 * @param interval The <code>int</code> distance in cm
+	 */
+	public void setInterval(int interval) {
+		this.interval = interval;
+	}
+
 	/**
 	 * This method takes in the coordinates of the area of the flag and
 	 * coordinates of the area where the robot needs to navigate after grabbing
@@ -173,7 +236,7 @@ public class FlagCapturer {
 		reOrient();
 
 		//Reinitialize the poller and move towards the final drop off zone
-		usPoller = new UltrasonicPoller(usLeft, usRight, MAX_DISTANCE);
+		usPoller = new UltrasonicPoller(sampler, MAX_DISTANCE);
 		usPoller.start();
 
 		pathTo(XDropOff, YDropOff);
@@ -182,6 +245,8 @@ public class FlagCapturer {
 		// Drop off the flag
 		navigation.turnTo(225, true);
 		dropFlag();
+		usPoller.stop();
+		sampler.stop();
 
 	}
 
@@ -239,11 +304,11 @@ public class FlagCapturer {
 					break;
 				case 2:
 					hor = odometer.getY();
-					ver -= 2 * INTERVAL;
+					ver -= 2 * interval;
 					break;
 				case 3:
 					ver = odometer.getX();
-					hor -= 2 * INTERVAL;
+					hor -= 2 * interval;
 					break;
 				}
 
@@ -270,15 +335,13 @@ public class FlagCapturer {
 				/* If you are moving down, finish the travel to
 				 *
 				 */
-				while (direction == 2 && odometer.getX() > ver + 1) {
-
-				}
+				if (direction == 2)
+					odometer.waitUntilCrossing(Odometer.X, ver + 1, -1, 0);
 				/* If you are moving left, finish the travel to
 				 *
 				 */
-				while (direction == 3 && odometer.getY() > hor + 1) {
-
-				}
+				if (direction == 3)
+					odometer.waitUntilCrossing(Odometer.Y, hor + 1, -1, 0);
 
 				//If you were moving down start moving right again
 				if (direction == 2) {
@@ -311,6 +374,9 @@ public class FlagCapturer {
 					navigation.turnTo(0, true);
 					direction = 0;
 				}
+
+				// Look again once the robot has moved
+				odometer.waitForUpdate(POSE_TIMEOUT);
 			}
 
 			//Stop the motors because you saw a wall
@@ -327,12 +393,7 @@ public class FlagCapturer {
 
 			if(isInOtherTeamDropOff()){
 				navigation.goForwardSpeed(150);
-				try {
-					Thread.sleep(1000);
-				} catch (InterruptedException e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
-				}
+				clock.delay(1000);
 				navigation.goForwardSpeed(0);
 			}
 
@@ -351,12 +412,7 @@ public class FlagCapturer {
 				}
 				usPoller.initializePolls();
 				usPoller.setIsWall(false);
-				try {
-					Thread.sleep(1000);
-				} catch (InterruptedException e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
-				}
+				clock.delay(1000);
 
 				/*
 				 * If there is something in your way in this direction as well,
@@ -374,10 +430,7 @@ public class FlagCapturer {
 					}
 					navigation.stopMotors();
 					navigation.travelTo(ver, hor, true);
-					while (distanceTravelled(odometer.getX(), odometer.getY(),
-							ver, hor) >= 2) {
-
-					}
+					odometer.waitUntilWithin(ver, hor, 2, 0);
 				}
 			}
 			/*
@@ -399,12 +452,7 @@ public class FlagCapturer {
 				 */
 				usPoller.initializePolls();
 				usPoller.setIsWall(false);
-				try {
-					Thread.sleep(1000);
-				} catch (InterruptedException e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
-				}
+				clock.delay(1000);
 
 				/*
 				 * If there is something in your way in this direction as well,
@@ -421,11 +469,7 @@ public class FlagCapturer {
 					}
 					navigation.stopMotors();
 					navigation.travelTo(ver, hor, true);
-					while (distanceTravelled(odometer.getX(), odometer.getY(),
-							ver, hor) >= 2) {
-
-					}
-					;
+					odometer.waitUntilWithin(ver, hor, 2, 0);
 				}
 			}
 
@@ -526,8 +570,9 @@ public class FlagCapturer {
 
 	/*
 	 * This method will scan from a specified location and from a specified
-	 * starting and final angle. On it's way, it will grab blocks that are not
-	 * the right color and move them outside the flag zone. If it finds the
+	 * starting and final angle. On it's way, it will grab blocks that may not
+	 * be the right color and move them outside the flag zone, and leave the
+	 * ones that are surely of another color. If it finds the
 	 * right colored block in the specified angle it returns true, else returns
 	 * false.
 	 */
@@ -537,8 +582,10 @@ public class FlagCapturer {
 		boolean flagIsCaptured = false;
 		double XBlock, YBlock;
 		boolean fail = false;
-		usRight.continuous();
-		usLeft.continuous();
+		// the distance of the last block seen, and up to which the scan still sees one it left
+		// in place, -1 while there is none
+		int blockDistance = 0, skipDistance = -1;
+		sampler.start();
 		navigation.travelTo(XSearchStart, YSearchStart, false);
 
 		/*
@@ -549,16 +596,26 @@ public class FlagCapturer {
 			/*
 			 * Increase the angle in small intervals until the final angle is
 			 * reached or the ultrasonic sensor scans something with both
-			 * sensor.
+			 * sensor. A block that was left in place is scanned past, until
+			 * one of the sensors sees beyond it, so that it is not approached
+			 * again and what lies behind it can still be found.
 			 */
+			int leftDistance, rightDistance;
 			do {
-				currentAngle += 7;
+				currentAngle += scanStep;
 				navigation.turnTo(currentAngle, true);
-				LCD.drawString("" + detection.getLeftDistance(), 0, 3);
-				LCD.drawString("" + detection.getRightDistance(), 0, 4);
+				// only what the sensors see at the new angle
+				detection.waitForFreshSamples(SCAN_SAMPLES, SCAN_SAMPLE_TIMEOUT);
+				leftDistance = detection.getLeftDistance();
+				rightDistance = detection.getRightDistance();
+				feedback.drawInt(leftDistance, 0, 3);
+				feedback.drawInt(rightDistance, 0, 4);
+				if (leftDistance > skipDistance || rightDistance > skipDistance)
+					skipDistance = -1;
 			} while (currentAngle <= endAngle
-					&& ((detection.getLeftDistance() > MAX_OBJECT_DISTANCE) || (detection
-							.getRightDistance() > MAX_OBJECT_DISTANCE)));
+					&& ((leftDistance > MAX_OBJECT_DISTANCE) || (rightDistance > MAX_OBJECT_DISTANCE)
+							|| skipDistance >= 0));
+			blockDistance = Math.max(leftDistance, rightDistance);
 
 			// If the final angle was reached, exit the loop
 			if (currentAngle >= endAngle) {
@@ -576,51 +633,54 @@ public class FlagCapturer {
 			 * Move forward towards to block until you are close enough to scan
 			 * it. If you moved a big distance and still did not see any block,
 			 * the angle was bad so return to the scanning coordinates and start
-			 * scanning again.
+			 * scanning again. The drive is queued, so the distances are read
+			 * while the robot moves.
 			 */
+			double approachDistance = Math.max(0, MAX_TRAVEL_DISTANCE - distanceTravelled(XSearchStart,
+					YSearchStart, odometer.getX(), odometer.getY()));
+			Motion approach = navigation.getMotions().drive(approachDistance, APPROACH_SPEED);
 			while (detection.getLeftDistanceOnce() > LIGHT_DISTANCE
 					&& detection.getRightDistanceOnce() > LIGHT_DISTANCE) {
 
-				navigation.goForwardSpeed(-150);
-
-				if (distanceTravelled(XSearchStart, YSearchStart,
-						odometer.getX(), odometer.getY()) > MAX_TRAVEL_DISTANCE) {
+				if (approach.isDone()) {
 					fail = true;
 					break;
 				}
+				clock.delay(APPROACH_POLL);
 			}
-			try {
-				Thread.sleep(500);
-			} catch (InterruptedException e2) {
-				// TODO Auto-generated catch block
-				e2.printStackTrace();
-			}
-			navigation.setSpeeds(0, 0);
+			clock.delay(500);
+			approach.cancel();
 			/*
 			 * While he robot did not fail in finding a block check the color
 			 * and get the current x and y of the block to return to later
 			 */
 			if (!fail && !flagIsCaptured) {
 
-				int recordedColor = detection.getBlockNumber();
+				int recordedColor = detection.getBlockType(COLOR_CONFIDENCE, MAX_COLOR_SAMPLES).getNumber();
+				boolean sureOfColor = detection.getConfidence() >= COLOR_CONFIDENCE;
 				XBlock = odometer.getX();
 				YBlock = odometer.getY();
 
 				navigation.goForwardSpeed(150);
-				try {
-					Thread.sleep(500);
-				} catch (InterruptedException e1) {
-					// TODO Auto-generated catch block
-					e1.printStackTrace();
-				}
+				clock.delay(500);
 
 				// Back up until the robot has enough distance to turn
 				while (detection.getLeftDistance() < DISTANCE_TO_TURN
 						|| detection.getRightDistance() < DISTANCE_TO_TURN) {
-					navigation.goForwardSpeed(150);
+					clock.delay(APPROACH_POLL);
 				}
 				navigation.setSpeeds(0, 0);
 
+				/*
+				 * A block that is surely not the flag is left where it is, carrying
+				 * it away is only worth it when its color could be the flag's.
+				 */
+				if (recordedColor != finalColor && sureOfColor) {
+					skipDistance = blockDistance + SKIP_MARGIN;
+					navigation.travelTo(XSearchStart, YSearchStart, false);
+					continue;
+				}
+
 				// Turn the robot around
 				navigation.turnTo(180 + odometer.getAng(), true);
 
@@ -644,7 +704,7 @@ public class FlagCapturer {
 					navigation.turnTo(0, true);
 				}
 				/*
-				 * If the flag was not the correct color, then grab the flag and
+				 * If the flag may not be the correct color, then grab the flag and
 				 * bring it to the bottom center of the safe zone and drop it
 				 * off there. After move the coordinates you were searching at
 				 * and continue the search.
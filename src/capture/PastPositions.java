@@ -1,23 +1,26 @@
 package capture;
 
-import java.util.Stack;
+import java.util.EmptyStackException;
 
 /** The <code>PastPositions</code> class is used to keep track of
- * the past positions of the robot. It contains two <code>Stack</code>s
+ * the past positions of the robot. It contains two stacks
  * to keep past positions.
+ *
+ * The stacks are arrays allocated once, so a position is kept without boxing it. When they are
+ * full the oldest position is dropped, as only the latest safe positions are ever gone back to.
  */
 public class PastPositions {
+	private static final int CAPACITY = 64;
 
-
-	Stack<Double> XPositions;
-	Stack<Double> YPositions;
+	private Positions XPositions;
+	private Positions YPositions;
 
 	/** A constructor that initliazes teh stack that keeps the past positions.
 	 *
 	 */
 	public PastPositions(){
-		XPositions = new Stack<Double>();
-		YPositions = new Stack<Double>();
+		XPositions = new Positions(CAPACITY);
+		YPositions = new Positions(CAPACITY);
 	}
 
 	/** This method takes in two integers which are the x and y positions
@@ -32,17 +35,45 @@ public class PastPositions {
 	}
 	/** This method returns and removes the latest safe x position
 	 *
-	 * @return the <code>int</code> of the latest safe position in x
+	 * @return the <code>double</code> of the latest safe position in x
+	 * @throws EmptyStackException if there is no position left
 	 */
 	public double getPointX(){
 		return XPositions.pop();
 	}
 	/** This method returns and removes the latest safe y position
 	 *
-	 * @return the <code>int</code> of the latest safe position in y
+	 * @return the <code>double</code> of the latest safe position in y
+	 * @throws EmptyStackException if there is no position left
 	 */
 	public double getPointY(){
 		return YPositions.pop();
 	}
 
+	/*
+	 * A stack of coordinates in a ring, which overwrites its oldest coordinate when it is full.
+	 */
+	private static class Positions {
+		private double [] values;
+		private int top = 0, size = 0;
+
+		Positions(int capacity) {
+			values = new double [capacity];
+		}
+
+		void push(double value) {
+			values[top] = value;
+			top = (top + 1) % values.length;
+			if (size < values.length)
+				size++;
+		}
+
+		double pop() {
+			if (size == 0)
+				throw new EmptyStackException();
+			top = (top - 1 + values.length) % values.length;
+			size--;
+			return values[top];
+		}
+	}
 }
@@ -0,0 +1,113 @@
+package capture;
+
+/**
+ * The <code>RangeFilter</code> smooths the distances of one ultrasonic sensor in two stages.
+ *
+ * Every distance first goes through a median of the last few readings, which drops a lone
+ * 255 of a lost echo or a short reading of the ping of the other sensor, and the median is then
+ * averaged over a window of readings. The sum of the window is kept as readings come and go, so
+ * a reading costs the same whatever the size of the window.
+ *
+ * After a reset the window is empty and the average is over the readings since, so a wall that
+ * was seen after a turn is reported after a few readings instead of when the window is full.
+ * Until the first reading the distance is <code>NO_ECHO</code>.
+ *
+ * @see UltrasonicPoller
+ *
+ * @author Stefan Ti
+ */
+public class RangeFilter {
+	/**
+	 * The distance of a sensor that gets no echo.
+	 */
+	public static final int NO_ECHO = 255;
+	/**
+	 * The default number of readings of the median, which drops one wrong reading in a row.
+	 */
+	public static final int DEFAULT_MEDIAN = 3;
+
+	private int [] window;
+	private int [] recent;
+	private int [] sorted;
+	private int windowNext, windowCount, sum;
+	private int recentNext, recentCount;
+
+	/**
+	 * The constructor takes in the size of the window and of the median.
+	 *
+	 * @param windowSize the <code>int</code> number of medians averaged
+	 * @param medianSize the <code>int</code> number of readings of a median, 1 for none
+	 */
+	public RangeFilter(int windowSize, int medianSize) {
+		if (windowSize < 1 || medianSize < 1)
+			throw new IllegalArgumentException("the window and the median need a reading");
+		window = new int [windowSize];
+		recent = new int [medianSize];
+		sorted = new int [medianSize];
+	}
+
+	/**
+	 * The constructor takes in the size of the window, with the default median.
+	 *
+	 * @param windowSize the <code>int</code> number of medians averaged
+	 */
+	public RangeFilter(int windowSize) {
+		this(windowSize, DEFAULT_MEDIAN);
+	}
+
+	/**
+	 * Forgets every reading.
+	 */
+	public void reset() {
+		windowNext = windowCount = sum = 0;
+		recentNext = recentCount = 0;
+	}
+
+	/**
+	 * Adds a reading of the sensor.
+	 *
+	 * @param distance the <code>int</code> distance read, <code>NO_ECHO</code> if there was no echo
+	 * @return the <code>int</code> filtered distance after the reading
+	 */
+	public int add(int distance) {
+		recent[recentNext] = distance;
+		recentNext = (recentNext + 1) % recent.length;
+		if (recentCount < recent.length)
+			recentCount++;
+		int median = median();
+
+		if (windowCount == window.length)
+			sum -= window[windowNext];
+		else
+			windowCount++;
+		window[windowNext] = median;
+		sum += median;
+		windowNext = (windowNext + 1) % window.length;
+		return getDistance();
+	}
+
+	/**
+	 * Returns the average of the medians in the window
+	 * @return the <code>int</code> filtered distance, <code>NO_ECHO</code> before the first reading
+	 */
+	public int getDistance() {
+		return windowCount == 0 ? NO_ECHO : sum / windowCount;
+	}
+
+	/*
+	 * The median of the recent readings by insertion sort, the farther of the two middle ones
+	 * when there is an even number of them so that a short glitch is not taken for a wall.
+	 */
+	private int median() {
+		for (int i = 0; i < recentCount; i++) {
+			int value = recent[i];
+			int j = i;
+			while (j > 0 && sorted[j - 1] > value) {
+				sorted[j] = sorted[j - 1];
+				j--;
+			}
+			sorted[j] = value;
+		}
+		return sorted[recentCount / 2];
+	}
+}
@@ -0,0 +1,189 @@
+package capture;
+
+import hardware.RangeInput;
+import scheduler.PeriodicTask;
+import scheduler.Scheduler;
+
+/**
+ * The <code>RangeSampler</code> task pings the two ultrasonic sensors one after the other, so
+ * that a sensor never hears the ping of the other one.
+ *
+ * In continuous mode both sensors ping on their own and, looking the same way, often take the
+ * echo of the other sensor for their own. Here a sensor only pings when it is asked, and every
+ * period the echo of the last ping is read and the other sensor pings. A period is the time a
+ * ping takes to be read, by when its sound has died out, so each sensor gives a clean sample
+ * every two periods.
+ *
+ * Every sample is stamped with the time of its ping, published with a count of the samples of
+ * its sensor, and handed to the listeners, so that the <code>UltrasonicPoller</code> and the
+ * <code>Detection</code> share the same samples instead of reading the sensors each on its own.
+ *
+ * @see RangeSource
+ * @see UltrasonicPoller
+ * @see Detection
+ *
+ * @author Stefan Ti
+ */
+public class RangeSampler implements PeriodicTask, RangeSource {
+	private static final int PING_PERIOD = RangeInput.PING_TIME;
+	private static final int MAX_LISTENERS = 4;
+
+	private RangeInput [] sensors = new RangeInput [2];
+	private Scheduler scheduler;
+	private Listener [] listeners = new Listener [MAX_LISTENERS];
+	private int listenerCount = 0;
+	// the sensor whose ping is in flight, -1 when none is
+	private int pinged = -1;
+	private long pingTime;
+	// the last sample of each sensor, written and read under the lock of the sampler
+	private int [] distances = {RangeInput.NO_ECHO, RangeInput.NO_ECHO};
+	private long [] times = new long [2];
+	private int [] counts = new int [2];
+
+	/**
+	 * The constructor takes in both ultrasonic sensors and the <code>Scheduler</code> it runs on.
+	 *
+	 * @param usLeft the left <code>RangeInput</code>
+	 * @param usRight the right <code>RangeInput</code>
+	 * @param scheduler the <code>Scheduler</code> of the robot
+	 */
+	public RangeSampler(RangeInput usLeft, RangeInput usRight, Scheduler scheduler) {
+		sensors[LEFT] = usLeft;
+		sensors[RIGHT] = usRight;
+		this.scheduler = scheduler;
+	}
+
+	/**
+	 * Reads the echo of the last ping, then pings the other sensor.
+	 * {@inheritDoc}
+	 */
+	public void execute(long release) {
+		int next = LEFT;
+		if (pinged >= 0) {
+			int distance = sensors[pinged].getDistance();
+			synchronized (this) {
+				distances[pinged] = distance;
+				times[pinged] = pingTime;
+				counts[pinged]++;
+			}
+			synchronized (listeners) {
+				for (int i = 0; i < listenerCount; i++)
+					listeners[i].rangeSampled(pinged, distance, pingTime);
+			}
+			next = 1 - pinged;
+		}
+		sensors[next].ping();
+		pinged = next;
+		pingTime = release;
+	}
+
+	/**
+	 * Starts pinging the sensors, unless it is already running. Until it is stopped the sensors
+	 * must not be put back in continuous mode.
+	 */
+	public void start() {
+		if (!scheduler.isRunning(this)) {
+			pinged = -1;
+			scheduler.add("ultrasonic", this, PING_PERIOD);
+		}
+	}
+
+	/**
+	 * Stops pinging the sensors.
+	 */
+	public void stop() {
+		scheduler.remove(this);
+	}
+
+	/**
+	 * Returns whether the sensors are being pinged
+	 * @return <code>true</code> if the sampler is running
+	 */
+	public boolean isRunning() {
+		return scheduler.isRunning(this);
+	}
+
+	/**
+	 * Adds a listener, which is told of every sample from the next one on.
+	 *
+	 * @param listener the <code>Listener</code> to add, if it is not already there
+	 */
+	public void addListener(Listener listener) {
+		synchronized (listeners) {
+			for (int i = 0; i < listenerCount; i++)
+				if (listeners[i] == listener)
+					return;
+			if (listenerCount == listeners.length)
+				throw new IllegalStateException("at most " + MAX_LISTENERS + " listeners");
+			listeners[listenerCount++] = listener;
+		}
+	}
+
+	/**
+	 * Removes a listener. Once this returns it is not told of any more samples.
+	 *
+	 * @param listener the <code>Listener</code> to remove
+	 */
+	public void removeListener(Listener listener) {
+		synchronized (listeners) {
+			for (int i = 0; i < listenerCount; i++) {
+				if (listeners[i] == listener) {
+					listeners[i] = listeners[--listenerCount];
+					listeners[listenerCount] = null;
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the distance of the last sample of a sensor
+	 * @param sensor the <code>int</code> sensor, <code>LEFT</code> or <code>RIGHT</code>
+	 * @return the <code>int</code> distance, <code>NO_ECHO</code> before the first sample
+	 */
+	public synchronized int getDistance(int sensor) {
+		return distances[sensor];
+	}
+
+	/**
+	 * Returns the time of the ping of the last sample of a sensor
+	 * @param sensor the <code>int</code> sensor, <code>LEFT</code> or <code>RIGHT</code>
+	 * @return the <code>long</code> time in ms, 0 before the first sample
+	 */
+	public synchronized long getSampleTime(int sensor) {
+		return times[sensor];
+	}
+
+	/**
+	 * Returns the number of samples of a sensor so far, which tells whether a new one came
+	 * @param sensor the <code>int</code> sensor, <code>LEFT</code> or <code>RIGHT</code>
+	 * @return the <code>int</code> number of samples
+	 */
+	public synchronized int getSampleCount(int sensor) {
+		return counts[sensor];
+	}
+
+	/**
+	 * The samples are the distances of the first echoes, as the sensors read them.
+	 * {@inheritDoc}
+	 */
+	public boolean isFiltered() {
+		return false;
+	}
+
+	/**
+	 * The walls are left to the listeners.
+	 * {@inheritDoc}
+	 */
+	public int getWallDistance() {
+		return -1;
+	}
+
+	/**
+	 * Returns the time between two samples of the same sensor
+	 * @return the <code>int</code> time in ms
+	 */
+	public int getSamplePeriod() {
+		return 2 * PING_PERIOD;
+	}
+}
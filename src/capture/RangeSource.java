@@ -0,0 +1,106 @@
+package capture;
+
+/**
+ * The <code>RangeSource</code> interface is a stream of distances of the two ultrasonic sensors,
+ * which the <code>UltrasonicPoller</code> and the <code>Detection</code> share.
+ *
+ * The <code>RangeSampler</code> pings the sensors from the master brick, the
+ * <code>SlaveRangeSource</code> takes the distances the slave brick filters and pushes.
+ *
+ * @see RangeSampler
+ * @see SlaveRangeSource
+ *
+ * @author Stefan Ti
+ */
+public interface RangeSource {
+	/**
+	 * The index of the left sensor.
+	 */
+	public static final int LEFT = 0;
+	/**
+	 * The index of the right sensor.
+	 */
+	public static final int RIGHT = 1;
+
+	/**
+	 * The <code>Listener</code> interface is told of every sample, on the thread of the source.
+	 */
+	public interface Listener {
+		/**
+		 * A sensor was read.
+		 *
+		 * @param sensor the <code>int</code> sensor, <code>LEFT</code> or <code>RIGHT</code>
+		 * @param distance the <code>int</code> distance, <code>NO_ECHO</code> if there was no echo
+		 * @param time the <code>long</code> time of the sample in ms
+		 */
+		public void rangeSampled(int sensor, int distance, long time);
+
+		/**
+		 * The source decided which sensors see a wall, after the distances of the same sample.
+		 * Only a source that decides the walls itself calls it.
+		 *
+		 * @param walls the <code>int</code> bits of the sensors that see a wall, 1 for the left
+		 * one and 2 for the right one
+		 * @param event <code>true</code> if the walls changed with this sample, which the source
+		 * then tells at once
+		 * @param time the <code>long</code> time of the sample in ms
+		 */
+		public void wallsSeen(int walls, boolean event, long time);
+	}
+
+	/**
+	 * Starts the stream, unless it is already running.
+	 */
+	public void start();
+
+	/**
+	 * Stops the stream.
+	 */
+	public void stop();
+
+	/**
+	 * Returns whether the stream is running
+	 * @return <code>true</code> if samples are coming
+	 */
+	public boolean isRunning();
+
+	/**
+	 * Adds a listener, which is told of every sample from the next one on.
+	 * @param listener the <code>Listener</code> to add, if it is not already there
+	 */
+	public void addListener(Listener listener);
+
+	/**
+	 * Removes a listener. Once this returns it is not told of any more samples.
+	 * @param listener the <code>Listener</code> to remove
+	 */
+	public void removeListener(Listener listener);
+
+	/**
+	 * Returns the distance of the last sample of a sensor
+	 * @param sensor the <code>int</code> sensor, <code>LEFT</code> or <code>RIGHT</code>
+	 * @return the <code>int</code> distance, <code>NO_ECHO</code> before the first sample
+	 */
+	public int getDistance(int sensor);
+
+	/**
+	 * Returns the number of samples of a sensor so far, which tells whether a new one came
+	 * @param sensor the <code>int</code> sensor, <code>LEFT</code> or <code>RIGHT</code>
+	 * @return the <code>int</code> number of samples
+	 */
+	public int getSampleCount(int sensor);
+
+	/**
+	 * Returns whether the samples are already filtered, in which case the listeners need not
+	 * filter them again
+	 * @return <code>true</code> if the samples are filtered
+	 */
+	public boolean isFiltered();
+
+	/**
+	 * Returns the distance under which the source itself decides that a sensor sees a wall, in
+	 * which case it tells the listeners of the walls with every sample
+	 * @return the <code>int</code> distance in cm, -1 if the source does not decide the walls
+	 */
+	public int getWallDistance();
+}
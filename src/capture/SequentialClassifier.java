@@ -0,0 +1,115 @@
+package capture;
+
+/**
+ * The <code>SequentialClassifier</code> weighs several readings of the same block, so that the
+ * color sensor is only read until one type is likely enough.
+ *
+ * Every reading is taken to be the centroid of the type of the block with a gaussian noise of
+ * the same deviation on each feature. The squared distances of the readings to each centroid are
+ * summed, and with every type as likely before the first reading, the probability of a type is
+ * <code>exp(-D / (2 deviation^2))</code>, normalized over the types, <code>D</code> being its sum.
+ * The confidence is the probability of the most likely type. A reading half way between two
+ * centroids leaves both at about one half, a few close to one centroid quickly take it near one.
+ *
+ * Nothing is allocated once it is made, so it can be reset and used again for every block.
+ *
+ * @see BlockClassifier
+ * @see Detection
+ *
+ * @author Stefan Ti
+ */
+public class SequentialClassifier {
+	/**
+	 * The default deviation of one feature of a reading, in the units of the features.
+	 */
+	public static final double DEFAULT_DEVIATION = 25.0;
+
+	private BlockClassifier classifier;
+	private BlockType [] types = BlockClassifier.getTypes();
+	private int [] distances = new int [types.length];
+	private long [] sums = new long [types.length];
+	private double scale;
+	private int samples, best;
+	private double confidence;
+
+	/**
+	 * The constructor takes in the classifier whose centroids the readings are compared to.
+	 *
+	 * @param classifier the <code>BlockClassifier</code> of the centroids
+	 * @param deviation the <code>double</code> deviation of one feature of a reading
+	 */
+	public SequentialClassifier(BlockClassifier classifier, double deviation) {
+		if (deviation <= 0)
+			throw new IllegalArgumentException("the deviation must be positive");
+		this.classifier = classifier;
+		scale = 1.0 / (2.0 * deviation * deviation);
+	}
+
+	/**
+	 * The constructor takes in the classifier, with the default deviation.
+	 *
+	 * @param classifier the <code>BlockClassifier</code> of the centroids
+	 */
+	public SequentialClassifier(BlockClassifier classifier) {
+		this(classifier, DEFAULT_DEVIATION);
+	}
+
+	/**
+	 * Forgets the readings, before a new block.
+	 */
+	public void reset() {
+		for (int i = 0; i < sums.length; i++)
+			sums[i] = 0;
+		samples = 0;
+		best = 0;
+		confidence = 0;
+	}
+
+	/**
+	 * Adds a reading of the block and updates the most likely type and its confidence.
+	 *
+	 * @param rgb the <code>int</code> array of the red, green and blue values of one reading
+	 * @return the <code>double</code> confidence after the reading, between 0 and 1
+	 */
+	public double add(int [] rgb) {
+		classifier.getDistances(rgb, distances);
+		best = 0;
+		for (int i = 0; i < sums.length; i++) {
+			sums[i] += distances[i];
+			if (sums[i] < sums[best])
+				best = i;
+		}
+		samples++;
+
+		// the probabilities relative to the most likely type, which keeps the exponents negative
+		double total = 0;
+		for (int i = 0; i < sums.length; i++)
+			total += Math.exp(-(sums[i] - sums[best]) * scale);
+		confidence = 1.0 / total;
+		return confidence;
+	}
+
+	/**
+	 * Returns the most likely type of the block
+	 * @return the <code>BlockType</code>, <code>UNKNOWN</code> before the first reading
+	 */
+	public BlockType getType() {
+		return samples == 0 ? BlockType.UNKNOWN : types[best];
+	}
+
+	/**
+	 * Returns the probability of the most likely type
+	 * @return the <code>double</code> confidence, 0 before the first reading
+	 */
+	public double getConfidence() {
+		return confidence;
+	}
+
+	/**
+	 * Returns the number of readings since the last reset
+	 * @return the <code>int</code> number of readings
+	 */
+	public int getSamples() {
+		return samples;
+	}
+}
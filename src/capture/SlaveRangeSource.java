@@ -0,0 +1,176 @@
+package capture;
+
+import hardware.RangeInput;
+import hardware.RangeFeed;
+import scheduler.PeriodicTask;
+import scheduler.Scheduler;
+
+/**
+ * The <code>SlaveRangeSource</code> task gives the distances the slave brick samples, filters
+ * and pushes over the <code>RangeFeed</code> of its <code>SlaveLink</code>, in place of a
+ * <code>RangeSampler</code> on the master. It depends on the feed only, so it builds on the host.
+ *
+ * The slave pings its sensors in turn and runs the median and window filter itself, so only the
+ * filtered distances cross the link, and it decides the walls against the wall distance and
+ * pushes as soon as they change. This task takes in the pushes every period and hands both
+ * distances to the listeners, which need not filter them again, then the walls of the slave,
+ * which a listener with the same wall distance takes instead of deciding them again.
+ *
+ * @see RangeSource
+ * @see RangeFeed
+ * @see hardware.SlaveLink
+ * @see maincontrol.SlaveProgram
+ *
+ * @author Stefan Ti
+ */
+public class SlaveRangeSource implements PeriodicTask, RangeSource, RangeFeed.RangeListener {
+	// the time between two looks for pushes, in ms
+	private static final int POLL_PERIOD = 10;
+	private static final int MAX_LISTENERS = 4;
+
+	private RangeFeed link;
+	private int wallDistance;
+	private Scheduler scheduler;
+	private Listener [] listeners = new Listener [MAX_LISTENERS];
+	private int listenerCount = 0;
+	// the last push, written and read under the lock of the source
+	private int [] distances = {RangeInput.NO_ECHO, RangeInput.NO_ECHO};
+	private int [] counts = new int [2];
+
+	/**
+	 * The constructor takes in the link to the slave, the distance of the walls and the
+	 * <code>Scheduler</code> it runs on.
+	 *
+	 * @param link the <code>RangeFeed</code> of the link to the slave
+	 * @param wallDistance the <code>int</code> distance in cm under which a sensor sees a wall
+	 * @param scheduler the <code>Scheduler</code> of the robot
+	 */
+	public SlaveRangeSource(RangeFeed link, int wallDistance, Scheduler scheduler) {
+		this.link = link;
+		this.wallDistance = wallDistance;
+		this.scheduler = scheduler;
+		link.setRangeListener(this);
+	}
+
+	/**
+	 * Takes in the pushes of the slave, at once, as the link does not wait for an exchange of
+	 * the grabbers to poll.
+	 * {@inheritDoc}
+	 */
+	public void execute(long release) {
+		link.poll();
+	}
+
+	/**
+	 * Publishes the pushed distances and hands them and the walls to the listeners.
+	 * {@inheritDoc}
+	 */
+	public void rangesPushed(int left, int right, int walls, boolean event, long time) {
+		synchronized (this) {
+			distances[LEFT] = left;
+			distances[RIGHT] = right;
+			counts[LEFT]++;
+			counts[RIGHT]++;
+		}
+		synchronized (listeners) {
+			for (int i = 0; i < listenerCount; i++) {
+				listeners[i].rangeSampled(LEFT, left, time);
+				listeners[i].rangeSampled(RIGHT, right, time);
+				listeners[i].wallsSeen(walls, event, time);
+			}
+		}
+	}
+
+	/**
+	 * Starts the sampling of the slave, unless it is already running.
+	 */
+	public void start() {
+		if (!scheduler.isRunning(this)) {
+			link.startSampling(wallDistance);
+			scheduler.add("ultrasonic", this, POLL_PERIOD);
+		}
+	}
+
+	/**
+	 * Stops the sampling of the slave.
+	 */
+	public void stop() {
+		if (scheduler.remove(this))
+			link.stopSampling();
+	}
+
+	/**
+	 * Returns whether the slave samples the sensors
+	 * @return <code>true</code> if the source is running
+	 */
+	public boolean isRunning() {
+		return scheduler.isRunning(this);
+	}
+
+	/**
+	 * Adds a listener, which is told of both distances of every push from the next one on.
+	 *
+	 * @param listener the <code>Listener</code> to add, if it is not already there
+	 */
+	public void addListener(Listener listener) {
+		synchronized (listeners) {
+			for (int i = 0; i < listenerCount; i++)
+				if (listeners[i] == listener)
+					return;
+			if (listenerCount == listeners.length)
+				throw new IllegalStateException("at most " + MAX_LISTENERS + " listeners");
+			listeners[listenerCount++] = listener;
+		}
+	}
+
+	/**
+	 * Removes a listener. Once this returns it is not told of any more pushes.
+	 *
+	 * @param listener the <code>Listener</code> to remove
+	 */
+	public void removeListener(Listener listener) {
+		synchronized (listeners) {
+			for (int i = 0; i < listenerCount; i++) {
+				if (listeners[i] == listener) {
+					listeners[i] = listeners[--listenerCount];
+					listeners[listenerCount] = null;
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the filtered distance of a sensor in the last push
+	 * @param sensor the <code>int</code> sensor, <code>LEFT</code> or <code>RIGHT</code>
+	 * @return the <code>int</code> distance, <code>NO_ECHO</code> before the first push
+	 */
+	public synchronized int getDistance(int sensor) {
+		return distances[sensor];
+	}
+
+	/**
+	 * Returns the number of pushes so far, the same for both sensors
+	 * @param sensor the <code>int</code> sensor, <code>LEFT</code> or <code>RIGHT</code>
+	 * @return the <code>int</code> number of samples
+	 */
+	public synchronized int getSampleCount(int sensor) {
+		return counts[sensor];
+	}
+
+	/**
+	 * The slave has already filtered the distances.
+	 * {@inheritDoc}
+	 */
+	public boolean isFiltered() {
+		return true;
+	}
+
+	/**
+	 * The slave decides the walls against the wall distance.
+	 * {@inheritDoc}
+	 */
+	public int getWallDistance() {
+		return wallDistance;
+	}
+}
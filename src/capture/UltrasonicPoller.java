@@ -1,60 +1,145 @@
 package capture;
-import lejos.nxt.UltrasonicSensor;
+import hardware.RangeInput;
+import scheduler.Scheduler;
 
-/** The <code>UltrasonicPoller</code> Thread is used to allow continuous data sampling,
- * a filter was implemented to improve the data and make it more reliable.
+/** The <code>UltrasonicPoller</code> is used to allow continuous data sampling,
+ * a filter was implemented to improve the data and make it more reliable. It is fed the
+ * samples of a <code>RangeSource</code>, usually a <code>RangeSampler</code> which pings the
+ * sensors in turn. Samples the source has already filtered are published as they are.
+ *
+ * Every sample goes into the <code>RangeFilter</code> of its sensor and the two filtered
+ * distances are published together in one <code>volatile int</code>, so that they are read
+ * without a lock and always as of the same sample.
+ *
+ * A wall is reported when either filtered distance is below the max distance. A source that
+ * decides the walls itself against the same distance, as the slave does, is taken at its word
+ * instead, with every sample and at once when its walls change.
+ *
+ * @see RangeSource
+ * @see RangeSampler
+ * @see RangeFilter
  *
  * @author Bei Chen liu
  * @author Alessandro Parisi
  * @author Stefan Ti
  */
-public class UltrasonicPoller extends Thread {
-	private int distanceLeft = 255;
-	private int distanceRight = 255;
-	private UltrasonicSensor usLeft;
-	private UltrasonicSensor usRight;
+public class UltrasonicPoller implements RangeSource.Listener {
+	// a sensor is sampled every 100 ms, four samples are about as long as ten polls used to be
+	private static final int DEFAULT_WINDOW = 4;
+	// the filtered distances are published as left << DISTANCE_BITS | right
+	private static final int DISTANCE_BITS = 16, DISTANCE_MASK = (1 << DISTANCE_BITS) - 1;
+	private static final int NO_ECHOES = RangeFilter.NO_ECHO << DISTANCE_BITS | RangeFilter.NO_ECHO;
+	private volatile int distanceLeft = RangeFilter.NO_ECHO;
+	private volatile int distanceRight = RangeFilter.NO_ECHO;
+	private RangeSource sampler;
 	private int MAX_DISTANCE;
-	private int countRight = 0;
-	private int countLeft = 0;
-	private final int NUMBER_OF_POLLS = 10;
-	private int[] pollingLeft = new int[NUMBER_OF_POLLS];
-	private int[] pollingRight = new int[NUMBER_OF_POLLS];
-	private boolean isThereAWall = false;
-	private boolean pingMode = false;
-	private boolean running = true;
-
-	/**The constructor of the <code>UltrasonicPoller</code> class takes in both Ultrasonic sensors and a
-	 * max distance and initializes them
+	private RangeFilter filterLeft;
+	private RangeFilter filterRight;
+	private volatile int filtered = NO_ECHOES;
+	private volatile boolean resetRequested = false;
+	private volatile boolean isThereAWall = false;
+	// the source decides the walls against the max distance
+	private boolean sourceWalls;
+	private volatile boolean running = false;
+	// the samples of each sensor since the last reset, and the time of the ping of the last one
+	private volatile int samplesLeft = 0, samplesRight = 0;
+	private volatile long sampleTime = 0;
+
+	/**The constructor of the <code>UltrasonicPoller</code> class takes in both Ultrasonic sensors, a
+	 * max distance and the <code>Scheduler</code> it runs on, and initializes them with a
+	 * <code>RangeSampler</code> of its own
 	 * 
-	 * @param usRight the right <code>UltrasonicSensor</code>
-	 * @param usLeft the left <code>UltrasonicSensor</code>
+	 * @param usRight the right <code>RangeInput</code>
+	 * @param usLeft the left <code>RangeInput</code>
 	 * @param MAX_DISTANCE the <code>int</code> max distance before a object is reported as detected
+	 * @param scheduler the <code>Scheduler</code> of the robot
 	 */
-	public UltrasonicPoller(UltrasonicSensor usRight, UltrasonicSensor usLeft, int MAX_DISTANCE) {
-		this.usLeft = usLeft;
-		this.usRight = usRight;
+	public UltrasonicPoller(RangeInput usRight, RangeInput usLeft, int MAX_DISTANCE, Scheduler scheduler) {
+		this(new RangeSampler(usLeft, usRight, scheduler), MAX_DISTANCE, DEFAULT_WINDOW);
+	}
+
+	/**The constructor of the <code>UltrasonicPoller</code> class takes in the source of the
+	 * distances of the Ultrasonic sensors, a max distance and the size of the window of the filters
+	 * 
+	 * @param sampler the <code>RangeSource</code> of both sensors, which may be shared
+	 * @param MAX_DISTANCE the <code>int</code> max distance before a object is reported as detected
+	 * @param window the <code>int</code> number of samples the distances are averaged over, when
+	 * the source does not filter them itself
+	 */
+	public UltrasonicPoller(RangeSource sampler, int MAX_DISTANCE, int window) {
+		this.sampler = sampler;
 		this.MAX_DISTANCE = MAX_DISTANCE;
-		initializePolls();
+		sourceWalls = sampler.getWallDistance() == MAX_DISTANCE;
+		// samples that are already filtered go through unchanged
+		if (sampler.isFiltered()) {
+			filterLeft = new RangeFilter(1, 1);
+			filterRight = new RangeFilter(1, 1);
+		} else {
+			filterLeft = new RangeFilter(window);
+			filterRight = new RangeFilter(window);
+		}
+	}
+
+	/**The constructor of the <code>UltrasonicPoller</code> class takes in the source of the
+	 * distances of the Ultrasonic sensors and a max distance
+	 * 
+	 * @param sampler the <code>RangeSource</code> of both sensors, which may be shared
+	 * @param MAX_DISTANCE the <code>int</code> max distance before a object is reported as detected
+	 */
+	public UltrasonicPoller(RangeSource sampler, int MAX_DISTANCE) {
+		this(sampler, MAX_DISTANCE, DEFAULT_WINDOW);
 	}
+
 	/**
-	 * It updates the x and y depending on the angle it is travelling at and past positions
+	 * It filters the new sample, publishes the filtered distances and reports a wall when
+	 * either of them is below the max distance
 	 * {@inheritDoc}
 	 */
-	public void run() {
-		while (running) {
-			if(getRightWindowedDistance() < MAX_DISTANCE || getLeftWindowedDistance() < MAX_DISTANCE){
-				initializePolls();
-				isThereAWall = true;
-			}
-
-			try {
-				Thread.sleep(1);
-			} catch (InterruptedException e) {
-			}
+	public void rangeSampled(int sensor, int distance, long time) {
+		if (resetRequested) {
+			filterLeft.reset();
+			filterRight.reset();
+			filtered = NO_ECHOES;
+			samplesLeft = samplesRight = 0;
+			// cleared last, the counts are 0 for whoever sees it cleared
+			resetRequested = false;
+		}
+		int both = filtered;
+		if (sensor == RangeSource.LEFT) {
+			distanceLeft = distance;
+			both = filterLeft.add(distance) << DISTANCE_BITS | both & DISTANCE_MASK;
+		} else {
+			distanceRight = distance;
+			both = both & ~DISTANCE_MASK | filterRight.add(distance);
 		}
+		filtered = both;
+		sampleTime = time;
+		// counted once the distances are published, so whoever sees the count sees them too
+		if (sensor == RangeSource.LEFT)
+			samplesLeft++;
+		else
+			samplesRight++;
+		if (!sourceWalls && ((both >>> DISTANCE_BITS) < MAX_DISTANCE || (both & DISTANCE_MASK) < MAX_DISTANCE))
+			isThereAWall = true;
+	}
+
+	/**
+	 * Reports a wall when the source saw one, if it decides the walls against the max distance.
+	 * {@inheritDoc}
+	 */
+	public void wallsSeen(int walls, boolean event, long time) {
+		if (sourceWalls && walls != 0)
+			isThereAWall = true;
 	}
 
-	/**This method returns the distance read from the left ultrasonic sensor
+	/** This method starts the filtering of the samples, and the sampler if it is not running
+	 *
+	 */
+	public void start(){
+		start2();
+	}
+
+	/**This method returns the last distance read from the left ultrasonic sensor, unfiltered
 	 *
 	 * @return the <code>int</code> distance from the left ultrasonic sensor
 	 */
@@ -62,7 +147,7 @@ public class UltrasonicPoller extends Thread {
 		return distanceLeft;
 	}
 
-	/**This method returns the distance read from the right ultrasonic sensor
+	/**This method returns the last distance read from the right ultrasonic sensor, unfiltered
 	 *
 	 * @return the <code>int</code> distance from the right ultrasonic sensor
 	 */
@@ -70,60 +155,68 @@ public class UltrasonicPoller extends Thread {
 		return distanceRight;
 	}
 
-	/** This method initliazes all the polls in the array of distances to 255
+	/** This method forgets the past polls, for instance after a turn. Until the next poll the
+	 * distances are reported as no echo.
 	 *
 	 */
 	public void initializePolls(){
-		for(int i = 0; i < NUMBER_OF_POLLS; i++){
-			pollingLeft[i] = 255;
-			pollingRight[i] = 255;
-		}
+		// the filters and the distances belong to the thread of the sampler, it resets them
+		// before its next sample, so a sample in flight cannot publish the old distances again
+		resetRequested = true;
+	}
+
+	/** Returns the number of samples of a sensor in the filtered distance, which is the number
+	 * of samples since the polls were last initialized, and 0 until they have been
+	 *
+	 * @param sensor the <code>int</code> sensor, <code>RangeSource.LEFT</code> or <code>RIGHT</code>
+	 * @return the <code>int</code> number of samples
+	 */
+	public int getSampleCount(int sensor){
+		if (resetRequested)
+			return 0;
+		return sensor == RangeSource.LEFT ? samplesLeft : samplesRight;
+	}
+
+	/** Returns the time of the ping of the last sample filtered
+	 *
+	 * @return the <code>long</code> time in ms, 0 before the first sample
+	 */
+	public long getSampleTime(){
+		return sampleTime;
 	}
 
 	/**
-	 * Returns the <code>int</code> average distance read by the left ultrasonic sensor after 10 pings
+	 * Returns the <code>int</code> filtered distance of the left ultrasonic sensor, as of the last poll
 	 * 
-	 * @return the <code>int</code> average distance read by the left ultrasonic sensor after 10 pings
+	 * @return the <code>int</code> median filtered distance of the left ultrasonic sensor averaged over the window
 	 */
 	public int getLeftWindowedDistance() {
-		int average = 0;
-
-		countLeft++;
-
-		if (countLeft > 9) {
-			countLeft = 0;
-		}
-
-		pollingLeft[countLeft] = usLeft.getDistance();
-
-		for (int i = 0; i < 10; i++) {
-			average += pollingLeft[i];
-		}
-
-		return average / 10;
+		return published() >>> DISTANCE_BITS;
 	}
 
 	/**
-	 * Returns the <code>int</code> average distance read by the right ultrasonic sensor after taking a new ping and averaging out the past 10.
+	 * Returns the <code>int</code> filtered distance of the right ultrasonic sensor, as of the last poll
 	 * 
-	 * @return the <code>int</code> average distance read by the right ultrasonic sensor after taking a new ping and averaging out the past 10.
+	 * @return the <code>int</code> median filtered distance of the right ultrasonic sensor averaged over the window
 	 */
 	public int getRightWindowedDistance() {
-		int average = 0;
-
-		countRight++;
-
-		if (countRight > 9) {
-			countRight = 0;
-		}
-
-		pollingRight[countRight] = usRight.getDistance();
+		return published() & DISTANCE_MASK;
+	}
 
-		for (int i = 0; i < 10; i++) {
-			average += pollingRight[i];
-		}
+	/**
+	 * Gives both filtered distances of the same poll.
+	 * 
+	 * @param distances the <code>int</code> array that receives the left then the right distance
+	 */
+	public void getWindowedDistances(int [] distances) {
+		int both = published();
+		distances[0] = both >>> DISTANCE_BITS;
+		distances[1] = both & DISTANCE_MASK;
+	}
 
-		return average / 10;
+	// the filtered distances, no echoes while a reset is waiting for the sampler
+	private int published() {
+		return resetRequested ? NO_ECHOES : filtered;
 	}
 
 	/** Returns whether there was a wall in front of the robot
@@ -140,17 +233,30 @@ public class UltrasonicPoller extends Thread {
 	public void setIsWall(boolean decision){
 		isThereAWall = decision;
 	}
-	/** This method stops the thread from excecuting polls
+	/** This method stops the filtering of the samples, the sampler keeps running for the
+	 * others that use it
 	 *
 	 */
 	public void stop(){
-		this.running = false;
-
+		sampler.removeListener(this);
+		running = false;
 	}
-	/** This method starts the thread and makes it excecute polls
+	/** This method starts the filtering of the samples, unless it is already running
 	 *
 	 */
 	public void start2(){
-		this.running = true;
+		if (!running) {
+			running = true;
+			sampler.addListener(this);
+			sampler.start();
+		}
+	}
+
+	/** Returns the sampler the distances come from
+	 *
+	 * @return the <code>RangeSource</code> of both sensors
+	 */
+	public RangeSource getSampler(){
+		return sampler;
 	}
 }
\ No newline at end of file
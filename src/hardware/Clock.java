@@ -0,0 +1,69 @@
+package hardware;
+
+/**
+ * The <code>Clock</code> class is the time the robot runs on. On the brick it is the time of
+ * the system, returned by <code>getSystemClock</code>, while the simulator runs a faster clock
+ * so that a mission takes a fraction of its real time.
+ *
+ * Everything that measures or waits for time, the <code>Scheduler</code>, the
+ * <code>Odometer</code> and the delays of the localization and the capture, goes through the
+ * clock of the <code>Robot</code>.
+ *
+ * @see Robot
+ *
+ * @author Stefan Ti
+ */
+public abstract class Clock {
+	private static Clock systemClock;
+
+	/**
+	 * Returns the clock of the system.
+	 * @return the <code>Clock</code> that runs on <code>System.currentTimeMillis</code>
+	 */
+	public static synchronized Clock getSystemClock() {
+		if (systemClock == null)
+			systemClock = new SystemClock();
+		return systemClock;
+	}
+
+	/**
+	 * Returns the time of the clock
+	 * @return the <code>long</code> time in ms
+	 */
+	public abstract long currentTimeMillis();
+
+	/**
+	 * Waits for the given time of the clock.
+	 * @param duration the <code>long</code> time to wait in ms
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	public abstract void sleep(long duration) throws InterruptedException;
+
+	/**
+	 * Waits for the given time of the clock, like <code>sleep</code> but carrying on if the
+	 * thread is interrupted, as <code>Delay.msDelay</code> does.
+	 * @param duration the <code>long</code> time to wait in ms
+	 */
+	public void delay(long duration) {
+		long end = currentTimeMillis() + duration;
+		long left = duration;
+		while (left > 0) {
+			try {
+				sleep(left);
+			} catch (InterruptedException e) {
+				// keep waiting for the rest of the delay
+			}
+			left = end - currentTimeMillis();
+		}
+	}
+
+	private static class SystemClock extends Clock {
+		public long currentTimeMillis() {
+			return System.currentTimeMillis();
+		}
+
+		public void sleep(long duration) throws InterruptedException {
+			Thread.sleep(duration);
+		}
+	}
+}
@@ -0,0 +1,32 @@
+package hardware;
+
+/**
+ * The <code>ColorInput</code> interface is a color sensor pointed at the floor or at a block,
+ * as used for the odometry correction, the localization and the detection of the blocks.
+ *
+ * @see Robot
+ *
+ * @author Stefan Ti
+ */
+public interface ColorInput {
+	/**
+	 * Turns the light of the sensor on or off.
+	 * @param on <code>true</code> to light the surface under the sensor
+	 */
+	public void setFloodlight(boolean on);
+
+	/**
+	 * Returns the light reflected by the surface under the sensor, darker surfaces such as the
+	 * grid lines giving lower values
+	 * @return the <code>int</code> raw light value, from 0 to 1023
+	 */
+	public int getRawLightValue();
+
+	/**
+	 * Reads the color of the surface in front of the sensor, all three components from the
+	 * same reading.
+	 * @param rgb the <code>int</code> array that receives the red, green and blue values, from
+	 * 0 to 255
+	 */
+	public void readColor(int [] rgb);
+}
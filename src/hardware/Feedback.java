@@ -0,0 +1,44 @@
+package hardware;
+
+/**
+ * The <code>Feedback</code> interface is the way the robot tells what it is doing: the sounds
+ * and the text on the screen. The simulator ignores it.
+ *
+ * @see Robot
+ *
+ * @author Stefan Ti
+ */
+public interface Feedback {
+	/**
+	 * Plays a short beep.
+	 */
+	public void beep();
+
+	/**
+	 * Plays a low buzz.
+	 */
+	public void buzz();
+
+	/**
+	 * Plays a tone, without waiting for it to end.
+	 * @param frequency the <code>int</code> frequency in Hz
+	 * @param duration the <code>int</code> duration in ms
+	 */
+	public void playTone(int frequency, int duration);
+
+	/**
+	 * Draws a text on the screen.
+	 * @param text the <code>String</code> to draw
+	 * @param x the <code>int</code> column
+	 * @param y the <code>int</code> line
+	 */
+	public void drawString(String text, int x, int y);
+
+	/**
+	 * Draws a number on the screen.
+	 * @param value the <code>int</code> to draw
+	 * @param x the <code>int</code> column
+	 * @param y the <code>int</code> line
+	 */
+	public void drawInt(int value, int x, int y);
+}
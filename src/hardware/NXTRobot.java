@@ -0,0 +1,238 @@
+package hardware;
+
+import lejos.nxt.ColorSensor;
+import lejos.nxt.LCD;
+import lejos.nxt.Motor;
+import lejos.nxt.SensorPort;
+import lejos.nxt.Sound;
+import lejos.nxt.UltrasonicSensor;
+import lejos.nxt.remote.RemoteNXT;
+import scheduler.Scheduler;
+
+/**
+ * The <code>NXTRobot</code> class is the real robot. The master brick drives the wheels on
+ * ports A (left) and B (right) and reads the line sensors on S2 (left) and S1 (right) and the
+ * block sensor on S3. The slave brick, reached over RS485, drives the grabbers on ports B
+ * (left) and A (right) and reads the ultrasonic sensors on S3 (left) and S2 (right), either
+ * through a <code>SlaveLink</code> to the <code>SlaveProgram</code> or through a
+ * <code>RemoteNXT</code> to the LCP responder.
+ *
+ * The robot runs on the clock of the system and on the default <code>Scheduler</code>, and
+ * plays sounds and draws on the screen of the master brick.
+ *
+ * @see Robot
+ *
+ * @author Stefan Ti
+ */
+public class NXTRobot implements Robot {
+	private RegulatedMotor leftWheel, rightWheel, leftGrabber, rightGrabber;
+	private ColorInput leftLine, rightLine, block;
+	private RangeInput leftRange, rightRange;
+	private Feedback feedback;
+
+	/**
+	 * The constructor takes in the slave brick, if there is one, and opens the sensors.
+	 *
+	 * @param slave the <code>RemoteNXT</code> slave brick, or <code>null</code> for a program
+	 * such as the drivetrain calibration that only uses the master, in which case the grabbers
+	 * and ultrasonic sensors are <code>null</code>
+	 */
+	public NXTRobot(RemoteNXT slave) {
+		this();
+		if (slave != null) {
+			leftGrabber = new NXTMotor(slave.B);
+			rightGrabber = new NXTMotor(slave.A);
+			leftRange = new NXTRangeInput(new UltrasonicSensor(slave.S3));
+			rightRange = new NXTRangeInput(new UltrasonicSensor(slave.S2));
+		}
+	}
+
+	/**
+	 * The constructor takes in the link to the slave brick, if there is one, and opens the sensors.
+	 *
+	 * @param link the <code>SlaveLink</code> to the slave brick, or <code>null</code> for a program
+	 * that only uses the master, in which case the grabbers and ultrasonic sensors are
+	 * <code>null</code>
+	 */
+	public NXTRobot(SlaveLink link) {
+		this();
+		if (link != null) {
+			leftGrabber = link.getGrabber(SlaveProtocol.LEFT);
+			rightGrabber = link.getGrabber(SlaveProtocol.RIGHT);
+			leftRange = link.getRange(SlaveProtocol.LEFT);
+			rightRange = link.getRange(SlaveProtocol.RIGHT);
+		}
+	}
+
+	// the motors and sensors of the master
+	private NXTRobot() {
+		leftWheel = new NXTMotor(Motor.A);
+		rightWheel = new NXTMotor(Motor.B);
+		leftLine = new NXTColorInput(new ColorSensor(SensorPort.S2));
+		rightLine = new NXTColorInput(new ColorSensor(SensorPort.S1));
+		block = new NXTColorInput(new ColorSensor(SensorPort.S3));
+		feedback = new NXTFeedback();
+	}
+
+	public RegulatedMotor getLeftWheel() {
+		return leftWheel;
+	}
+
+	public RegulatedMotor getRightWheel() {
+		return rightWheel;
+	}
+
+	public RegulatedMotor getLeftGrabber() {
+		return leftGrabber;
+	}
+
+	public RegulatedMotor getRightGrabber() {
+		return rightGrabber;
+	}
+
+	public ColorInput getLeftLineSensor() {
+		return leftLine;
+	}
+
+	public ColorInput getRightLineSensor() {
+		return rightLine;
+	}
+
+	public ColorInput getBlockSensor() {
+		return block;
+	}
+
+	public RangeInput getLeftRange() {
+		return leftRange;
+	}
+
+	public RangeInput getRightRange() {
+		return rightRange;
+	}
+
+	public Clock getClock() {
+		return Clock.getSystemClock();
+	}
+
+	public Scheduler getScheduler() {
+		return Scheduler.getDefault();
+	}
+
+	public Feedback getFeedback() {
+		return feedback;
+	}
+
+	// a motor of the master or of the slave
+	private static class NXTMotor implements RegulatedMotor {
+		private lejos.robotics.RegulatedMotor motor;
+
+		NXTMotor(lejos.robotics.RegulatedMotor motor) {
+			this.motor = motor;
+		}
+
+		public void setSpeed(int speed) {
+			motor.setSpeed(speed);
+		}
+
+		public void setAcceleration(int acceleration) {
+			motor.setAcceleration(acceleration);
+		}
+
+		public void forward() {
+			motor.forward();
+		}
+
+		public void backward() {
+			motor.backward();
+		}
+
+		public void stop() {
+			motor.stop();
+		}
+
+		public void flt(boolean immediateReturn) {
+			motor.flt(immediateReturn);
+		}
+
+		public void rotate(int angle, boolean immediateReturn) {
+			motor.rotate(angle, immediateReturn);
+		}
+
+		public void rotateTo(int limitAngle, boolean immediateReturn) {
+			motor.rotateTo(limitAngle, immediateReturn);
+		}
+
+		public int getTachoCount() {
+			return motor.getTachoCount();
+		}
+
+		public boolean isMoving() {
+			return motor.isMoving();
+		}
+	}
+
+	private static class NXTColorInput implements ColorInput {
+		private ColorSensor sensor;
+
+		NXTColorInput(ColorSensor sensor) {
+			this.sensor = sensor;
+		}
+
+		public void setFloodlight(boolean on) {
+			sensor.setFloodlight(on);
+		}
+
+		public int getRawLightValue() {
+			return sensor.getRawLightValue();
+		}
+
+		public void readColor(int [] rgb) {
+			ColorSensor.Color color = sensor.getColor();
+			rgb[0] = color.getRed();
+			rgb[1] = color.getGreen();
+			rgb[2] = color.getBlue();
+		}
+	}
+
+	private static class NXTRangeInput implements RangeInput {
+		private UltrasonicSensor sensor;
+
+		NXTRangeInput(UltrasonicSensor sensor) {
+			this.sensor = sensor;
+		}
+
+		public void continuous() {
+			sensor.continuous();
+		}
+
+		public void ping() {
+			sensor.ping();
+		}
+
+		public int getDistance() {
+			return sensor.getDistance();
+		}
+	}
+
+	private static class NXTFeedback implements Feedback {
+		public void beep() {
+			Sound.beep();
+		}
+
+		public void buzz() {
+			Sound.buzz();
+		}
+
+		public void playTone(int frequency, int duration) {
+			Sound.playTone(frequency, duration);
+		}
+
+		public void drawString(String text, int x, int y) {
+			LCD.drawString(text, x, y);
+		}
+
+		public void drawInt(int value, int x, int y) {
+			LCD.drawInt(value, x, y);
+		}
+	}
+}
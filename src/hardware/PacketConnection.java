@@ -0,0 +1,39 @@
+package hardware;
+
+/**
+ * The <code>PacketConnection</code> interface is a connection between two bricks that carries
+ * whole frames, as an <code>NXTConnection</code> in packet mode does. The
+ * <code>SlaveLink</code> and the <code>SlaveResponder</code> talk over it, so they can also be
+ * paired on the host.
+ *
+ * @see RS485Connection
+ * @see SlaveLink
+ *
+ * @author Stefan Ti
+ */
+public interface PacketConnection {
+	/**
+	 * Reads the next frame.
+	 *
+	 * @param buffer the <code>byte</code> array the frame is read into
+	 * @param length the <code>int</code> largest length of the frame
+	 * @param wait <code>true</code> to wait for a frame, <code>false</code> to return at once
+	 * @return the <code>int</code> length of the frame, 0 if there is none yet and -1 once the
+	 * connection is closed
+	 */
+	public int read(byte [] buffer, int length, boolean wait);
+
+	/**
+	 * Writes a frame.
+	 *
+	 * @param buffer the <code>byte</code> array of the frame
+	 * @param length the <code>int</code> length of the frame
+	 * @return the <code>int</code> length written, less than the length if it was not sent
+	 */
+	public int write(byte [] buffer, int length);
+
+	/**
+	 * Closes the connection.
+	 */
+	public void close();
+}
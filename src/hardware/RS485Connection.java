@@ -0,0 +1,63 @@
+package hardware;
+
+import java.io.IOException;
+
+import lejos.nxt.comm.NXTConnection;
+import lejos.nxt.comm.RS485;
+
+/**
+ * The <code>RS485Connection</code> class is a <code>PacketConnection</code> over the RS485 port
+ * that links the master and the slave brick.
+ *
+ * @see PacketConnection
+ *
+ * @author Stefan Ti
+ */
+public class RS485Connection implements PacketConnection {
+	private NXTConnection connection;
+
+	/**
+	 * The constructor takes in an open connection.
+	 *
+	 * @param connection the <code>NXTConnection</code> in packet mode
+	 */
+	public RS485Connection(NXTConnection connection) {
+		this.connection = connection;
+	}
+
+	/**
+	 * Connects to a brick, from the master.
+	 *
+	 * @param name the <code>String</code> name of the brick
+	 * @return the <code>PacketConnection</code>
+	 * @throws IOException if the brick cannot be reached
+	 */
+	public static PacketConnection connect(String name) throws IOException {
+		NXTConnection connection = RS485.getConnector().connect(name, NXTConnection.PACKET);
+		if (connection == null)
+			throw new IOException("cannot connect to " + name);
+		return new RS485Connection(connection);
+	}
+
+	/**
+	 * Waits for the master to connect, on the slave.
+	 *
+	 * @return the <code>PacketConnection</code>, <code>null</code> if none was made
+	 */
+	public static PacketConnection waitForConnection() {
+		NXTConnection connection = RS485.getConnector().waitForConnection(0, NXTConnection.PACKET);
+		return connection == null ? null : new RS485Connection(connection);
+	}
+
+	public int read(byte [] buffer, int length, boolean wait) {
+		return connection.read(buffer, length, wait);
+	}
+
+	public int write(byte [] buffer, int length) {
+		return connection.write(buffer, length);
+	}
+
+	public void close() {
+		connection.close();
+	}
+}
@@ -0,0 +1,64 @@
+package hardware;
+
+/**
+ * The <code>RangeFeed</code> interface is a source of ultrasonic distances that are sampled and
+ * filtered away from the master, as the slave brick does over the <code>SlaveLink</code>, and
+ * pushed to it.
+ *
+ * The pushes are taken in by <code>poll</code> and handed to the <code>RangeListener</code>.
+ *
+ * @see SlaveLink
+ *
+ * @author Stefan Ti
+ */
+public interface RangeFeed {
+	/**
+	 * The <code>RangeListener</code> interface is told of the distances the feed pushes while it
+	 * samples. It is called with the feed held, so it must not use the feed itself.
+	 */
+	public interface RangeListener {
+		/**
+		 * The feed pushed its filtered distances.
+		 *
+		 * @param left the <code>int</code> filtered distance of the left sensor
+		 * @param right the <code>int</code> filtered distance of the right sensor
+		 * @param walls the <code>int</code> bits of the sensors that see a wall, 1 for the left
+		 * one and 2 for the right one
+		 * @param event <code>true</code> if the push was sent because the walls changed
+		 * @param time the <code>long</code> time the push came in, on the clock of the master
+		 */
+		public void rangesPushed(int left, int right, int walls, boolean event, long time);
+	}
+
+	/**
+	 * Makes the feed sample both sensors and push their filtered distances, until
+	 * <code>stopSampling</code>.
+	 *
+	 * @param wallDistance the <code>int</code> distance in cm under which a sensor sees a wall
+	 * @return <code>true</code> if the feed samples
+	 */
+	public boolean startSampling(int wallDistance);
+
+	/**
+	 * Stops the sampling of the feed.
+	 */
+	public void stopSampling();
+
+	/**
+	 * Returns whether the feed samples the sensors
+	 * @return <code>true</code> if it samples
+	 */
+	public boolean isSampling();
+
+	/**
+	 * Sets the listener told of the pushes.
+	 *
+	 * @param listener the <code>RangeListener</code>, <code>null</code> for none
+	 */
+	public void setRangeListener(RangeListener listener);
+
+	/**
+	 * Takes in what was pushed since the last look, without waiting.
+	 */
+	public void poll();
+}
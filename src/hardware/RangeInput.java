@@ -0,0 +1,38 @@
+package hardware;
+
+/**
+ * The <code>RangeInput</code> interface is an ultrasonic sensor, which measures the distance to
+ * the closest object in its beam.
+ *
+ * @see Robot
+ *
+ * @author Stefan Ti
+ */
+public interface RangeInput {
+	/**
+	 * The distance returned when nothing echoes back.
+	 */
+	public static final int NO_ECHO = 255;
+	/**
+	 * The time the echo of a ping takes to be read, in ms, by when the sound has died out.
+	 */
+	public static final int PING_TIME = 50;
+
+	/**
+	 * Puts the sensor in continuous mode, where it keeps pinging and
+	 * <code>getDistance</code> returns the last echo.
+	 */
+	public void continuous();
+
+	/**
+	 * Puts the sensor in ping mode, where it is quiet until it is asked, and sends one ping.
+	 * <code>getDistance</code> returns its first echo once <code>PING_TIME</code> has passed.
+	 */
+	public void ping();
+
+	/**
+	 * Returns the distance to the closest object
+	 * @return the <code>int</code> distance in cm, <code>NO_ECHO</code> if there is none
+	 */
+	public int getDistance();
+}
@@ -0,0 +1,77 @@
+package hardware;
+
+/**
+ * The <code>RegulatedMotor</code> interface is the part of a speed regulated motor with a
+ * tachometer that the robot uses, for the wheels on the master brick as well as the grabbers on
+ * the slave. Speeds are in degrees per second and angles in degrees of the motor shaft.
+ *
+ * On the brick it is implemented over the leJOS motors by <code>NXTRobot</code>, on the host by
+ * the simulator.
+ *
+ * @see Robot
+ *
+ * @author Stefan Ti
+ */
+public interface RegulatedMotor {
+	/**
+	 * Sets the speed the motor is regulated at.
+	 * @param speed the <code>int</code> speed in degrees per second
+	 */
+	public void setSpeed(int speed);
+
+	/**
+	 * Sets the acceleration used to reach the speed and to stop.
+	 * @param acceleration the <code>int</code> acceleration in degrees per second per second
+	 */
+	public void setAcceleration(int acceleration);
+
+	/**
+	 * Turns the motor forward at the speed, until it is told otherwise.
+	 */
+	public void forward();
+
+	/**
+	 * Turns the motor backward at the speed, until it is told otherwise.
+	 */
+	public void backward();
+
+	/**
+	 * Brakes the motor and holds its position, waiting until it is stopped.
+	 */
+	public void stop();
+
+	/**
+	 * Lets the motor turn freely.
+	 * @param immediateReturn <code>true</code> to return at once, <code>false</code> to wait
+	 * until the motor is stopped
+	 */
+	public void flt(boolean immediateReturn);
+
+	/**
+	 * Turns the motor by the given angle at the speed and holds it there.
+	 * @param angle the <code>int</code> angle in degrees, relative to the current position
+	 * @param immediateReturn <code>true</code> to return at once, <code>false</code> to wait
+	 * until the rotation is completed
+	 */
+	public void rotate(int angle, boolean immediateReturn);
+
+	/**
+	 * Turns the motor to the given tacho count at the speed and holds it there.
+	 * @param limitAngle the <code>int</code> tacho count to reach, in degrees
+	 * @param immediateReturn <code>true</code> to return at once, <code>false</code> to wait
+	 * until the rotation is completed
+	 */
+	public void rotateTo(int limitAngle, boolean immediateReturn);
+
+	/**
+	 * Returns the position of the motor
+	 * @return the <code>int</code> tacho count in degrees
+	 */
+	public int getTachoCount();
+
+	/**
+	 * Returns whether the motor is turning, or about to
+	 * @return <code>true</code> if the motor is moving
+	 */
+	public boolean isMoving();
+}
@@ -0,0 +1,92 @@
+package hardware;
+
+import scheduler.Scheduler;
+
+/**
+ * The <code>Robot</code> interface gives the devices of the robot to the rest of the code, so
+ * that the <code>Navigation</code>, the <code>Localizer</code>, the
+ * <code>OdometryCorrection</code> and the <code>FlagCapturer</code> do not depend on the leJOS
+ * classes and can run off the brick.
+ *
+ * <code>NXTRobot</code> is the real robot, the master brick and its slave; the simulator
+ * implements the same interface on the host. Left and right are as seen from behind the robot,
+ * which drives forward in the direction of its heading.
+ *
+ * @see NXTRobot
+ *
+ * @author Stefan Ti
+ */
+public interface Robot {
+	/**
+	 * Returns the motor of the left wheel
+	 * @return the <code>RegulatedMotor</code> of the left wheel
+	 */
+	public RegulatedMotor getLeftWheel();
+
+	/**
+	 * Returns the motor of the right wheel
+	 * @return the <code>RegulatedMotor</code> of the right wheel
+	 */
+	public RegulatedMotor getRightWheel();
+
+	/**
+	 * Returns the motor of the left grabber arm
+	 * @return the <code>RegulatedMotor</code> of the left grabber
+	 */
+	public RegulatedMotor getLeftGrabber();
+
+	/**
+	 * Returns the motor of the right grabber arm
+	 * @return the <code>RegulatedMotor</code> of the right grabber
+	 */
+	public RegulatedMotor getRightGrabber();
+
+	/**
+	 * Returns the left color sensor pointed at the floor, for the grid lines
+	 * @return the left <code>ColorInput</code> of the odometry correction
+	 */
+	public ColorInput getLeftLineSensor();
+
+	/**
+	 * Returns the right color sensor pointed at the floor, for the grid lines
+	 * @return the right <code>ColorInput</code> of the odometry correction
+	 */
+	public ColorInput getRightLineSensor();
+
+	/**
+	 * Returns the color sensor at the front, for the blocks
+	 * @return the <code>ColorInput</code> of the detection
+	 */
+	public ColorInput getBlockSensor();
+
+	/**
+	 * Returns the left ultrasonic sensor
+	 * @return the left <code>RangeInput</code>
+	 */
+	public RangeInput getLeftRange();
+
+	/**
+	 * Returns the right ultrasonic sensor
+	 * @return the right <code>RangeInput</code>
+	 */
+	public RangeInput getRightRange();
+
+	/**
+	 * Returns the time the robot runs on
+	 * @return the <code>Clock</code> of the robot
+	 */
+	public Clock getClock();
+
+	/**
+	 * Returns the executive the periodic tasks of the robot run on, which uses the clock of
+	 * the robot
+	 * @return the <code>Scheduler</code> of the robot
+	 */
+	public Scheduler getScheduler();
+
+	/**
+	 * Returns the sounds and screen of the robot
+	 * @return the <code>Feedback</code> of the robot
+	 */
+	public Feedback getFeedback();
+}
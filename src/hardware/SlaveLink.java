@@ -0,0 +1,539 @@
+package hardware;
+
+import java.io.IOException;
+
+/**
+ * The <code>SlaveLink</code> class is the master's end of the RS485 link to the slave brick,
+ * which runs the <code>SlaveProgram</code> in place of the LCP responder.
+ *
+ * With <code>RemoteNXT</code> every reading of an ultrasonic sensor and every call on a grabber
+ * is a round trip of its own. Here one exchange of <code>SlaveProtocol</code> frames reads both
+ * distances, both tacho counts and the time of the slave, and carries a command for each grabber,
+ * and what it read is kept. A distance or a tacho count read within a few ms of an exchange is
+ * given from it, so the sampler, the grabbers and the display share the same round trips.
+ *
+ * A response that does not come, is damaged or is for another request makes the request be sent
+ * again, with the same sequence number so that its commands are carried out only once. After a
+ * few attempts the exchange is given up, the last values are kept and the error is counted. The
+ * request that was not answered is kept and sent again as it was before anything else, as the
+ * slave may have carried it out and only its answer was lost, and its commands stay pending
+ * until it is answered. A command to a grabber is tried over a few exchanges, and an
+ * <code>IllegalStateException</code> is raised if the slave answers none of them, rather than
+ * going on as if the grabber had moved.
+ *
+ * The link gives a <code>RangeInput</code> for each ultrasonic sensor and a
+ * <code>RegulatedMotor</code> for each grabber, which <code>NXTRobot</code> hands out.
+ *
+ * While the slave samples the sensors on its own, the distances are the filtered ones it pushes.
+ * The pushes are taken in by <code>poll</code>, and by every exchange, and handed to the
+ * <code>RangeListener</code> of the <code>RangeFeed</code>; the sensors are then neither pinged
+ * nor read over the link.
+ *
+ * An exchange lets go of the link while it waits for its response, so that <code>poll</code>,
+ * which a periodic task calls, returns at once instead of waiting for the whole exchange; the
+ * exchange takes in the pushes itself in the meantime. Anything else that would send a request
+ * waits until the exchange is over.
+ *
+ * @see SlaveProtocol
+ * @see RangeFeed
+ * @see PacketConnection
+ * @see NXTRobot
+ *
+ * @author Stefan Ti
+ */
+public class SlaveLink implements RangeFeed {
+	// a response comes within a few ms, unless the slave waits for the echo of a ping
+	private static final int RESPONSE_TIMEOUT = 100, MAX_ATTEMPTS = 3;
+	// the exchanges a command to a grabber is tried in before the slave is taken for lost
+	private static final int MAX_EXCHANGES = 3;
+	// how long the values of an exchange are given without a new one, in ms
+	private static final int FRESH_TIME = 5;
+	// the time between two looks at a grabber that is moving, in ms
+	private static final int MOTION_POLL = 20;
+	private static final int DEFAULT_SPEED = 360;
+	private static final int [] PING_FLAGS = {SlaveProtocol.PING_LEFT, SlaveProtocol.PING_RIGHT};
+	private static final int [] READ_FLAGS = {SlaveProtocol.READ_LEFT, SlaveProtocol.READ_RIGHT};
+
+	private PacketConnection connection;
+	private Clock clock;
+	private byte [] request = new byte [SlaveProtocol.REQUEST_LENGTH];
+	private byte [] response = new byte [SlaveProtocol.RESPONSE_LENGTH];
+	private int sequence = 0;
+	private int [] actions = new int [2];
+	private int [] values = new int [2];
+	private int [] speeds = {DEFAULT_SPEED, DEFAULT_SPEED};
+
+	// what the slave reported, and when on the clock of the master
+	private int [] distances = {RangeInput.NO_ECHO, RangeInput.NO_ECHO};
+	private long [] readTimes = {-1, -1};
+	private long [] pingTimes = {-RangeInput.PING_TIME, -RangeInput.PING_TIME};
+	private int [] tachoCounts = new int [2];
+	private int moving, slaveTime;
+	private long exchangeTime = -FRESH_TIME;
+	private int errors = 0;
+	// the request was given up, and is sent again before the next one, with its flags
+	private boolean unanswered = false;
+	private int unansweredFlags;
+	// a request is sent and its response waited for, with the link let go of in between
+	private boolean exchanging = false;
+
+	// the sampling of the slave, and the distance of its walls
+	private boolean sampling = false;
+	private int wallDistance;
+	private RangeListener rangeListener;
+
+	private RangeInput [] ranges = {new LinkRange(SlaveProtocol.LEFT), new LinkRange(SlaveProtocol.RIGHT)};
+	private RegulatedMotor [] grabbers = {new LinkMotor(SlaveProtocol.LEFT), new LinkMotor(SlaveProtocol.RIGHT)};
+
+	/**
+	 * The constructor takes in an open connection to the slave.
+	 *
+	 * @param connection the <code>PacketConnection</code> to the slave
+	 * @param clock the <code>Clock</code> of the robot
+	 */
+	public SlaveLink(PacketConnection connection, Clock clock) {
+		this.connection = connection;
+		this.clock = clock;
+	}
+
+	/**
+	 * Opens the link over a connection to the slave, such as an <code>RS485Connection</code>.
+	 *
+	 * @param connection the <code>PacketConnection</code> to the slave
+	 * @param clock the <code>Clock</code> of the robot
+	 * @return the <code>SlaveLink</code>, which has read the slave once
+	 * @throws IOException if the slave does not respond
+	 */
+	public static SlaveLink open(PacketConnection connection, Clock clock) throws IOException {
+		SlaveLink link = new SlaveLink(connection, clock);
+		if (!link.refresh()) {
+			connection.close();
+			throw new IOException("the slave does not respond");
+		}
+		return link;
+	}
+
+	/**
+	 * Returns an ultrasonic sensor of the slave
+	 * @param sensor the <code>int</code> sensor, <code>SlaveProtocol.LEFT</code> or <code>RIGHT</code>
+	 * @return the <code>RangeInput</code>
+	 */
+	public RangeInput getRange(int sensor) {
+		return ranges[sensor];
+	}
+
+	/**
+	 * Returns a grabber of the slave
+	 * @param grabber the <code>int</code> grabber, <code>SlaveProtocol.LEFT</code> or <code>RIGHT</code>
+	 * @return the <code>RegulatedMotor</code>
+	 */
+	public RegulatedMotor getGrabber(int grabber) {
+		return grabbers[grabber];
+	}
+
+	/**
+	 * Reads the slave again, with no command.
+	 * @return <code>true</code> if the slave responded
+	 */
+	public synchronized boolean refresh() {
+		return exchange(0);
+	}
+
+	/**
+	 * Makes the slave sample both sensors and push their filtered distances, until
+	 * <code>stopSampling</code>.
+	 *
+	 * @param wallDistance the <code>int</code> distance in cm under which a sensor sees a wall
+	 * @return <code>true</code> if the slave samples
+	 */
+	public synchronized boolean startSampling(int wallDistance) {
+		this.wallDistance = wallDistance;
+		exchange(SlaveProtocol.SAMPLE_START);
+		return sampling;
+	}
+
+	/**
+	 * Stops the sampling of the slave. The sensors are left in the mode of its last ping.
+	 */
+	public synchronized void stopSampling() {
+		sampling = false;
+		exchange(SlaveProtocol.SAMPLE_STOP);
+	}
+
+	/**
+	 * Returns whether the slave samples the sensors on its own
+	 * @return <code>true</code> if it samples
+	 */
+	public synchronized boolean isSampling() {
+		return sampling;
+	}
+
+	/**
+	 * Sets the listener told of the pushes of the slave.
+	 *
+	 * @param listener the <code>RangeListener</code>, <code>null</code> for none
+	 */
+	public synchronized void setRangeListener(RangeListener listener) {
+		rangeListener = listener;
+	}
+
+	/**
+	 * Takes in the frames the slave pushed since the last exchange, without waiting. While an
+	 * exchange waits for its response it takes them in itself, and this returns at once.
+	 */
+	public synchronized void poll() {
+		if (exchanging)
+			return;
+		while (true) {
+			int read = connection.read(response, SlaveProtocol.RESPONSE_LENGTH, false);
+			if (read <= 0)
+				return;
+			if (read == SlaveProtocol.RESPONSE_LENGTH)
+				isPush();
+		}
+	}
+
+	/**
+	 * Turns both grabbers to tacho counts with a single request.
+	 *
+	 * @param left the <code>int</code> tacho count of the left grabber
+	 * @param right the <code>int</code> tacho count of the right grabber
+	 * @param immediateReturn <code>true</code> to return at once, <code>false</code> to wait
+	 * until both are there
+	 */
+	public void rotateGrabbersTo(int left, int right, boolean immediateReturn) {
+		synchronized (this) {
+			awaitSettled(0);
+			actions[SlaveProtocol.LEFT] = actions[SlaveProtocol.RIGHT] = SlaveProtocol.ROTATE_TO;
+			values[SlaveProtocol.LEFT] = left;
+			values[SlaveProtocol.RIGHT] = right;
+			if (!exchange(0))
+				awaitSettled(1);
+		}
+		if (!immediateReturn)
+			waitWhileMoving(3);
+	}
+
+	/**
+	 * Returns the time of the slave as of the last exchange
+	 * @return the <code>int</code> time in ms, which wraps around
+	 */
+	public synchronized int getSlaveTime() {
+		return slaveTime;
+	}
+
+	/**
+	 * Returns the time of the last exchange that succeeded, on the clock of the master
+	 * @return the <code>long</code> time in ms
+	 */
+	public synchronized long getExchangeTime() {
+		return exchangeTime;
+	}
+
+	/**
+	 * Returns the number of exchanges given up so far
+	 * @return the <code>int</code> number of errors
+	 */
+	public synchronized int getErrorCount() {
+		return errors;
+	}
+
+	/**
+	 * Ends the program of the slave and closes the connection.
+	 */
+	public synchronized void close() {
+		exchange(SlaveProtocol.CLOSE);
+		connection.close();
+	}
+
+	/*
+	 * Carries out a command on one grabber. The command goes in a request of its own, after the
+	 * one left unanswered if there is one, and if its request is not answered it is the one sent
+	 * again.
+	 */
+	private synchronized void command(int grabber, int action, int value) {
+		awaitSettled(0);
+		actions[grabber] = action;
+		values[grabber] = value;
+		if (!exchange(0))
+			awaitSettled(1);
+	}
+
+	// sends the request that was not answered again until it is, in the exchanges left of a few
+	private void awaitSettled(int failed) {
+		while (!settle())
+			if (++failed >= MAX_EXCHANGES)
+				throw new IllegalStateException("the slave does not answer");
+	}
+
+	// sends the request that was not answered again, returns true once none is left
+	private boolean settle() {
+		awaitExchange();
+		if (!unanswered)
+			return true;
+		if (!transmit()) {
+			errors++;
+			return false;
+		}
+		unanswered = false;
+		answered(unansweredFlags);
+		return true;
+	}
+
+	/*
+	 * One exchange with the slave, carrying the pending commands, after the request that was not
+	 * answered if there is one. A sensor whose ping may still be echoing is not read unless asked
+	 * to, as the slave would wait for the echo. While the slave samples it gives its filtered
+	 * distances and is not asked to read.
+	 */
+	private boolean exchange(int flags) {
+		if (!settle())
+			return false;
+		// settled, so no exchange is waiting for its response until this one does
+		long now = clock.currentTimeMillis();
+		for (int i = 0; i < 2; i++)
+			if (!sampling && now - pingTimes[i] >= RangeInput.PING_TIME)
+				flags |= READ_FLAGS[i];
+		SlaveProtocol.startRequest(request, sequence, flags);
+		for (int i = 0; i < 2; i++)
+			SlaveProtocol.setCommand(request, i, actions[i], speeds[i], values[i]);
+		SlaveProtocol.setWallDistance(request, wallDistance);
+		SlaveProtocol.seal(request, SlaveProtocol.REQUEST_LENGTH);
+
+		if (!transmit()) {
+			unanswered = true;
+			unansweredFlags = flags;
+			errors++;
+			return false;
+		}
+		answered(flags);
+		return true;
+	}
+
+	// sends the request until it is answered, at most a few times
+	private boolean transmit() {
+		exchanging = true;
+		try {
+			for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++)
+				if (connection.write(request, SlaveProtocol.REQUEST_LENGTH) == SlaveProtocol.REQUEST_LENGTH
+						&& receive())
+					return true;
+			return false;
+		} finally {
+			exchanging = false;
+			notifyAll();
+		}
+	}
+
+	// waits until no other exchange waits for its response, as the request is shared
+	private void awaitExchange() {
+		while (exchanging) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				// keep waiting for the exchange
+			}
+		}
+	}
+
+	// takes in the answer to the request, whose commands are then carried out
+	private void answered(int flags) {
+		actions[0] = actions[1] = SlaveProtocol.NONE;
+		sequence = (sequence + 1) & 0xFF;
+		if ((flags & SlaveProtocol.SAMPLE_START) != 0)
+			sampling = true;
+		if ((flags & SlaveProtocol.SAMPLE_STOP) != 0)
+			sampling = false;
+		long now = clock.currentTimeMillis();
+		int fresh = SlaveProtocol.getFresh(response);
+		for (int i = 0; i < 2; i++) {
+			if ((fresh & (1 << i)) != 0) {
+				distances[i] = SlaveProtocol.getDistance(response, i);
+				readTimes[i] = now;
+			}
+			if ((flags & PING_FLAGS[i]) != 0)
+				pingTimes[i] = now;
+			tachoCounts[i] = SlaveProtocol.getTachoCount(response, i);
+		}
+		if ((flags & SlaveProtocol.CONTINUOUS) != 0)
+			pingTimes[0] = pingTimes[1] = -RangeInput.PING_TIME;
+		moving = SlaveProtocol.getMoving(response);
+		slaveTime = SlaveProtocol.getTime(response);
+		exchangeTime = now;
+	}
+
+	// waits for the response to the request, taking in pushes and dropping any other frame
+	private boolean receive() {
+		long end = clock.currentTimeMillis() + RESPONSE_TIMEOUT;
+		while (true) {
+			int read = connection.read(response, SlaveProtocol.RESPONSE_LENGTH, false);
+			if (read < 0)
+				return false;
+			if (read == SlaveProtocol.RESPONSE_LENGTH && !isPush()
+					&& SlaveProtocol.isIntact(response, SlaveProtocol.RESPONSE_LENGTH)
+					&& SlaveProtocol.getSequence(response) == sequence)
+				return SlaveProtocol.getFlags(response) == SlaveProtocol.OK;
+			if (read == 0) {
+				if (clock.currentTimeMillis() >= end)
+					return false;
+				// lets go of the link in between, so that poll does not wait for the exchange
+				try {
+					wait(1);
+				} catch (InterruptedException e) {
+					// look at the connection again
+				}
+			}
+		}
+	}
+
+	/*
+	 * Takes in the frame read if it is a push, and tells whether it was one. Pushes that come
+	 * after the sampling is stopped are dropped.
+	 */
+	private boolean isPush() {
+		if (SlaveProtocol.getFlags(response) != SlaveProtocol.PUSH
+				|| !SlaveProtocol.isIntact(response, SlaveProtocol.RESPONSE_LENGTH))
+			return false;
+		if (!sampling)
+			return true;
+		long now = clock.currentTimeMillis();
+		for (int i = 0; i < 2; i++) {
+			distances[i] = SlaveProtocol.getDistance(response, i);
+			readTimes[i] = now;
+			tachoCounts[i] = SlaveProtocol.getTachoCount(response, i);
+		}
+		int bits = SlaveProtocol.getFresh(response);
+		moving = SlaveProtocol.getMoving(response);
+		slaveTime = SlaveProtocol.getTime(response);
+		if (rangeListener != null)
+			rangeListener.rangesPushed(distances[SlaveProtocol.LEFT], distances[SlaveProtocol.RIGHT],
+					bits & 3, (bits & SlaveProtocol.WALL_EVENT) != 0, now);
+		return true;
+	}
+
+	// reads the slave if the last exchange is not fresh
+	private synchronized void refreshIfStale() {
+		if (clock.currentTimeMillis() - exchangeTime >= FRESH_TIME)
+			exchange(0);
+	}
+
+	// waits until none of the grabbers of the bits move, without holding the link in between
+	private void waitWhileMoving(int bits) {
+		int failures = 0;
+		while (true) {
+			synchronized (this) {
+				if ((moving & bits) == 0 || failures >= MAX_ATTEMPTS)
+					return;
+			}
+			clock.delay(MOTION_POLL);
+			synchronized (this) {
+				if (!exchange(0))
+					failures++;
+			}
+		}
+	}
+
+	/*
+	 * An ultrasonic sensor of the slave.
+	 */
+	private class LinkRange implements RangeInput {
+		private int sensor;
+
+		LinkRange(int sensor) {
+			this.sensor = sensor;
+		}
+
+		// while the slave samples it pings the sensors itself
+		public void continuous() {
+			synchronized (SlaveLink.this) {
+				if (!sampling)
+					exchange(SlaveProtocol.CONTINUOUS);
+			}
+		}
+
+		public void ping() {
+			synchronized (SlaveLink.this) {
+				if (!sampling)
+					exchange(PING_FLAGS[sensor]);
+			}
+		}
+
+		// while the slave samples it is the last distance it pushed
+		public int getDistance() {
+			synchronized (SlaveLink.this) {
+				long now = clock.currentTimeMillis();
+				// read after the last ping and not long ago
+				if (!sampling && (readTimes[sensor] < pingTimes[sensor] || now - readTimes[sensor] >= FRESH_TIME))
+					exchange(READ_FLAGS[sensor]);
+				return distances[sensor];
+			}
+		}
+	}
+
+	/*
+	 * A grabber of the slave.
+	 */
+	private class LinkMotor implements RegulatedMotor {
+		private int grabber;
+
+		LinkMotor(int grabber) {
+			this.grabber = grabber;
+		}
+
+		public void setSpeed(int speed) {
+			synchronized (SlaveLink.this) {
+				speeds[grabber] = speed;
+				command(grabber, SlaveProtocol.SPEED, 0);
+			}
+		}
+
+		public void setAcceleration(int acceleration) {
+			command(grabber, SlaveProtocol.ACCELERATION, acceleration);
+		}
+
+		public void forward() {
+			command(grabber, SlaveProtocol.FORWARD, 0);
+		}
+
+		public void backward() {
+			command(grabber, SlaveProtocol.BACKWARD, 0);
+		}
+
+		public void stop() {
+			command(grabber, SlaveProtocol.STOP, 0);
+			waitWhileMoving(1 << grabber);
+		}
+
+		public void flt(boolean immediateReturn) {
+			command(grabber, SlaveProtocol.FLOAT, 0);
+			if (!immediateReturn)
+				waitWhileMoving(1 << grabber);
+		}
+
+		public void rotate(int angle, boolean immediateReturn) {
+			command(grabber, SlaveProtocol.ROTATE, angle);
+			if (!immediateReturn)
+				waitWhileMoving(1 << grabber);
+		}
+
+		public void rotateTo(int limitAngle, boolean immediateReturn) {
+			command(grabber, SlaveProtocol.ROTATE_TO, limitAngle);
+			if (!immediateReturn)
+				waitWhileMoving(1 << grabber);
+		}
+
+		public int getTachoCount() {
+			synchronized (SlaveLink.this) {
+				refreshIfStale();
+				return tachoCounts[grabber];
+			}
+		}
+
+		public boolean isMoving() {
+			synchronized (SlaveLink.this) {
+				refreshIfStale();
+				return (moving & (1 << grabber)) != 0;
+			}
+		}
+	}
+}
@@ -0,0 +1,386 @@
+package hardware;
+
+/**
+ * The <code>SlaveProtocol</code> class is the layout of the frames the master brick and the
+ * slave brick exchange over RS485, shared by <code>SlaveLink</code> on the master and the
+ * <code>SlaveProgram</code> on the slave.
+ *
+ * Every exchange is one request of the master and one response of the slave, both of a fixed
+ * length. The request carries a sequence number, flags that ping or read the ultrasonic sensors,
+ * and one command for each grabber. The response echoes the sequence number and carries both
+ * distances, both tacho counts, whether the grabbers are moving and the time of the slave. Both
+ * end with a CRC-16 of the rest of the frame, so that a damaged frame is dropped rather than
+ * acted upon. The slave carries out the commands of a sequence number once, so the master can
+ * send a request again when its response is lost. Numbers are sent high byte first.
+ *
+ * The slave can also sample the sensors on its own, filter the distances and decide the walls,
+ * from a <code>SAMPLE_START</code> request until a <code>SAMPLE_STOP</code> one. It then pushes
+ * frames of the layout of a response without being asked: one as soon as a sensor sees a wall
+ * or stops seeing it, and one every <code>PUSH_PERIOD</code> in between. A push has the status
+ * <code>PUSH</code>, a count of the pushes in place of the sequence number, and the bits of the
+ * walls in place of the fresh ones.
+ *
+ * <pre>
+ * request:  sequence, flags, 2 x (action, speed:2, value:4), wall distance, crc:2
+ * response: sequence, status, left distance, right distance, left tacho:4, right tacho:4,
+ *           moving, fresh, slave time:4, crc:2
+ * </pre>
+ *
+ * @see SlaveLink
+ *
+ * @author Stefan Ti
+ */
+public class SlaveProtocol {
+	/**
+	 * The length of a request in bytes.
+	 */
+	public static final int REQUEST_LENGTH = 19;
+	/**
+	 * The length of a response in bytes.
+	 */
+	public static final int RESPONSE_LENGTH = 20;
+
+	/**
+	 * The index of the left grabber and ultrasonic sensor in a frame.
+	 */
+	public static final int LEFT = 0;
+	/**
+	 * The index of the right grabber and ultrasonic sensor in a frame.
+	 */
+	public static final int RIGHT = 1;
+
+	/**
+	 * The flag that pings the left sensor, after the distances are read.
+	 */
+	public static final int PING_LEFT = 1;
+	/**
+	 * The flag that pings the right sensor, after the distances are read.
+	 */
+	public static final int PING_RIGHT = 2;
+	/**
+	 * The flag that puts both sensors in continuous mode.
+	 */
+	public static final int CONTINUOUS = 4;
+	/**
+	 * The flag that reads the left sensor, which waits for the echo of its last ping.
+	 */
+	public static final int READ_LEFT = 8;
+	/**
+	 * The flag that reads the right sensor, which waits for the echo of its last ping.
+	 */
+	public static final int READ_RIGHT = 16;
+	/**
+	 * The flag that ends the program of the slave once it has responded.
+	 */
+	public static final int CLOSE = 32;
+	/**
+	 * The flag that makes the slave sample both sensors on its own and push what it filters,
+	 * with walls closer than the wall distance of the request.
+	 */
+	public static final int SAMPLE_START = 64;
+	/**
+	 * The flag that stops the sampling of the slave, and its pushes.
+	 */
+	public static final int SAMPLE_STOP = 128;
+
+	/**
+	 * The grabber is left as it is.
+	 */
+	public static final int NONE = 0;
+	/**
+	 * The grabber turns forward at the speed.
+	 */
+	public static final int FORWARD = 1;
+	/**
+	 * The grabber turns backward at the speed.
+	 */
+	public static final int BACKWARD = 2;
+	/**
+	 * The grabber brakes and holds its position.
+	 */
+	public static final int STOP = 3;
+	/**
+	 * The grabber turns freely.
+	 */
+	public static final int FLOAT = 4;
+	/**
+	 * The grabber turns by the value in degrees at the speed.
+	 */
+	public static final int ROTATE = 5;
+	/**
+	 * The grabber turns to the tacho count of the value at the speed.
+	 */
+	public static final int ROTATE_TO = 6;
+	/**
+	 * The grabber is regulated at the speed from now on.
+	 */
+	public static final int SPEED = 7;
+	/**
+	 * The grabber accelerates by the value in degrees per second per second from now on.
+	 */
+	public static final int ACCELERATION = 8;
+
+	/**
+	 * The status of a response to a request that was carried out.
+	 */
+	public static final int OK = 0;
+	/**
+	 * The status of a response to a damaged request, which was dropped.
+	 */
+	public static final int BAD_FRAME = 1;
+	/**
+	 * The status of a frame the slave pushes while it samples.
+	 */
+	public static final int PUSH = 2;
+
+	/**
+	 * The bit of a push that tells it was sent because a wall was seen or lost, beside the bits
+	 * of the walls, 1 for the left sensor and 2 for the right one.
+	 */
+	public static final int WALL_EVENT = 4;
+	/**
+	 * The time between two pushes when the walls do not change, in ms.
+	 */
+	public static final int PUSH_PERIOD = 100;
+
+	private static final int COMMAND_OFFSET = 2, COMMAND_LENGTH = 7, WALL_OFFSET = 16;
+	private static final int DISTANCE_OFFSET = 2, TACHO_OFFSET = 4, MOVING_OFFSET = 12,
+			FRESH_OFFSET = 13, TIME_OFFSET = 14;
+
+	private SlaveProtocol() {
+	}
+
+	/**
+	 * Fills a request without commands, that reads the sensors as the flags ask.
+	 *
+	 * @param frame the <code>byte</code> array of <code>REQUEST_LENGTH</code> to fill
+	 * @param sequence the <code>int</code> sequence number, of which the low byte is sent
+	 * @param flags the <code>int</code> flags
+	 */
+	public static void startRequest(byte [] frame, int sequence, int flags) {
+		frame[0] = (byte) sequence;
+		frame[1] = (byte) flags;
+		for (int i = COMMAND_OFFSET; i < REQUEST_LENGTH; i++)
+			frame[i] = 0;
+	}
+
+	/**
+	 * Sets the command of a grabber in a request.
+	 *
+	 * @param frame the <code>byte</code> array of the request
+	 * @param grabber the <code>int</code> grabber, <code>LEFT</code> or <code>RIGHT</code>
+	 * @param action the <code>int</code> action
+	 * @param speed the <code>int</code> speed in degrees per second
+	 * @param value the <code>int</code> angle, tacho count or acceleration of the action
+	 */
+	public static void setCommand(byte [] frame, int grabber, int action, int speed, int value) {
+		int offset = COMMAND_OFFSET + grabber * COMMAND_LENGTH;
+		frame[offset] = (byte) action;
+		putShort(frame, offset + 1, speed);
+		putInt(frame, offset + 3, value);
+	}
+
+	/**
+	 * Returns the action of a grabber in a request
+	 * @param frame the <code>byte</code> array of the request
+	 * @param grabber the <code>int</code> grabber, <code>LEFT</code> or <code>RIGHT</code>
+	 * @return the <code>int</code> action
+	 */
+	public static int getAction(byte [] frame, int grabber) {
+		return frame[COMMAND_OFFSET + grabber * COMMAND_LENGTH] & 0xFF;
+	}
+
+	/**
+	 * Returns the speed of the command of a grabber in a request
+	 * @param frame the <code>byte</code> array of the request
+	 * @param grabber the <code>int</code> grabber, <code>LEFT</code> or <code>RIGHT</code>
+	 * @return the <code>int</code> speed in degrees per second
+	 */
+	public static int getSpeed(byte [] frame, int grabber) {
+		return getShort(frame, COMMAND_OFFSET + grabber * COMMAND_LENGTH + 1);
+	}
+
+	/**
+	 * Returns the value of the command of a grabber in a request
+	 * @param frame the <code>byte</code> array of the request
+	 * @param grabber the <code>int</code> grabber, <code>LEFT</code> or <code>RIGHT</code>
+	 * @return the <code>int</code> angle, tacho count or acceleration
+	 */
+	public static int getValue(byte [] frame, int grabber) {
+		return getInt(frame, COMMAND_OFFSET + grabber * COMMAND_LENGTH + 3);
+	}
+
+	/**
+	 * Sets the distance under which the sampling of the slave sees a wall.
+	 *
+	 * @param frame the <code>byte</code> array of the request
+	 * @param distance the <code>int</code> distance in cm, below 256
+	 */
+	public static void setWallDistance(byte [] frame, int distance) {
+		frame[WALL_OFFSET] = (byte) distance;
+	}
+
+	/**
+	 * Returns the distance under which the sampling of the slave sees a wall
+	 * @param frame the <code>byte</code> array of the request
+	 * @return the <code>int</code> distance in cm
+	 */
+	public static int getWallDistance(byte [] frame) {
+		return frame[WALL_OFFSET] & 0xFF;
+	}
+
+	/**
+	 * Fills a response, but for its CRC.
+	 *
+	 * @param frame the <code>byte</code> array of <code>RESPONSE_LENGTH</code> to fill
+	 * @param sequence the <code>int</code> sequence number of the request
+	 * @param status the <code>int</code> status
+	 * @param distances the <code>int</code> distances of the left and right sensors
+	 * @param tachoCounts the <code>int</code> tacho counts of the left and right grabbers
+	 * @param moving the <code>int</code> bits of the grabbers that move, 1 for the left one and
+	 * 2 for the right one
+	 * @param fresh the <code>int</code> bits of the distances read for this request, or of the
+	 * walls of a push
+	 * @param time the <code>int</code> time of the slave in ms
+	 */
+	public static void setResponse(byte [] frame, int sequence, int status, int [] distances,
+			int [] tachoCounts, int moving, int fresh, int time) {
+		frame[0] = (byte) sequence;
+		frame[1] = (byte) status;
+		frame[DISTANCE_OFFSET + LEFT] = (byte) distances[LEFT];
+		frame[DISTANCE_OFFSET + RIGHT] = (byte) distances[RIGHT];
+		putInt(frame, TACHO_OFFSET, tachoCounts[LEFT]);
+		putInt(frame, TACHO_OFFSET + 4, tachoCounts[RIGHT]);
+		frame[MOVING_OFFSET] = (byte) moving;
+		frame[FRESH_OFFSET] = (byte) fresh;
+		putInt(frame, TIME_OFFSET, time);
+	}
+
+	/**
+	 * Returns the sequence number of a frame
+	 * @param frame the <code>byte</code> array of a request or a response
+	 * @return the <code>int</code> sequence number, between 0 and 255
+	 */
+	public static int getSequence(byte [] frame) {
+		return frame[0] & 0xFF;
+	}
+
+	/**
+	 * Returns the flags of a request, or the status of a response
+	 * @param frame the <code>byte</code> array of a request or a response
+	 * @return the <code>int</code> flags or status
+	 */
+	public static int getFlags(byte [] frame) {
+		return frame[1] & 0xFF;
+	}
+
+	/**
+	 * Returns a distance of a response
+	 * @param frame the <code>byte</code> array of the response
+	 * @param sensor the <code>int</code> sensor, <code>LEFT</code> or <code>RIGHT</code>
+	 * @return the <code>int</code> distance in cm
+	 */
+	public static int getDistance(byte [] frame, int sensor) {
+		return frame[DISTANCE_OFFSET + sensor] & 0xFF;
+	}
+
+	/**
+	 * Returns a tacho count of a response
+	 * @param frame the <code>byte</code> array of the response
+	 * @param grabber the <code>int</code> grabber, <code>LEFT</code> or <code>RIGHT</code>
+	 * @return the <code>int</code> tacho count in degrees
+	 */
+	public static int getTachoCount(byte [] frame, int grabber) {
+		return getInt(frame, TACHO_OFFSET + 4 * grabber);
+	}
+
+	/**
+	 * Returns the bits of the grabbers that move in a response
+	 * @param frame the <code>byte</code> array of the response
+	 * @return the <code>int</code> bits, 1 for the left grabber and 2 for the right one
+	 */
+	public static int getMoving(byte [] frame) {
+		return frame[MOVING_OFFSET] & 0xFF;
+	}
+
+	/**
+	 * Returns the bits of the distances of a response that were read for its request, or the
+	 * bits of the walls of a push
+	 * @param frame the <code>byte</code> array of the response
+	 * @return the <code>int</code> bits, 1 for the left sensor and 2 for the right one, and
+	 * <code>WALL_EVENT</code> in a push sent for a change of the walls
+	 */
+	public static int getFresh(byte [] frame) {
+		return frame[FRESH_OFFSET] & 0xFF;
+	}
+
+	/**
+	 * Returns the time of the slave in a response
+	 * @param frame the <code>byte</code> array of the response
+	 * @return the <code>int</code> time in ms, which wraps around
+	 */
+	public static int getTime(byte [] frame) {
+		return getInt(frame, TIME_OFFSET);
+	}
+
+	/**
+	 * Writes the CRC of a frame in its last two bytes.
+	 *
+	 * @param frame the <code>byte</code> array of the frame
+	 * @param length the <code>int</code> length of the frame, CRC included
+	 */
+	public static void seal(byte [] frame, int length) {
+		putShort(frame, length - 2, crc(frame, length - 2));
+	}
+
+	/**
+	 * Returns whether the CRC at the end of a frame is the one of the rest of it.
+	 *
+	 * @param frame the <code>byte</code> array of the frame
+	 * @param length the <code>int</code> length of the frame, CRC included
+	 * @return <code>true</code> if the frame is whole
+	 */
+	public static boolean isIntact(byte [] frame, int length) {
+		return (getShort(frame, length - 2) & 0xFFFF) == crc(frame, length - 2);
+	}
+
+	/**
+	 * Computes the CRC-16 of the CCITT, polynomial 0x1021 from 0xFFFF, of the start of a frame.
+	 * Frames are short, so it is computed bit by bit rather than with a table.
+	 *
+	 * @param frame the <code>byte</code> array of the frame
+	 * @param length the <code>int</code> number of bytes covered
+	 * @return the <code>int</code> CRC, between 0 and 65535
+	 */
+	public static int crc(byte [] frame, int length) {
+		int crc = 0xFFFF;
+		for (int i = 0; i < length; i++) {
+			crc ^= (frame[i] & 0xFF) << 8;
+			for (int bit = 0; bit < 8; bit++)
+				crc = (crc & 0x8000) != 0 ? (crc << 1) ^ 0x1021 : crc << 1;
+		}
+		return crc & 0xFFFF;
+	}
+
+	private static void putShort(byte [] frame, int offset, int value) {
+		frame[offset] = (byte) (value >> 8);
+		frame[offset + 1] = (byte) value;
+	}
+
+	// a signed short, as speeds are sent
+	private static int getShort(byte [] frame, int offset) {
+		return (short) ((frame[offset] << 8) | (frame[offset + 1] & 0xFF));
+	}
+
+	private static void putInt(byte [] frame, int offset, int value) {
+		frame[offset] = (byte) (value >> 24);
+		frame[offset + 1] = (byte) (value >> 16);
+		frame[offset + 2] = (byte) (value >> 8);
+		frame[offset + 3] = (byte) value;
+	}
+
+	private static int getInt(byte [] frame, int offset) {
+		return (frame[offset] << 24) | ((frame[offset + 1] & 0xFF) << 16)
+				| ((frame[offset + 2] & 0xFF) << 8) | (frame[offset + 3] & 0xFF);
+	}
+}
@@ -1,25 +1,25 @@
 package localize;
 
+import traveling.Calibration;
+import traveling.LightBaseline;
 import traveling.Navigation;
 import traveling.Odometer;
-import lejos.nxt.ColorSensor;
-import lejos.nxt.LCD;
-import lejos.nxt.Motor;
-import lejos.nxt.NXTRegulatedMotor;
-import lejos.nxt.Sound;
-import lejos.nxt.UltrasonicSensor;
-import lejos.util.Delay;
+import hardware.Clock;
+import hardware.ColorInput;
+import hardware.Feedback;
+import hardware.RangeInput;
 
 /**
  * The class <code>Localizer</code> can perform full localization using
- * the two instances of the <code>UltrasonicSensor</code> class and two
- * instances of the <code>ColorSensor</code> class. It leaves the robot 
+ * the two ultrasonic sensors, as <code>RangeInputs</code>, and the two
+ * line sensors, as <code>ColorInputs</code>. It leaves the robot 
  * oriented at 0 degrees with a wall to the right and in the back of it
  * and the first gird line corner. It works for when the robot is in a 
  * corner with a perfect right angle.
  * 
  * An instance of this class holds ambient colors of light and measures a relative 
- * difference to find when it detects a grid line. It also holds an indstace of the class
+ * difference to find when it detects a grid line. The ambient light is only the starting
+ * point of a <code>LightBaseline</code> per sensor, which follows the floor while the robot moves. It also holds an indstace of the class
  * <code>Odometer</code> and <code>Navigation</code>. In addition it has an <code>int</code>
  * speed at which it travels at.
  * many readings were done.
@@ -30,39 +30,57 @@ import lejos.util.Delay;
  */
 
 public class Localizer {
-	private UltrasonicSensor usLeft;
-	private UltrasonicSensor usRight;
+	private RangeInput usLeft;
+	private RangeInput usRight;
 	private Odometer odo;
-	private ColorSensor colorLeft;
-	private ColorSensor colorRight;
+	private ColorInput colorLeft;
+	private ColorInput colorRight;
 	private Navigation navigation;
+	private Clock clock;
+	private Feedback feedback;
 	private int ambientLeft = 0, ambientRight = 0;
+	private int calibrationLeft, calibrationRight;
+	private boolean measureAmbient;
 	private static final int SPEED = 150;
+	// the sensors are read at the rate of the odometry correction, as every reading moves the baselines
+	private static final int SAMPLE_PERIOD = 4;
+	private long nextSample;
 
 	/**
 	 * The constructor of the <code>Localizer</code> class takes as parameter 
-	 * the two instances of the <code>UltrasonicSensor</code> class and two
-	 * instances of the <code>ColorSensor</code> class. It also takes in the
-	 * <code>Odometer</code> that is being used. It then sets its attributes 
-	 * to the respective parameters.
-	 * @param usLeft the left <code>UltrasonicSensor</code> that was is used in the localization
-	 * @param usRight the right <code>UltrasonicSensor</code> that was is used in the localization
+	 * the two ultrasonic and the two line sensors of the robot. It also takes in the
+	 * <code>Odometer</code> that is being used, whose <code>Robot</code> gives the
+	 * time and the sounds. It then sets its attributes to the respective parameters.
+	 * @param usLeft the left <code>RangeInput</code> that was is used in the localization
+	 * @param usRight the right <code>RangeInput</code> that was is used in the localization
 	 * @param odo the <code>Odometer</code> that is used for the robot
-	 * @param colorLeft the left <code>ColorSensor</code> of the robot
-	 * @param colorRight the right <code>ColorSensor</code> of the robot
+	 * @param colorLeft the left <code>ColorInput</code> of the robot
+	 * @param colorRight the right <code>ColorInput</code> of the robot
 	 */
-	public Localizer(UltrasonicSensor usLeft, UltrasonicSensor usRight,
-			Odometer odo, ColorSensor colorLeft, ColorSensor colorRight) {
+	public Localizer(RangeInput usLeft, RangeInput usRight,
+			Odometer odo, ColorInput colorLeft, ColorInput colorRight) {
 		this.usLeft = usLeft;
 		this.usRight = usRight;
 		this.odo = odo;
 		this.colorLeft = colorLeft;
 		this.colorRight = colorRight;
 		this.navigation = odo.getNavigation();
+		this.clock = odo.getRobot().getClock();
+		this.feedback = odo.getRobot().getFeedback();
+
+		// the calibration stores the ambient light in the order the sensors were given to the odometer
+		calibrationLeft = odo.getOdometryCorrection().getLeftSensor() == colorLeft ? Calibration.LEFT_SENSOR : Calibration.RIGHT_SENSOR;
+		calibrationRight = 1 - calibrationLeft;
+		Calibration calibration = odo.getCalibration();
+		measureAmbient = !calibration.hasAmbient();
+		if (!measureAmbient) {
+			ambientLeft = calibration.getAmbient(calibrationLeft);
+			ambientRight = calibration.getAmbient(calibrationRight);
+		}
 	}
 
 	/**
-	 * This method uses the <code>UltrasonicSensor</code> to locate walls 
+	 * This method uses the left <code>RangeInput</code> to locate walls 
 	 * and turns to the angle that leaves it facing the corner of the two walls.
 	 */
 	public void USlocalize() {
@@ -76,16 +94,17 @@ public class Localizer {
 		double angle[] = { 0, 0 };
 		int lightCount = 0;
 		usLeft.continuous();
-		Delay.msDelay(1000);
+		clock.delay(1000);
 		navigation.setSpeeds(SPEED, -SPEED);
 		distance = usLeft.getDistance();
 
 		// If the robot is facing a wall, rotate when it's not facing the wall	
 		if (distance < 50) {
-			Sound.buzz();   
+			feedback.buzz();   
 			facingWall = true;
 			while (distance < 90) {
-				distance = usLeft.getDistance();				
+				clock.delay(20);
+				distance = usLeft.getDistance();
 			}
 		}
 		int count = 0;
@@ -98,27 +117,36 @@ public class Localizer {
 
 				angle[count] += odo.getAng();
 				count++;
-				Sound.beep();
-				Delay.msDelay(2000);
+				feedback.beep();
+				clock.delay(2000);
 				while (distance < (tempDistance+10)) {
-					Delay.msDelay(50);
+					clock.delay(50);
 					distance = usLeft.getDistance();
 
 				}
 				angle[count] = odo.getAng();
-				Sound.beep();
+				feedback.beep();
 				count++;
 			}
-			//pull the light data for later use
-			Delay.msDelay(20);
-			ambientRight += colorLeft.getRawLightValue();
-			ambientLeft += colorLeft.getRawLightValue();
-			lightCount++;
+			//pull the light data for later use, unless it is already calibrated
+			clock.delay(20);
+			if (measureAmbient) {
+				ambientRight += colorRight.getRawLightValue();
+				ambientLeft += colorLeft.getRawLightValue();
+				lightCount++;
+			}
 
 		}
-		//prepare for light localization
-		ambientRight /= lightCount;
-		ambientLeft /= lightCount;
+		//prepare for light localization, and keep the ambient light for the next start
+		if (measureAmbient && lightCount > 0) {
+			ambientRight /= lightCount;
+			ambientLeft /= lightCount;
+			Calibration calibration = odo.getCalibration();
+			calibration.setAmbient(calibrationLeft, ambientLeft);
+			calibration.setAmbient(calibrationRight, ambientRight);
+			calibration.save();
+			measureAmbient = false;
+		}
 		navigation.setSpeeds(0, 0);
 		navigation.turnTo((facingWall ? 180 : 0) + (angle[0] + angle[1]) / 2,
 				true);
@@ -126,7 +154,7 @@ public class Localizer {
 	}
 
 	/**
-	 * This method uses both <code>ColorSensors</code> to detect grid lines and
+	 * This method uses both <code>ColorInputs</code> to detect grid lines and
 	 * then turns to the orientation where there is a wall to its left and bottom and
 	 * brings the robot to the first grid line encounter.
 	 */
@@ -137,7 +165,9 @@ public class Localizer {
 		odo.setY(0);
 		//get ambient light data if it isn't generated by the ultrasonic localiztion
 		if (ambientLeft == 0 || ambientRight == 0) {
+			nextSample = clock.currentTimeMillis();
 			for (int i = 0; i < 20; i++) {
+				waitForSample();
 				ambientLeft += colorLeft.getRawLightValue();
 				ambientRight += colorRight.getRawLightValue();
 
@@ -146,8 +176,10 @@ public class Localizer {
 			ambientRight /= 20;
 
 		}
-		LCD.drawInt(ambientLeft, 0, 2);
-		LCD.drawInt(ambientRight, 0, 3);
+		feedback.drawInt(ambientLeft, 0, 2);
+		feedback.drawInt(ambientRight, 0, 3);
+		LightBaseline baselineLeft = new LightBaseline(ambientLeft);
+		LightBaseline baselineRight = new LightBaseline(ambientRight);
 
 		//move backward, declare the need variable
 		navigation.setSpeeds(SPEED, SPEED);
@@ -158,42 +190,46 @@ public class Localizer {
 		boolean leftLast = false;
 
 		//sensing the grid and record distance
+		nextSample = clock.currentTimeMillis();
 		while ((indexLeft + indexRight) < 2) {
-			if ((ambientLeft * 0.9 > colorLeft.getRawLightValue())
+			waitForSample();
+			if (baselineLeft.isLine(colorLeft.getRawLightValue())
 					&& (indexLeft < 1)) {
 				leftX[indexLeft] = odo.getX();
 				tone[indexLeft + indexRight] = 330;
 				indexLeft++;
-				Sound.playTone(330, 100);
+				feedback.playTone(330, 100);
 
 			}
 
-			if ((ambientRight * 0.9 > colorRight.getRawLightValue())
+			if (baselineRight.isLine(colorRight.getRawLightValue())
 					&& indexRight < 1) {
 				rightX[indexRight] = odo.getX();
 				tone[indexLeft + indexRight] = 261;
 				indexRight++;
-				Sound.playTone(261, 100);
+				feedback.playTone(261, 100);
 			}
 		}
-		Delay.msDelay(400);
+		clock.delay(400);
+		nextSample = clock.currentTimeMillis();
 		while ((indexLeft + indexRight) < 3) {
-			if ((ambientLeft * 0.85 > colorLeft.getRawLightValue())
+			waitForSample();
+			if (baselineLeft.isLine(colorLeft.getRawLightValue())
 					&& (indexLeft < 2)) {
 				leftX[indexLeft] = odo.getX();
 				tone[indexLeft + indexRight] = 392;
 				leftLast = true;
 				indexLeft++;
-				Sound.playTone(392, 100);
+				feedback.playTone(392, 100);
 			}
 
-			if ((ambientRight * 0.85 > colorRight.getRawLightValue())
+			if (baselineRight.isLine(colorRight.getRawLightValue())
 					&& indexRight < 2) {
 				rightX[indexRight] = odo.getX();
 				tone[indexLeft + indexRight] = 523;
 				leftLast = false;
 				indexRight++;
-				Sound.playTone(523, 100);
+				feedback.playTone(523, 100);
 			}
 		}
 
@@ -228,13 +264,28 @@ public class Localizer {
 		navigation.turnTo(theta, true);
 		navigation.moveForward(SPEED, -y);
 		navigation.turnTo(Math.toDegrees(dTheta) + 180, true);
-		Delay.msDelay(200);
+		clock.delay(200);
 
 		//reset the odometer and the robot is localized
 		odo.setAng(0);
 		odo.setX(0);
 		odo.setY(0);
+		odo.getEstimator().reset();
+
+	}
 
+	/*
+	 * Waits for the next reading of the line sensors, SAMPLE_PERIOD after the last one was due
+	 * rather than after the last one was handled, so the baselines move at the same rate
+	 * whatever the loop does in between.
+	 */
+	private void waitForSample() {
+		nextSample += SAMPLE_PERIOD;
+		long wait = nextSample - clock.currentTimeMillis();
+		if (wait > 0)
+			clock.delay(wait);
+		else
+			nextSample -= wait;
 	}
 
 	/**
@@ -0,0 +1,214 @@
+package maincontrol;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import hardware.ColorInput;
+import hardware.NXTRobot;
+import hardware.RegulatedMotor;
+import hardware.SlaveLink;
+import lejos.nxt.*;
+import lejos.util.Delay;
+import scheduler.PeriodicTask;
+import scheduler.Scheduler;
+import traveling.Calibration;
+import traveling.DrivetrainCalibrator;
+import traveling.DrivetrainSolver;
+import traveling.Navigation;
+import traveling.Odometer;
+
+/**
+ * The <code>DrivetrainCalibration</code> program measures the radius of each wheel and the
+ * distance between the wheels on the grid, and stores them in the <code>Calibration</code> of
+ * the brick.
+ *
+ * The robot is placed in the middle of a tile, facing along the lines. It drives back and forth
+ * over <code>LEG_TILES</code> tiles, spinning in place by <code>SPIN</code> degrees, alternately
+ * in each direction, at the end of every leg. The <code>OdometryCorrection</code> keeps the legs
+ * along the grid while a sampling task feeds the tachos and the raw light values to a
+ * <code>DrivetrainCalibrator</code>, which uses the line crossings as the ground truth. The
+ * solution is shown and saved when ENTER is pressed.
+ *
+ * Starting with RIGHT instead of ENTER also logs every sample to
+ * <code>DrivetrainCalibrator.LOG_FILE</code>, which <code>DrivetrainCalibrationReplay</code>
+ * solves again on the host.
+ *
+ * @see DrivetrainCalibrator
+ * @see DrivetrainCalibrationReplay
+ *
+ * @author Stefan Ti
+ */
+public class DrivetrainCalibration implements PeriodicTask {
+	private static final int SAMPLE_PERIOD = 5;
+	private static final double TILE_LENGTH = 30.3;
+	private static final int LEG_TILES = 3, LEGS = 5;
+	// one turn and a half reverses the robot, alternating the direction cancels the width error
+	private static final double SPIN = 540.0;
+	private DrivetrainCalibrator calibrator;
+	private ColorInput leftCS, rightCS;
+	private RegulatedMotor leftMotor, rightMotor;
+	private DataOutputStream log;
+
+	/**
+	 * The constructor of the sampling task takes in the calibrator the samples are given to and
+	 * the sensors and motors they are read from.
+	 *
+	 * @param calibrator the <code>DrivetrainCalibrator</code> that consumes the samples
+	 * @param leftCS the left <code>ColorInput</code> of the odometry correction
+	 * @param rightCS the right <code>ColorInput</code> of the odometry correction
+	 * @param odometer the <code>Odometer</code> whose motors are read
+	 * @param log the <code>DataOutputStream</code> the samples are logged to, or <code>null</code>
+	 */
+	public DrivetrainCalibration(DrivetrainCalibrator calibrator, ColorInput leftCS, ColorInput rightCS,
+			Odometer odometer, DataOutputStream log) {
+		this.calibrator = calibrator;
+		this.leftCS = leftCS;
+		this.rightCS = rightCS;
+		this.leftMotor = odometer.getLeftMotor();
+		this.rightMotor = odometer.getRightMotor();
+		this.log = log;
+	}
+
+	/**
+	 * Starts sampling the motors and sensors every <code>SAMPLE_PERIOD</code>, as a control
+	 * task of the default <code>Scheduler</code>.
+	 */
+	public void start() {
+		Scheduler.getDefault().add("sampler", this, SAMPLE_PERIOD);
+	}
+
+	/**
+	 * Samples the motors and sensors once.
+	 *
+	 * {@inheritDoc}
+	 */
+	public void execute(long release) {
+		long now = System.currentTimeMillis();
+		int leftTacho = leftMotor.getTachoCount();
+		int rightTacho = rightMotor.getTachoCount();
+		int leftLight = leftCS.getRawLightValue();
+		int rightLight = rightCS.getRawLightValue();
+
+		calibrator.sample(now, leftTacho, rightTacho, leftLight, rightLight);
+		if (log != null) {
+			try {
+				DrivetrainCalibrator.writeSample(log, now, leftTacho, rightTacho, leftLight, rightLight);
+			} catch (IOException e) {
+				// a full flash only loses the log, not the calibration
+				log = null;
+			}
+		}
+	}
+
+	/**
+	 * Stops the sampling and waits for the last sample to be consumed.
+	 */
+	public void finish() {
+		Scheduler.getDefault().remove(this);
+	}
+
+	public static void main(String[] args) {
+		LCD.clear();
+		LCD.drawString("Drive calibration", 0, 0);
+		LCD.drawString("Robot mid tile,", 0, 2);
+		LCD.drawString("along the lines", 0, 3);
+		LCD.drawString("ENTER: run", 0, 5);
+		LCD.drawString("RIGHT: run + log", 0, 6);
+
+		int button = Button.waitForAnyPress();
+		if (button != Button.ID_ENTER && button != Button.ID_RIGHT)
+			System.exit(0);
+		LCD.clear();
+
+		// the sensors in the order Main gives them to the odometer, no slave is needed
+		NXTRobot robot = new NXTRobot((SlaveLink) null);
+		ColorInput sensorLeft = robot.getRightLineSensor();
+		ColorInput sensorRight = robot.getLeftLineSensor();
+		Calibration calibration = Calibration.load();
+		Odometer odometer = new Odometer(true, calibration, robot, sensorLeft, sensorRight);
+		Navigation navigation = odometer.getNavigation();
+
+		sensorLeft.setFloodlight(true);
+		sensorRight.setFloodlight(true);
+		if (!calibration.hasAmbient()) {
+			int sumLeft = 0, sumRight = 0;
+			for (int i = 0; i < 20; i++) {
+				sumLeft += sensorLeft.getRawLightValue();
+				sumRight += sensorRight.getRawLightValue();
+				Delay.msDelay(10);
+			}
+			calibration.setAmbient(Calibration.LEFT_SENSOR, sumLeft / 20);
+			calibration.setAmbient(Calibration.RIGHT_SENSOR, sumRight / 20);
+		}
+		int ambientLeft = calibration.getAmbient(Calibration.LEFT_SENSOR);
+		int ambientRight = calibration.getAmbient(Calibration.RIGHT_SENSOR);
+
+		DataOutputStream log = null;
+		if (button == Button.ID_RIGHT) {
+			try {
+				File file = new File(DrivetrainCalibrator.LOG_FILE);
+				if (file.exists())
+					file.delete();
+				file.createNewFile();
+				log = new DataOutputStream(new FileOutputStream(file));
+				DrivetrainCalibrator.writeHeader(log, ambientLeft, ambientRight);
+			} catch (IOException e) {
+				LCD.drawString("No log", 0, 7);
+				log = null;
+			}
+		}
+
+		DrivetrainCalibrator calibrator = new DrivetrainCalibrator(calibration, ambientLeft, ambientRight);
+		DrivetrainCalibration sampler = new DrivetrainCalibration(calibrator, sensorLeft, sensorRight, odometer, log);
+
+		// the robot starts in the middle of a tile so the correction knows which lines it crosses
+		double middle = TILE_LENGTH / 2;
+		odometer.setPosition(new double [] {middle, middle, 0}, new boolean [] {true, true, true});
+		odometer.startOdometryCorrection();
+		sampler.start();
+
+		for (int leg = 0; leg < LEGS; leg++) {
+			navigation.travelTo(leg % 2 == 0 ? middle + LEG_TILES * TILE_LENGTH : middle, middle, false);
+			if (leg < LEGS - 1)
+				navigation.turn(leg % 2 == 0 ? SPIN : -SPIN);
+		}
+		navigation.stopMotors();
+		sampler.finish();
+
+		if (log != null) {
+			try {
+				log.close();
+			} catch (IOException e) {
+				LCD.drawString("Log incomplete", 0, 7);
+			}
+		}
+
+		DrivetrainSolver solver = calibrator.getSolver();
+		LCD.clear();
+		LCD.drawString("Distances", 0, 0);
+		LCD.drawInt(solver.getDistanceCount(), 12, 0);
+		LCD.drawString("Rotations", 0, 1);
+		LCD.drawInt(solver.getRotationCount(), 12, 1);
+
+		if (!solver.solve()) {
+			LCD.drawString("No solution", 0, 3);
+			Button.waitForAnyPress();
+			System.exit(1);
+		}
+
+		LCD.drawString("L " + solver.getLeftRadius(), 0, 3);
+		LCD.drawString("R " + solver.getRightRadius(), 0, 4);
+		LCD.drawString("W " + solver.getWidth(), 0, 5);
+		LCD.drawString("ENTER: save", 0, 7);
+
+		if (Button.waitForAnyPress() == Button.ID_ENTER) {
+			solver.apply(calibration);
+			LCD.clear(7);
+			LCD.drawString(calibration.save() ? "Saved" : "Not saved", 0, 7);
+			Button.waitForAnyPress();
+		}
+		System.exit(0);
+	}
+}
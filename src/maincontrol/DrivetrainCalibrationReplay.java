@@ -0,0 +1,52 @@
+package maincontrol;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import traveling.Calibration;
+import traveling.DrivetrainCalibrator;
+import traveling.DrivetrainSolver;
+
+/**
+ * The <code>DrivetrainCalibrationReplay</code> program solves the geometry of the robot from a
+ * log recorded by <code>DrivetrainCalibration</code>, with the same <code>DrivetrainCalibrator</code>
+ * as on the brick, so the detection and the solver can be tuned on the host.
+ *
+ * It takes the log as its first argument, <code>DrivetrainCalibrator.LOG_FILE</code> by default,
+ * and optionally a calibration file of the brick as its second, whose geometry is the starting
+ * point instead of the default one.
+ *
+ * @see DrivetrainCalibration
+ * @see DrivetrainCalibrator
+ *
+ * @author Stefan Ti
+ */
+public class DrivetrainCalibrationReplay {
+
+	public static void main(String[] args) throws IOException {
+		String logFile = args.length > 0 ? args[0] : DrivetrainCalibrator.LOG_FILE;
+		Calibration initial = args.length > 1 ? Calibration.load(new File(args[1])) : new Calibration();
+
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile)));
+		DrivetrainCalibrator calibrator;
+		try {
+			calibrator = DrivetrainCalibrator.replay(initial, in);
+		} finally {
+			in.close();
+		}
+
+		DrivetrainSolver solver = calibrator.getSolver();
+		System.out.println("distances : " + solver.getDistanceCount());
+		System.out.println("rotations : " + solver.getRotationCount());
+		if (!solver.solve()) {
+			System.out.println("no solution");
+			return;
+		}
+		System.out.println("left radius  : " + solver.getLeftRadius() + " (was " + initial.getLeftRadius() + ")");
+		System.out.println("right radius : " + solver.getRightRadius() + " (was " + initial.getRightRadius() + ")");
+		System.out.println("width        : " + solver.getWidth() + " (was " + initial.getWidth() + ")");
+	}
+}
@@ -1,16 +1,24 @@
 package maincontrol;
 import traveling.Odometer;
+import lejos.nxt.Button;
 import lejos.nxt.LCD;
-import lejos.util.Timer;
-import lejos.util.TimerListener;
+import scheduler.PeriodicTask;
+import scheduler.Scheduler;
+import scheduler.TimingReport;
 /**
  * The <code>LCDInfo</code> class is used to print stuff to the LCD monitor on the NXT brick.
  * 
- * An instance of the <code>LCDInfo</code> class holds a <code>int</code> refresh rate, and
- * <code>Timer</code> lcdTimer which controls the rate at which elements will be displayed on
- * the screen.
+ * An instance of the <code>LCDInfo</code> class holds a <code>int</code> refresh rate, which
+ * controls the rate at which elements will be displayed on the screen. It is a background task
+ * of the default <code>Scheduler</code>, so it never delays the odometry or the navigation.
+ * 
+ * Pressing LEFT switches the screen to the timing of the periodic tasks, one task per press,
+ * and ESCAPE back to the odometer. Pressing RIGHT sends the timing of every task over the
+ * remote console.
  * 
  * @see Main
+ * @see Scheduler
+ * @see TimingReport
  * 
  * @author Alessandro Parisi
  * @author Stefan Ti
@@ -20,30 +28,57 @@ import lejos.util.TimerListener;
  * @since   1.0
  *
  */
-public class LCDInfo implements TimerListener{
+public class LCDInfo implements PeriodicTask{
 	private static final int LCD_REFRESH = 350;
-	private Timer lcdTimer;
+	// the position is drawn in mm, right aligned after its label
+	private static final int VALUE_COLUMN = 8, VALUE_PLACES = 8;
 	private Odometer odometer;
+	private TimingReport report = new TimingReport(Scheduler.getDefault());
+	private boolean showingTiming = false;
+	private int lastButtons = 0;
 	/**
-	 * The constructor of the <code>LCDInfo</code> class will initiate the <code>Odometer</code>,
-	 * and <code>Timer</code>. It then starts the <code>Timer</code>
+	 * The constructor of the <code>LCDInfo</code> class will initiate the <code>Odometer</code>.
+	 * It then starts refreshing the screen as a background task.
 	 * @param odo The <code>odometer</code> instance use to update the LCD
 	 */
 	public LCDInfo(Odometer odometer) {
-		this.lcdTimer = new Timer(LCD_REFRESH, this);
-		LCD.clear();
 		this.odometer = odometer;
-		// start the timer
-		lcdTimer.start();
+		drawLabels();
+		// start the task
+		Scheduler.getDefault().addBackground("lcd", this, LCD_REFRESH);
 	}
 
 	/**
-	 * This method is used to time out the timer.
+	 * This method is used to refresh the screen.
 	 * {@inheritDoc}
 	 */
-	public void timedOut() { 
-		LCD.drawString("odo x : " + odometer.getX(), 0, 0);
-		LCD.drawString("odo y : " + odometer.getY(), 0, 1);
+	public void execute(long release) { 
+		// act once per press of a button
+		int buttons = Button.readButtons();
+		int pressed = buttons & ~lastButtons;
+		lastButtons = buttons;
+
+		if ((pressed & Button.ID_LEFT) != 0) {
+			showingTiming = true;
+			report.showNextPage();
+		} else if ((pressed & Button.ID_ESCAPE) != 0 && showingTiming) {
+			showingTiming = false;
+			drawLabels();
+		}
+		if ((pressed & Button.ID_RIGHT) != 0)
+			report.sendToConsole();
 
+		// the labels stay on the screen, only the numbers are redrawn so nothing is allocated
+		if (!showingTiming) {
+			LCD.drawInt((int) Math.round(odometer.getX() * 10), VALUE_PLACES, VALUE_COLUMN, 0);
+			LCD.drawInt((int) Math.round(odometer.getY() * 10), VALUE_PLACES, VALUE_COLUMN, 1);
+		}
+	}
+
+	// clears the screen and draws the labels of the odometer screen
+	private void drawLabels() {
+		LCD.clear();
+		LCD.drawString("odo x mm", 0, 0);
+		LCD.drawString("odo y mm", 0, 1);
 	}
 }
@@ -0,0 +1,98 @@
+package maincontrol;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+
+import traveling.LightBaseline;
+import traveling.LineDetector;
+
+/**
+ * The <code>LineDetectorReplay</code> program feeds a recorded light trace of one line sensor to
+ * a <code>LineDetector</code>, as the <code>OdometryCorrection</code> does on the brick, and
+ * prints every crossing it reports, so the detection can be tuned on the host.
+ *
+ * The trace has one sample per line, its time in ms and its raw light value. Lines starting
+ * with <code>#</code> are comments, except <code># line &lt;time&gt;</code>, the time at which
+ * the sensor was known to be over the middle of a line, as
+ * <code>simulator.LightTraceRecorder</code> writes them. When the trace has them, each crossing
+ * is printed with how far it is from the closest middle, and the program ends with whether
+ * every line gave exactly one crossing. The baseline starts from the first sample, as it starts
+ * from the light measured at start up on the brick.
+ *
+ * @see LineDetector
+ * @see LightBaseline
+ *
+ * @author Stefan Ti
+ */
+public class LineDetectorReplay {
+	private static final int MAX_LINES = 64;
+	// a crossing further than this from every middle is not a crossing of a line
+	private static final long MATCH_WINDOW = 200;
+
+	public static void main(String[] args) throws IOException {
+		String file = args.length > 0 ? args[0] : "light-trace.txt";
+
+		long [] middles = new long [MAX_LINES];
+		int [] crossings = new int [MAX_LINES];
+		int lines = 0, total = 0, unmatched = 0;
+		long worst = 0;
+		LineDetector detector = null;
+
+		BufferedReader in = new BufferedReader(new FileReader(file));
+		try {
+			String text;
+			while ((text = in.readLine()) != null) {
+				text = text.trim();
+				if (text.length() == 0)
+					continue;
+				if (text.startsWith("#")) {
+					String [] words = text.substring(1).trim().split("\\s+");
+					if (words.length == 2 && words[0].equals("line") && lines < MAX_LINES)
+						middles[lines++] = Long.parseLong(words[1]);
+					continue;
+				}
+
+				String [] words = text.split("\\s+");
+				long time = Long.parseLong(words[0]);
+				int value = Integer.parseInt(words[1]);
+				if (detector == null)
+					detector = new LineDetector(new LightBaseline(value));
+				if (!detector.sample(value, time))
+					continue;
+
+				total++;
+				long crossing = detector.getCrossingTime();
+				int closest = -1;
+				for (int i = 0; i < lines; i++)
+					if (closest < 0 || Math.abs(middles[i] - crossing) < Math.abs(middles[closest] - crossing))
+						closest = i;
+				if (closest < 0) {
+					System.out.println("crossing at " + crossing + " ms");
+				} else if (Math.abs(middles[closest] - crossing) > MATCH_WINDOW) {
+					unmatched++;
+					System.out.println("crossing at " + crossing + " ms, no line there");
+				} else {
+					long error = crossing - middles[closest];
+					crossings[closest]++;
+					worst = Math.max(worst, Math.abs(error));
+					System.out.println("crossing at " + crossing + " ms, line middle at "
+							+ middles[closest] + " ms, off by " + error + " ms");
+				}
+			}
+		} finally {
+			in.close();
+		}
+
+		System.out.println("crossings : " + total);
+		if (lines == 0)
+			return;
+		int once = 0;
+		for (int i = 0; i < lines; i++)
+			if (crossings[i] == 1)
+				once++;
+		System.out.println("lines     : " + lines + ", " + once + " crossed exactly once, "
+				+ unmatched + " crossings away from a line");
+		System.out.println("worst     : " + worst + " ms from the middle of its line");
+	}
+}
@@ -6,11 +6,17 @@ import bluetooth.PlayerRole;
 import bluetooth.StartCorner;
 import bluetooth.Transmission;
 import capture.FlagCapturer;
+import capture.SlaveRangeSource;
+import hardware.Clock;
+import hardware.ColorInput;
+import hardware.NXTRobot;
+import hardware.RS485Connection;
+import hardware.RangeInput;
+import hardware.RegulatedMotor;
+import hardware.SlaveLink;
+import traveling.Calibration;
 import traveling.Odometer;
 import lejos.nxt.*;
-import lejos.nxt.comm.RS485;
-import lejos.nxt.remote.RemoteMotor;
-import lejos.nxt.remote.RemoteNXT;
 import lejos.util.Delay;
 import lejos.util.Timer;
 import localize.Localizer;
@@ -54,8 +60,8 @@ public class Main {
 	private static LCDInfo lcd;
 
 	/**
-	 * This main method will initialize the instance of the classes <code>Odometer</code>, 
-	 * <code>UltrasonicSensor</code>, and <code>ColorSensor</code> which will be used in the program.
+	 * This main method will initialize the instance of the classes <code>Odometer</code> and
+	 * <code>NXTRobot</code>, whose sensors and motors will be used in the program.
 	 * 
 	 * It waits for the user to clicks the button left on the NXT brick and then starts.
 	 * It exists if they clikc the exit button on the NXT brick.
@@ -64,10 +70,10 @@ public class Main {
 	public static void main(String[] args) {
 
 		int buttonChoice;
-		//Create the slave NXT
-		RemoteNXT slaveNXT = null;
+		//Connect to the slave NXT, which runs the SlaveProgram
+		SlaveLink slaveLink = null;
 		try {
-			slaveNXT = new RemoteNXT("TEAM11-2", RS485.getConnector());
+			slaveLink = SlaveLink.open(RS485Connection.connect("TEAM11-2"), Clock.getSystemClock());
 		} catch (IOException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
@@ -125,24 +131,29 @@ public class Main {
 		}
 
 
-		//Initialize the slave's ports
-		UltrasonicSensor usRight = new UltrasonicSensor(slaveNXT.S2);
-		UltrasonicSensor usLeft = new UltrasonicSensor(slaveNXT.S3);
-		RemoteMotor grabberRight = slaveNXT.A;
-		RemoteMotor  grabberLeft = slaveNXT.B;
+		//Initialize the ports of the master and the slave
+		NXTRobot robot = new NXTRobot(slaveLink);
+		RangeInput usRight = robot.getRightRange();
+		RangeInput usLeft = robot.getLeftRange();
+		RegulatedMotor grabberRight = robot.getRightGrabber();
+		RegulatedMotor grabberLeft = robot.getLeftGrabber();
 
 		usRight.continuous();
 		usLeft.continuous();
 
-		//Initilize the master's ports
-		ColorSensor odometerCorrectionRight = new ColorSensor(SensorPort.S1);
-		ColorSensor odometerCorrectionLeft = new ColorSensor(SensorPort.S2);
-		ColorSensor detectionSensor = new ColorSensor(SensorPort.S3);
+		ColorInput odometerCorrectionRight = robot.getRightLineSensor();
+		ColorInput odometerCorrectionLeft = robot.getLeftLineSensor();
+		ColorInput detectionSensor = robot.getBlockSensor();
 
 		// setup the odometer, display, and falg capture class
 
-		odometer = new Odometer(true, odometerCorrectionRight, odometerCorrectionLeft);
+		// the calibration stored on the brick, or the default one the first time
+		odometer = new Odometer(true, Calibration.load(), robot, odometerCorrectionRight, odometerCorrectionLeft);
 		FlagCapturer flagCapturer = new FlagCapturer(detectionSensor, usRight, usLeft, odometer, grabberRight, grabberLeft);
+		//The slave samples and filters its ultrasonic sensors itself, and pushes the distances
+		if (slaveLink != null)
+			flagCapturer.setRangeSource(new SlaveRangeSource(slaveLink, flagCapturer.getWallDistance(),
+					robot.getScheduler()));
 
 
 		lcd = new LCDInfo(odometer);
@@ -194,18 +205,10 @@ public class Main {
 
 	//This method changes the coordinate system depending on the starting corner
 	private static int[] changeCoordinate(int x, int y, int id) {
-		if (id == 1) {
-			return new int[] {x, y}; 
-		} else if (id == 2) {
-			return new int[] {10 - y, x};
-		} else if (id == 3) {
-			return new int[] {10 - x, 10 - y};
-		} else if (id == 4) {
-			return new int[] {y, 10-x};
-		} else {
+		int[] coordinates = StartCorner.lookupCorner(id).toCornerFrame(x, y);
+		if (coordinates == null)
 			System.exit(1);
-			return null;
-		}
+		return coordinates;
 	}
 }
 
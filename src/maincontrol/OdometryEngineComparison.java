@@ -0,0 +1,98 @@
+package maincontrol;
+
+import traveling.Calibration;
+import traveling.DoubleOdometryEngine;
+import traveling.FixedPointOdometryEngine;
+import traveling.OdometryEngine;
+
+/**
+ * The <code>OdometryEngineComparison</code> program feeds the same tacho sequence to the
+ * <code>DoubleOdometryEngine</code> and the <code>FixedPointOdometryEngine</code> and prints
+ * how far apart their poses drift and how long each update takes.
+ * 
+ * The engines do not use the brick, so it is meant to be run on the host against the
+ * compiled <code>traveling</code> engine classes. The sequence is a mix of straight legs,
+ * turns in place and arcs sampled at the odometer period, with an occasional correction
+ * written into the pose the way <code>OdometryCorrection</code> would.
+ * 
+ * @see FixedPointOdometryEngine
+ * 
+ * @author Stefan Ti
+ */
+public class OdometryEngineComparison {
+	private static final int STEPS = 40000;
+	private static final int TIMING_ROUNDS = 20;
+	// the default geometry the Odometer starts from
+	private static final double LEFT_RADIUS = Calibration.DEFAULT_LEFT_RADIUS,
+			RIGHT_RADIUS = Calibration.DEFAULT_RIGHT_RADIUS, WIDTH = Calibration.DEFAULT_WIDTH;
+
+	public static void main(String[] args) {
+		int [][] tachos = tachoSequence(STEPS);
+
+		OdometryEngine reference = new DoubleOdometryEngine(LEFT_RADIUS, RIGHT_RADIUS, WIDTH);
+		OdometryEngine fixed = new FixedPointOdometryEngine(LEFT_RADIUS, RIGHT_RADIUS, WIDTH);
+		double [] referencePose = new double [3];
+		double [] fixedPose = new double [3];
+		double maxPosition = 0, maxAngle = 0, travelled = 0;
+
+		reference.reset(0, 0);
+		fixed.reset(0, 0);
+		for (int i = 0; i < STEPS; i++) {
+			double oldX = referencePose[0], oldY = referencePose[1];
+			reference.update(tachos[i][0], tachos[i][1], referencePose);
+			fixed.update(tachos[i][0], tachos[i][1], fixedPose);
+			travelled += Math.sqrt((referencePose[0] - oldX) * (referencePose[0] - oldX)
+					+ (referencePose[1] - oldY) * (referencePose[1] - oldY));
+
+			maxPosition = Math.max(maxPosition, Math.sqrt((referencePose[0] - fixedPose[0]) * (referencePose[0] - fixedPose[0])
+					+ (referencePose[1] - fixedPose[1]) * (referencePose[1] - fixedPose[1])));
+			double angle = Math.abs(referencePose[2] - fixedPose[2]);
+			maxAngle = Math.max(maxAngle, Math.min(angle, 360 - angle));
+
+			// a line correction every so often, applied to both poses
+			if (i % 5000 == 4999) {
+				referencePose[0] = fixedPose[0] = Math.round(referencePose[0] / 30.3) * 30.3;
+				fixedPose[2] = referencePose[2];
+			}
+		}
+
+		System.out.println("travelled cm      : " + travelled);
+		System.out.println("max position diff : " + maxPosition + " cm");
+		System.out.println("max angle diff    : " + maxAngle + " deg");
+		System.out.println("double ns/update  : " + time(new DoubleOdometryEngine(LEFT_RADIUS, RIGHT_RADIUS, WIDTH), tachos));
+		System.out.println("fixed ns/update   : " + time(new FixedPointOdometryEngine(LEFT_RADIUS, RIGHT_RADIUS, WIDTH), tachos));
+	}
+
+	// runs an engine over the whole sequence a few times and returns the best time per update
+	private static double time(OdometryEngine engine, int [][] tachos) {
+		double [] pose = new double [3];
+		double best = Double.MAX_VALUE;
+		for (int round = 0; round < TIMING_ROUNDS; round++) {
+			pose[0] = pose[1] = pose[2] = 0;
+			engine.reset(0, 0);
+			long start = System.nanoTime();
+			for (int i = 0; i < tachos.length; i++)
+				engine.update(tachos[i][0], tachos[i][1], pose);
+			best = Math.min(best, (double) (System.nanoTime() - start) / tachos.length);
+		}
+		return best;
+	}
+
+	// absolute tacho counts, in degrees, sampled every 25 ms while driving a repeating pattern
+	private static int [][] tachoSequence(int steps) {
+		int [][] tachos = new int [steps][2];
+		double left = 0, right = 0;
+		for (int i = 0; i < steps; i++) {
+			// 250 deg/s is MID in Navigation, so about 6 degrees per period
+			switch ((i / 200) % 4) {
+			case 0: left += 6.25; right += 6.25; break;
+			case 1: left += 3.75; right -= 3.75; break;
+			case 2: left += 6.25; right += 4.5; break;
+			default: left -= 5.0; right -= 5.5; break;
+			}
+			tachos[i][0] = (int) left;
+			tachos[i][1] = (int) right;
+		}
+		return tachos;
+	}
+}
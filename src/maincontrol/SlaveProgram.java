@@ -0,0 +1,116 @@
+package maincontrol;
+
+import hardware.Clock;
+import hardware.PacketConnection;
+import hardware.RS485Connection;
+import hardware.RangeInput;
+import hardware.RegulatedMotor;
+import lejos.nxt.LCD;
+import lejos.nxt.Motor;
+import lejos.nxt.NXTRegulatedMotor;
+import lejos.nxt.SensorPort;
+import lejos.nxt.UltrasonicSensor;
+
+/**
+ * The <code>SlaveProgram</code> runs on the slave brick in place of <code>NXTLCPRespond</code>.
+ * It waits for the master to connect over RS485 and runs a <code>SlaveResponder</code> on the
+ * grabbers, on ports B (left) and A (right), and on the ultrasonic sensors, on S3 (left) and S2
+ * (right), until the master closes the link.
+ *
+ * @see SlaveResponder
+ * @see hardware.SlaveLink
+ *
+ * @author Stefan Ti
+ */
+public class SlaveProgram {
+
+	public static void main(String [] args) {
+		LCD.clear();
+		LCD.drawString("Slave: RS485", 0, 0);
+		LCD.drawString("Waiting...", 0, 1);
+		PacketConnection connection = RS485Connection.waitForConnection();
+		if (connection == null) {
+			LCD.drawString("No master   ", 0, 1);
+			return;
+		}
+		LCD.drawString("Running...  ", 0, 1);
+		RegulatedMotor [] grabbers = {new SlaveMotor(Motor.B), new SlaveMotor(Motor.A)};
+		RangeInput [] sensors = {new SlaveRange(new UltrasonicSensor(SensorPort.S3)),
+				new SlaveRange(new UltrasonicSensor(SensorPort.S2))};
+		new SlaveResponder(connection, grabbers, sensors, Clock.getSystemClock()).run();
+		connection.close();
+		LCD.drawString("Closing...  ", 0, 1);
+	}
+
+	/*
+	 * A grabber of the slave. It brakes without waiting until it is stopped, as the master
+	 * waits for it over the link and the slave must keep answering in the meantime.
+	 */
+	private static class SlaveMotor implements RegulatedMotor {
+		private NXTRegulatedMotor motor;
+
+		SlaveMotor(NXTRegulatedMotor motor) {
+			this.motor = motor;
+		}
+
+		public void setSpeed(int speed) {
+			motor.setSpeed(speed);
+		}
+
+		public void setAcceleration(int acceleration) {
+			motor.setAcceleration(acceleration);
+		}
+
+		public void forward() {
+			motor.forward();
+		}
+
+		public void backward() {
+			motor.backward();
+		}
+
+		public void stop() {
+			motor.stop(true);
+		}
+
+		public void flt(boolean immediateReturn) {
+			motor.flt(immediateReturn);
+		}
+
+		public void rotate(int angle, boolean immediateReturn) {
+			motor.rotate(angle, immediateReturn);
+		}
+
+		public void rotateTo(int limitAngle, boolean immediateReturn) {
+			motor.rotateTo(limitAngle, immediateReturn);
+		}
+
+		public int getTachoCount() {
+			return motor.getTachoCount();
+		}
+
+		public boolean isMoving() {
+			return motor.isMoving();
+		}
+	}
+
+	private static class SlaveRange implements RangeInput {
+		private UltrasonicSensor sensor;
+
+		SlaveRange(UltrasonicSensor sensor) {
+			this.sensor = sensor;
+		}
+
+		public void continuous() {
+			sensor.continuous();
+		}
+
+		public void ping() {
+			sensor.ping();
+		}
+
+		public int getDistance() {
+			return sensor.getDistance();
+		}
+	}
+}
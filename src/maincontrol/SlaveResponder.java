@@ -0,0 +1,236 @@
+package maincontrol;
+
+import capture.RangeFilter;
+import hardware.Clock;
+import hardware.PacketConnection;
+import hardware.RangeInput;
+import hardware.RegulatedMotor;
+import hardware.SlaveProtocol;
+
+/**
+ * The <code>SlaveResponder</code> is the slave's end of the link to the master, which the
+ * <code>SlaveProgram</code> runs on the slave brick. It answers the requests of the
+ * <code>SlaveLink</code> of the master: every request is checked, its commands are carried out
+ * on the grabbers and on the ultrasonic sensors, and one response gives back everything the
+ * master reads.
+ *
+ * A request that is damaged is answered with <code>BAD_FRAME</code>, so that the master sends it
+ * again. A request with the sequence number of the last one is a request sent again, whose
+ * commands have already been carried out, so it only reads the slave.
+ *
+ * A sensor that was pinged is only read when the master asks for it, as reading it waits until
+ * its echo is in, and otherwise the last distance it read is kept.
+ *
+ * Once the master starts the sampling, the slave pings the sensors in turn itself, runs the
+ * same median and window filter as the <code>UltrasonicPoller</code> on each of them, and pushes
+ * the filtered distances to the master, at once when a sensor sees a wall or stops seeing it. The
+ * samples no longer cross the link one by one, and a wall is told as soon as it is filtered.
+ * Responses then carry the filtered distances, and the master's pings and reads are ignored.
+ *
+ * The responder only knows the slave through the interfaces of the <code>hardware</code>
+ * package, so it can be paired with a <code>SlaveLink</code> on the host.
+ *
+ * @see SlaveProtocol
+ * @see SlaveProgram
+ * @see hardware.SlaveLink
+ *
+ * @author Stefan Ti
+ */
+public class SlaveResponder {
+	private static final int [] PING_FLAGS = {SlaveProtocol.PING_LEFT, SlaveProtocol.PING_RIGHT};
+	private static final int [] READ_FLAGS = {SlaveProtocol.READ_LEFT, SlaveProtocol.READ_RIGHT};
+	// the window of the filters, that of the UltrasonicPoller
+	private static final int SAMPLE_WINDOW = 4;
+	// the time the loop sleeps when there is no request, in ms
+	private static final int IDLE_DELAY = 1;
+
+	private PacketConnection connection;
+	private RegulatedMotor [] grabbers;
+	private RangeInput [] sensors;
+	private Clock clock;
+	private byte [] request = new byte [SlaveProtocol.REQUEST_LENGTH];
+	private byte [] response = new byte [SlaveProtocol.RESPONSE_LENGTH];
+	private int [] distances = {RangeInput.NO_ECHO, RangeInput.NO_ECHO};
+	private int [] tachoCounts = new int [2];
+	private int lastSequence = -1;
+
+	// the sampling of the slave, in between a SAMPLE_START and a SAMPLE_STOP request
+	private boolean sampling = false;
+	private RangeFilter [] filters = {new RangeFilter(SAMPLE_WINDOW), new RangeFilter(SAMPLE_WINDOW)};
+	private int wallDistance, walls;
+	// the sensor whose ping is in flight, -1 when none is
+	private int pinged = -1;
+	private long pingTime, pushTime;
+	private int pushes = 0;
+
+	/**
+	 * The constructor takes in the connection to the master and the grabbers and sensors of the
+	 * slave, left then right. The grabbers must return at once from <code>stop</code>, as the
+	 * master waits for them itself and the slave keeps answering in the meantime.
+	 *
+	 * @param connection the <code>PacketConnection</code> to the master
+	 * @param grabbers the <code>RegulatedMotor</code> grabbers
+	 * @param sensors the <code>RangeInput</code> ultrasonic sensors
+	 * @param clock the <code>Clock</code> of the slave
+	 */
+	public SlaveResponder(PacketConnection connection, RegulatedMotor [] grabbers, RangeInput [] sensors,
+			Clock clock) {
+		this.connection = connection;
+		this.grabbers = grabbers;
+		this.sensors = sensors;
+		this.clock = clock;
+	}
+
+	/**
+	 * Answers requests, and samples the sensors while the master asks for it, until the master
+	 * closes the link or the connection is lost.
+	 */
+	public void run() {
+		while (true) {
+			int read = connection.read(request, SlaveProtocol.REQUEST_LENGTH, false);
+			if (read < 0)
+				return;
+			if (read > 0 && !answer(read))
+				return;
+			if (sampling)
+				sample(clock.currentTimeMillis());
+			if (read == 0)
+				clock.delay(IDLE_DELAY);
+		}
+	}
+
+	// answers a request, returns false once the master closes the link
+	private boolean answer(int read) {
+		if (read != SlaveProtocol.REQUEST_LENGTH
+				|| !SlaveProtocol.isIntact(request, SlaveProtocol.REQUEST_LENGTH)) {
+			respond(SlaveProtocol.getSequence(request), SlaveProtocol.BAD_FRAME, 0);
+			return true;
+		}
+
+		int sequence = SlaveProtocol.getSequence(request);
+		int flags = SlaveProtocol.getFlags(request);
+		int fresh = 0;
+		for (int i = 0; i < 2; i++) {
+			// while sampling the filtered distances are always the fresh ones
+			if (sampling || (flags & READ_FLAGS[i]) != 0) {
+				if (!sampling)
+					distances[i] = sensors[i].getDistance();
+				fresh |= 1 << i;
+			}
+		}
+		if (sequence != lastSequence) {
+			lastSequence = sequence;
+			carryOut(flags);
+		}
+		respond(sequence, SlaveProtocol.OK, fresh);
+		return (flags & SlaveProtocol.CLOSE) == 0;
+	}
+
+	// the commands of a new request, once the distances are read
+	private void carryOut(int flags) {
+		if ((flags & SlaveProtocol.SAMPLE_STOP) != 0)
+			sampling = false;
+		if ((flags & SlaveProtocol.SAMPLE_START) != 0 && !sampling) {
+			wallDistance = SlaveProtocol.getWallDistance(request);
+			for (int i = 0; i < 2; i++) {
+				filters[i].reset();
+				distances[i] = RangeInput.NO_ECHO;
+			}
+			walls = 0;
+			pinged = -1;
+			pushTime = clock.currentTimeMillis();
+			sampling = true;
+		}
+		if (!sampling) {
+			if ((flags & SlaveProtocol.CONTINUOUS) != 0) {
+				sensors[SlaveProtocol.LEFT].continuous();
+				sensors[SlaveProtocol.RIGHT].continuous();
+			}
+			for (int i = 0; i < 2; i++)
+				if ((flags & PING_FLAGS[i]) != 0)
+					sensors[i].ping();
+		}
+
+		for (int i = 0; i < 2; i++) {
+			RegulatedMotor grabber = grabbers[i];
+			int value = SlaveProtocol.getValue(request, i);
+			switch (SlaveProtocol.getAction(request, i)) {
+			case SlaveProtocol.FORWARD:
+				grabber.forward();
+				break;
+			case SlaveProtocol.BACKWARD:
+				grabber.backward();
+				break;
+			case SlaveProtocol.STOP:
+				grabber.stop();
+				break;
+			case SlaveProtocol.FLOAT:
+				grabber.flt(true);
+				break;
+			case SlaveProtocol.ROTATE:
+				grabber.setSpeed(SlaveProtocol.getSpeed(request, i));
+				grabber.rotate(value, true);
+				break;
+			case SlaveProtocol.ROTATE_TO:
+				grabber.setSpeed(SlaveProtocol.getSpeed(request, i));
+				grabber.rotateTo(value, true);
+				break;
+			case SlaveProtocol.SPEED:
+				grabber.setSpeed(SlaveProtocol.getSpeed(request, i));
+				break;
+			case SlaveProtocol.ACCELERATION:
+				grabber.setAcceleration(value);
+				break;
+			default:
+				break;
+			}
+		}
+	}
+
+	/*
+	 * Reads the echo of the last ping once it is in and pings the other sensor, as the
+	 * RangeSampler does on the master. A change of the walls is pushed at once, and the
+	 * distances are pushed every period anyway.
+	 */
+	private void sample(long now) {
+		if (pinged < 0 || now - pingTime >= RangeInput.PING_TIME) {
+			int next = SlaveProtocol.LEFT;
+			if (pinged >= 0) {
+				distances[pinged] = filters[pinged].add(sensors[pinged].getDistance());
+				int seen = 0;
+				for (int i = 0; i < 2; i++)
+					if (distances[i] < wallDistance)
+						seen |= 1 << i;
+				if (seen != walls) {
+					walls = seen;
+					push(SlaveProtocol.WALL_EVENT, now);
+				}
+				next = 1 - pinged;
+			}
+			sensors[next].ping();
+			pinged = next;
+			pingTime = now;
+		}
+		if (now - pushTime >= SlaveProtocol.PUSH_PERIOD)
+			push(0, now);
+	}
+
+	private void push(int event, long now) {
+		respond(pushes, SlaveProtocol.PUSH, walls | event);
+		pushes = (pushes + 1) & 0xFF;
+		pushTime = now;
+	}
+
+	private void respond(int sequence, int status, int fresh) {
+		int moving = 0;
+		for (int i = 0; i < 2; i++) {
+			tachoCounts[i] = grabbers[i].getTachoCount();
+			if (grabbers[i].isMoving())
+				moving |= 1 << i;
+		}
+		SlaveProtocol.setResponse(response, sequence, status, distances, tachoCounts, moving, fresh,
+				(int) clock.currentTimeMillis());
+		SlaveProtocol.seal(response, SlaveProtocol.RESPONSE_LENGTH);
+		connection.write(response, SlaveProtocol.RESPONSE_LENGTH);
+	}
+}
@@ -0,0 +1,117 @@
+package scheduler;
+
+/**
+ * The <code>Histogram</code> class counts durations in a fixed number of buckets of equal
+ * width, the last bucket also counting everything longer. It keeps the exact minimum, maximum
+ * and sum as well, so the mean is exact and the percentiles are known to a bucket.
+ *
+ * Recording is a few integer operations on arrays allocated in the constructor, so it can be
+ * done on every period of a task without allocating. It takes no lock either, so a display
+ * reading the histogram can never hold up the task recording in it; a read that races with a
+ * record may be off by that one duration.
+ *
+ * @see TaskStatistics
+ *
+ * @author Stefan Ti
+ */
+public class Histogram {
+	private int [] counts;
+	private int width;
+	private int count, min, max;
+	private long sum;
+
+	/**
+	 * The constructor takes in the number and width of the buckets.
+	 *
+	 * @param buckets the <code>int</code> number of buckets
+	 * @param width the <code>int</code> width of a bucket, in ms
+	 */
+	public Histogram(int buckets, int width) {
+		counts = new int [buckets];
+		this.width = width;
+		reset();
+	}
+
+	/**
+	 * Counts a duration.
+	 * @param value the <code>int</code> duration in ms, negative durations are counted as 0
+	 */
+	public void record(int value) {
+		if (value < 0)
+			value = 0;
+		int bucket = value / width;
+		if (bucket >= counts.length)
+			bucket = counts.length - 1;
+		counts[bucket]++;
+		count++;
+		sum += value;
+		if (value < min)
+			min = value;
+		if (value > max)
+			max = value;
+	}
+
+	/**
+	 * Forgets every duration counted so far.
+	 */
+	public void reset() {
+		for (int i = 0; i < counts.length; i++)
+			counts[i] = 0;
+		count = 0;
+		sum = 0;
+		min = Integer.MAX_VALUE;
+		max = 0;
+	}
+
+	/**
+	 * Returns a duration that the given fraction of the counted durations do not exceed, rounded
+	 * up to the end of its bucket and bounded by the maximum.
+	 *
+	 * @param fraction the <code>double</code> fraction, 0.5 for the median
+	 * @return the <code>int</code> duration in ms, 0 if nothing was counted
+	 */
+	public int getPercentile(double fraction) {
+		if (count == 0)
+			return 0;
+		int needed = (int) Math.ceil(fraction * count);
+		int seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= needed && seen > 0)
+				return i == counts.length - 1 ? max : Math.min(max, (i + 1) * width - 1);
+		}
+		return max;
+	}
+
+	/**
+	 * Returns the number of durations counted
+	 * @return the <code>int</code> number of durations
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * Returns the shortest duration counted
+	 * @return the <code>int</code> minimum in ms, 0 if nothing was counted
+	 */
+	public int getMin() {
+		return count == 0 ? 0 : min;
+	}
+
+	/**
+	 * Returns the longest duration counted
+	 * @return the <code>int</code> maximum in ms
+	 */
+	public int getMax() {
+		return max;
+	}
+
+	/**
+	 * Returns the mean of the durations counted
+	 * @return the <code>double</code> mean in ms, 0 if nothing was counted
+	 */
+	public double getMean() {
+		return count == 0 ? 0 : (double) sum / count;
+	}
+}
@@ -0,0 +1,24 @@
+package scheduler;
+
+/**
+ * The <code>PeriodicTask</code> interface is implemented by the work that has to run at a
+ * fixed rate, such as the <code>Odometer</code> or the display. The <code>Scheduler</code>
+ * calls <code>execute</code> once per period, at absolute release times, so the rate does not
+ * drift with the time the task itself takes.
+ *
+ * A task must return well within its period and must not block; waiting is done by the
+ * <code>Scheduler</code> between releases.
+ *
+ * @see Scheduler
+ *
+ * @author Stefan Ti
+ */
+public interface PeriodicTask {
+	/**
+	 * Runs one period of the task.
+	 *
+	 * @param release the <code>long</code> time in ms at which this period was due to start,
+	 * on the <code>Clock</code> of the <code>Scheduler</code>
+	 */
+	public void execute(long release);
+}
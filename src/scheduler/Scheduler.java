@@ -0,0 +1,251 @@
+package scheduler;
+
+import hardware.Clock;
+
+/**
+ * The <code>Scheduler</code> class runs the periodic work of the robot at fixed rates with
+ * rate-monotonic priorities, in place of a <code>Timer</code> or a sleeping thread per class.
+ *
+ * Every task gets its own thread, released on absolute times so the rate does not drift, and
+ * the priority of a task only depends on its period: the shorter the period the higher the
+ * priority. As the virtual machine always runs the highest priority thread that is ready, the
+ * odometer preempts the light sensor sampling, which preempts the display, and so on.
+ *
+ * Tasks are in one of two bands. Control tasks, added with <code>add</code>, run above the
+ * priority of the main thread, so they are never delayed by navigation. Background tasks, added
+ * with <code>addBackground</code>, such as the display, run below it and only use the time
+ * navigation leaves. A task that does not finish before its next release is counted as an
+ * overrun.
+ *
+ * The timing of every period of every task is recorded, without allocating, in the
+ * <code>TaskStatistics</code> of the task, see <code>getStatistics</code>.
+ *
+ * The brick has a single executive, returned by <code>getDefault</code>, which the classes of
+ * the robot register with. Other executives run on the <code>Clock</code> they are given, as
+ * the simulator does to run a robot faster than real time.
+ *
+ * @see PeriodicTask
+ * @see TaskStatistics
+ *
+ * @author Stefan Ti
+ */
+public class Scheduler {
+	private static final int MAX_TASKS = 16;
+	// the priorities of the two bands, around the priority of the main thread
+	private static final int CONTROL_HIGH = Thread.MAX_PRIORITY - 1, CONTROL_LOW = Thread.NORM_PRIORITY + 1;
+	private static final int BACKGROUND_HIGH = Thread.NORM_PRIORITY - 1, BACKGROUND_LOW = Thread.MIN_PRIORITY;
+	private static Scheduler defaultScheduler;
+
+	private TaskThread [] tasks = new TaskThread [MAX_TASKS];
+	private int count = 0;
+	private Clock clock;
+
+	/**
+	 * The constructor takes in the clock the tasks are released on.
+	 *
+	 * @param clock the <code>Clock</code> of the robot
+	 */
+	public Scheduler(Clock clock) {
+		this.clock = clock;
+	}
+
+	/**
+	 * Returns the executive of the brick, which is created the first time it is needed.
+	 * @return the default <code>Scheduler</code>
+	 */
+	public static synchronized Scheduler getDefault() {
+		if (defaultScheduler == null)
+			defaultScheduler = new Scheduler(Clock.getSystemClock());
+		return defaultScheduler;
+	}
+
+	/**
+	 * Starts running a control task, above the priority of the main thread. Its first period is
+	 * released immediately.
+	 *
+	 * @param name the <code>String</code> name of the task in its statistics
+	 * @param task the <code>PeriodicTask</code> to run
+	 * @param period the <code>int</code> period of the task in ms
+	 */
+	public void add(String name, PeriodicTask task, int period) {
+		add(name, task, period, false);
+	}
+
+	/**
+	 * Starts running a background task, below the priority of the main thread. Its first period
+	 * is released immediately.
+	 *
+	 * @param name the <code>String</code> name of the task in its statistics
+	 * @param task the <code>PeriodicTask</code> to run
+	 * @param period the <code>int</code> period of the task in ms
+	 */
+	public void addBackground(String name, PeriodicTask task, int period) {
+		add(name, task, period, true);
+	}
+
+	/**
+	 * Stops running a task. The current period of the task is allowed to finish, and unless the
+	 * task removes itself this waits for it.
+	 *
+	 * @param task the <code>PeriodicTask</code> to stop
+	 * @return <code>true</code> if the task was running
+	 */
+	public boolean remove(PeriodicTask task) {
+		TaskThread thread;
+		synchronized (this) {
+			int index = indexOf(task);
+			if (index < 0)
+				return false;
+			thread = tasks[index];
+			tasks[index] = tasks[--count];
+			tasks[count] = null;
+			assignPriorities();
+		}
+
+		thread.cancel();
+		if (thread != Thread.currentThread()) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				// the task still stops after its current period
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Stops every task, one after the other, as <code>remove</code> does.
+	 */
+	public void removeAll() {
+		while (true) {
+			PeriodicTask task;
+			synchronized (this) {
+				if (count == 0)
+					return;
+				task = tasks[count - 1].getTask();
+			}
+			remove(task);
+		}
+	}
+
+	/**
+	 * Returns whether a task is running.
+	 * @param task the <code>PeriodicTask</code>
+	 * @return <code>true</code> if the task was added and not removed
+	 */
+	public synchronized boolean isRunning(PeriodicTask task) {
+		return indexOf(task) >= 0;
+	}
+
+	/**
+	 * Returns the clock the tasks are released on
+	 * @return the <code>Clock</code> of the executive
+	 */
+	public Clock getClock() {
+		return clock;
+	}
+
+	/**
+	 * Returns the timing of a task.
+	 * @param task the <code>PeriodicTask</code>
+	 * @return the <code>TaskStatistics</code> of the task, <code>null</code> if it is not running
+	 */
+	public synchronized TaskStatistics getStatistics(PeriodicTask task) {
+		int index = indexOf(task);
+		return index < 0 ? null : tasks[index].getStatistics();
+	}
+
+	/**
+	 * Returns the number of tasks running, which are numbered from 0 for
+	 * <code>getStatistics(int)</code>.
+	 * @return the <code>int</code> number of tasks
+	 */
+	public synchronized int getTaskCount() {
+		return count;
+	}
+
+	/**
+	 * Returns the timing of the task with the given number, from the shortest period to the
+	 * longest within the control tasks, then the background tasks.
+	 * @param index the <code>int</code> number of the task
+	 * @return the <code>TaskStatistics</code> of the task, <code>null</code> if there is no such task
+	 */
+	public synchronized TaskStatistics getStatistics(int index) {
+		if (index < 0 || index >= count)
+			return null;
+		// the task ranked index among all tasks, by band then priority
+		for (int i = 0; i < count; i++) {
+			if (rank(i, true) == index)
+				return tasks[i].getStatistics();
+		}
+		return null;
+	}
+
+	/**
+	 * Forgets the timing recorded so far for every task.
+	 */
+	public synchronized void resetStatistics() {
+		for (int i = 0; i < count; i++)
+			tasks[i].getStatistics().reset();
+	}
+
+	private void add(String name, PeriodicTask task, int period, boolean background) {
+		if (period <= 0)
+			throw new IllegalArgumentException("period must be positive");
+
+		TaskThread thread;
+		synchronized (this) {
+			if (indexOf(task) >= 0)
+				throw new IllegalStateException("task already running");
+			if (count == MAX_TASKS)
+				throw new IllegalStateException("too many tasks");
+			thread = new TaskThread(name, task, period, background, clock);
+			tasks[count++] = thread;
+			assignPriorities();
+		}
+		thread.start();
+	}
+
+	/*
+	 * Gives the tasks of each band their rate-monotonic priorities: the tasks are ranked by
+	 * period and take the priorities of their band from the highest down. When there are more
+	 * tasks than priorities the longest periods share the lowest one.
+	 */
+	private void assignPriorities() {
+		for (int i = 0; i < count; i++) {
+			TaskThread thread = tasks[i];
+			int high = thread.isBackground() ? BACKGROUND_HIGH : CONTROL_HIGH;
+			int low = thread.isBackground() ? BACKGROUND_LOW : CONTROL_LOW;
+			thread.setPriority(Math.max(low, high - rank(i, false)));
+		}
+	}
+
+	/*
+	 * The number of tasks ahead of the given one: those of its band with a shorter period, or
+	 * the same period and added earlier, and if all tasks are ranked the control tasks ahead of
+	 * a background task.
+	 */
+	private int rank(int index, boolean all) {
+		TaskThread thread = tasks[index];
+		int rank = 0;
+		for (int j = 0; j < count; j++) {
+			TaskThread other = tasks[j];
+			if (other.isBackground() != thread.isBackground()) {
+				if (all && thread.isBackground())
+					rank++;
+			} else if (other.getPeriod() < thread.getPeriod()
+					|| (other.getPeriod() == thread.getPeriod() && j < index)) {
+				rank++;
+			}
+		}
+		return rank;
+	}
+
+	private int indexOf(PeriodicTask task) {
+		for (int i = 0; i < count; i++) {
+			if (tasks[i].getTask() == task)
+				return i;
+		}
+		return -1;
+	}
+}
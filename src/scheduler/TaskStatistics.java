@@ -0,0 +1,112 @@
+package scheduler;
+
+/**
+ * The <code>TaskStatistics</code> class holds the timing of one task of the
+ * <code>Scheduler</code>: for every period, the time between the starts of two periods, the
+ * execution time and the lateness of the start after the release, each in a
+ * <code>Histogram</code>, and the number of periods and of overruns.
+ *
+ * The histograms have <code>BUCKETS</code> buckets of an eighth of the period, so they cover up
+ * to four periods with a resolution fine enough to tell whether the period can be shortened.
+ *
+ * @see Scheduler
+ * @see Histogram
+ *
+ * @author Stefan Ti
+ */
+public class TaskStatistics {
+	private static final int BUCKETS = 32;
+	private String name;
+	private int period;
+	private Histogram periods, executions, lateness;
+	private volatile int releases, overruns;
+	private long lastStart = -1;
+
+	TaskStatistics(String name, int period) {
+		this.name = name;
+		this.period = period;
+		int width = Math.max(1, period / 8);
+		periods = new Histogram(BUCKETS, width);
+		executions = new Histogram(BUCKETS, width);
+		lateness = new Histogram(BUCKETS, width);
+	}
+
+	// records one period of the task
+	void record(long release, long start, long end) {
+		if (lastStart >= 0)
+			periods.record((int) (start - lastStart));
+		lastStart = start;
+		executions.record((int) (end - start));
+		lateness.record((int) (start - release));
+		releases++;
+		if (end > release + period)
+			overruns++;
+	}
+
+	/**
+	 * Forgets the timing recorded so far, for instance once the robot starts moving.
+	 */
+	public void reset() {
+		periods.reset();
+		executions.reset();
+		lateness.reset();
+		releases = 0;
+		overruns = 0;
+	}
+
+	/**
+	 * Returns the name the task was added with
+	 * @return the <code>String</code> name of the task
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the period of the task
+	 * @return the <code>int</code> period in ms
+	 */
+	public int getPeriod() {
+		return period;
+	}
+
+	/**
+	 * Returns the times between the starts of two consecutive periods
+	 * @return the <code>Histogram</code> of the actual periods
+	 */
+	public Histogram getPeriods() {
+		return periods;
+	}
+
+	/**
+	 * Returns the times the task took to execute, including the time it was preempted
+	 * @return the <code>Histogram</code> of the execution times
+	 */
+	public Histogram getExecutions() {
+		return executions;
+	}
+
+	/**
+	 * Returns the delays between the releases and the starts of the periods
+	 * @return the <code>Histogram</code> of the lateness
+	 */
+	public Histogram getLateness() {
+		return lateness;
+	}
+
+	/**
+	 * Returns the number of periods the task has run
+	 * @return the <code>int</code> number of periods
+	 */
+	public int getReleases() {
+		return releases;
+	}
+
+	/**
+	 * Returns the number of periods that finished after their deadline
+	 * @return the <code>int</code> number of overruns
+	 */
+	public int getOverruns() {
+		return overruns;
+	}
+}
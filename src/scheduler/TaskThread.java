@@ -0,0 +1,81 @@
+package scheduler;
+
+import hardware.Clock;
+
+/**
+ * The <code>TaskThread</code> runs one <code>PeriodicTask</code> for the <code>Scheduler</code>.
+ * The k-th period is released at <code>start + k * period</code> and its deadline is the next
+ * release. A period that finishes after its deadline is an overrun, and releases that have
+ * already passed when the task finishes are skipped rather than run late back to back. The
+ * timing of every period is recorded in the <code>TaskStatistics</code> of the task.
+ *
+ * @author Stefan Ti
+ */
+class TaskThread extends Thread {
+	private PeriodicTask task;
+	private int period;
+	private boolean background;
+	private volatile boolean running = true;
+	private TaskStatistics statistics;
+	private Clock clock;
+
+	TaskThread(String name, PeriodicTask task, int period, boolean background, Clock clock) {
+		// the thread is named after its task, for thread dumps and the allocation counters
+		super(name);
+		this.task = task;
+		this.clock = clock;
+		this.period = period;
+		this.background = background;
+		statistics = new TaskStatistics(name, period);
+		setDaemon(true);
+	}
+
+	public void run() {
+		long release = clock.currentTimeMillis();
+		long start, now;
+
+		while (running) {
+			start = clock.currentTimeMillis();
+			task.execute(release);
+			now = clock.currentTimeMillis();
+			statistics.record(release, start, now);
+
+			if (now > release + period) {
+				// skip the releases that were missed instead of catching up
+				release += ((now - release) / period) * period;
+			}
+			release += period;
+
+			now = clock.currentTimeMillis();
+			if (release > now) {
+				try {
+					clock.sleep(release - now);
+				} catch (InterruptedException e) {
+					// a cancelled task is woken up to leave
+				}
+			}
+		}
+	}
+
+	// stops the task after its current period
+	void cancel() {
+		running = false;
+		interrupt();
+	}
+
+	PeriodicTask getTask() {
+		return task;
+	}
+
+	int getPeriod() {
+		return period;
+	}
+
+	boolean isBackground() {
+		return background;
+	}
+
+	TaskStatistics getStatistics() {
+		return statistics;
+	}
+}
@@ -0,0 +1,96 @@
+package scheduler;
+
+import lejos.nxt.LCD;
+import lejos.nxt.comm.RConsole;
+
+/**
+ * The <code>TimingReport</code> class prints the <code>TaskStatistics</code> of the tasks of a
+ * <code>Scheduler</code>, one task per page on the LCD, or every task at once over the remote
+ * console when it is open. It is meant to be called on demand, from a button, as it builds
+ * strings: nothing is printed while the tasks are only being recorded.
+ *
+ * For each task the report gives the median, the 99th percentile and the maximum of the actual
+ * period, of the execution time and of the lateness, then the number of overruns. A period can
+ * safely be shortened while the 99th percentile of the execution time plus the lateness stays
+ * well inside the new period and no overruns are counted.
+ *
+ * @see Scheduler
+ * @see TaskStatistics
+ *
+ * @author Stefan Ti
+ */
+public class TimingReport {
+	private Scheduler scheduler;
+	private int page = 0;
+
+	/**
+	 * The constructor takes in the <code>Scheduler</code> to report on.
+	 *
+	 * @param scheduler the <code>Scheduler</code> running the tasks
+	 */
+	public TimingReport(Scheduler scheduler) {
+		this.scheduler = scheduler;
+	}
+
+	/**
+	 * Clears the LCD and draws the page of the next task, coming back to the first task after
+	 * the last.
+	 */
+	public void showNextPage() {
+		int count = scheduler.getTaskCount();
+		LCD.clear();
+		if (count == 0) {
+			LCD.drawString("no tasks", 0, 0);
+			return;
+		}
+		if (page >= count)
+			page = 0;
+		TaskStatistics statistics = scheduler.getStatistics(page);
+		page++;
+		if (statistics == null)
+			return;
+
+		LCD.drawString(statistics.getName() + " " + statistics.getPeriod() + "ms", 0, 0);
+		LCD.drawString("   p50 p99 max", 0, 1);
+		LCD.drawString("per" + summary(statistics.getPeriods()), 0, 2);
+		LCD.drawString("exe" + summary(statistics.getExecutions()), 0, 3);
+		LCD.drawString("lat" + summary(statistics.getLateness()), 0, 4);
+		LCD.drawString("runs " + statistics.getReleases(), 0, 5);
+		LCD.drawString("over " + statistics.getOverruns(), 0, 6);
+	}
+
+	/**
+	 * Prints one line per task to the remote console, if it is open.
+	 * @return <code>true</code> if the report was sent
+	 */
+	public boolean sendToConsole() {
+		if (!RConsole.isOpen())
+			return false;
+		int count = scheduler.getTaskCount();
+		for (int i = 0; i < count; i++) {
+			TaskStatistics statistics = scheduler.getStatistics(i);
+			if (statistics == null)
+				continue;
+			RConsole.println(statistics.getName() + " period " + statistics.getPeriod()
+					+ " per" + summary(statistics.getPeriods())
+					+ " exe" + summary(statistics.getExecutions())
+					+ " lat" + summary(statistics.getLateness())
+					+ " runs " + statistics.getReleases()
+					+ " over " + statistics.getOverruns());
+		}
+		return true;
+	}
+
+	// the median, 99th percentile and maximum of a histogram, right aligned in columns of 4
+	private static String summary(Histogram histogram) {
+		return column(histogram.getPercentile(0.5)) + column(histogram.getPercentile(0.99))
+				+ column(histogram.getMax());
+	}
+
+	private static String column(int value) {
+		String text = Integer.toString(value);
+		while (text.length() < 4)
+			text = " " + text;
+		return text;
+	}
+}
@@ -0,0 +1,240 @@
+package traveling;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The <code>Calibration</code> class holds the values that depend on the robot and its
+ * surroundings rather than on the code: the radius of each wheel, the distance between
+ * the wheels and the ambient light seen by the two <code>ColorSensors</code> used by the
+ * <code>OdometryCorrection</code>. The <code>Odometer</code> and the <code>Navigation</code>
+ * both take their geometry from the same instance, so the distance integrated by the one
+ * always matches the distance commanded by the other.
+ *
+ * The values are kept in a small binary file in the flash of the brick so they only have to
+ * be measured once. The file holds a magic number, the three lengths as <code>float</code>,
+ * the two ambient values as <code>short</code> and a checksum, 24 bytes in all. A missing or
+ * damaged file gives the default values.
+ *
+ * The ambient values are indexed by <code>LEFT_SENSOR</code> and <code>RIGHT_SENSOR</code>,
+ * in the order the sensors are given to the <code>Odometer</code>. A value of 0 means the
+ * sensor has not been measured.
+ *
+ * @see Odometer
+ * @see Navigation
+ * @see OdometryCorrection
+ *
+ * @author Bei Chen Liu
+ *
+ */
+public class Calibration {
+	/**
+	 * The name of the file the calibration is stored in
+	 */
+	public static final String FILE_NAME = "calib.dat";
+	/**
+	 * The index of the left and right <code>ColorSensor</code> given to the <code>Odometer</code>
+	 */
+	public static final int LEFT_SENSOR = 0, RIGHT_SENSOR = 1;
+	/**
+	 * The hand tuned radius of the wheels and distance between them, in cm
+	 */
+	public static final double DEFAULT_LEFT_RADIUS = -2.1, DEFAULT_RIGHT_RADIUS = -2.1, DEFAULT_WIDTH = 17.25;
+	// "CAL1", changing the layout of the file must change this
+	private static final int MAGIC = 0x43414c31;
+	private double leftRadius, rightRadius, width;
+	private int [] ambient = new int [2];
+
+	/**
+	 * The constructor of the <code>Calibration</code> sets the default geometry of the robot
+	 * and leaves both ambient values unmeasured.
+	 */
+	public Calibration() {
+		leftRadius = DEFAULT_LEFT_RADIUS;
+		rightRadius = DEFAULT_RIGHT_RADIUS;
+		width = DEFAULT_WIDTH;
+	}
+
+	/**
+	 * Reads the calibration stored in <code>FILE_NAME</code>.
+	 * @return the stored <code>Calibration</code>, or the default one if there is none
+	 */
+	public static Calibration load() {
+		return load(new File(FILE_NAME));
+	}
+
+	/**
+	 * Reads the calibration stored in the given file. The file is ignored if it is missing, was
+	 * written with another layout or fails its checksum.
+	 *
+	 * @param file the <code>File</code> to read
+	 * @return the stored <code>Calibration</code>, or the default one if the file cannot be used
+	 */
+	public static Calibration load(File file) {
+		Calibration calibration = new Calibration();
+		if (!file.exists())
+			return calibration;
+
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new FileInputStream(file));
+			if (in.readInt() != MAGIC)
+				return calibration;
+			float leftRadius = in.readFloat();
+			float rightRadius = in.readFloat();
+			float width = in.readFloat();
+			int ambientLeft = in.readShort();
+			int ambientRight = in.readShort();
+			if (in.readInt() != checksum(leftRadius, rightRadius, width, ambientLeft, ambientRight))
+				return calibration;
+
+			calibration.setGeometry(leftRadius, rightRadius, width);
+			calibration.setAmbient(LEFT_SENSOR, ambientLeft);
+			calibration.setAmbient(RIGHT_SENSOR, ambientRight);
+		} catch (IOException e) {
+			// a short or unreadable file is the same as no file
+			return new Calibration();
+		} finally {
+			close(in);
+		}
+		return calibration;
+	}
+
+	/**
+	 * Writes the calibration to <code>FILE_NAME</code>, replacing the previous one.
+	 * @return <code>true</code> if the file was written
+	 */
+	public boolean save() {
+		return save(new File(FILE_NAME));
+	}
+
+	/**
+	 * Writes the calibration to the given file, replacing its content.
+	 * @param file the <code>File</code> to write
+	 * @return <code>true</code> if the file was written
+	 */
+	public boolean save(File file) {
+		float leftRadius = (float) this.leftRadius;
+		float rightRadius = (float) this.rightRadius;
+		float width = (float) this.width;
+		DataOutputStream out = null;
+		try {
+			if (file.exists())
+				file.delete();
+			file.createNewFile();
+			out = new DataOutputStream(new FileOutputStream(file));
+			out.writeInt(MAGIC);
+			out.writeFloat(leftRadius);
+			out.writeFloat(rightRadius);
+			out.writeFloat(width);
+			out.writeShort(ambient[LEFT_SENSOR]);
+			out.writeShort(ambient[RIGHT_SENSOR]);
+			out.writeInt(checksum(leftRadius, rightRadius, width, ambient[LEFT_SENSOR], ambient[RIGHT_SENSOR]));
+			out.flush();
+			return true;
+		} catch (IOException e) {
+			return false;
+		} finally {
+			close(out);
+		}
+	}
+
+	/**
+	 * Sets the geometry of the robot.
+	 * @param leftRadius the <code>double</code> radius of the left wheel, in cm
+	 * @param rightRadius the <code>double</code> radius of the right wheel, in cm
+	 * @param width the <code>double</code> distance between the wheels, in cm
+	 */
+	public void setGeometry(double leftRadius, double rightRadius, double width) {
+		this.leftRadius = leftRadius;
+		this.rightRadius = rightRadius;
+		this.width = width;
+	}
+
+	/**
+	 * Returns the radius of the left wheel
+	 * @return the <code>double</code> radius of the left wheel, in cm
+	 */
+	public double getLeftRadius() {
+		return leftRadius;
+	}
+
+	/**
+	 * Returns the radius of the right wheel
+	 * @return the <code>double</code> radius of the right wheel, in cm
+	 */
+	public double getRightRadius() {
+		return rightRadius;
+	}
+
+	/**
+	 * Returns the distance between the wheels
+	 * @return the <code>double</code> distance between the wheels, in cm
+	 */
+	public double getWidth() {
+		return width;
+	}
+
+	/**
+	 * Sets the raw ambient light value of one of the sensors.
+	 * @param sensor the <code>int</code> index of the sensor, <code>LEFT_SENSOR</code> or <code>RIGHT_SENSOR</code>
+	 * @param value the <code>int</code> raw light value of the floor
+	 */
+	public void setAmbient(int sensor, int value) {
+		ambient[sensor] = value;
+	}
+
+	/**
+	 * Returns the raw ambient light value of one of the sensors.
+	 * @param sensor the <code>int</code> index of the sensor, <code>LEFT_SENSOR</code> or <code>RIGHT_SENSOR</code>
+	 * @return the <code>int</code> raw light value of the floor, 0 if it was never measured
+	 */
+	public int getAmbient(int sensor) {
+		return ambient[sensor];
+	}
+
+	/**
+	 * Returns whether the ambient light of both sensors is known.
+	 * @return <code>true</code> if both ambient values were measured
+	 */
+	public boolean hasAmbient() {
+		return ambient[LEFT_SENSOR] > 0 && ambient[RIGHT_SENSOR] > 0;
+	}
+
+	// mixes the stored values so a partly written file is not taken for a calibration
+	private static int checksum(float leftRadius, float rightRadius, float width, int ambientLeft, int ambientRight) {
+		int sum = MAGIC;
+		sum = sum * 31 + Float.floatToIntBits(leftRadius);
+		sum = sum * 31 + Float.floatToIntBits(rightRadius);
+		sum = sum * 31 + Float.floatToIntBits(width);
+		sum = sum * 31 + ambientLeft;
+		sum = sum * 31 + ambientRight;
+		return sum;
+	}
+
+	private static void close(InputStream stream) {
+		if (stream == null)
+			return;
+		try {
+			stream.close();
+		} catch (IOException e) {
+			// nothing left to do with it
+		}
+	}
+
+	private static void close(OutputStream stream) {
+		if (stream == null)
+			return;
+		try {
+			stream.close();
+		} catch (IOException e) {
+			// nothing left to do with it
+		}
+	}
+}
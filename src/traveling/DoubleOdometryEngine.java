@@ -0,0 +1,71 @@
+package traveling;
+
+/**
+ * The <code>DoubleOdometryEngine</code> is the original floating point odometry. It converts
+ * the tacho counts to a displacement and a change of heading and projects the displacement
+ * with <code>Math.cos</code> and <code>Math.sin</code> of the new heading.
+ * 
+ * It is the reference the <code>FixedPointOdometryEngine</code> is compared against.
+ * 
+ * @see OdometryEngine
+ * @see FixedPointOdometryEngine
+ * 
+ * @author Alessandro Parisi
+ * @author Stefan Ti
+ */
+public class DoubleOdometryEngine implements OdometryEngine {
+	private double leftRadius, rightRadius, width;
+	private double [] oldDH, dDH;
+
+	/**
+	 * The constructor takes in the dimensions of the robot.
+	 * 
+	 * @param leftRadius the <code>double</code> radius of the left wheel in cm
+	 * @param rightRadius the <code>double</code> radius of the right wheel in cm
+	 * @param width the <code>double</code> distance between the wheels in cm
+	 */
+	public DoubleOdometryEngine(double leftRadius, double rightRadius, double width) {
+		this.leftRadius = leftRadius;
+		this.rightRadius = rightRadius;
+		this.width = width;
+		oldDH = new double [2];
+		dDH = new double [2];
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void reset(int leftTacho, int rightTacho) {
+		getVector(leftTacho, rightTacho, oldDH);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void update(int leftTacho, int rightTacho, double [] pose) {
+		getVector(leftTacho, rightTacho, dDH);
+		dDH[0] -= oldDH[0];
+		dDH[1] -= oldDH[1];
+
+		pose[2] = fixDegAngle(pose[2] - dDH[1]);
+		pose[0] += dDH[0] * Math.cos(Math.toRadians(pose[2]));
+		pose[1] += dDH[0] * Math.sin(Math.toRadians(pose[2]));
+
+		oldDH[0] += dDH[0];
+		oldDH[1] += dDH[1];
+	}
+
+	//Calculates the displacement and direction
+	private void getVector(int leftTacho, int rightTacho, double[] data) {
+		data[0] = (leftTacho * leftRadius + rightTacho * rightRadius) * Math.PI / 360.0;
+		data[1] = (rightTacho * rightRadius - leftTacho * leftRadius) / width;
+	}
+
+	// wraps an angle in degrees to [0, 360)
+	private static double fixDegAngle(double angle) {
+		if (angle < 0.0)
+			angle = 360.0 + (angle % 360.0);
+
+		return angle % 360.0;
+	}
+}
@@ -0,0 +1,290 @@
+package traveling;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * The <code>DrivetrainCalibrator</code> class turns the tachos and light readings recorded while
+ * the robot drives over the grid into observations for a <code>DrivetrainSolver</code>, using
+ * the grid lines as the ground truth.
+ *
+ * Each sensor has its own <code>LineDetector</code>, and the tachos of a crossing are the ones
+ * halfway between the first and the last dark sample. While the robot drives straight:
+ * <ul>
+ * <li>the two sensors crossing the same line give the angle between the robot and the line,
+ * from the distance travelled between the crossings and the spacing of the sensors;</li>
+ * <li>two crossings of the same sensor on consecutive lines are one tile apart along the
+ * normal of the lines, so a tile divided by the cosine of that angle along the heading.</li>
+ * </ul>
+ * Two angles measured one after the other give a rotation, whether the robot turned in between
+ * or not. The lines only give the angle modulo 90 degrees, the number of quarter turns is the
+ * one closest to what the starting geometry predicts, so a turn in place must be predicted to
+ * better than 45 degrees. Crossings while the wheels turn in opposite directions are ignored
+ * and end the straight leg.
+ *
+ * A sensor running close to a line along its path sees crossings that are not one tile apart,
+ * and may be paired with a crossing of the other sensor on another line. Distances are
+ * therefore only used when they are close to the expected tile, and an angle is only used once
+ * the next pair on the same leg agrees with it.
+ *
+ * The class does not touch the brick, so the same samples can be replayed on the host from a
+ * log written with <code>writeSample</code>.
+ *
+ * @see DrivetrainSolver
+ * @see LineDetector
+ *
+ * @author Stefan Ti
+ */
+public class DrivetrainCalibrator {
+	/**
+	 * The name of the file the samples are logged in on the brick
+	 */
+	public static final String LOG_FILE = "drive.log";
+	// "DRV1", changing the layout of the log must change this
+	private static final int LOG_MAGIC = 0x44525631;
+	private static final int LEFT = Calibration.LEFT_SENSOR, RIGHT = Calibration.RIGHT_SENSOR;
+	// crossings of the two sensors further apart than this are on different lines, about 35 degrees
+	private static final double MAX_PAIR_DISTANCE = 10.0;
+	// a distance further than this fraction from one tile along the heading is another line
+	private static final double DISTANCE_GATE = 0.08;
+	// two angles on the same leg further than this from the predicted rotation disagree, in degrees
+	private static final double ANGLE_GATE = 2.0;
+
+	private Calibration initial;
+	private DrivetrainSolver solver;
+	private LineDetector [] detectors = new LineDetector [2];
+	private int lastLeft, lastRight;
+	private boolean started = false;
+	// tachos at the first and last dark sample of the line each sensor is on
+	private int [][] enterTacho = new int [2][2], darkTacho = new int [2][2];
+	// tachos of the last crossing of each sensor on the current leg, and whether it is paired
+	private double [][] crossingTacho = new double [2][2];
+	private boolean [] hasCrossing = new boolean [2], pending = new boolean [2];
+	// the last angle to the lines confirmed by the next pair, and the angle waiting to be confirmed
+	private double confirmedAngle, candidateAngle;
+	private double [] confirmedTacho = new double [2], candidateTacho = new double [2];
+	private boolean hasConfirmed = false, hasCandidate = false;
+	// whether the candidate is on this leg, and the confirmed angle of this leg used for distances
+	private boolean legCandidate = false, legAngle = false;
+	private double lineAngle;
+
+	/**
+	 * The constructor takes in the geometry the robot is believed to have and the ambient light
+	 * of the two sensors, in the order of <code>Calibration.LEFT_SENSOR</code> and
+	 * <code>Calibration.RIGHT_SENSOR</code>.
+	 *
+	 * @param initial the starting <code>Calibration</code>
+	 * @param ambientLeft the <code>int</code> raw light value of the floor under the left sensor
+	 * @param ambientRight the <code>int</code> raw light value of the floor under the right sensor
+	 */
+	public DrivetrainCalibrator(Calibration initial, int ambientLeft, int ambientRight) {
+		this.initial = initial;
+		solver = new DrivetrainSolver(initial);
+		detectors[LEFT] = new LineDetector(new LightBaseline(ambientLeft));
+		detectors[RIGHT] = new LineDetector(new LightBaseline(ambientRight));
+	}
+
+	/**
+	 * Consumes one sample of the tachos and of the two sensors.
+	 *
+	 * @param time the <code>long</code> time in ms at which the sample was taken
+	 * @param leftTacho the <code>int</code> tacho count of the left motor
+	 * @param rightTacho the <code>int</code> tacho count of the right motor
+	 * @param leftLight the <code>int</code> raw light value of the left sensor
+	 * @param rightLight the <code>int</code> raw light value of the right sensor
+	 */
+	public void sample(long time, int leftTacho, int rightTacho, int leftLight, int rightLight) {
+		int dLeft = leftTacho - lastLeft;
+		int dRight = rightTacho - lastRight;
+		lastLeft = leftTacho;
+		lastRight = rightTacho;
+
+		// at the sampling rate a slow wheel often has not moved by a whole degree, which is not a
+		// turn, so only wheels moving in opposite directions end the leg
+		boolean straight = !started || !((dLeft > 0 && dRight < 0) || (dLeft < 0 && dRight > 0));
+		started = true;
+		if (!straight)
+			endLeg();
+
+		sample(LEFT, leftLight, time, leftTacho, rightTacho, straight);
+		sample(RIGHT, rightLight, time, leftTacho, rightTacho, straight);
+	}
+
+	/**
+	 * Returns the solver the observations are given to
+	 * @return the <code>DrivetrainSolver</code> of this calibration
+	 */
+	public DrivetrainSolver getSolver() {
+		return solver;
+	}
+
+	/**
+	 * Writes the header of a log, which must come before the samples.
+	 *
+	 * @param out the <code>DataOutputStream</code> of the log
+	 * @param ambientLeft the <code>int</code> raw light value of the floor under the left sensor
+	 * @param ambientRight the <code>int</code> raw light value of the floor under the right sensor
+	 * @throws IOException if the log cannot be written
+	 */
+	public static void writeHeader(DataOutputStream out, int ambientLeft, int ambientRight) throws IOException {
+		out.writeInt(LOG_MAGIC);
+		out.writeShort(ambientLeft);
+		out.writeShort(ambientRight);
+	}
+
+	/**
+	 * Writes one sample to a log, in 16 bytes.
+	 *
+	 * @param out the <code>DataOutputStream</code> of the log
+	 * @param time the <code>long</code> time in ms at which the sample was taken
+	 * @param leftTacho the <code>int</code> tacho count of the left motor
+	 * @param rightTacho the <code>int</code> tacho count of the right motor
+	 * @param leftLight the <code>int</code> raw light value of the left sensor
+	 * @param rightLight the <code>int</code> raw light value of the right sensor
+	 * @throws IOException if the log cannot be written
+	 */
+	public static void writeSample(DataOutputStream out, long time, int leftTacho, int rightTacho,
+			int leftLight, int rightLight) throws IOException {
+		out.writeInt((int) time);
+		out.writeInt(leftTacho);
+		out.writeInt(rightTacho);
+		out.writeShort(leftLight);
+		out.writeShort(rightLight);
+	}
+
+	/**
+	 * Feeds every sample of a log to a new calibrator.
+	 *
+	 * @param initial the starting <code>Calibration</code>
+	 * @param in the <code>DataInputStream</code> of the log
+	 * @return the <code>DrivetrainCalibrator</code> that consumed the log
+	 * @throws IOException if the log cannot be read or is not a log of samples
+	 */
+	public static DrivetrainCalibrator replay(Calibration initial, DataInputStream in) throws IOException {
+		if (in.readInt() != LOG_MAGIC)
+			throw new IOException("not a drive log");
+		DrivetrainCalibrator calibrator = new DrivetrainCalibrator(initial, in.readShort(), in.readShort());
+
+		while (true) {
+			int time;
+			try {
+				time = in.readInt();
+			} catch (EOFException e) {
+				return calibrator;
+			}
+			int leftTacho = in.readInt();
+			int rightTacho = in.readInt();
+			int leftLight = in.readShort();
+			int rightLight = in.readShort();
+			calibrator.sample(time, leftTacho, rightTacho, leftLight, rightLight);
+		}
+	}
+
+	// feeds one sensor reading to its detector and handles the crossing it completes
+	private void sample(int sensor, int light, long time, int leftTacho, int rightTacho, boolean straight) {
+		LineDetector detector = detectors[sensor];
+		boolean wasOnLine = detector.isOnLine();
+		boolean crossed = detector.sample(light, time);
+
+		if (detector.isOnLine()) {
+			if (!wasOnLine) {
+				enterTacho[sensor][0] = leftTacho;
+				enterTacho[sensor][1] = rightTacho;
+			}
+			darkTacho[sensor][0] = leftTacho;
+			darkTacho[sensor][1] = rightTacho;
+		}
+
+		if (crossed && straight)
+			crossing(sensor, (enterTacho[sensor][0] + darkTacho[sensor][0]) / 2.0,
+					(enterTacho[sensor][1] + darkTacho[sensor][1]) / 2.0);
+	}
+
+	// a line crossed by the given sensor at the given tachos while driving straight
+	private void crossing(int sensor, double leftTacho, double rightTacho) {
+		int other = 1 - sensor;
+		boolean paired = false;
+
+		if (pending[other]) {
+			double travelled = distance(leftTacho - crossingTacho[other][0], rightTacho - crossingTacho[other][1]);
+			if (Math.abs(travelled) < MAX_PAIR_DISTANCE) {
+				// the distance from the left crossing to the right one
+				if (sensor == LEFT)
+					travelled = -travelled;
+				angle(Math.toDegrees(Math.atan(travelled / OdometryCorrection.SENSOR_SPACING)),
+						(leftTacho + crossingTacho[other][0]) / 2.0, (rightTacho + crossingTacho[other][1]) / 2.0);
+				pending[other] = false;
+				paired = true;
+			}
+		}
+
+		if (hasCrossing[sensor] && legAngle) {
+			double dLeft = leftTacho - crossingTacho[sensor][0];
+			double dRight = rightTacho - crossingTacho[sensor][1];
+			double predicted = distance(dLeft, dRight);
+			double travelled = PoseEstimator.TILE_LENGTH / Math.cos(Math.toRadians(lineAngle));
+			if (Math.abs(Math.abs(predicted) - travelled) < DISTANCE_GATE * travelled)
+				solver.addDistance(dLeft, dRight, predicted < 0 ? -travelled : travelled);
+		}
+
+		crossingTacho[sensor][0] = leftTacho;
+		crossingTacho[sensor][1] = rightTacho;
+		hasCrossing[sensor] = true;
+		pending[sensor] = !paired;
+	}
+
+	/*
+	 * An angle to the lines measured at the given tachos. It confirms the candidate when both
+	 * are on the same leg and agree, and the rotation from the previous confirmed angle to the
+	 * candidate is then observed. It becomes the new candidate either way.
+	 */
+	private void angle(double angle, double leftTacho, double rightTacho) {
+		if (hasCandidate && legCandidate) {
+			double dLeft = leftTacho - candidateTacho[0];
+			double dRight = rightTacho - candidateTacho[1];
+			if (Math.abs(rotation(angle - candidateAngle, dLeft, dRight) - predictRotation(dLeft, dRight)) < ANGLE_GATE) {
+				if (hasConfirmed) {
+					dLeft = candidateTacho[0] - confirmedTacho[0];
+					dRight = candidateTacho[1] - confirmedTacho[1];
+					solver.addRotation(dLeft, dRight, rotation(candidateAngle - confirmedAngle, dLeft, dRight));
+				}
+				confirmedAngle = candidateAngle;
+				confirmedTacho[0] = candidateTacho[0];
+				confirmedTacho[1] = candidateTacho[1];
+				hasConfirmed = true;
+				lineAngle = candidateAngle;
+				legAngle = true;
+			}
+		}
+
+		candidateAngle = angle;
+		candidateTacho[0] = leftTacho;
+		candidateTacho[1] = rightTacho;
+		hasCandidate = true;
+		legCandidate = true;
+	}
+
+	// the change in angle between two line angles, with the quarter turns the tachos predict
+	private double rotation(double difference, double leftTacho, double rightTacho) {
+		return difference + 90.0 * Math.round((predictRotation(leftTacho, rightTacho) - difference) / 90.0);
+	}
+
+	// forgets the crossings of the leg, but not the last angle
+	private void endLeg() {
+		hasCrossing[LEFT] = hasCrossing[RIGHT] = false;
+		pending[LEFT] = pending[RIGHT] = false;
+		legCandidate = legAngle = false;
+	}
+
+	// the change in angle for the given tachos, with the starting geometry
+	private double predictRotation(double leftTacho, double rightTacho) {
+		return (leftTacho * initial.getLeftRadius() - rightTacho * initial.getRightRadius()) / initial.getWidth();
+	}
+
+	// the distance travelled for the given tachos, with the starting geometry
+	private double distance(double leftTacho, double rightTacho) {
+		return (leftTacho * initial.getLeftRadius() + rightTacho * initial.getRightRadius()) * Math.PI / 360.0;
+	}
+}
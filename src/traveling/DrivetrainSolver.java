@@ -0,0 +1,186 @@
+package traveling;
+
+/**
+ * The <code>DrivetrainSolver</code> class finds the radius of each wheel and the distance
+ * between the wheels that best explain a set of observed motions, in the least squares sense.
+ *
+ * Two kinds of observations are used, both in the model of the <code>OdometryEngine</code>,
+ * where the tachos are in degrees and the angle grows with the left wheel:
+ * <ul>
+ * <li>a distance, <code>(leftTacho * leftRadius + rightTacho * rightRadius) * pi / 360 = distance</code>,
+ * which fixes the scale of the wheels;</li>
+ * <li>a rotation, <code>(leftTacho * leftRadius - rightTacho * rightRadius) / width = angle</code>,
+ * which over a spin in place fixes the width and over a straight leg fixes the difference
+ * between the wheels.</li>
+ * </ul>
+ * Both are linear in the three unknowns once the rotation is multiplied by the width, so the
+ * observations are only accumulated into the normal equations and nothing is stored per
+ * observation.
+ *
+ * @see DrivetrainCalibrator
+ * @see Calibration
+ *
+ * @author Stefan Ti
+ */
+public class DrivetrainSolver {
+	// expected error of an observed distance in cm and of an observed rotation in degrees
+	private static final double DISTANCE_DEVIATION = 0.5, ANGLE_DEVIATION = 1.5;
+	// a solution further than this fraction from the starting geometry is not trusted
+	private static final double MAX_CHANGE = 0.1;
+	private static final int MIN_OBSERVATIONS = 2;
+
+	private Calibration initial;
+	private double [] normal = new double [9];
+	private double [] right = new double [3];
+	private double [] row = new double [3];
+	private double [] scratch = new double [9];
+	private double [] solution = new double [3];
+	private int distances, rotations;
+	private double leftRadius, rightRadius, width;
+
+	/**
+	 * The constructor takes in the geometry the robot is believed to have, which scales the
+	 * rotations and bounds the solution.
+	 *
+	 * @param initial the starting <code>Calibration</code>
+	 */
+	public DrivetrainSolver(Calibration initial) {
+		this.initial = initial;
+		leftRadius = initial.getLeftRadius();
+		rightRadius = initial.getRightRadius();
+		width = initial.getWidth();
+	}
+
+	/**
+	 * Adds a motion of known length.
+	 *
+	 * @param leftTacho the <code>double</code> rotation of the left wheel, in degrees
+	 * @param rightTacho the <code>double</code> rotation of the right wheel, in degrees
+	 * @param distance the <code>double</code> distance travelled, in cm
+	 */
+	public void addDistance(double leftTacho, double rightTacho, double distance) {
+		row[0] = leftTacho * Math.PI / 360.0;
+		row[1] = rightTacho * Math.PI / 360.0;
+		row[2] = 0;
+		accumulate(distance, 1.0 / DISTANCE_DEVIATION);
+		distances++;
+	}
+
+	/**
+	 * Adds a motion of known change in angle.
+	 *
+	 * @param leftTacho the <code>double</code> rotation of the left wheel, in degrees
+	 * @param rightTacho the <code>double</code> rotation of the right wheel, in degrees
+	 * @param angle the <code>double</code> change in angle, in degrees
+	 */
+	public void addRotation(double leftTacho, double rightTacho, double angle) {
+		// divided by the starting width so the residual is in degrees
+		double scale = 1.0 / initial.getWidth();
+		row[0] = leftTacho * scale;
+		row[1] = -rightTacho * scale;
+		row[2] = -angle * scale;
+		accumulate(0, 1.0 / ANGLE_DEVIATION);
+		rotations++;
+	}
+
+	/**
+	 * Solves for the geometry from the observations added so far.
+	 *
+	 * @return <code>true</code> if there were enough observations and the solution is close
+	 * enough to the starting geometry to be believed
+	 */
+	public boolean solve() {
+		if (distances < MIN_OBSERVATIONS || rotations < MIN_OBSERVATIONS)
+			return false;
+
+		double determinant = determinant(normal);
+		double scale = normal[0] * normal[4] * normal[8];
+		if (Math.abs(determinant) <= 1e-12 * Math.abs(scale))
+			return false;
+
+		// Cramer's rule, each unknown replaces its column with the right hand side
+		for (int k = 0; k < 3; k++) {
+			System.arraycopy(normal, 0, scratch, 0, 9);
+			for (int i = 0; i < 3; i++)
+				scratch[i * 3 + k] = right[i];
+			solution[k] = determinant(scratch) / determinant;
+		}
+
+		if (!close(solution[0], initial.getLeftRadius()) || !close(solution[1], initial.getRightRadius())
+				|| !close(solution[2], initial.getWidth()))
+			return false;
+
+		leftRadius = solution[0];
+		rightRadius = solution[1];
+		width = solution[2];
+		return true;
+	}
+
+	/**
+	 * Stores the last solution in the given calibration.
+	 * @param calibration the <code>Calibration</code> to update
+	 */
+	public void apply(Calibration calibration) {
+		calibration.setGeometry(leftRadius, rightRadius, width);
+	}
+
+	/**
+	 * Returns the solved radius of the left wheel
+	 * @return the <code>double</code> radius of the left wheel in cm, the starting one until solved
+	 */
+	public double getLeftRadius() {
+		return leftRadius;
+	}
+
+	/**
+	 * Returns the solved radius of the right wheel
+	 * @return the <code>double</code> radius of the right wheel in cm, the starting one until solved
+	 */
+	public double getRightRadius() {
+		return rightRadius;
+	}
+
+	/**
+	 * Returns the solved distance between the wheels
+	 * @return the <code>double</code> width in cm, the starting one until solved
+	 */
+	public double getWidth() {
+		return width;
+	}
+
+	/**
+	 * Returns the number of distances observed
+	 * @return the <code>int</code> number of distances
+	 */
+	public int getDistanceCount() {
+		return distances;
+	}
+
+	/**
+	 * Returns the number of rotations observed
+	 * @return the <code>int</code> number of rotations
+	 */
+	public int getRotationCount() {
+		return rotations;
+	}
+
+	// adds row . unknowns = value with the given weight to the normal equations
+	private void accumulate(double value, double weight) {
+		double w2 = weight * weight;
+		for (int i = 0; i < 3; i++) {
+			for (int j = 0; j < 3; j++)
+				normal[i * 3 + j] += row[i] * row[j] * w2;
+			right[i] += row[i] * value * w2;
+		}
+	}
+
+	// the determinant of a 3 by 3 matrix stored by rows
+	private static double determinant(double [] m) {
+		return m[0] * (m[4] * m[8] - m[5] * m[7]) - m[1] * (m[3] * m[8] - m[5] * m[6])
+				+ m[2] * (m[3] * m[7] - m[4] * m[6]);
+	}
+
+	private static boolean close(double value, double reference) {
+		return Math.abs(value - reference) <= MAX_CHANGE * Math.abs(reference);
+	}
+}
@@ -0,0 +1,139 @@
+package traveling;
+
+/**
+ * The <code>LightBaseline</code> class tracks the raw light value of the floor seen by one
+ * sensor while the robot drives, so that the line thresholds follow the brightness of the
+ * part of the arena the robot is on instead of the one it started on.
+ * 
+ * It keeps an exponential moving average of the readings that are clearly not a line and an
+ * average of their absolute deviation from it, a robust measure of the noise of the sensor.
+ * A reading is dark enough to start a line when it is below the baseline by several times
+ * that deviation, and never by less than a fixed fraction of the baseline so that a very
+ * quiet floor does not make the detection trigger on noise.
+ * 
+ * A reading in between the two levels, too dark to be counted as floor but not dark enough to
+ * start a line, only pulls the baseline down very slowly. A floor that gets darker is then
+ * followed before it reaches the level that starts a line, while the few readings on the edges
+ * of a line barely move it, and the deviation is left to the readings that are clearly floor.
+ * 
+ * The averages are kept as integers with eight fractional bits to keep the floating point
+ * work off the brick.
+ * 
+ * @see LineDetector
+ * @see OdometryCorrection
+ * 
+ * @author Stefan Ti
+ * @author Bei Chen Liu
+ */
+public class LightBaseline {
+	private static final int FRACTION_BITS = 8;
+	// the averages move by 1/64 of the difference on every reading
+	private static final int MEAN_SHIFT = 6, DEVIATION_SHIFT = 6;
+	// and by 1/256 of it on a reading in between the levels, at most 8% / 256 of the baseline
+	private static final int DRIFT_SHIFT = 8;
+	// how many deviations below the baseline a line starts and ends
+	private static final int ENTER_DEVIATIONS = 6, EXIT_DEVIATIONS = 3;
+	// the smallest drop that starts and ends a line, as a divisor of the baseline (8% and 4%)
+	private static final int MIN_ENTER_DIVISOR = 12, MIN_EXIT_DIVISOR = 25;
+
+	private int mean, deviation;
+	private int enterLevel, exitLevel;
+
+	/**
+	 * The constructor starts the baseline from a first estimate of the floor.
+	 * 
+	 * @param initial the <code>int</code> raw light value of the floor, for instance an average
+	 * taken at start up
+	 */
+	public LightBaseline(int initial) {
+		mean = initial << FRACTION_BITS;
+		deviation = 0;
+		updateLevels();
+	}
+
+	/**
+	 * Starts the baseline again from a reading, keeping the deviation of the floor, when the
+	 * floor has become too dark for the readings to follow it.
+	 * 
+	 * @param value the <code>int</code> raw light value of the floor
+	 */
+	public void reset(int value) {
+		mean = value << FRACTION_BITS;
+		updateLevels();
+	}
+
+	/**
+	 * Adds a reading that is not on a line to the baseline. A reading that is clearly floor,
+	 * above the level at which a line ends, moves the averages, one in between the levels only
+	 * pulls the baseline down slowly and one below the level that starts a line is ignored.
+	 * 
+	 * @param value the <code>int</code> raw light value
+	 */
+	public void update(int value) {
+		if (value < enterLevel)
+			return;
+
+		int scaled = value << FRACTION_BITS;
+		int difference = scaled - mean;
+		if (value <= exitLevel) {
+			mean += difference >> DRIFT_SHIFT;
+			updateLevels();
+			return;
+		}
+
+		mean += difference >> MEAN_SHIFT;
+		deviation += (Math.abs(difference) - deviation) >> DEVIATION_SHIFT;
+		updateLevels();
+	}
+
+	/**
+	 * Classifies a reading and, if it is floor, adds it to the baseline.
+	 * 
+	 * @param value the <code>int</code> raw light value
+	 * @return <code>true</code> if the reading is dark enough to be a line
+	 */
+	public boolean isLine(int value) {
+		if (value < enterLevel)
+			return true;
+		update(value);
+		return false;
+	}
+
+	/**
+	 * Returns the raw light value of the floor
+	 * @return the <code>int</code> baseline
+	 */
+	public int getBaseline() {
+		return mean >> FRACTION_BITS;
+	}
+
+	/**
+	 * Returns the average absolute deviation of the floor readings from the baseline
+	 * @return the <code>int</code> spread of the readings
+	 */
+	public int getSpread() {
+		return deviation >> FRACTION_BITS;
+	}
+
+	/**
+	 * Returns the raw light value below which a line starts
+	 * @return the <code>int</code> level that starts a line
+	 */
+	public int getEnterLevel() {
+		return enterLevel;
+	}
+
+	/**
+	 * Returns the raw light value above which a line ends
+	 * @return the <code>int</code> level that ends a line
+	 */
+	public int getExitLevel() {
+		return exitLevel;
+	}
+
+	private void updateLevels() {
+		int baseline = mean >> FRACTION_BITS;
+		enterLevel = baseline - Math.max((ENTER_DEVIATIONS * deviation) >> FRACTION_BITS, baseline / MIN_ENTER_DIVISOR);
+		exitLevel = baseline - Math.max((EXIT_DEVIATIONS * deviation) >> FRACTION_BITS, baseline / MIN_EXIT_DIVISOR);
+	}
+}
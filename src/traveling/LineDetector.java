@@ -0,0 +1,105 @@
+package traveling;
+
+/**
+ * The <code>LineDetector</code> class turns the raw light readings of one sensor into grid line
+ * crossings. It is a two state machine with hysteresis: the sensor enters a line when the
+ * reading falls below the enter level of its <code>LightBaseline</code> and only leaves it when
+ * the reading rises back above the higher exit level, so a wide line or a noisy reading gives
+ * exactly one crossing. Readings away from lines are fed to the baseline so that the levels
+ * follow the floor.
+ * 
+ * The crossing is reported when the sensor leaves the line, with the time halfway between the
+ * first and the last dark sample, which is when the sensor was over the middle of the line.
+ * A dark stretch longer than any crossing is not reported, and once it lasts that long the
+ * floor is taken to have become darker than the baseline can follow, so the baseline starts
+ * again from the reading and the sensor is off the line.
+ * The class does not touch the sensor, it only consumes values and times, so it can be driven
+ * with recorded light traces off the brick.
+ * 
+ * @see OdometryCorrection
+ * @see LightBaseline
+ * 
+ * @author Stefan Ti
+ */
+public class LineDetector {
+	// a dark stretch longer than this is the robot stopped on a line, not a crossing
+	private static final long MAX_LINE_TIME = 1000;
+
+	private LightBaseline baseline;
+	private boolean onLine = false;
+	private long enterTime, lastDarkTime, crossingTime;
+
+	/**
+	 * The constructor takes in the baseline that gives the levels at which the sensor enters
+	 * and leaves a line.
+	 * 
+	 * @param baseline the <code>LightBaseline</code> of the sensor
+	 */
+	public LineDetector(LightBaseline baseline) {
+		this.baseline = baseline;
+	}
+
+	/**
+	 * Returns the baseline of the sensor
+	 * @return the <code>LightBaseline</code> the levels come from
+	 */
+	public LightBaseline getBaseline() {
+		return baseline;
+	}
+
+	/**
+	 * Consumes one reading of the sensor.
+	 * 
+	 * @param value the <code>int</code> raw light value
+	 * @param time the <code>long</code> time in ms at which the value was read
+	 * @return <code>true</code> if this reading completes a crossing, whose time is then given by
+	 * <code>getCrossingTime</code>
+	 */
+	public boolean sample(int value, long time) {
+		if (!onLine) {
+			if (value < baseline.getEnterLevel()) {
+				onLine = true;
+				enterTime = lastDarkTime = time;
+			} else {
+				baseline.update(value);
+			}
+			return false;
+		}
+
+		if (value <= baseline.getExitLevel()) {
+			lastDarkTime = time;
+			if (time - enterTime > MAX_LINE_TIME) {
+				baseline.reset(value);
+				onLine = false;
+			}
+			return false;
+		}
+
+		onLine = false;
+		crossingTime = enterTime + (lastDarkTime - enterTime) / 2;
+		return true;
+	}
+
+	/**
+	 * Returns the time of the middle of the last line crossed
+	 * @return the <code>long</code> time in ms at which the sensor was over the middle of the line
+	 */
+	public long getCrossingTime() {
+		return crossingTime;
+	}
+
+	/**
+	 * Returns whether the sensor is currently over a line
+	 * @return <code>true</code> if the last reading was on a line
+	 */
+	public boolean isOnLine() {
+		return onLine;
+	}
+
+	/**
+	 * Forgets a line the sensor may be on, for instance after the robot turned in place.
+	 */
+	public void reset() {
+		onLine = false;
+	}
+}
@@ -0,0 +1,143 @@
+package traveling;
+
+import hardware.Clock;
+
+/**
+ * A <code>Motion</code> is the handle of one motion queued on the <code>MotionExecutor</code>:
+ * a turn, a drive, an arc, a travel to a point or a stop. The motion is queued, then runs, then is either done or
+ * cancelled, and the thread that queued it can poll it, wait for it with or without a timeout,
+ * or cancel it while it moves or before it starts.
+ *
+ * @see MotionExecutor
+ *
+ * @author Stefan Ti
+ */
+public class Motion {
+	/**
+	 * The motion waits for the ones queued before it.
+	 */
+	public static final int QUEUED = 0;
+	/**
+	 * The wheels are carrying out the motion.
+	 */
+	public static final int RUNNING = 1;
+	/**
+	 * The motion was carried out.
+	 */
+	public static final int DONE = 2;
+	/**
+	 * The motion was cancelled, before it started or while it ran.
+	 */
+	public static final int CANCELLED = 3;
+
+	// the kinds of motion, and what they are carried out with, set again when it is reused
+	static final int TURN = 0, TURN_TO = 1, DRIVE = 2, ARC = 3, STOP = 4, TRAVEL = 5;
+	int kind;
+	double distance, angle;
+	// the point of a travel
+	double x, y;
+	int speed;
+
+	private MotionExecutor executor;
+	private Clock clock;
+	private int state = QUEUED;
+
+	Motion(MotionExecutor executor, Clock clock, int kind, double distance, double angle,
+			double x, double y, int speed) {
+		this.executor = executor;
+		this.clock = clock;
+		this.kind = kind;
+		this.distance = distance;
+		this.angle = angle;
+		this.x = x;
+		this.y = y;
+		this.speed = speed;
+	}
+
+	// makes a motion that is over a new one, to queue it again without allocating
+	synchronized void reset(int kind, double distance, double angle, double x, double y, int speed) {
+		this.kind = kind;
+		this.distance = distance;
+		this.angle = angle;
+		this.x = x;
+		this.y = y;
+		this.speed = speed;
+		state = QUEUED;
+	}
+
+	/**
+	 * Returns the state of the motion
+	 * @return the <code>int</code> state, <code>QUEUED</code>, <code>RUNNING</code>,
+	 * <code>DONE</code> or <code>CANCELLED</code>
+	 */
+	public synchronized int getState() {
+		return state;
+	}
+
+	/**
+	 * Returns whether the motion is over, carried out or cancelled
+	 * @return <code>true</code> if the wheels are done with the motion
+	 */
+	public synchronized boolean isDone() {
+		return state >= DONE;
+	}
+
+	/**
+	 * Returns whether the motion was cancelled
+	 * @return <code>true</code> if it was cancelled
+	 */
+	public synchronized boolean isCancelled() {
+		return state == CANCELLED;
+	}
+
+	/**
+	 * Waits until the motion is over.
+	 */
+	public synchronized void waitFor() {
+		while (state < DONE) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				// keep waiting for the motion
+			}
+		}
+	}
+
+	/**
+	 * Waits until the motion is over, or for at most a time.
+	 *
+	 * @param timeout the <code>long</code> time in ms on the <code>Clock</code> of the robot
+	 * @return <code>true</code> if the motion is over, <code>false</code> if the time ran out first
+	 */
+	public synchronized boolean waitFor(long timeout) {
+		long end = clock.currentTimeMillis() + timeout;
+		while (state < DONE) {
+			long left = end - clock.currentTimeMillis();
+			if (left <= 0)
+				return false;
+			try {
+				// the clock may run faster than the virtual machine waits, as in the simulator,
+				// so the time left is looked at again every period of the executor
+				wait(Math.min(left, MotionExecutor.PERIOD));
+			} catch (InterruptedException e) {
+				// keep waiting until the time runs out
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Cancels the motion. One that has not started is dropped from the queue, one that runs is
+	 * stopped where it is, and the motions queued after it go on.
+	 */
+	public void cancel() {
+		executor.cancel(this);
+	}
+
+	// the motion starts, is done or is cancelled, under the lock of the executor
+	synchronized void setState(int state) {
+		this.state = state;
+		if (state >= DONE)
+			notifyAll();
+	}
+}
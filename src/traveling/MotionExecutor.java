@@ -0,0 +1,243 @@
+package traveling;
+
+import hardware.Clock;
+import scheduler.PeriodicTask;
+import scheduler.Scheduler;
+
+/**
+ * The <code>MotionExecutor</code> carries out queued motions of the wheels, one after the other,
+ * on a control task of the <code>Scheduler</code>, so that the thread that queues them goes on
+ * sensing and planning while the robot moves instead of waiting in <code>Navigation</code>.
+ *
+ * Every motion is a turn in place, by an angle or to a heading, a straight drive, an arc, a
+ * travel to a point or a stop, and queuing it returns its <code>Motion</code> handle at once.
+ * Each period the task looks whether the wheels are done with the current motion and then starts
+ * the next one. The task is added to the <code>Scheduler</code> with the first motion and stays
+ * there, idle while the queue is empty, as adding it again would make a new thread and
+ * statistics every time. A turn to a heading is worked out from the heading of the
+ * <code>Odometer</code> when it starts, not when it is queued. A travel is steered in closed loop
+ * by the <code>TravelController</code>, which the task steps every period until it is there.
+ *
+ * The executor and the other methods of <code>Navigation</code> drive the same wheels, so those
+ * cancel every motion of the executor before they move the robot.
+ *
+ * @see Motion
+ * @see Navigation
+ * @see TravelController
+ *
+ * @author Stefan Ti
+ */
+public class MotionExecutor implements PeriodicTask {
+	// the period of the task in ms, within which a motion that is done is followed by the next
+	static final int PERIOD = 20;
+	private static final int MAX_QUEUED = 8;
+
+	private Navigation navigation;
+	private Scheduler scheduler;
+	private Clock clock;
+	private Motion [] queue = new Motion [MAX_QUEUED];
+	private int head = 0, size = 0;
+	private Motion current;
+
+	/**
+	 * The constructor takes in the <code>Navigation</code> whose wheels it moves and the
+	 * <code>Scheduler</code> of the robot.
+	 *
+	 * @param navigation the <code>Navigation</code> of the robot
+	 * @param scheduler the <code>Scheduler</code> the executor runs on
+	 */
+	public MotionExecutor(Navigation navigation, Scheduler scheduler) {
+		this.navigation = navigation;
+		this.scheduler = scheduler;
+		this.clock = scheduler.getClock();
+	}
+
+	/**
+	 * Queues a turn in place by an angle, without taking the minimal angle.
+	 *
+	 * @param angle the <code>double</code> angle in degrees, positive in the direction of
+	 * <code>Navigation.turnTo</code> with a positive angle
+	 * @return the <code>Motion</code> of the turn
+	 */
+	public Motion turn(double angle) {
+		return queue(Motion.TURN, 0, angle, 0);
+	}
+
+	/**
+	 * Queues a turn in place to a heading, by the minimal angle.
+	 *
+	 * @param heading the <code>double</code> heading in degrees
+	 * @return the <code>Motion</code> of the turn
+	 */
+	public Motion turnTo(double heading) {
+		return queue(Motion.TURN_TO, 0, heading, 0);
+	}
+
+	/**
+	 * Queues a straight drive at the travel speed of the <code>Navigation</code>.
+	 *
+	 * @param distance the <code>double</code> distance in cm, negative to drive backward
+	 * @return the <code>Motion</code> of the drive
+	 */
+	public Motion drive(double distance) {
+		return queue(Motion.DRIVE, distance, 0, navigation.getTravelSpeed());
+	}
+
+	/**
+	 * Queues a straight drive.
+	 *
+	 * @param distance the <code>double</code> distance in cm, negative to drive backward
+	 * @param speed the <code>int</code> speed of the wheels in degrees per second
+	 * @return the <code>Motion</code> of the drive
+	 */
+	public Motion drive(double distance, int speed) {
+		return queue(Motion.DRIVE, distance, 0, speed);
+	}
+
+	/**
+	 * Queues a drive forward along an arc, the outer wheel at the travel speed of the
+	 * <code>Navigation</code>.
+	 *
+	 * @param radius the <code>double</code> radius in cm of the arc the middle of the robot follows
+	 * @param angle the <code>double</code> angle in degrees the robot turns by, positive in the
+	 * direction of <code>Navigation.turnTo</code> with a positive angle
+	 * @return the <code>Motion</code> of the arc
+	 */
+	public Motion arc(double radius, double angle) {
+		return queue(Motion.ARC, radius, angle, navigation.getTravelSpeed());
+	}
+
+	/**
+	 * Queues a travel to a point at the travel speed of the <code>Navigation</code>, steered
+	 * toward it on the way, whichever way the robot faces when it starts.
+	 *
+	 * @param x the <code>double</code> x of the point in cm
+	 * @param y the <code>double</code> y of the point in cm
+	 * @return the <code>Motion</code> of the travel
+	 */
+	public Motion travelTo(double x, double y) {
+		return queue(Motion.TRAVEL, 0, 0, x, y, navigation.getTravelSpeed());
+	}
+
+	// queues a travel on a motion that is neither queued nor running, as Navigation does to
+	// travel without making a new motion every time
+	synchronized Motion travelTo(Motion motion, double x, double y) {
+		motion.reset(Motion.TRAVEL, 0, 0, x, y, navigation.getTravelSpeed());
+		return queue(motion);
+	}
+
+	/**
+	 * Queues a stop of both wheels, which is done once they have stopped.
+	 *
+	 * @return the <code>Motion</code> of the stop
+	 */
+	public Motion stop() {
+		return queue(Motion.STOP, 0, 0, 0);
+	}
+
+	/**
+	 * Cancels the motion that runs and every queued one, and stops the wheels if they moved.
+	 */
+	public synchronized void cancelAll() {
+		while (size > 0)
+			cancel(queue[head]);
+		if (current != null)
+			cancel(current);
+	}
+
+	/**
+	 * Returns whether no motion runs or is queued
+	 * @return <code>true</code> if the executor is idle
+	 */
+	public synchronized boolean isIdle() {
+		return current == null && size == 0;
+	}
+
+	/**
+	 * Ends the current motion once the wheels are done with it, or steers the travel that runs,
+	 * and starts the next one.
+	 * {@inheritDoc}
+	 */
+	public synchronized void execute(long release) {
+		if (current != null) {
+			if (current.kind == Motion.TRAVEL ? navigation.steer() : navigation.isMoving())
+				return;
+			navigation.endMotion();
+			current.setState(Motion.DONE);
+			current = null;
+		}
+		if (size == 0)
+			return;
+		current = queue[head];
+		queue[head] = null;
+		head = (head + 1) % MAX_QUEUED;
+		size--;
+		current.setState(Motion.RUNNING);
+		start(current);
+	}
+
+	// drops a queued motion, or stops the one that runs
+	synchronized void cancel(Motion motion) {
+		if (motion == current) {
+			navigation.halt();
+			navigation.endMotion();
+			current = null;
+			motion.setState(Motion.CANCELLED);
+			return;
+		}
+		for (int i = 0; i < size; i++) {
+			if (queue[(head + i) % MAX_QUEUED] == motion) {
+				// the motions after it move up by one
+				for (int j = i; j < size - 1; j++)
+					queue[(head + j) % MAX_QUEUED] = queue[(head + j + 1) % MAX_QUEUED];
+				queue[(head + size - 1) % MAX_QUEUED] = null;
+				size--;
+				motion.setState(Motion.CANCELLED);
+				return;
+			}
+		}
+	}
+
+	private synchronized Motion queue(int kind, double distance, double angle, int speed) {
+		return queue(kind, distance, angle, 0, 0, speed);
+	}
+
+	private synchronized Motion queue(int kind, double distance, double angle, double x, double y,
+			int speed) {
+		return queue(new Motion(this, clock, kind, distance, angle, x, y, speed));
+	}
+
+	// queues a motion, and adds the task the first time
+	private synchronized Motion queue(Motion motion) {
+		if (size == MAX_QUEUED)
+			throw new IllegalStateException("at most " + MAX_QUEUED + " queued motions");
+		queue[(head + size) % MAX_QUEUED] = motion;
+		size++;
+		if (!scheduler.isRunning(this))
+			scheduler.add("motion", this, PERIOD);
+		return motion;
+	}
+
+	private void start(Motion motion) {
+		switch (motion.kind) {
+		case Motion.TURN:
+			navigation.startTurn(motion.angle);
+			break;
+		case Motion.TURN_TO:
+			navigation.startTurn(navigation.minimalAngle(motion.angle));
+			break;
+		case Motion.DRIVE:
+			navigation.startDrive(motion.distance, motion.speed);
+			break;
+		case Motion.ARC:
+			navigation.startArc(motion.distance, motion.angle, motion.speed);
+			break;
+		case Motion.TRAVEL:
+			navigation.startTravel(motion.x, motion.y, motion.speed);
+			break;
+		default:
+			navigation.halt();
+			break;
+		}
+	}
+}
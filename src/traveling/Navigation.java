@@ -10,25 +10,35 @@ package traveling;
  * 
  * Edited by: Alessandro Parisi
  */
-import lejos.nxt.Motor;
-import lejos.nxt.NXTRegulatedMotor;
-import lejos.nxt.Sound;
+import hardware.RegulatedMotor;
 
 /**
  * The <code>Navigation</code> class will control the movements of the robot. It
- * will use the <code>Odometer</code> and motors to control this movement.
+ * will use the <code>Odometer</code> and the wheels of its <code>Robot</code> to control this
+ * movement.
  * 
  * It calculates the minimal angle to turn in all cases when moving to a
  * different point on the grid.
  * 
  * An instance of the <code>Navigation</code> class holds the
  * <code>double</code> error values, the <code>int</code> acceleration, and the
- * <code>int</code> different speeds. It also holds the <code>double</code>
- * width and wheel radius of the robot. In addition, it has a
+ * <code>int</code> different speeds. It also holds the wheel rotation per
+ * cm and per degree of turn of each wheel, computed once from the
+ * <code>Calibration</code> of the <code>Odometer</code> so that both use the
+ * same dimensions of the robot. In addition, it has a
  * <code>boolean</code> value to monitor when the robot is turning to stop
  * <code>OdometeryCorrection</code> when this is happening.
  * 
+ * The motions can also be queued on its <code>MotionExecutor</code>, which
+ * carries them out on a control task and returns at once. A travel to a
+ * point always runs there, steered in closed loop by a
+ * <code>TravelController</code>, and every other method that moves the
+ * wheels first cancels the motions of the executor.
+ * 
  * @see Odometer
+ * @see Calibration
+ * @see MotionExecutor
+ * @see TravelController
  * 
  * @author Alessandro Parisi
  * @author Sean Lawlor
@@ -38,15 +48,26 @@ public class Navigation {
 	private final static int FAST = 300, SLOW = 150, ACCELERATION = 4000,
 			MID = 250;
 	private final static double DEG_ERR = 5.0, CM_ERR = 1.0;
-	private final double wheelRadius = -2.1, width = 17.25;
+	// the heading error in degrees beyond which a travel first turns in place
+	private final static double STEER_ERR = 30.0;
+	// wheel rotation, in degrees, per cm travelled and per degree turned in place
+	private final double leftPerCm, rightPerCm, leftPerDegree, rightPerDegree;
+	private final double width;
 	private Odometer odometer;
-	private NXTRegulatedMotor leftMotor, rightMotor;
+	private RegulatedMotor leftMotor, rightMotor;
 	private boolean isTurning = false;
-	private boolean repeat = false;
+	private int turnSpeed = SLOW, travelSpeed = MID;
+	private double angleTolerance = DEG_ERR;
+	private MotionExecutor motions;
+	private TravelController travel;
+	// the motion of travelTo, queued again for every travel
+	private Motion travelMotion;
 
 	/**
 	 * The constructor of this class will initiate the motors and
-	 * <code>Odometer</code> and sets the acceleration of the motors.
+	 * <code>Odometer</code> and sets the acceleration of the motors. The
+	 * conversions from distances and angles to wheel rotations are computed
+	 * from the <code>Calibration</code> of the <code>Odometer</code>.
 	 * 
 	 * @param odo
 	 *            The <code>Odometer</code> that is used for the robot
@@ -54,23 +75,36 @@ public class Navigation {
 	public Navigation(Odometer odo) {
 		this.odometer = odo;
 
-		this.leftMotor = Motor.A;
-		this.rightMotor = Motor.B;
+		Calibration calibration = odo.getCalibration();
+		leftPerCm = 180.0 / (Math.PI * calibration.getLeftRadius());
+		rightPerCm = 180.0 / (Math.PI * calibration.getRightRadius());
+		// in place, each wheel travels pi * width * angle / 360
+		leftPerDegree = leftPerCm * Math.PI * calibration.getWidth() / 360.0;
+		rightPerDegree = rightPerCm * Math.PI * calibration.getWidth() / 360.0;
+		width = calibration.getWidth();
+
+		this.leftMotor = odo.getRobot().getLeftWheel();
+		this.rightMotor = odo.getRobot().getRightWheel();
 
 		// set acceleration
 		this.leftMotor.setAcceleration(ACCELERATION);
 		this.rightMotor.setAcceleration(ACCELERATION);
+
+		travel = new TravelController(this, odo, leftPerCm, rightPerCm);
+		motions = new MotionExecutor(this, odo.getRobot().getScheduler());
+		travelMotion = new Motion(motions, odo.getRobot().getClock(), Motion.TRAVEL, 0, 0, 0, 0, 0);
 	}
 
-	// This method converts the distance traveled given a radius and travel
-	// distance
-	private int convertDistance(double radius, double travelDis) {
-		return (int) ((180.0 * travelDis) / (Math.PI * radius));
+	// This method converts the distance traveled given the rotation per cm of
+	// a wheel and travel distance
+	private int convertDistance(double perCm, double travelDis) {
+		return (int) (perCm * travelDis);
 	}
 
-	// This method converts the angle traveled given a radius, width, and angle
-	private int convertAngle(double radius, double width, double angle) {
-		return convertDistance(radius, Math.PI * width * angle / 360.0);
+	// This method converts the angle turned in place given the rotation per
+	// degree of a wheel and angle
+	private int convertAngle(double perDegree, double angle) {
+		return (int) (perDegree * angle);
 	}
 
 	/**
@@ -82,8 +116,14 @@ public class Navigation {
 	 *            The <code>float</code > speed of the right motor
 	 */
 	public void setSpeeds(float lSpd, float rSpd) {
-		this.leftMotor.setSpeed(Math.abs(lSpd));
-		this.rightMotor.setSpeed(Math.abs(rSpd));
+		motions.cancelAll();
+		runWheels(lSpd, rSpd);
+	}
+
+	// sets the motor speeds without cancelling the motions of the executor
+	void runWheels(float lSpd, float rSpd) {
+		this.leftMotor.setSpeed(Math.round(Math.abs(lSpd)));
+		this.rightMotor.setSpeed(Math.round(Math.abs(rSpd)));
 		if (lSpd < 0)
 			this.leftMotor.backward();
 		else
@@ -104,6 +144,7 @@ public class Navigation {
 	 */
 
 	public void setSpeeds(int lSpd, int rSpd) {
+		motions.cancelAll();
 		this.leftMotor.setSpeed(Math.abs(lSpd));
 		this.rightMotor.setSpeed(Math.abs(rSpd));
 		if (lSpd < 0)
@@ -120,6 +161,7 @@ public class Navigation {
 	 * Float the two motors jointly
 	 */
 	public void setFloat() {
+		motions.cancelAll();
 		this.leftMotor.stop();
 		this.rightMotor.stop();
 		this.leftMotor.flt(true);
@@ -129,53 +171,42 @@ public class Navigation {
 	/**
 	 * TravelTo function which takes as arguments the x and y position in cm
 	 * will travel to designated position, while constantly updating it's
-	 * heading
+	 * heading. The robot turns in place first only if the point is far off
+	 * its heading, then the <code>TravelController</code> steers it there on
+	 * the <code>MotionExecutor</code> and ends with one final approach.
 	 * 
 	 * @param x
 	 *            The <code>double</code> x position of the robot
 	 * @param y
 	 *            The <code>double</code> y position of the robot
+	 * @param immediateRet
+	 *            The <code>boolean</code> decision to return once the robot
+	 *            faces the point, instead of once it is there
 	 */
 	public void travelTo(double x, double y, boolean immediateRet) {
 
-		double dX, dY, angle, travelDis, check;
-		int tries = 0;
+		double dX, dY, angle;
 
-		if (repeat)
-			repeat = false;
-		else
-			repeat = true;
+		// Whatever the wheels were doing, they now go to the point
+		motions.cancelAll();
 
 		// Get the x y and that we need to travel
 		dX = x - odometer.getX();
 		dY = y - odometer.getY();
+		if (Math.sqrt(dX * dX + dY * dY) < CM_ERR)
+			return;
 
 		// find the direction by using tan
 		angle = Math.atan2(dY, dX) * 180 / Math.PI;
 
-		// Correct the angle until its good
-		while (Math.abs(odometer.getAng() - angle) > DEG_ERR && tries < 10) {
-			tries = tries + 1;
+		// Turn once if the point is too far off to steer toward on the way
+		if (Math.abs(minimalAngle(angle)) > STEER_ERR)
 			turnTo(angle, true);
-		}
-
-		// Make the wheels move slowly
-		leftMotor.setSpeed(MID);
-		rightMotor.setSpeed(MID);
-
-		// Calcuate the travel distance by using pythagorean
-		travelDis = Math.sqrt(dX * dX + dY * dY);
-
-		// Move the robot a certain distance and then stop the motors
-		Motor.A.rotate(convertDistance(wheelRadius, travelDis), true);
-		Motor.B.rotate(convertDistance(wheelRadius, travelDis), immediateRet);
-
-		check = Math.sqrt(Math.pow((odometer.getX() - x), 2) + Math.pow((odometer.getY() - y), 2));
-
-		if (repeat && check >= 1) {
-			travelTo(x, y, immediateRet);
-		}
 
+		// every motion was cancelled, so the one of the last travel is over and can be queued again
+		motions.travelTo(travelMotion, x, y);
+		if (!immediateRet)
+			travelMotion.waitFor();
 	}
 
 	/**
@@ -190,54 +221,86 @@ public class Navigation {
 	 */
 	public void turnTo(double turnAngle, boolean stop) {
 
+		motions.cancelAll();
 		isTurning = true;
 
-		// Get the angle the robot needs to turn
-		double angleNeedToTravel = (turnAngle - odometer.getAng()) % 360;
-
-		// Get the minimal angle
-		if ((angleNeedToTravel > 180) || (angleNeedToTravel < -180)) {
-			if (angleNeedToTravel > 180) {
-				angleNeedToTravel = angleNeedToTravel - 360;
-			} else {
-				angleNeedToTravel = angleNeedToTravel + 360;
-			}
-		}
+		// Get the minimal angle the robot needs to turn
+		double angleNeedToTravel = minimalAngle(turnAngle);
 
 		// if the angle is not within the given error margin
-		if (Math.abs(angleNeedToTravel) > DEG_ERR) {
+		if (Math.abs(angleNeedToTravel) > angleTolerance) {
 
 			// if angle change is positive we move clockwise
 			if (angleNeedToTravel > 0) {
 
-				Motor.A.setSpeed(SLOW);
-				Motor.B.setSpeed(SLOW);
+				leftMotor.setSpeed(turnSpeed);
+				rightMotor.setSpeed(turnSpeed);
 
-				Motor.A.rotate(
-						convertAngle(wheelRadius, width,
+				leftMotor.rotate(
+						convertAngle(leftPerDegree,
 								Math.abs(angleNeedToTravel)), true);
-				Motor.B.rotate(
-						-convertAngle(wheelRadius, width,
+				rightMotor.rotate(
+						-convertAngle(rightPerDegree,
 								Math.abs(angleNeedToTravel)), false);
 
 				// if angle is negative move counterclockwise
 			} else {
 
-				Motor.A.setSpeed(SLOW);
-				Motor.B.setSpeed(SLOW);
+				leftMotor.setSpeed(turnSpeed);
+				rightMotor.setSpeed(turnSpeed);
 
-				Motor.A.rotate(
-						-convertAngle(wheelRadius, width,
+				leftMotor.rotate(
+						-convertAngle(leftPerDegree,
 								Math.abs(angleNeedToTravel)), true);
-				Motor.B.rotate(
-						convertAngle(wheelRadius, width,
+				rightMotor.rotate(
+						convertAngle(rightPerDegree,
 								Math.abs(angleNeedToTravel)), false);
 			}
 		}
 
 		// Stop the motors after we turned the amount we desired
-		Motor.B.stop();
-		Motor.A.stop();
+		rightMotor.stop();
+		leftMotor.stop();
+		isTurning = false;
+	}
+
+	// the minimal angle to turn by, between -180 and 180, to face a heading
+	double minimalAngle(double turnAngle) {
+		return minimalAngle(turnAngle, odometer.getAng());
+	}
+
+	// the minimal angle to turn by from one heading to face another
+	static double minimalAngle(double turnAngle, double heading) {
+		double angle = (turnAngle - heading) % 360;
+		if (angle > 180)
+			angle -= 360;
+		else if (angle < -180)
+			angle += 360;
+		return angle;
+	}
+
+	/**
+	 * Turn function which turns the robot in place by the given angle,
+	 * without taking the minimal angle, so it can turn by more than a full
+	 * turn. It waits until the turn is completed.
+	 *
+	 * @param angle
+	 *            The <code>double</code> angle to turn by, positive in the
+	 *            direction of <code>turnTo</code> with a positive angle
+	 */
+	public void turn(double angle) {
+
+		motions.cancelAll();
+		isTurning = true;
+
+		leftMotor.setSpeed(turnSpeed);
+		rightMotor.setSpeed(turnSpeed);
+
+		leftMotor.rotate(convertAngle(leftPerDegree, angle), true);
+		rightMotor.rotate(-convertAngle(rightPerDegree, angle), false);
+
+		rightMotor.stop();
+		leftMotor.stop();
 		isTurning = false;
 	}
 
@@ -265,6 +328,58 @@ public class Navigation {
 		this.setSpeeds(speed, speed);
 	}
 
+	/**
+	 * Sets how far from the heading asked for a turn is considered done, in
+	 * place of the default of 5 degrees.
+	 * 
+	 * @param angleTolerance
+	 *            The <code>double</code> tolerance in degrees
+	 */
+	public void setAngleTolerance(double angleTolerance) {
+		this.angleTolerance = angleTolerance;
+	}
+
+	/**
+	 * Sets the speed of the wheels when turning, in place of the default of
+	 * 150.
+	 * 
+	 * @param turnSpeed
+	 *            The <code>int</code> speed in degrees per second
+	 */
+	public void setTurnSpeed(int turnSpeed) {
+		this.turnSpeed = turnSpeed;
+	}
+
+	/**
+	 * Sets the speed of the wheels in <code>travelTo</code>, in place of the
+	 * default of 250.
+	 * 
+	 * @param travelSpeed
+	 *            The <code>int</code> speed in degrees per second
+	 */
+	public void setTravelSpeed(int travelSpeed) {
+		this.travelSpeed = travelSpeed;
+	}
+
+	/**
+	 * Returns the speed of the wheels in <code>travelTo</code>.
+	 * 
+	 * @return The <code>int</code> speed in degrees per second
+	 */
+	public int getTravelSpeed() {
+		return travelSpeed;
+	}
+
+	/**
+	 * Returns the executor the motions of the robot can be queued on, which
+	 * carries them out without the caller waiting.
+	 * 
+	 * @return The <code>MotionExecutor</code> of the wheels
+	 */
+	public MotionExecutor getMotions() {
+		return motions;
+	}
+
 	/**
 	 * This method returns the <code>boolean</code> value that keeps track
 	 * whether the robot is currently turning.
@@ -283,16 +398,86 @@ public class Navigation {
 	 * @param travelDis The distance need to travel in <code>double</code>. Unit is centimeter.
 	 */
 	public void moveForward(int speed,double travelDis) {
-		Motor.A.setSpeed(speed);
-		Motor.B.setSpeed(speed);
-		Motor.A.rotate(convertDistance(wheelRadius, travelDis), true);
-		Motor.B.rotate(convertDistance(wheelRadius, travelDis), false);
+		motions.cancelAll();
+		leftMotor.setSpeed(speed);
+		rightMotor.setSpeed(speed);
+		leftMotor.rotate(convertDistance(leftPerCm, travelDis), true);
+		rightMotor.rotate(convertDistance(rightPerCm, travelDis), false);
 	}
 	/** This method stops both motors of the robot.
 	 *
 	 */
 	public void stopMotors(){
-		Motor.A.stop();
-		Motor.B.stop();
+		motions.cancelAll();
+		halt();
+	}
+
+	/*
+	 * The motions of the MotionExecutor, which start the wheels and return at
+	 * once. The executor ends each of them with endMotion once the wheels are
+	 * no longer moving.
+	 */
+
+	// turns in place by an angle
+	void startTurn(double angle) {
+		isTurning = true;
+		leftMotor.setSpeed(turnSpeed);
+		rightMotor.setSpeed(turnSpeed);
+		leftMotor.rotate(convertAngle(leftPerDegree, angle), true);
+		rightMotor.rotate(-convertAngle(rightPerDegree, angle), true);
+	}
+
+	// drives straight by a distance, backward when it is negative
+	void startDrive(double distance, int speed) {
+		leftMotor.setSpeed(Math.abs(speed));
+		rightMotor.setSpeed(Math.abs(speed));
+		leftMotor.rotate(convertDistance(leftPerCm, distance), true);
+		rightMotor.rotate(convertDistance(rightPerCm, distance), true);
+	}
+
+	/*
+	 * Drives forward along an arc: each wheel travels its own radius by the
+	 * angle, and the speeds are in the ratio of the radii so that both end
+	 * together. The outer wheel is on the left for a positive angle.
+	 */
+	void startArc(double radius, double angle, int speed) {
+		double radians = Math.toRadians(Math.abs(angle));
+		double outer = (radius + width / 2) * radians;
+		double inner = (radius - width / 2) * radians;
+		int innerSpeed = (int) Math.abs(speed * inner / outer);
+		RegulatedMotor outerMotor = angle > 0 ? leftMotor : rightMotor;
+		RegulatedMotor innerMotor = angle > 0 ? rightMotor : leftMotor;
+		double outerPerCm = angle > 0 ? leftPerCm : rightPerCm;
+		double innerPerCm = angle > 0 ? rightPerCm : leftPerCm;
+		outerMotor.setSpeed(speed);
+		innerMotor.setSpeed(innerSpeed);
+		outerMotor.rotate(convertDistance(outerPerCm, outer), true);
+		innerMotor.rotate(convertDistance(innerPerCm, inner), true);
+	}
+
+	// starts a travel to a point, steered by the TravelController
+	void startTravel(double x, double y, int speed) {
+		travel.start(x, y, speed);
+	}
+
+	// steers a travel for one period, and returns false once it is there
+	boolean steer() {
+		return travel.steer();
+	}
+
+	// stops both motors, without cancelling the motions of the executor
+	void halt() {
+		leftMotor.stop();
+		rightMotor.stop();
+	}
+
+	// whether either wheel is still carrying out a motion
+	boolean isMoving() {
+		return leftMotor.isMoving() || rightMotor.isMoving();
+	}
+
+	// a motion of the executor is over
+	void endMotion() {
+		isTurning = false;
 	}
 }
\ No newline at end of file
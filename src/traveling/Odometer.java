@@ -1,10 +1,12 @@
 package traveling;
-import lejos.nxt.*;
-import lejos.util.Timer;
-import lejos.util.TimerListener;
+import hardware.ColorInput;
+import hardware.RegulatedMotor;
+import hardware.Robot;
+import scheduler.PeriodicTask;
+import scheduler.Scheduler;
 
 /**
- * The <code>Odometer</code> class implements a <code>TimerListener</code>
+ * The <code>Odometer</code> class implements a <code>PeriodicTask</code>
  * and keeps track of the relative position of the robot from a point it starts at.
  * 
  * It has methods to access the varaibles which describe the relative positions and
@@ -12,32 +14,71 @@ import lejos.util.TimerListener;
  * 
  * An instance of this class holds and instance of the <code>Navigation</code> class which will be
  * interacting with it, as well as an instance of <code>OdometryCorrection</code> to fix the odometer's
- * readings every time it cross lines. This <code>Odometer</code> is a timer which is started in the constructor
- * with a default period. This <code>Odometer</code> also holds values for the left and right radius and
- * width of the robot. 
+ * readings every time it cross lines. This <code>Odometer</code> is a control task of the
+ * <code>Scheduler</code> of the <code>Robot</code> it measures, which is started in the constructor with a default period. This <code>Odometer</code> also holds the <code>Calibration</code> of the robot,
+ * whose left and right radius and width are used to build the <code>OdometryEngine</code> that integrates
+ * the wheel motion unless another engine is given to the constructor, and by the <code>Navigation</code>
+ * to convert distances and angles into wheel rotations. 
  * 
- * The <code>Odometer</code> has a lock which is used to synchronize methods for different calls 
- * to the thread and avoid deadlocks.
+ * The pose is published through a sequence lock: writers are serialized on a lock and bump
+ * a version number before and after every update, while readers never take a lock and simply
+ * retry when they observe an odd or changed version. This keeps the getters cheap in the tight
+ * loops of <code>Navigation</code> and <code>FlagCapturer</code> and guarantees that
+ * <code>getPosition</code> and <code>readPose</code> never return a torn pose.
+ * 
+ * Every integrated pose is also recorded in a <code>PoseHistory</code> so that a measurement
+ * can be applied at the pose where it was actually taken, see <code>poseAt</code> and
+ * <code>correctPosition</code>. The uncertainty of the pose is kept by a <code>PoseEstimator</code>
+ * which is grown with every integrated motion.
+ * 
+ * A thread that waits for the robot to get somewhere parks in <code>waitUntil</code>, or one of
+ * the waits built on it, instead of spinning on the getters. It is woken every time a new pose is
+ * published, looks at its <code>PoseCondition</code> then, and goes back to sleep until the next one,
+ * so the odometer and the correction keep the processor while the robot drives.
  * 
  * @see Navigation
  * @see OdometryCorrection
+ * @see OdometryEngine
+ * @see PoseHistory
+ * @see PoseEstimator
+ * @see PoseCondition
+ * @see Calibration
  * 
  * @author Alessandro Parisi
  * @author Stefan Ti
  * @author Bei Chen Liu
  *
  */
-public class Odometer implements TimerListener {
+public class Odometer implements PeriodicTask {
+	/**
+	 * The index of the x axis, in a pose and for <code>waitUntilCrossing</code>.
+	 */
+	public static final int X = 0;
+	/**
+	 * The index of the y axis, in a pose and for <code>waitUntilCrossing</code>.
+	 */
+	public static final int Y = 1;
 	private static final int DEFAULT_PERIOD = 25;
-	private NXTRegulatedMotor leftMotor, rightMotor;
-	private Timer odometerTimer;
+	// 64 periods of 25 ms is 1.6 seconds of history
+	private static final int HISTORY_SIZE = 64;
+	private RegulatedMotor leftMotor, rightMotor;
+	private RegulatedMotor [] motors;
+	private Robot robot;
+	private int period;
 	private Navigation navigation;
 	private OdometryCorrection odometryCorrection;
 	private Object lock;
-	private double x, y, theta;
-	private double [] oldDH, dDH;
-
-	private double leftRadius, rightRadius, width;
+	// the waiters park on this monitor, and are woken by every new pose while there are any
+	private Object published;
+	private int waiters = 0;
+	private volatile int version;
+	private volatile double x, y, theta;
+	private volatile long timestamp;
+	private double [] pose;
+	private OdometryEngine engine;
+	private PoseHistory history;
+	private PoseEstimator estimator;
+	private Calibration calibration;
 
 
 	/**
@@ -52,30 +93,80 @@ public class Odometer implements TimerListener {
 	 * the odometer timer is called
 	 * @param start The <code>boolean</code> value which determines whether the odometer
 	 * will star the timer
-	 * @param odometerCorrectionLeft The left <code>ColorSensor</code> that will be used for odometry correction
-	 * @param odometerCorrectionRight The right <code>ColorSensor</code> that will be used for odometry correction
+	 * @param robot The <code>Robot</code> whose wheels are measured
+	 * @param odometerCorrectionLeft The left <code>ColorInput</code> that will be used for odometry correction
+	 * @param odometerCorrectionRight The right <code>ColorInput</code> that will be used for odometry correction
 	 */
-	public Odometer(int period, boolean start, ColorSensor odometerCorrectionLeft, ColorSensor odometerCorrectionRight) {
+	public Odometer(int period, boolean start, Robot robot, ColorInput odometerCorrectionLeft, ColorInput odometerCorrectionRight) {
+		this(period, start, new Calibration(), robot, odometerCorrectionLeft, odometerCorrectionRight);
+	}
 
+	/**
+	 * The constructor of the <code>Odometer</code> takes in a period, which determines how often
+	 * the timer will restart, and the <code>Calibration</code> of the robot, usually the one stored
+	 * on the brick, from which the dimensions of the robot are taken. It then initializes the same
+	 * way as the other constructors.
+	 * 
+	 * @param period The <code>int</code> period that will determine the rate at which
+	 * the odometer timer is called
+	 * @param start The <code>boolean</code> value which determines whether the odometer
+	 * will star the timer
+	 * @param calibration The <code>Calibration</code> that holds the dimensions of the robot
+	 * @param robot The <code>Robot</code> whose wheels are measured
+	 * @param odometerCorrectionLeft The left <code>ColorInput</code> that will be used for odometry correction
+	 * @param odometerCorrectionRight The right <code>ColorInput</code> that will be used for odometry correction
+	 */
+	public Odometer(int period, boolean start, Calibration calibration, Robot robot, ColorInput odometerCorrectionLeft, ColorInput odometerCorrectionRight) {
+		this(period, start, calibration, new DoubleOdometryEngine(calibration.getLeftRadius(),
+				calibration.getRightRadius(), calibration.getWidth()),
+				robot, odometerCorrectionLeft, odometerCorrectionRight);
+	}
+
+	/**
+	 * The constructor of the <code>Odometer</code> takes in a period, which determines how often
+	 * the timer will restart, the <code>Calibration</code> of the robot and the <code>OdometryEngine</code>
+	 * that integrates the motion of the wheels, for instance a <code>FixedPointOdometryEngine</code> to
+	 * avoid the floating point work on the brick. The engine should be built from the same calibration.
+	 * It then initializes the same way as the other constructors.
+	 * 
+	 * @param period The <code>int</code> period that will determine the rate at which
+	 * the odometer timer is called
+	 * @param start The <code>boolean</code> value which determines whether the odometer
+	 * will star the timer
+	 * @param calibration The <code>Calibration</code> that holds the dimensions of the robot
+	 * @param engine The <code>OdometryEngine</code> that will integrate the wheel motion
+	 * @param robot The <code>Robot</code> whose wheels are measured
+	 * @param odometerCorrectionLeft The left <code>ColorInput</code> that will be used for odometry correction
+	 * @param odometerCorrectionRight The right <code>ColorInput</code> that will be used for odometry correction
+	 */
+	public Odometer(int period, boolean start, Calibration calibration, OdometryEngine engine, Robot robot, ColorInput odometerCorrectionLeft, ColorInput odometerCorrectionRight) {
+
+		// the navigation and the correction read the calibration and robot in their constructors
+		this.calibration = calibration;
+		this.robot = robot;
 		this.navigation = new Navigation(this);
+		estimator = new PoseEstimator(this);
 		odometryCorrection = new OdometryCorrection(this, odometerCorrectionLeft, odometerCorrectionRight);
 
-		odometerTimer = new Timer(period, this);
-		leftMotor = Motor.A;
-		rightMotor = Motor.B;
+		this.period = period;
+		leftMotor = robot.getLeftWheel();
+		rightMotor = robot.getRightWheel();
+		motors = new RegulatedMotor [] {leftMotor, rightMotor};
 		x = 0.0;
 		y = 0.0;
 		theta = 0.0;
-		oldDH = new double [2];
-		dDH = new double [2];
+		version = 0;
+		timestamp = robot.getClock().currentTimeMillis();
+		pose = new double [3];
+		history = new PoseHistory(HISTORY_SIZE);
 		lock = new Object();
-		this.rightRadius = -2.1;
-		this.leftRadius = -2.1;
-		this.width = 17.25;
+		published = new Object();
+		this.engine = engine;
+		engine.reset(leftMotor.getTachoCount(), rightMotor.getTachoCount());
 
 		//If the use wants, start the timer
 		if (start){
-			odometerTimer.start();
+			start();
 		}
 
 
@@ -89,11 +180,12 @@ public class Odometer implements TimerListener {
 	 * <code>OdometryCorrection</code>. Finally it sets the inital position of the robot to the 
 	 * origin with angle 0 and 
 	 * 
-	 * @param odometerCorrectionLeft The left <code>ColorSensor</code> that will be used for odometry correction
-	 * @param odometerCorrectionRight The right <code>ColorSensor</code> that will be used for odometry correction
+	 * @param robot The <code>Robot</code> whose wheels are measured
+	 * @param odometerCorrectionLeft The left <code>ColorInput</code> that will be used for odometry correction
+	 * @param odometerCorrectionRight The right <code>ColorInput</code> that will be used for odometry correction
 	 */
-	public Odometer(ColorSensor odometerCorrectionLeft, ColorSensor odometerCorrectionRight) {
-		this(DEFAULT_PERIOD, false, odometerCorrectionLeft, odometerCorrectionRight);
+	public Odometer(Robot robot, ColorInput odometerCorrectionLeft, ColorInput odometerCorrectionRight) {
+		this(DEFAULT_PERIOD, false, robot, odometerCorrectionLeft, odometerCorrectionRight);
 	}
 
 	/**
@@ -105,11 +197,28 @@ public class Odometer implements TimerListener {
 	 * 
 	 * @param start the <code>boolean<code> value that determines whther the odometer timer will start
 	 * in the constructor
-	 * @param odometerCorrectionLeft The left <code>ColorSensor</code> that will be used for odometry correction
-	 * @param odometerCorrectionRight The right <code>ColorSensor</code> that will be used for odometry correction
+	 * @param robot The <code>Robot</code> whose wheels are measured
+	 * @param odometerCorrectionLeft The left <code>ColorInput</code> that will be used for odometry correction
+	 * @param odometerCorrectionRight The right <code>ColorInput</code> that will be used for odometry correction
 	 */
-	public Odometer(boolean start, ColorSensor odometerCorrectionLeft, ColorSensor odometerCorrectionRight) {
-		this(DEFAULT_PERIOD, start, odometerCorrectionLeft, odometerCorrectionRight);
+	public Odometer(boolean start, Robot robot, ColorInput odometerCorrectionLeft, ColorInput odometerCorrectionRight) {
+		this(DEFAULT_PERIOD, start, robot, odometerCorrectionLeft, odometerCorrectionRight);
+	}
+
+	/**
+	 * The constructor of the <code>Odometer</code> takes in the default period and the 
+	 * <code>Calibration</code> from which the dimensions of the robot are taken. It then 
+	 * initializes the same way as the other constructors.
+	 * 
+	 * @param start the <code>boolean<code> value that determines whther the odometer timer will start
+	 * in the constructor
+	 * @param calibration The <code>Calibration</code> that holds the dimensions of the robot
+	 * @param robot The <code>Robot</code> whose wheels are measured
+	 * @param odometerCorrectionLeft The left <code>ColorInput</code> that will be used for odometry correction
+	 * @param odometerCorrectionRight The right <code>ColorInput</code> that will be used for odometry correction
+	 */
+	public Odometer(boolean start, Calibration calibration, Robot robot, ColorInput odometerCorrectionLeft, ColorInput odometerCorrectionRight) {
+		this(DEFAULT_PERIOD, start, calibration, robot, odometerCorrectionLeft, odometerCorrectionRight);
 	}
 
 	/**
@@ -121,11 +230,22 @@ public class Odometer implements TimerListener {
 	 * 
 	 * @param period the <code>int</code> period that will determine the rate at which
 	 * the odometer timer is called
-	 * @param odometerCorrectionLeft the <code>ColorSensor</code> that will be used for odometry correction
-	 * @param odometerCorrectionRight the <code>ColorSensor</code> that will be used for odometry correction
+	 * @param robot The <code>Robot</code> whose wheels are measured
+	 * @param odometerCorrectionLeft the <code>ColorInput</code> that will be used for odometry correction
+	 * @param odometerCorrectionRight the <code>ColorInput</code> that will be used for odometry correction
+	 */
+	public Odometer(int period, Robot robot, ColorInput odometerCorrectionLeft, ColorInput odometerCorrectionRight) {
+		this(period, false, robot, odometerCorrectionLeft, odometerCorrectionRight);
+	}
+
+	/**
+	 * Starts updating the position every period, as a control task of the <code>Scheduler</code>
+	 * of the robot. It does nothing if the odometer is already running.
 	 */
-	public Odometer(int period, ColorSensor odometerCorrectionLeft, ColorSensor odometerCorrectionRight) {
-		this(period, false, odometerCorrectionLeft, odometerCorrectionRight);
+	public void start() {
+		Scheduler scheduler = robot.getScheduler();
+		if (!scheduler.isRunning(this))
+			scheduler.add("odometer", this, period);
 	}
 
 	public void startOdometryCorrection(){
@@ -139,32 +259,34 @@ public class Odometer implements TimerListener {
 	 * It updates the x and y depending on the angle it is travelling at and past positions
 	 * {@inheritDoc}
 	 */
-	public void timedOut() {    
-		this.getVector(dDH);
-		dDH[0] -= oldDH[0];
-		dDH[1] -= oldDH[1];
+	public void execute(long release) {    
+		int leftTacho = leftMotor.getTachoCount();
+		int rightTacho = rightMotor.getTachoCount();
+		double dx, dy, dAngle;
 
 		// update the position in a critical region
-		synchronized (this) {
-			theta -= dDH[1];
-			theta = fixDegAngle(theta);
+		synchronized (lock) {
+			// work on a copy so single field readers never see a half updated pose
+			pose[0] = x;
+			pose[1] = y;
+			pose[2] = theta;
+			engine.update(leftTacho, rightTacho, pose);
+			dx = pose[0] - x;
+			dy = pose[1] - y;
+			dAngle = pose[2] - theta;
 
-			x += dDH[0] * Math.cos(Math.toRadians(theta));
-			y += dDH[0] * Math.sin(Math.toRadians(theta));
+			version++;
+			x = pose[0];
+			y = pose[1];
+			theta = pose[2];
+			timestamp = robot.getClock().currentTimeMillis();
+			history.record(timestamp, x, y, theta);
+			version++;
 		}
+		signalPose();
 
-		oldDH[0] += dDH[0];
-		oldDH[1] += dDH[1]; 
-	}
-
-	//Calculates the displacement and direction
-	private void getVector(double[] data) {
-		int leftTacho, rightTacho;
-		leftTacho = leftMotor.getTachoCount();
-		rightTacho = rightMotor.getTachoCount();
-
-		data[0] = (leftTacho * leftRadius + rightTacho * rightRadius) * Math.PI / 360.0;
-		data[1] = (rightTacho * rightRadius - leftTacho * leftRadius) / width;
+		// the estimator has its own lock, grow the uncertainty outside of ours
+		estimator.predict(dx, dy, dAngle, pose[2]);
 	}
 
 	/**
@@ -172,27 +294,21 @@ public class Odometer implements TimerListener {
 	 * @return the <code>double</code> x of the robot
 	 */
 	public double getX() {
-		synchronized (lock) {
-			return x;
-		}
+		return x;
 	}
 	/**
 	 * Returns the y of the robot
 	 * @return the <code>double</code> y of the robot
 	 */
 	public double getY() {
-		synchronized (lock) {
-			return y;
-		}
+		return y;
 	}
 	/**
 	 * Returns the angle of the robot
 	 * @return the <code>double</code> angle of the robot
 	 */
 	public double getAng() {
-		synchronized (lock) {
-			return theta;
-		}
+		return theta;
 	}
 	/**
 	 * Sets the <code>double</code> angle of the odometer
@@ -200,8 +316,12 @@ public class Odometer implements TimerListener {
 	 */
 	public void setAng(double angle) {
 		synchronized (lock) {
+			version++;
+			history.shift(0, 0, angle - theta);
 			theta = angle;
+			version++;
 		}
+		signalPose();
 	} 
 
 	/**
@@ -211,35 +331,263 @@ public class Odometer implements TimerListener {
 	 * <code>Odometer</code>'s positions
 	 */
 	public void getPosition(double [] pos) {
+		readPose(pos);
+	}
+
+	/**
+	 * Copies a consistent snapshot of the pose into the given array without taking a lock
+	 * or allocating. The x, y and angle are stored in the first three elements and, if the
+	 * array is long enough, the time in milliseconds at which the pose was last integrated
+	 * is stored in the fourth.
+	 * 
+	 * If a writer is in the middle of an update the read is retried; should the writer have
+	 * been preempted the reader waits on the writer lock instead of spinning so that a
+	 * higher priority reader cannot starve it.
+	 * 
+	 * @param out the <code>double</code> array of at least three elements that receives the pose
+	 * @return the <code>int</code> version of the pose that was read, which changes on every update
+	 */
+	public int readPose(double [] out) {
+		int before;
+		do {
+			before = version;
+			if ((before & 1) != 0) {
+				synchronized (lock) {
+					before = version;
+					copyPose(out);
+					return before;
+				}
+			}
+			copyPose(out);
+		} while (version != before);
+
+		return before;
+	}
+
+	/**
+	 * Fills the given array with the pose the robot had at the given time, interpolated from the
+	 * recent history of the odometer. It does not allocate and, like <code>readPose</code>, never
+	 * returns a pose that is being written.
+	 * 
+	 * @param time the <code>long</code> time in ms, on the <code>Clock</code> of the robot
+	 * @param pos the <code>double</code> array that receives the x, y and angle
+	 * @return <code>true</code> if the time is within the history, <code>false</code> if the closest
+	 * recorded pose was returned instead
+	 */
+	public boolean poseAt(long time, double [] pos) {
+		int before;
+		boolean covered;
+		do {
+			before = version;
+			if ((before & 1) != 0) {
+				synchronized (lock) {
+					return history.lookup(time, pos);
+				}
+			}
+			covered = history.lookup(time, pos);
+		} while (version != before);
+
+		return covered;
+	}
+
+	/**
+	 * Moves the pose, and the recorded history, by the given amounts in a single update. Unlike
+	 * the setters this is relative to the pose at the time of the call, so a correction that was
+	 * computed from <code>poseAt</code> can be applied without losing the motion that happened
+	 * since.
+	 * 
+	 * @param dx the <code>double</code> change in x
+	 * @param dy the <code>double</code> change in y
+	 * @param dAngle the <code>double</code> change in angle, in degrees
+	 */
+	public void correctPosition(double dx, double dy, double dAngle) {
 		synchronized (lock) {
-			pos[0] = x;
-			pos[1] = y;
-			pos[2] = theta;
+			version++;
+			history.shift(dx, dy, dAngle);
+			x += dx;
+			y += dy;
+			theta = fixDegAngle(theta + dAngle);
+			version++;
+		}
+		signalPose();
+	}
+
+	/**
+	 * Waits until a condition holds at the pose of the robot. The condition is looked at now,
+	 * then every time a new pose is published, and in between the thread sleeps.
+	 * 
+	 * @param condition the <code>PoseCondition</code> to wait for
+	 * @param timeout the <code>long</code> most time to wait in ms on the <code>Clock</code> of
+	 * the robot, 0 to wait as long as it takes
+	 * @return <code>true</code> if the condition holds, <code>false</code> if the time ran out first
+	 */
+	public boolean waitUntil(PoseCondition condition, long timeout) {
+		long end = robot.getClock().currentTimeMillis() + timeout;
+		double [] seen = new double [3];
+		synchronized (published) {
+			waiters++;
+			try {
+				int checked = readPose(seen);
+				while (!condition.holds(seen[0], seen[1], seen[2])) {
+					if (!waitForPose(checked, timeout, end))
+						return false;
+					checked = readPose(seen);
+				}
+				return true;
+			} finally {
+				waiters--;
+			}
+		}
+	}
+
+	/**
+	 * Waits until the robot is within a distance of a point.
+	 * 
+	 * @param x the <code>double</code> x of the point
+	 * @param y the <code>double</code> y of the point
+	 * @param radius the <code>double</code> distance in cm
+	 * @param timeout the <code>long</code> most time to wait in ms, 0 to wait as long as it takes
+	 * @return <code>true</code> if the robot is there, <code>false</code> if the time ran out first
+	 */
+	public boolean waitUntilWithin(double x, double y, double radius, long timeout) {
+		return waitUntil(new Within(x, y, radius), timeout);
+	}
+
+	/**
+	 * Waits until the robot has reached a value on an axis, going one way. It returns at once if
+	 * the robot is already past the value.
+	 * 
+	 * @param axis the <code>int</code> axis, <code>X</code> or <code>Y</code>
+	 * @param value the <code>double</code> value in cm
+	 * @param direction the <code>int</code> way the robot goes along the axis, 1 for the
+	 * coordinate to rise to the value and -1 for it to fall to it
+	 * @param timeout the <code>long</code> most time to wait in ms, 0 to wait as long as it takes
+	 * @return <code>true</code> if the robot is past the value, <code>false</code> if the time ran
+	 * out first
+	 */
+	public boolean waitUntilCrossing(int axis, double value, int direction, long timeout) {
+		return waitUntil(new Crossing(axis, value, direction), timeout);
+	}
+
+	/**
+	 * Waits until the odometer publishes a new pose, for a loop that looks at the pose and at
+	 * other things once per pose rather than spinning.
+	 * 
+	 * @param timeout the <code>long</code> most time to wait in ms, 0 to wait as long as it takes
+	 * @return <code>true</code> if a new pose was published, <code>false</code> if the time ran out first
+	 */
+	public boolean waitForUpdate(long timeout) {
+		long end = robot.getClock().currentTimeMillis() + timeout;
+		synchronized (published) {
+			waiters++;
+			try {
+				return waitForPose(version, timeout, end);
+			} finally {
+				waiters--;
+			}
+		}
+	}
+
+	/*
+	 * Parks until the version is no longer the one checked, with the monitor of the waiters held.
+	 * The time out is looked at again every period, as the clock may run faster than the virtual
+	 * machine waits, as in the simulator.
+	 */
+	private boolean waitForPose(int checked, long timeout, long end) {
+		while (version == checked) {
+			try {
+				if (timeout > 0) {
+					long left = end - robot.getClock().currentTimeMillis();
+					if (left <= 0)
+						return false;
+					published.wait(Math.min(left, period));
+				} else {
+					published.wait();
+				}
+			} catch (InterruptedException e) {
+				// keep waiting for the pose
+			}
+		}
+		return true;
+	}
+
+	// wakes the waiters once a pose is published, outside of the lock of the writers
+	private void signalPose() {
+		synchronized (published) {
+			if (waiters > 0)
+				published.notifyAll();
 		}
 	}
 
+	/**
+	 * Returns the version of the pose, which is incremented twice on every update. Comparing two
+	 * versions is a cheap way to know whether the pose has changed.
+	 * @return the <code>int</code> version of the pose
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	// copies the pose fields, the caller is responsible for checking the version
+	private void copyPose(double [] out) {
+		out[0] = x;
+		out[1] = y;
+		out[2] = theta;
+		if (out.length > 3)
+			out[3] = timestamp;
+	}
+
 	// accessors to motors
 	/**
-	 * Returns the motors array of the robot
+	 * Returns the motors array of the robot, left then right. It is the same array on every
+	 * call, it must not be changed.
 	 * @return the motors array of the robot
 	 */
-	public NXTRegulatedMotor [] getMotors() {
-		return new NXTRegulatedMotor[] {this.leftMotor, this.rightMotor};
+	public RegulatedMotor [] getMotors() {
+		return motors;
 	}
 	/**
 	 * Returns the left motor of the robot
 	 * @return the left motor of the robot
 	 */
-	public NXTRegulatedMotor getLeftMotor() {
+	public RegulatedMotor getLeftMotor() {
 		return this.leftMotor;
 	}
 	/**
 	 * Returns the right motor of the robot
 	 * @return the right motor of the robot
 	 */
-	public NXTRegulatedMotor getRightMotor() {
+	public RegulatedMotor getRightMotor() {
 		return this.rightMotor;
 	}
+	/**
+	 * Returns the devices of the robot
+	 * @return the <code>Robot</code> the odometer runs on
+	 */
+	public Robot getRobot() {
+		return this.robot;
+	}
+	/**
+	 * Returns the odometry correction of the robot
+	 * @return the <code>OdometryCorrection</code> of the robot
+	 */
+	public OdometryCorrection getOdometryCorrection() {
+		return this.odometryCorrection;
+	}
+	/**
+	 * Returns the estimator that keeps the uncertainty of the pose
+	 * @return the <code>PoseEstimator</code> of the robot
+	 */
+	public PoseEstimator getEstimator() {
+		return this.estimator;
+	}
+	/**
+	 * Returns the calibration the dimensions of the robot are taken from
+	 * @return the <code>Calibration</code> of the robot
+	 */
+	public Calibration getCalibration() {
+		return this.calibration;
+	}
 	/**
 	 * Returns the navigation of the robot
 	 * @return the <code>Navigation</code> of the robot
@@ -257,9 +605,50 @@ public class Odometer implements TimerListener {
 	 */
 	public void setPosition(double [] pos, boolean [] update) {
 		synchronized (lock) {
+			version++;
+			history.shift(update[0] ? pos[0] - x : 0, update[1] ? pos[1] - y : 0, update[2] ? pos[2] - theta : 0);
 			if (update[0]) x = pos[0];
 			if (update[1]) y = pos[1];
 			if (update[2]) theta = pos[2];
+			version++;
+		}
+		signalPose();
+	}
+
+	/*
+	 * The robot is within a distance of a point.
+	 */
+	private static class Within implements PoseCondition {
+		private double x, y, squared;
+
+		Within(double x, double y, double radius) {
+			this.x = x;
+			this.y = y;
+			squared = radius * radius;
+		}
+
+		public boolean holds(double x, double y, double angle) {
+			double dx = x - this.x, dy = y - this.y;
+			return dx * dx + dy * dy < squared;
+		}
+	}
+
+	/*
+	 * The robot is past a value on an axis, going one way.
+	 */
+	private static class Crossing implements PoseCondition {
+		private int axis, direction;
+		private double value;
+
+		Crossing(int axis, double value, int direction) {
+			this.axis = axis;
+			this.value = value;
+			this.direction = direction;
+		}
+
+		public boolean holds(double x, double y, double angle) {
+			double coordinate = axis == X ? x : y;
+			return direction > 0 ? coordinate >= value : coordinate <= value;
 		}
 	}
 
@@ -286,8 +675,12 @@ public class Odometer implements TimerListener {
 	 */
 	public void setX(double x) {
 		synchronized (lock) {
+			version++;
+			history.shift(x - this.x, 0, 0);
 			this.x = x;
+			version++;
 		}
+		signalPose();
 	} 
 	/**
 	 * Sets the <code>double</code> y of the odometer
@@ -295,7 +688,11 @@ public class Odometer implements TimerListener {
 	 */
 	public void setY(double y) {
 		synchronized (lock) {
+			version++;
+			history.shift(0, y - this.y, 0);
 			this.y = y;
+			version++;
 		}
+		signalPose();
 	} 
 } 
\ No newline at end of file
@@ -1,13 +1,28 @@
 package traveling;
 
-import lejos.nxt.*;
-import lejos.util.Delay;
+import hardware.Clock;
+import hardware.ColorInput;
+import scheduler.PeriodicTask;
+import scheduler.Scheduler;
 
 /**
  * The <code>OdometryCorrection</code> class corrects the odometry whenever one of the two 
  * color sensors of the robot crosses a grid line. 
  * 
- * It has a private method which determines which grid line is closest to a given coordinate.
+ * Each sensor is sampled by a <code>LineDetector</code>, which reports one crossing per line
+ * with the time the sensor was over its middle, relative to a <code>LightBaseline</code> that
+ * follows the brightness of the floor. Crossings are matched with the pose the
+ * <code>Odometer</code> had at that time, so the correction does not depend on how late the
+ * thread was scheduled, and are fused by the <code>PoseEstimator</code> of the odometer,
+ * which weighs them against the uncertainty of the pose and rejects dark readings that
+ * cannot be a grid line.
+ * 
+ * When both sensors cross the same line in a short time without the robot turning, the
+ * distance travelled between the two crossings and the known spacing of the sensors give
+ * the angle between the robot and the line, which is fused as a heading measurement.
+ * 
+ * The sensors are sampled by a control task of the <code>Scheduler</code> of the robot, every
+ * sample period.
  * 
  * An instance of this class holds an instance of the <code>Navigation</code> class which will be
  * interacting with it, as well as an instance of <code>Odometry</code> which it updates when
@@ -15,22 +30,42 @@ import lejos.util.Delay;
  * 
  * @see Odometer
  * @see Navigation
+ * @see PoseEstimator
+ * @see LineDetector
+ * @see Scheduler
  * 
  * @author Stefan T
  *
  */
 
-public class OdometryCorrection extends Thread {
-	private static final long CORRECTION_PERIOD = 10;
+public class OdometryCorrection implements PeriodicTask {
+	private static final long DEFAULT_SAMPLE_PERIOD = 4;
 	private Odometer odometer;
 	private Navigation navigation;
-	private ColorSensor leftCS;
-	private ColorSensor rightCS;
+	private ColorInput leftCS;
+	private ColorInput rightCS;
+	private Clock clock;
 
 	//variables
-	private final double LEFT_LIGHT_THRESHOLD = 0.85, RIGHT_LIGHT_THRESHOLD = 0.87;
 	private final static double X_OFFSET = 7.3;
 	private final static double Y_OFFSET = 7.3;
+	final static double SENSOR_SPACING = 2 * Y_OFFSET;
+	// two crossings of the same line further apart than this are not a pair
+	private final static long PAIR_WINDOW = 1500;
+	// pairs while turning more than this, or at more than this angle to the line are outliers
+	private final static double MAX_PAIR_TURN = 2.0, MAX_LINE_ANGLE = 35.0;
+	// standard deviation of a paired crossing heading, in degrees
+	private final static double PAIR_DEVIATION = 3.0;
+	private final static int LEFT = 0, RIGHT = 1;
+	private double hypotenuse, leftOffset, rightOffset;
+	private long [] crossingTime = new long [2];
+	private int [] crossingAxis = {-1, -1};
+	private double [] crossingLine = new double [2];
+	private double [] leftPose = new double [3], rightPose = new double [3];
+	private double [] crossingPose = new double [3];
+	private PoseEstimator estimator;
+	private LineDetector leftDetector, rightDetector;
+	private long samplePeriod;
 
 	// constructor
 
@@ -39,132 +74,173 @@ public class OdometryCorrection extends Thread {
 	 * It initializes the <code>Navigation</code> as the navigation that is used by the odometer.
 	 * 
 	 * @param odometer 	The <code>Odometer</code> that is used for the robot
-	 * @param leftCS 	The left <code>ColorSensor</code> that is used to check grid lines
-	 * @param rightCS 	The right <code>ColorSensor</code>that is used to check grid lines
+	 * @param leftCS 	The left <code>ColorInput</code> that is used to check grid lines
+	 * @param rightCS 	The right <code>ColorInput</code>that is used to check grid lines
 	 */
-	public OdometryCorrection(Odometer odometer, ColorSensor leftCS, ColorSensor rightCS) {		
+	public OdometryCorrection(Odometer odometer, ColorInput leftCS, ColorInput rightCS) {		
+		this.samplePeriod = DEFAULT_SAMPLE_PERIOD;
 		this.odometer = odometer;
+		this.clock = odometer.getRobot().getClock();
 		this.leftCS = leftCS;
 		this.rightCS = rightCS;
 		this.navigation = odometer.getNavigation();
+		this.estimator = odometer.getEstimator();
 	}
 
-	// run method (required for Thread)
-
-	/** If the <code>boolean isTurning</code> from the <code>Navigation</code> is false,
-	 * check if either of the two <code>ColorSensors</code> crosses a grid line. If one does, 
-	 * determine which grid line is closest and update the <code>Odometer</code> accordingly.
+	/**
+	 * Sets the period at which the <code>ColorSensors</code> are sampled. A shorter period gives a
+	 * more precise crossing time at the cost of more processor time. It must be set before
+	 * <code>start</code>.
 	 * 
-	 * {@inheritDoc}
+	 * @param samplePeriod the <code>long</code> period in ms at which the sensors are read
+	 */
+	public void setSamplePeriod(long samplePeriod) {
+		this.samplePeriod = samplePeriod;
+	}
+
+	/**
+	 * Returns the left <code>ColorInput</code>, the one whose ambient light is stored at
+	 * <code>Calibration.LEFT_SENSOR</code>
+	 * @return the left <code>ColorInput</code> used to check grid lines
+	 */
+	public ColorInput getLeftSensor() {
+		return leftCS;
+	}
+
+	/** Prepares the two <code>ColorSensors</code> and their <code>LineDetectors</code>, then
+	 * starts sampling them every sample period, as a control task of the <code>Scheduler</code>
+	 * of the robot.
 	 */
-	public void run() {
+	public void start() {
 		// Variables
 		int ambientLeft = 0, ambientRight = 0;
-		double tempAngle = 0, XError, YError;
-		long correctionStart, correctionEnd;
 
 		// 	Calculate the hypotenuse, as well as the angle offset for both the left and right
 		//	ColorSensors.
-		double hypotenuse = Math.sqrt(X_OFFSET*X_OFFSET + Y_OFFSET*Y_OFFSET);
-		double leftOffset = Math.PI + Math.atan(Y_OFFSET/X_OFFSET);
-		double rightOffset = Math.PI - Math.atan(Y_OFFSET/X_OFFSET);
+		hypotenuse = Math.sqrt(X_OFFSET*X_OFFSET + Y_OFFSET*Y_OFFSET);
+		leftOffset = Math.PI + Math.atan(Y_OFFSET/X_OFFSET);
+		rightOffset = Math.PI - Math.atan(Y_OFFSET/X_OFFSET);
 
 		leftCS.setFloodlight(true);
 		rightCS.setFloodlight(true);
 
-		//	Calculate the average value of getRawLightValue, this is the value of the ambient light.
-		for(int i = 0; i < 20; i++)
-		{
-			ambientLeft += leftCS.getRawLightValue();
-			ambientRight += rightCS.getRawLightValue();
-			Delay.msDelay(10);	
-		}
-
-		ambientLeft /= 20;
-		ambientRight /= 20;
-
-		//	This while loop is used to check if either of the ColorSensors crosses a grid line.
-		// 	If one does, it updates the odometer. It only does this when the robot is not turning.
-
-		while (true) {
-
-			correctionStart = System.currentTimeMillis();
-
-			//	The odometry correction only runs if the robot is not turning.
-			if(!navigation.isTurning()){
-				//	If the light value read by the ColorSensor is below the ambient light
-				//	by a percentage, the ColorSensor has crossed a grid line.
-				if (leftCS.getRawLightValue() < ambientLeft * LEFT_LIGHT_THRESHOLD) {
-					//Sound.beep();
-
-					//	The temporary angle is the angle that the robot is currently at plus
-					//	the left offset angle.
-					tempAngle = odometer.getAng()*Math.PI/180 + leftOffset;
-
-					//	If the angle is over 2*PI, it is corrected.
-					if (tempAngle > 2*Math.PI)
-						tempAngle -= 2*Math.PI;
-
-					//	The XError and YError are set as the difference between the closest grid 
-					//	line according to the odometer and the measured position of the grid line.
-					XError = Math.abs(getLine(odometer.getX() + hypotenuse * Math.cos(tempAngle)) - (odometer.getX() + hypotenuse * Math.cos(tempAngle)));
-					YError = Math.abs(getLine(odometer.getY() + hypotenuse * Math.sin(tempAngle)) - (odometer.getY() + hypotenuse * Math.sin(tempAngle)));
-
-					//	The minimum between the X and Y error is found. If the X error is the 
-					//	smaller, the X position of the odometer is updated. If the Y is smaller,
-					//	the Y position of the odometer is updated.
-					if(Math.min(XError,  YError) == XError)				
-						odometer.setX(getLine(odometer.getX() + hypotenuse * Math.cos(tempAngle)) - hypotenuse * Math.cos(tempAngle));					
-					else
-						odometer.setY(getLine(odometer.getY() + hypotenuse * Math.sin(tempAngle)) - hypotenuse * Math.sin(tempAngle));					
-				}
-
-				//	The following if statement is nearly identical to the one above. The right 
-				//	ColorSensor is polled instead of the left one.
-				if (rightCS.getRawLightValue() < ambientRight * RIGHT_LIGHT_THRESHOLD) {
-					//Sound.twoBeeps();
-
-					//	The rightOffset is used to calculate the tempAngle instead of the leftOffset.
-					tempAngle = odometer.getAng()*Math.PI/180 + rightOffset;
-
-					if (tempAngle > 2*Math.PI)
-						tempAngle -= 2*Math.PI;
+		//	Use the ambient light stored on the brick, and only if there is none calculate the
+		//	average value of getRawLightValue and store it for the next start.
+		Calibration calibration = odometer.getCalibration();
+		if (calibration.hasAmbient()) {
+			ambientLeft = calibration.getAmbient(Calibration.LEFT_SENSOR);
+			ambientRight = calibration.getAmbient(Calibration.RIGHT_SENSOR);
+		} else {
+			for(int i = 0; i < 20; i++)
+			{
+				ambientLeft += leftCS.getRawLightValue();
+				ambientRight += rightCS.getRawLightValue();
+				clock.delay(10);	
+			}
 
-					XError = Math.abs(getLine(odometer.getX() + hypotenuse * Math.cos(tempAngle)) - (odometer.getX() + hypotenuse * Math.cos(tempAngle)));
-					YError = Math.abs(getLine(odometer.getY() + hypotenuse * Math.sin(tempAngle)) - (odometer.getY() + hypotenuse * Math.sin(tempAngle)));
+			ambientLeft /= 20;
+			ambientRight /= 20;
+			calibration.setAmbient(Calibration.LEFT_SENSOR, ambientLeft);
+			calibration.setAmbient(Calibration.RIGHT_SENSOR, ambientRight);
+			calibration.save();
+		}
 
-					if(Math.min(XError,  YError) == XError)				
-						odometer.setX(getLine(odometer.getX() + hypotenuse * Math.cos(tempAngle)) - hypotenuse * Math.cos(tempAngle));					
-					else
-						odometer.setY(getLine(odometer.getY() + hypotenuse * Math.sin(tempAngle)) - hypotenuse * Math.sin(tempAngle));					
+		//	The ambient light is only a starting point, the baselines follow the floor from there.
+		leftDetector = new LineDetector(new LightBaseline(ambientLeft));
+		rightDetector = new LineDetector(new LightBaseline(ambientRight));
 
+		odometer.getRobot().getScheduler().add("correction", this, (int) samplePeriod);
+	}
 
-				}
+	/** Feed the readings of the two <code>ColorSensors</code> to their <code>LineDetectors</code>.
+	 * If the <code>boolean isTurning</code> from the <code>Navigation</code> is false and one of
+	 * them completes a crossing, determine which grid line was crossed and update the
+	 * <code>Odometer</code> accordingly.
+	 * 
+	 * {@inheritDoc}
+	 */
+	public void execute(long release) {
+		long correctionStart = clock.currentTimeMillis();
+
+		//	The detectors see one crossing per line, timed at the middle of the line. The
+		//	correction is computed from the pose the robot had at that time, and only if
+		//	the robot is not turning.
+		if (leftDetector.sample(leftCS.getRawLightValue(), correctionStart) && !navigation.isTurning()) {
+			//Sound.beep();
+			correct(LEFT, leftOffset, leftDetector.getCrossingTime());
+		}
 
-			}
-			// this ensures the odometry correction occurs only once every period
-			correctionEnd = System.currentTimeMillis();
-			if (correctionEnd - correctionStart < CORRECTION_PERIOD) {
-				try {
-					Thread.sleep(CORRECTION_PERIOD - (correctionEnd - correctionStart));
-				} catch (InterruptedException e) {
-					// there is nothing to be done here because it is not
-					// expected that the odometry correction will be
-					// interrupted by another thread
-				}
-			}
+		//	The same is done for the right ColorSensor with the right offset angle.
+		if (rightDetector.sample(rightCS.getRawLightValue(), correctionStart) && !navigation.isTurning()) {
+			//Sound.twoBeeps();
+			correct(RIGHT, rightOffset, rightDetector.getCrossingTime());
 		}
 	}
 
+	/*
+	 * Corrects the odometer for a grid line seen by the given sensor, at the given offset angle,
+	 * at the given time. The crossing is given to the estimator with the pose at that time, it
+	 * decides which line was crossed, how much to trust it and corrects the odometer relative to
+	 * its current pose so the motion since the sensor was read is kept. If the other sensor
+	 * crossed the same line recently the pair is used to correct the heading. A crossing older
+	 * than the history, or before its first pose, is dropped.
+	 */
+	private void correct(int sensor, double sensorOffset, long time) {
+		if (!odometer.poseAt(time, crossingPose))
+			return;
+		if (!estimator.observeLine(crossingPose, hypotenuse, sensorOffset))
+			return;
+
+		int axis = estimator.getLastAxis();
+		double line = estimator.getLastLine();
+
+		int other = 1 - sensor;
+		if (crossingAxis[other] == axis && crossingLine[other] == line
+				&& time - crossingTime[other] < PAIR_WINDOW) {
+			if (sensor == LEFT)
+				correctHeading(time, crossingTime[other], axis);
+			else
+				correctHeading(crossingTime[other], time, axis);
+			crossingAxis[other] = -1;
+		}
 
-
-
-
-	// depending on the heading of the robot find the closest grid line it just crossed.
-	private static double getLine(double coordinate) {
-		return Math.round(coordinate / 30.3) * 30.3;
+		crossingAxis[sensor] = axis;
+		crossingLine[sensor] = line;
+		crossingTime[sensor] = time;
 	}
 
-
-
+	/*
+	 * Corrects the heading from the times at which the left and right sensors crossed the same
+	 * line. The sensors are side by side, SENSOR_SPACING apart, so if the robot travelled D
+	 * between the two crossings it is at atan(D / SENSOR_SPACING) from the normal of the line.
+	 * Pairs where the robot turned, or which give an implausible angle, are discarded, and so
+	 * are pairs with a crossing the history no longer covers.
+	 */
+	private void correctHeading(long leftTime, long rightTime, int axis) {
+		if (!odometer.poseAt(leftTime, leftPose) || !odometer.poseAt(rightTime, rightPose))
+			return;
+
+		double turned = Math.abs(rightPose[2] - leftPose[2]);
+		if (Math.min(turned, 360.0 - turned) > MAX_PAIR_TURN)
+			return;
+
+		//	The distance travelled from the left crossing to the right one, along the heading.
+		double heading = Math.toRadians(rightPose[2]);
+		double travelled = (rightPose[0] - leftPose[0]) * Math.cos(heading)
+				+ (rightPose[1] - leftPose[1]) * Math.sin(heading);
+		double lineAngle = Math.toDegrees(Math.atan(travelled / SENSOR_SPACING));
+		if (Math.abs(lineAngle) > MAX_LINE_ANGLE)
+			return;
+
+		//	The normal of a line of constant x is 0 or 180 degrees, of constant y 90 or 270,
+		//	whichever is closer to the heading of the odometer.
+		double measured = (axis == PoseEstimator.X_LINE ? 0.0 : 90.0) + lineAngle;
+		double difference = Math.abs(measured - rightPose[2]) % 360.0;
+		if (difference > 90.0 && difference < 270.0)
+			measured += 180.0;
+		if (measured < 0.0)
+			measured += 360.0;
+
+		estimator.observeAngle(measured, rightPose[2], PAIR_DEVIATION);
+	}
 }
\ No newline at end of file
@@ -4,9 +4,11 @@ package traveling;
  * OdometryDisplay.java
  */
 import lejos.nxt.LCD;
+import scheduler.PeriodicTask;
+import scheduler.Scheduler;
 
-public class OdometryDisplay extends Thread {
-	private static final long DISPLAY_PERIOD = 250;
+public class OdometryDisplay implements PeriodicTask {
+	private static final int DISPLAY_PERIOD = 250;
 	private Odometer odometer;
 
 	// constructor
@@ -14,41 +16,20 @@ public class OdometryDisplay extends Thread {
 		this.odometer = odometer;
 	}
 
-	// run method (required for Thread)
-	public void run() {
-		long displayStart, displayEnd;
-		double[] position = new double[3];
-
+	// starts the display as a background task, below the navigation
+	public void start() {
 		// clear the display once
 		LCD.clearDisplay();
 
-		while (true) {
-			displayStart = System.currentTimeMillis();
-
-			// get the odometry information
-			
-
-			LCD.drawString("X: " + odometer.getX(), 0, 0);
-			LCD.drawString("Y: " + odometer.getY(), 0, 1);
-			LCD.drawString("T: " + odometer.getAng(), 0, 2);
-			// display odometry information
-			
-
-			
-				
+		Scheduler.getDefault().addBackground("display", this, DISPLAY_PERIOD);
+	}
 
-			// throttle the OdometryDisplay
-			displayEnd = System.currentTimeMillis();
-			if (displayEnd - displayStart < DISPLAY_PERIOD) {
-				try {
-					Thread.sleep(DISPLAY_PERIOD - (displayEnd - displayStart));
-				} catch (InterruptedException e) {
-					// there is nothing to be done here because it is not
-					// expected that OdometryDisplay will be interrupted
-					// by another thread
-				}
-			}
-		}
+	// execute method (required for PeriodicTask)
+	public void execute(long release) {
+		// display odometry information
+		LCD.drawString("X: " + odometer.getX(), 0, 0);
+		LCD.drawString("Y: " + odometer.getY(), 0, 1);
+		LCD.drawString("T: " + odometer.getAng(), 0, 2);
 	}
 
 	private static String formattedDoubleToString(double x, int places) {
@@ -0,0 +1,36 @@
+package traveling;
+
+/**
+ * The <code>OdometryEngine</code> interface describes the dead reckoning step that the
+ * <code>Odometer</code> runs on every period. It is given the absolute tacho counts of
+ * both wheels and advances the pose by the motion since the previous call.
+ * 
+ * The pose array holds the x and y in centimeters and the angle in degrees, in the same
+ * order as <code>Odometer.getPosition</code>. It may have been changed by a correction
+ * since the previous call, so an engine must always start from the values it is given.
+ * 
+ * @see Odometer
+ * @see DoubleOdometryEngine
+ * @see FixedPointOdometryEngine
+ * 
+ * @author Stefan Ti
+ */
+public interface OdometryEngine {
+
+	/**
+	 * Sets the reference tacho counts from which the next update will measure the motion.
+	 * 
+	 * @param leftTacho the <code>int</code> tacho count of the left motor
+	 * @param rightTacho the <code>int</code> tacho count of the right motor
+	 */
+	public void reset(int leftTacho, int rightTacho);
+
+	/**
+	 * Advances the pose by the motion of the wheels since the previous call.
+	 * 
+	 * @param leftTacho the <code>int</code> tacho count of the left motor
+	 * @param rightTacho the <code>int</code> tacho count of the right motor
+	 * @param pose the <code>double</code> array holding x, y and angle which is updated in place
+	 */
+	public void update(int leftTacho, int rightTacho, double [] pose);
+}
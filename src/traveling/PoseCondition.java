@@ -0,0 +1,22 @@
+package traveling;
+
+/**
+ * A <code>PoseCondition</code> is a condition on the pose of the robot that a thread waits
+ * for with <code>Odometer.waitUntil</code>. It is only looked at when the <code>Odometer</code>
+ * publishes a new pose, on the thread that waits, so it must be cheap and must not block.
+ *
+ * @see Odometer
+ *
+ * @author Stefan Ti
+ */
+public interface PoseCondition {
+	/**
+	 * Returns whether the condition holds at a pose.
+	 *
+	 * @param x the <code>double</code> x of the robot in cm
+	 * @param y the <code>double</code> y of the robot in cm
+	 * @param angle the <code>double</code> heading of the robot in degrees
+	 * @return <code>true</code> if the waiting is over
+	 */
+	public boolean holds(double x, double y, double angle);
+}
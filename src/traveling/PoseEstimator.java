@@ -0,0 +1,296 @@
+package traveling;
+
+/**
+ * The <code>PoseEstimator</code> class keeps the uncertainty of the <code>Odometer</code> pose
+ * and fuses grid line crossings into it as an extended Kalman filter. The pose itself stays in
+ * the <code>Odometer</code>; this class holds its 3x3 covariance, grows it with every integrated
+ * motion and shrinks it with every accepted line.
+ * 
+ * A line crossing is a measurement of one coordinate of the light sensor that crossed it: the
+ * sensor sits at a fixed distance and angle from the center of the robot, so a crossing
+ * constrains the x or the y of the robot and, through the lever arm of the sensor, its
+ * heading. Crossings whose innovation is too unlikely for the current covariance are
+ * rejected, which filters out the dark readings that are not grid lines.
+ * 
+ * The heading is in degrees in the public methods, as everywhere else, and in radians in the
+ * covariance. The methods are synchronized on the estimator and never call the
+ * <code>Odometer</code> while they hold that lock.
+ * 
+ * @see Odometer
+ * @see OdometryCorrection
+ * 
+ * @author Stefan Ti
+ */
+public class PoseEstimator {
+	static final double TILE_LENGTH = 30.3;
+	// variance added per cm driven (cm^2/cm), per radian turned and per cm driven (rad^2)
+	private static final double DISTANCE_NOISE = 0.02, TURN_NOISE = 0.004, DRIFT_NOISE = 0.00005;
+	// variance of a line crossing, in cm^2, and the chi-square gate with one degree of freedom (99%)
+	private static final double LINE_NOISE = 0.36, GATE = 6.63;
+	// the uncertainty just after localization, in cm and degrees
+	private static final double INITIAL_POSITION = 1.0, INITIAL_ANGLE = 2.0;
+
+	private Odometer odometer;
+	// the covariance, row by row, of x, y and heading in radians
+	private double [] p = new double [9];
+	private double [] gain = new double [3];
+	private double [] h = new double [3];
+	private int accepted, rejected;
+	private int lastAxis = -1;
+	private double lastLine;
+
+	/**
+	 * The axis of a line of constant x and of a line of constant y, as returned by <code>getLastAxis</code>
+	 */
+	public static final int X_LINE = 0, Y_LINE = 1;
+
+	/**
+	 * The constructor takes in the <code>Odometer</code> whose pose is estimated and
+	 * starts with the uncertainty of a freshly localized robot.
+	 * 
+	 * @param odometer the <code>Odometer</code> of the robot
+	 */
+	public PoseEstimator(Odometer odometer) {
+		this.odometer = odometer;
+		reset();
+	}
+
+	/**
+	 * Sets the covariance back to the uncertainty of a freshly localized robot.
+	 */
+	public synchronized void reset() {
+		for (int i = 0; i < 9; i++)
+			p[i] = 0;
+		p[0] = p[4] = INITIAL_POSITION * INITIAL_POSITION;
+		p[8] = Math.toRadians(INITIAL_ANGLE) * Math.toRadians(INITIAL_ANGLE);
+	}
+
+	/**
+	 * Grows the covariance by the motion of one odometer period. The motion is given as the
+	 * change of the pose, so that the estimator does not depend on the odometry engine.
+	 * 
+	 * @param dx the <code>double</code> change in x, in cm
+	 * @param dy the <code>double</code> change in y, in cm
+	 * @param dAngle the <code>double</code> change in angle, in degrees
+	 * @param angle the <code>double</code> angle after the motion, in degrees
+	 */
+	public synchronized void predict(double dx, double dy, double dAngle, double angle) {
+		if (dAngle > 180.0)
+			dAngle -= 360.0;
+		else if (dAngle < -180.0)
+			dAngle += 360.0;
+
+		double distance = Math.sqrt(dx * dx + dy * dy);
+		double turn = Math.abs(Math.toRadians(dAngle));
+		if (distance == 0 && turn == 0)
+			return;
+
+		// P = F P F' with F = [1 0 -dy; 0 1 dx; 0 0 1]
+		double p02 = p[2] - dy * p[8], p12 = p[5] + dx * p[8];
+		double p00 = p[0] - 2 * dy * p[2] + dy * dy * p[8];
+		double p11 = p[4] + 2 * dx * p[5] + dx * dx * p[8];
+		double p01 = p[1] + dx * p[2] - dy * p[5] - dx * dy * p[8];
+
+		// add the noise of the distance along the heading and of the heading itself
+		double c = Math.cos(Math.toRadians(angle)), s = Math.sin(Math.toRadians(angle));
+		double distanceVariance = DISTANCE_NOISE * distance;
+		double angleVariance = TURN_NOISE * turn + DRIFT_NOISE * distance;
+
+		p[0] = p00 + distanceVariance * c * c;
+		p[4] = p11 + distanceVariance * s * s;
+		p[1] = p[3] = p01 + distanceVariance * c * s;
+		p[2] = p[6] = p02;
+		p[5] = p[7] = p12;
+		p[8] += angleVariance;
+	}
+
+	/**
+	 * Fuses the crossing of a grid line by a light sensor. The sensor is at the given distance
+	 * from the center of the robot and at the given angle from its heading. The line is taken
+	 * to be the one closest to where the pose puts the sensor, along the axis for which that is
+	 * the more likely; if even that line is too unlikely the crossing is rejected.
+	 * 
+	 * The correction is applied to the <code>Odometer</code> relative to its current pose.
+	 * 
+	 * @param pose the <code>double</code> array with the x, y and angle of the robot when the line was crossed
+	 * @param sensorDistance the <code>double</code> distance of the sensor from the center, in cm
+	 * @param sensorAngle the <code>double</code> angle of the sensor from the heading, in radians
+	 * @return <code>true</code> if the crossing was accepted, <code>false</code> if it was gated out
+	 */
+	public boolean observeLine(double [] pose, double sensorDistance, double sensorAngle) {
+		double dx, dy, dAngle;
+
+		synchronized (this) {
+			double angle = Math.toRadians(pose[2]) + sensorAngle;
+			double c = Math.cos(angle), s = Math.sin(angle);
+			double sensorX = pose[0] + sensorDistance * c;
+			double sensorY = pose[1] + sensorDistance * s;
+			double xInnovation = getLine(sensorX) - sensorX;
+			double yInnovation = getLine(sensorY) - sensorY;
+
+			// S = H P H' + R for a line of constant x, H = [1 0 -d sin], and of constant y, H = [0 1 d cos]
+			double xVariance = variance(1, 0, -sensorDistance * s);
+			double yVariance = variance(0, 1, sensorDistance * c);
+			double xDistance = xInnovation * xInnovation / xVariance;
+			double yDistance = yInnovation * yInnovation / yVariance;
+
+			double innovation, innovationVariance;
+			if (xDistance <= yDistance) {
+				h[0] = 1; h[1] = 0; h[2] = -sensorDistance * s;
+				innovation = xInnovation;
+				innovationVariance = xVariance;
+				lastAxis = X_LINE;
+				lastLine = getLine(sensorX);
+			} else {
+				h[0] = 0; h[1] = 1; h[2] = sensorDistance * c;
+				innovation = yInnovation;
+				innovationVariance = yVariance;
+				lastAxis = Y_LINE;
+				lastLine = getLine(sensorY);
+			}
+
+			if (innovation * innovation / innovationVariance > GATE) {
+				lastAxis = -1;
+				rejected++;
+				return false;
+			}
+
+			// K = P H' / S, x += K v, P -= K S K'
+			for (int i = 0; i < 3; i++)
+				gain[i] = (p[3 * i] * h[0] + p[3 * i + 1] * h[1] + p[3 * i + 2] * h[2]) / innovationVariance;
+			for (int i = 0; i < 3; i++)
+				for (int j = 0; j < 3; j++)
+					p[3 * i + j] -= gain[i] * innovationVariance * gain[j];
+
+			dx = gain[0] * innovation;
+			dy = gain[1] * innovation;
+			dAngle = Math.toDegrees(gain[2] * innovation);
+			accepted++;
+		}
+
+		odometer.correctPosition(dx, dy, dAngle);
+		return true;
+	}
+
+	/**
+	 * Fuses a direct measurement of the heading, such as the one given by two sensors crossing
+	 * the same line, and applies the correction to the <code>Odometer</code>.
+	 * 
+	 * @param measured the <code>double</code> measured angle, in degrees
+	 * @param estimated the <code>double</code> angle of the pose at the time of the measurement, in degrees
+	 * @param deviation the <code>double</code> standard deviation of the measurement, in degrees
+	 * @return <code>true</code> if the measurement was accepted, <code>false</code> if it was gated out
+	 */
+	public boolean observeAngle(double measured, double estimated, double deviation) {
+		double dx, dy, dAngle;
+
+		synchronized (this) {
+			double innovation = measured - estimated;
+			if (innovation > 180.0)
+				innovation -= 360.0;
+			else if (innovation < -180.0)
+				innovation += 360.0;
+			innovation = Math.toRadians(innovation);
+
+			double innovationVariance = p[8] + Math.toRadians(deviation) * Math.toRadians(deviation);
+			if (innovation * innovation / innovationVariance > GATE) {
+				rejected++;
+				return false;
+			}
+
+			for (int i = 0; i < 3; i++)
+				gain[i] = p[3 * i + 2] / innovationVariance;
+			for (int i = 0; i < 3; i++)
+				for (int j = 0; j < 3; j++)
+					p[3 * i + j] -= gain[i] * innovationVariance * gain[j];
+
+			dx = gain[0] * innovation;
+			dy = gain[1] * innovation;
+			dAngle = Math.toDegrees(gain[2] * innovation);
+			accepted++;
+		}
+
+		odometer.correctPosition(dx, dy, dAngle);
+		return true;
+	}
+
+	/**
+	 * Copies the covariance of x, y and heading, row by row, into the given array. The heading
+	 * terms are in radians.
+	 * 
+	 * @param out the <code>double</code> array of at least nine elements that receives the covariance
+	 */
+	public synchronized void getCovariance(double [] out) {
+		for (int i = 0; i < 9; i++)
+			out[i] = p[i];
+	}
+
+	/**
+	 * Returns the standard deviation of the x of the robot
+	 * @return the <code>double</code> standard deviation of x, in cm
+	 */
+	public synchronized double getXDeviation() {
+		return Math.sqrt(p[0]);
+	}
+
+	/**
+	 * Returns the standard deviation of the y of the robot
+	 * @return the <code>double</code> standard deviation of y, in cm
+	 */
+	public synchronized double getYDeviation() {
+		return Math.sqrt(p[4]);
+	}
+
+	/**
+	 * Returns the standard deviation of the angle of the robot
+	 * @return the <code>double</code> standard deviation of the angle, in degrees
+	 */
+	public synchronized double getAngDeviation() {
+		return Math.toDegrees(Math.sqrt(p[8]));
+	}
+
+	/**
+	 * Returns the axis of the line matched by the last accepted crossing
+	 * @return <code>X_LINE</code> or <code>Y_LINE</code>, or -1 if the last crossing was rejected
+	 */
+	public int getLastAxis() {
+		return lastAxis;
+	}
+
+	/**
+	 * Returns the coordinate of the line matched by the last accepted crossing
+	 * @return the <code>double</code> x or y of the line, in cm
+	 */
+	public double getLastLine() {
+		return lastLine;
+	}
+
+	/**
+	 * Returns the number of line crossings and headings that were fused
+	 * @return the <code>int</code> number of accepted measurements
+	 */
+	public int getAccepted() {
+		return accepted;
+	}
+
+	/**
+	 * Returns the number of line crossings and headings that were gated out
+	 * @return the <code>int</code> number of rejected measurements
+	 */
+	public int getRejected() {
+		return rejected;
+	}
+
+	// H P H' + R for a measurement row H = [a b c]
+	private double variance(double a, double b, double c) {
+		return a * (p[0] * a + p[1] * b + p[2] * c)
+				+ b * (p[3] * a + p[4] * b + p[5] * c)
+				+ c * (p[6] * a + p[7] * b + p[8] * c)
+				+ LINE_NOISE;
+	}
+
+	// the closest grid line to a coordinate
+	private static double getLine(double coordinate) {
+		return Math.round(coordinate / TILE_LENGTH) * TILE_LENGTH;
+	}
+}
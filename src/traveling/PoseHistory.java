@@ -0,0 +1,132 @@
+package traveling;
+
+/**
+ * The <code>PoseHistory</code> class keeps the last poses integrated by the
+ * <code>Odometer</code> together with the time they were integrated at, so that a
+ * measurement can be matched with the pose the robot had when it was taken rather than
+ * the pose it has when the measurement is processed.
+ * 
+ * The samples are stored in a fixed size ring of primitive arrays and looked up without
+ * allocating. The class is not thread safe on its own; the <code>Odometer</code> only writes
+ * to it while it holds its writer lock and readers go through <code>Odometer.poseAt</code>,
+ * which checks the pose version the same way as <code>Odometer.readPose</code>.
+ * 
+ * @see Odometer
+ * 
+ * @author Stefan Ti
+ */
+public class PoseHistory {
+	private long [] times;
+	private double [] xs, ys, thetas;
+	private int newest = -1, size = 0;
+
+	/**
+	 * The constructor allocates the ring for the given number of samples.
+	 * 
+	 * @param capacity the <code>int</code> number of samples that are kept
+	 */
+	public PoseHistory(int capacity) {
+		times = new long [capacity];
+		xs = new double [capacity];
+		ys = new double [capacity];
+		thetas = new double [capacity];
+	}
+
+	/**
+	 * Records a pose, overwriting the oldest one when the history is full. The time must
+	 * not go backwards.
+	 * 
+	 * @param time the <code>long</code> time in ms at which the pose was integrated
+	 * @param x the <code>double</code> x of the robot
+	 * @param y the <code>double</code> y of the robot
+	 * @param theta the <code>double</code> angle of the robot in degrees
+	 */
+	public void record(long time, double x, double y, double theta) {
+		newest = (newest + 1) % times.length;
+		times[newest] = time;
+		xs[newest] = x;
+		ys[newest] = y;
+		thetas[newest] = theta;
+		if (size < times.length)
+			size++;
+	}
+
+	/**
+	 * Moves every recorded pose by the same amount. This is used when a correction is applied
+	 * to the <code>Odometer</code> so that later lookups agree with the corrected pose.
+	 * 
+	 * @param dx the <code>double</code> change in x
+	 * @param dy the <code>double</code> change in y
+	 * @param dTheta the <code>double</code> change in angle, in degrees
+	 */
+	public void shift(double dx, double dy, double dTheta) {
+		for (int i = 0; i < size; i++) {
+			xs[i] += dx;
+			ys[i] += dy;
+			thetas[i] = fixDegAngle(thetas[i] + dTheta);
+		}
+	}
+
+	/**
+	 * Fills the given array with the pose at the given time, linearly interpolated between
+	 * the two samples around it. Times after the newest sample return the newest pose and
+	 * times before the oldest sample return the oldest pose.
+	 * 
+	 * @param time the <code>long</code> time in ms of the wanted pose
+	 * @param out the <code>double</code> array that receives x, y and angle
+	 * @return <code>true</code> if the time is covered by the history, <code>false</code> if
+	 * the history is empty or the pose had to be clamped to one of its ends
+	 */
+	public boolean lookup(long time, double [] out) {
+		if (size == 0)
+			return false;
+
+		// the wanted time is usually recent, so walk back from the newest sample
+		int later = newest;
+		for (int n = 1; n < size; n++) {
+			int earlier = (later - 1 + times.length) % times.length;
+			if (times[earlier] <= time) {
+				interpolate(earlier, later, time, out);
+				return time <= times[newest];
+			}
+			later = earlier;
+		}
+
+		copy(later, out);
+		return size == 1 && time == times[later];
+	}
+
+	// interpolates between two samples, going the short way around for the angle
+	private void interpolate(int earlier, int later, long time, double [] out) {
+		long span = times[later] - times[earlier];
+		if (span <= 0 || time >= times[later]) {
+			copy(time >= times[later] ? later : earlier, out);
+			return;
+		}
+
+		double ratio = (double) (time - times[earlier]) / span;
+		double dTheta = thetas[later] - thetas[earlier];
+		if (dTheta > 180.0)
+			dTheta -= 360.0;
+		else if (dTheta < -180.0)
+			dTheta += 360.0;
+
+		out[0] = xs[earlier] + (xs[later] - xs[earlier]) * ratio;
+		out[1] = ys[earlier] + (ys[later] - ys[earlier]) * ratio;
+		out[2] = fixDegAngle(thetas[earlier] + dTheta * ratio);
+	}
+
+	private void copy(int index, double [] out) {
+		out[0] = xs[index];
+		out[1] = ys[index];
+		out[2] = thetas[index];
+	}
+
+	// wraps an angle in degrees to [0, 360)
+	private static double fixDegAngle(double angle) {
+		if (angle < 0.0)
+			angle = 360.0 + (angle % 360.0);
+
+		return angle % 360.0;
+	}
+}
@@ -0,0 +1,116 @@
+package traveling;
+
+import hardware.RegulatedMotor;
+
+/**
+ * The <code>TravelController</code> drives the robot to a point in closed loop, for a travel
+ * motion of the <code>MotionExecutor</code>, which steps it every period.
+ *
+ * Each step reads the pose of the <code>Odometer</code> and steers toward the point with the
+ * difference of the wheel speeds, in proportion to the heading error, so the heading is held on
+ * the way instead of only being set once before an open loop drive. The forward speed falls
+ * with the cosine of the error, so a robot that faces away from the point turns on the spot.
+ * The wheels are also cross coupled: the distance one wheel runs ahead of the other, against
+ * the ratio of their speeds, is added up and taken off the one and given to the other, so that
+ * a slower wheel does not wait for the heading to drift before it is made up for.
+ *
+ * Close to the point the heading to it is no longer worth steering by, so the controller stops
+ * steering and ends with a single drive of the wheels by what is left along the heading.
+ *
+ * @see MotionExecutor
+ * @see Navigation
+ *
+ * @author Stefan Ti
+ */
+class TravelController {
+	// the heading error in degrees at which the inner wheel stands still
+	private static final double FULL_STEER = 30.0;
+	// the distance in cm from the point under which the final approach starts
+	private static final double APPROACH_DISTANCE = 5.0;
+	// the speed in cm/s taken off the wheel ahead per cm it is ahead, and the most it is ahead by
+	private static final double SYNC_GAIN = 2.0, MAX_SYNC = 1.0;
+
+	private Navigation navigation;
+	private Odometer odometer;
+	private RegulatedMotor leftMotor, rightMotor;
+	private final double leftPerCm, rightPerCm;
+	private double [] pose = new double [3];
+	private double x, y;
+	// the speed of the travel, of the wheels in degrees per second and of the robot in cm/s
+	private int wheelSpeed;
+	private double speed;
+	private boolean approaching;
+	// the wheel speeds in cm/s of the last step, the tacho counts then, and the sync error in cm
+	private double leftCommand, rightCommand;
+	private int lastLeft, lastRight;
+	private double sync;
+
+	TravelController(Navigation navigation, Odometer odometer, double leftPerCm, double rightPerCm) {
+		this.navigation = navigation;
+		this.odometer = odometer;
+		this.leftMotor = odometer.getRobot().getLeftWheel();
+		this.rightMotor = odometer.getRobot().getRightWheel();
+		this.leftPerCm = leftPerCm;
+		this.rightPerCm = rightPerCm;
+	}
+
+	// starts a travel to a point, the wheels going at most at a speed in degrees per second
+	void start(double x, double y, int wheelSpeed) {
+		this.x = x;
+		this.y = y;
+		this.wheelSpeed = Math.abs(wheelSpeed);
+		speed = 2 * this.wheelSpeed / (Math.abs(leftPerCm) + Math.abs(rightPerCm));
+		approaching = false;
+		leftCommand = 0;
+		rightCommand = 0;
+		sync = 0;
+		lastLeft = leftMotor.getTachoCount();
+		lastRight = rightMotor.getTachoCount();
+		steer();
+	}
+
+	// steers the wheels for one period, and returns false once the robot has reached the point
+	boolean steer() {
+		if (approaching)
+			return navigation.isMoving();
+
+		odometer.readPose(pose);
+		double dX = x - pose[0], dY = y - pose[1];
+		double heading = Math.toRadians(pose[2]);
+
+		if (Math.sqrt(dX * dX + dY * dY) < APPROACH_DISTANCE) {
+			approaching = true;
+			navigation.startDrive(dX * Math.cos(heading) + dY * Math.sin(heading), wheelSpeed);
+			return true;
+		}
+
+		// a positive error turns the robot the way turnTo does with a positive angle, with
+		// the left wheel ahead
+		double error = Navigation.minimalAngle(Math.atan2(dY, dX) * 180 / Math.PI, pose[2]);
+		double forward = speed * Math.max(0.0, Math.cos(Math.toRadians(error)));
+		double turn = Math.max(-speed, Math.min(speed, speed * error / FULL_STEER));
+
+		// how far the left wheel ran ahead of the right one since the last step, against the
+		// ratio of the speeds it was given
+		int left = leftMotor.getTachoCount(), right = rightMotor.getTachoCount();
+		double movedLeft = (left - lastLeft) / leftPerCm, movedRight = (right - lastRight) / rightPerCm;
+		lastLeft = left;
+		lastRight = right;
+		double sum = Math.abs(leftCommand) + Math.abs(rightCommand);
+		if (sum > 0) {
+			sync += (movedLeft * rightCommand - movedRight * leftCommand) / sum;
+			sync = Math.max(-MAX_SYNC, Math.min(MAX_SYNC, sync));
+		}
+
+		leftCommand = forward + turn - SYNC_GAIN * sync;
+		rightCommand = forward - turn + SYNC_GAIN * sync;
+		// the faster wheel goes no faster than the travel speed
+		double fastest = Math.max(Math.abs(leftCommand), Math.abs(rightCommand));
+		if (fastest > speed) {
+			leftCommand *= speed / fastest;
+			rightCommand *= speed / fastest;
+		}
+		navigation.runWheels((float) (leftPerCm * leftCommand), (float) (rightPerCm * rightCommand));
+		return true;
+	}
+}